@@ -26,6 +26,7 @@ package org.bitrepository.access.getfile;
 
 import org.bitrepository.access.getfile.conversation.GetFileConversationContext;
 import org.bitrepository.access.getfile.conversation.IdentifyingPillarsForGetFile;
+import org.bitrepository.access.getfile.selectors.PillarPerformanceHistory;
 import org.bitrepository.bitrepositoryelements.FilePart;
 import org.bitrepository.client.AbstractClient;
 import org.bitrepository.client.conversation.mediator.ConversationMediator;
@@ -33,11 +34,15 @@ import org.bitrepository.client.eventhandler.EventHandler;
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.common.utils.XmlUtils;
 import org.bitrepository.protocol.messagebus.MessageBus;
+import org.bitrepository.settings.referencesettings.ClientSettings;
+import org.bitrepository.settings.referencesettings.ThroughputAwarePillarSelection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URL;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 
@@ -48,6 +53,9 @@ import java.util.List;
  */
 public class ConversationBasedGetFileClient extends AbstractClient implements GetFileClient {
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The history of the pillars' performance kept across the conversations, or null if not used. */
+    private final PillarPerformanceHistory pillarHistory;
+    private final boolean skipDegradedPillars;
 
     /**
      * @param messageBus           The MessageBus for communication
@@ -61,10 +69,38 @@ public class ConversationBasedGetFileClient extends AbstractClient implements Ge
         super(settings, conversationMediator, messageBus, clientID);
         ArgumentValidator.checkNotNull(messageBus, "messageBus");
         ArgumentValidator.checkNotNull(settings, "settings");
+        ThroughputAwarePillarSelection selectionSettings = getThroughputAwarePillarSelection(settings);
+        if (selectionSettings != null) {
+            int degradedAfterFailures = selectionSettings.getDegradedAfterFailures() == null
+                    ? PillarPerformanceHistory.DEFAULT_DEGRADED_AFTER_FAILURES
+                    : selectionSettings.getDegradedAfterFailures().intValue();
+            Duration degradedPeriod = selectionSettings.getDegradedPeriod() == null
+                    ? PillarPerformanceHistory.DEFAULT_DEGRADED_PERIOD
+                    : XmlUtils.xmlDurationToDuration(selectionSettings.getDegradedPeriod());
+            pillarHistory = new PillarPerformanceHistory(degradedAfterFailures, degradedPeriod);
+            skipDegradedPillars = !Boolean.FALSE.equals(selectionSettings.isSkipDegradedPillars());
+        } else {
+            pillarHistory = null;
+            skipDegradedPillars = false;
+        }
+    }
+
+    private static ThroughputAwarePillarSelection getThroughputAwarePillarSelection(Settings settings) {
+        ClientSettings clientSettings = settings.getReferenceSettings().getClientSettings();
+        return clientSettings == null ? null : clientSettings.getThroughputAwarePillarSelection();
+    }
+
+    /**
+     * @return The history of the pillars' performance used for selecting the pillar to get files from, or null if
+     * the pillar is selected by the time to deliver reported by the pillars.
+     */
+    public PillarPerformanceHistory getPillarHistory() {
+        return pillarHistory;
     }
 
     /**
-     * Attempts to get the file fom the fastest pillar (decided using the pillars' timeToDeliver ID).
+     * Attempts to get the file fom the fastest pillar (decided using the pillars' timeToDeliver ID, and their
+     * observed performance if throughput aware pillar selection is defined in the settings).
      *
      * @param collectionID          Identifies the collection the file should be retrieved from.
      * @param fileID                The id of the file to retrieve.
@@ -130,7 +166,8 @@ public class ConversationBasedGetFileClient extends AbstractClient implements Ge
     private void getFile(String collectionID, MessageBus messageBus, Settings settings, String fileID, FilePart filePart,
                          Collection<String> contributors, URL uploadUrl, EventHandler eventHandler, String auditTrailInformation) {
         GetFileConversationContext context = new GetFileConversationContext(collectionID, fileID, uploadUrl, filePart,
-                contributors, settings, messageBus, clientID, eventHandler, auditTrailInformation);
+                contributors, settings, messageBus, clientID, eventHandler, auditTrailInformation, pillarHistory,
+                skipDegradedPillars);
         startConversation(context, new IdentifyingPillarsForGetFile(context));
     }
 }
@@ -0,0 +1,479 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile;
+
+import org.bitrepository.access.getfile.selectors.PillarPerformanceHistory;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.bitrepositoryelements.FilePart;
+import org.bitrepository.client.eventhandler.EventHandler;
+import org.bitrepository.client.eventhandler.OperationEvent;
+import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
+import org.bitrepository.client.exceptions.InvalidChecksumException;
+import org.bitrepository.client.exceptions.NegativeResponseException;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.bitrepository.protocol.FileExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Wraps a {@link GetFileClient} to retrieve a file using several pillars at once, which cuts the tail latency when
+ * one of the pillars is slow. The client blocks until the file has been retrieved to a local file.
+ * <ul>
+ *     <li>Hedged: The file is requested from the two best pillars, and the first complete delivery is used. The
+ *     slower delivery is cancelled; its events are no longer passed on, and the file it delivers is deleted from the
+ *     file exchange. If both pillars fail to deliver the file, it is requested from the next two pillars.</li>
+ *     <li>Striped: Disjoint parts of the file are requested from several pillars in parallel using {@link FilePart},
+ *     and reassembled into the file, which is verified against the expected checksum. A part, which a pillar fails to
+ *     deliver, is requested from the next pillar.</li>
+ * </ul>
+ * The pillars are ranked by the history of their performance if the wrapped client keeps one, otherwise they are
+ * used in the given order. A delivery, which is still in progress when the file is retrieved or the retrieval fails,
+ * is deleted from the file exchange once it finishes.
+ */
+public class MultiPillarGetFileClient {
+    /** The number of pillars a hedged request is sent to. */
+    public static final int HEDGED_PILLARS = 2;
+    /** The default minimum size of the parts of a striped file. */
+    public static final long DEFAULT_MINIMUM_STRIPE_SIZE = 8 * 1024 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final GetFileClient client;
+    private final FileExchange fileExchange;
+    private final PillarPerformanceHistory history;
+    private final long minimumStripeSize;
+
+    /**
+     * @param client       The client to get the files with.
+     * @param fileExchange The file exchange the pillars deliver the files to.
+     */
+    public MultiPillarGetFileClient(GetFileClient client, FileExchange fileExchange) {
+        this(client, fileExchange, client instanceof ConversationBasedGetFileClient
+                ? ((ConversationBasedGetFileClient) client).getPillarHistory() : null, DEFAULT_MINIMUM_STRIPE_SIZE);
+    }
+
+    /**
+     * @param client            The client to get the files with.
+     * @param fileExchange      The file exchange the pillars deliver the files to.
+     * @param history           The history of the pillars' performance to rank the pillars by, or null if the
+     *                          pillars should be used in the given order.
+     * @param minimumStripeSize The minimum size of the parts of a striped file.
+     */
+    public MultiPillarGetFileClient(GetFileClient client, FileExchange fileExchange, PillarPerformanceHistory history,
+                                    long minimumStripeSize) {
+        ArgumentValidator.checkNotNull(client, "GetFileClient client");
+        ArgumentValidator.checkNotNull(fileExchange, "FileExchange fileExchange");
+        ArgumentValidator.checkPositive(minimumStripeSize, "long minimumStripeSize");
+        this.client = client;
+        this.fileExchange = fileExchange;
+        this.history = history;
+        this.minimumStripeSize = minimumStripeSize;
+    }
+
+    /**
+     * Requests the file from the two best of the given pillars, and retrieves the first complete delivery to the
+     * destination. If both pillars fail to deliver the file, it is requested from the next two pillars, until a
+     * pillar has delivered it or all the pillars have failed.
+     *
+     * @param collectionID          The ID of the collection.
+     * @param fileID                The ID of the file to get.
+     * @param pillarIDs             The IDs of the pillars, which can deliver the file.
+     * @param destination           The local file to retrieve the file to.
+     * @param expectedChecksum      The checksum to verify the retrieved file against, or null if it should not be
+     *                              verified.
+     * @param eventHandler          The EventHandler to pass the events of the deliveries on to, or null.
+     * @param auditTrailInformation The auditTrail information for the contributors.
+     * @throws NegativeResponseException If none of the pillars delivered the file.
+     * @throws IOException               If the delivered file could not be retrieved.
+     * @throws InvalidChecksumException  If the retrieved file does not have the expected checksum.
+     */
+    public void getFileHedged(String collectionID, String fileID, List<String> pillarIDs, File destination,
+                              ChecksumDataForFileTYPE expectedChecksum, EventHandler eventHandler,
+                              String auditTrailInformation) throws NegativeResponseException, IOException {
+        ArgumentValidator.checkNotNullOrEmpty(pillarIDs, "List<String> pillarIDs");
+        ArgumentValidator.checkNotNull(destination, "File destination");
+        List<String> pillars = rankPillars(pillarIDs);
+        List<String> failures = new ArrayList<>();
+        for (int first = 0; first < pillars.size(); first += HEDGED_PILLARS) {
+            HedgedDelivery delivery = new HedgedDelivery(eventHandler);
+            URL winnerUrl;
+            try {
+                for (String pillarID : pillars.subList(first, Math.min(first + HEDGED_PILLARS, pillars.size()))) {
+                    URL url = fileExchange.getURL(createDeliveryName(fileID));
+                    log.debug("Requesting hedged delivery of '{}' from '{}' to '{}'", fileID, pillarID, url);
+                    client.getFileFromSpecificPillar(collectionID, fileID, null, url, pillarID,
+                            delivery.createHandler(pillarID, url), auditTrailInformation);
+                }
+                winnerUrl = delivery.awaitFirstDelivery();
+            } catch (IOException | RuntimeException e) {
+                delivery.abandon();
+                throw e;
+            }
+            if (winnerUrl == null) {
+                failures.addAll(delivery.getFailures());
+                log.info("The hedged deliveries of '{}' failed: {}", fileID, delivery.getFailures());
+                continue;
+            }
+
+            try {
+                fileExchange.getFile(destination, winnerUrl.toExternalForm());
+            } finally {
+                deleteDelivery(winnerUrl);
+            }
+            verifyChecksum(destination, expectedChecksum);
+            return;
+        }
+        throw new NegativeResponseException("None of the pillars delivered the file: " + failures, null);
+    }
+
+    /**
+     * Requests disjoint parts of the file from the given pillars in parallel, and reassembles them into the
+     * destination. The number of parts is limited by the number of pillars and the minimum stripe size.
+     *
+     * @param collectionID          The ID of the collection.
+     * @param fileID                The ID of the file to get.
+     * @param fileSize              The size of the file in bytes.
+     * @param pillarIDs             The IDs of the pillars, which can deliver the file.
+     * @param destination           The local file to reassemble the file in.
+     * @param expectedChecksum      The checksum to verify the reassembled file against.
+     * @param eventHandler          The EventHandler to pass the events of the deliveries on to, or null.
+     * @param auditTrailInformation The auditTrail information for the contributors.
+     * @throws NegativeResponseException If a part of the file could not be delivered by any of the pillars.
+     * @throws IOException               If the delivered parts could not be retrieved, or did not have the requested
+     *                                   size.
+     * @throws InvalidChecksumException  If the reassembled file does not have the expected checksum.
+     */
+    public void getFileStriped(String collectionID, String fileID, long fileSize, List<String> pillarIDs,
+                               File destination, ChecksumDataForFileTYPE expectedChecksum, EventHandler eventHandler,
+                               String auditTrailInformation) throws NegativeResponseException, IOException {
+        ArgumentValidator.checkPositive(fileSize, "long fileSize");
+        ArgumentValidator.checkNotNullOrEmpty(pillarIDs, "List<String> pillarIDs");
+        ArgumentValidator.checkNotNull(destination, "File destination");
+        ArgumentValidator.checkNotNull(expectedChecksum, "ChecksumDataForFileTYPE expectedChecksum");
+        List<String> pillars = rankPillars(pillarIDs);
+        long stripesForSize = (fileSize + minimumStripeSize - 1) / minimumStripeSize;
+        int numberOfStripes = (int) Math.min(pillars.size(), stripesForSize);
+
+        List<Stripe> stripes = new ArrayList<>();
+        try {
+            for (int i = 0; i < numberOfStripes; i++) {
+                long offset = fileSize * i / numberOfStripes;
+                long length = fileSize * (i + 1) / numberOfStripes - offset;
+                Stripe stripe = new Stripe(offset, length);
+                stripes.add(stripe);
+                requestStripe(collectionID, fileID, stripe, pillars.get(i), eventHandler, auditTrailInformation);
+            }
+            for (Stripe stripe : stripes) {
+                awaitStripe(collectionID, fileID, stripe, pillars, eventHandler, auditTrailInformation);
+            }
+            reassemble(stripes, destination);
+        } finally {
+            for (Stripe stripe : stripes) {
+                if (stripe.handler != null) {
+                    stripe.handler.release();
+                }
+            }
+        }
+        verifyChecksum(destination, expectedChecksum);
+    }
+
+    /**
+     * Waits for a stripe to be delivered, and requests it from the next pillar each time a pillar fails to deliver it.
+     */
+    private void awaitStripe(String collectionID, String fileID, Stripe stripe, List<String> pillars,
+                             EventHandler eventHandler, String auditTrailInformation)
+            throws NegativeResponseException, IOException {
+        OperationEvent finishEvent = stripe.handler.awaitFinished();
+        while (finishEvent.getEventType() != OperationEventType.COMPLETE) {
+            log.info("Pillar '{}' failed to deliver {} bytes at offset {} of '{}': {}", stripe.pillarID,
+                    stripe.length, stripe.offset, fileID, finishEvent.getInfo());
+            String nextPillar = null;
+            for (String pillarID : pillars) {
+                if (!stripe.attemptedPillars.contains(pillarID)) {
+                    nextPillar = pillarID;
+                    break;
+                }
+            }
+            if (nextPillar == null) {
+                throw new NegativeResponseException("No pillar could deliver " + stripe.length + " bytes at offset "
+                        + stripe.offset + " of '" + fileID + "': " + finishEvent.getInfo(), null);
+            }
+            stripe.handler.release();
+            requestStripe(collectionID, fileID, stripe, nextPillar, eventHandler, auditTrailInformation);
+            finishEvent = stripe.handler.awaitFinished();
+        }
+    }
+
+    private void requestStripe(String collectionID, String fileID, Stripe stripe, String pillarID,
+                               EventHandler eventHandler, String auditTrailInformation) throws IOException {
+        FilePart filePart = new FilePart();
+        filePart.setPartOffSet(BigInteger.valueOf(stripe.offset));
+        filePart.setPartLength(BigInteger.valueOf(stripe.length));
+        stripe.pillarID = pillarID;
+        stripe.attemptedPillars.add(pillarID);
+        stripe.url = fileExchange.getURL(createDeliveryName(fileID));
+        stripe.handler = new DeliveryHandler(eventHandler, stripe.url);
+        log.debug("Requesting {} bytes at offset {} of '{}' from '{}' to '{}'", stripe.length, stripe.offset, fileID,
+                pillarID, stripe.url);
+        client.getFileFromSpecificPillar(collectionID, fileID, filePart, stripe.url, pillarID, stripe.handler,
+                auditTrailInformation);
+    }
+
+    /**
+     * Writes the delivered stripes to the destination in order, verifying that each has the requested size.
+     */
+    private void reassemble(List<Stripe> stripes, File destination) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destination))) {
+            for (Stripe stripe : stripes) {
+                long delivered;
+                try (InputStream in = fileExchange.getFile(stripe.url)) {
+                    delivered = in.transferTo(out);
+                }
+                if (delivered != stripe.length) {
+                    throw new IOException("Pillar '" + stripe.pillarID + "' delivered " + delivered + " bytes of the "
+                            + stripe.length + " bytes at offset " + stripe.offset);
+                }
+            }
+        }
+    }
+
+    private void verifyChecksum(File file, ChecksumDataForFileTYPE expectedChecksum) {
+        if (expectedChecksum == null) {
+            return;
+        }
+        String checksum = ChecksumUtils.generateChecksum(file, expectedChecksum.getChecksumSpec());
+        String expected = Base16Utils.decodeBase16(expectedChecksum.getChecksumValue());
+        if (!expected.equals(checksum)) {
+            if (!file.delete()) {
+                log.warn("Could not delete the file '{}' with the invalid checksum", file);
+            }
+            throw new InvalidChecksumException("The retrieved file had the checksum '" + checksum
+                    + "', but '" + expected + "' was expected.");
+        }
+    }
+
+    /**
+     * Ranks the pillars by their estimated delivery time, with the degraded pillars last. The order of pillars with
+     * the same estimate, or of all pillars if no history is kept, is kept.
+     */
+    private List<String> rankPillars(List<String> pillarIDs) {
+        List<String> pillars = new ArrayList<>(pillarIDs);
+        if (history != null) {
+            pillars.sort(Comparator.<String, Boolean>comparing(history::isDegraded)
+                    .thenComparingDouble(pillarID -> history.estimateDeliveryTime(pillarID, 0)));
+        }
+        return pillars;
+    }
+
+    private String createDeliveryName(String fileID) {
+        return fileID + "-" + UUID.randomUUID();
+    }
+
+    private void deleteDelivery(URL url) {
+        if (url == null) {
+            return;
+        }
+        try {
+            fileExchange.deleteFile(url);
+        } catch (Exception e) {
+            log.warn("Could not delete the delivered file at '{}'", url, e);
+        }
+    }
+
+    /**
+     * The delivery of a single part of a striped file.
+     */
+    private static final class Stripe {
+        private final long offset;
+        private final long length;
+        private final Set<String> attemptedPillars = new HashSet<>();
+        private String pillarID;
+        private URL url;
+        private DeliveryHandler handler;
+
+        private Stripe(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Passes the events of a delivery on, and blocks until the delivery has finished. Unlike the
+     * {@link org.bitrepository.client.eventhandler.BlockingEventHandler} it does not block if the delivery finished
+     * before it is waited for.
+     * <p/>
+     * Once the delivery is no longer needed, it is released, and the delivered file is deleted when the delivery has
+     * finished, so a pillar still uploading the file does not leave it behind.
+     */
+    private final class DeliveryHandler implements EventHandler {
+        private final EventHandler eventHandler;
+        private final URL url;
+        private OperationEvent finishEvent;
+        private boolean released = false;
+
+        private DeliveryHandler(EventHandler eventHandler, URL url) {
+            this.eventHandler = eventHandler;
+            this.url = url;
+        }
+
+        @Override
+        public void handleEvent(OperationEvent event) {
+            if (eventHandler != null) {
+                eventHandler.handleEvent(event);
+            }
+            if (event.getEventType() == OperationEventType.COMPLETE
+                    || event.getEventType() == OperationEventType.FAILED) {
+                boolean delete;
+                synchronized (this) {
+                    finishEvent = event;
+                    delete = released;
+                    notifyAll();
+                }
+                if (delete) {
+                    deleteDelivery(url);
+                }
+            }
+        }
+
+        /**
+         * Deletes the delivered file now, if the delivery has finished, or otherwise once it finishes.
+         */
+        private void release() {
+            boolean delete;
+            synchronized (this) {
+                delete = !released && finishEvent != null;
+                released = true;
+            }
+            if (delete) {
+                deleteDelivery(url);
+            }
+        }
+
+        private synchronized OperationEvent awaitFinished() throws IOException {
+            while (finishEvent == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the delivery", e);
+                }
+            }
+            return finishEvent;
+        }
+    }
+
+    /**
+     * Keeps track of the hedged deliveries of a file. The first complete delivery wins. The events of the other
+     * deliveries are no longer passed on once the winner is found, and their files are deleted once delivered. If the
+     * deliveries are abandoned, because the wait for them failed, all of them are deleted once delivered.
+     */
+    private final class HedgedDelivery {
+        private final EventHandler eventHandler;
+        private final List<String> failures = new ArrayList<>();
+        private int pendingDeliveries = 0;
+        private URL winnerUrl;
+        private boolean abandoned = false;
+
+        private HedgedDelivery(EventHandler eventHandler) {
+            this.eventHandler = eventHandler;
+        }
+
+        private synchronized EventHandler createHandler(String pillarID, URL url) {
+            pendingDeliveries++;
+            return event -> handleEvent(pillarID, url, event);
+        }
+
+        private void handleEvent(String pillarID, URL url, OperationEvent event) {
+            boolean cancelled;
+            synchronized (this) {
+                cancelled = abandoned || (winnerUrl != null && winnerUrl != url);
+                if (!cancelled && event.getEventType() == OperationEventType.COMPLETE) {
+                    log.debug("Using the hedged delivery from '{}'", pillarID);
+                    winnerUrl = url;
+                } else if (event.getEventType() == OperationEventType.FAILED) {
+                    failures.add(pillarID + ": " + event.getInfo());
+                }
+                if (event.getEventType() == OperationEventType.COMPLETE
+                        || event.getEventType() == OperationEventType.FAILED) {
+                    pendingDeliveries--;
+                    notifyAll();
+                }
+            }
+            if (!cancelled) {
+                if (eventHandler != null) {
+                    eventHandler.handleEvent(event);
+                }
+            } else if (event.getEventType() == OperationEventType.COMPLETE) {
+                log.debug("Deleting the cancelled hedged delivery from '{}'", pillarID);
+                deleteDelivery(url);
+            }
+        }
+
+        /**
+         * @return The URL of the first complete delivery, or null if all the deliveries failed.
+         */
+        private synchronized URL awaitFirstDelivery() throws IOException {
+            while (winnerUrl == null && pendingDeliveries > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the deliveries", e);
+                }
+            }
+            return winnerUrl;
+        }
+
+        private synchronized List<String> getFailures() {
+            return new ArrayList<>(failures);
+        }
+
+        /**
+         * Cancels the deliveries, so the files are deleted once delivered. A delivery, which has already won, is
+         * deleted at once.
+         */
+        private void abandon() {
+            URL completedUrl;
+            synchronized (this) {
+                abandoned = true;
+                completedUrl = winnerUrl;
+            }
+            deleteDelivery(completedUrl);
+        }
+    }
+}
@@ -21,6 +21,7 @@
  */
 package org.bitrepository.access.getfile.conversation;
 
+import org.bitrepository.access.getfile.selectors.PillarPerformanceHistory;
 import org.bitrepository.bitrepositoryelements.FilePart;
 import org.bitrepository.client.conversation.ConversationContext;
 import org.bitrepository.client.eventhandler.EventHandler;
@@ -37,6 +38,8 @@ import java.util.Collection;
 public class GetFileConversationContext extends ConversationContext {
     private final FilePart filePart;
     private final URL urlForResult;
+    private final PillarPerformanceHistory pillarHistory;
+    private final boolean skipDegradedPillars;
 
     /**
      * @param collectionID          The ID of the collection
@@ -55,10 +58,37 @@ public class GetFileConversationContext extends ConversationContext {
                                       String fileID, URL urlForResult, FilePart filePart, Collection<String> contributors,
                                       Settings settings, MessageSender messageSender, String clientID, EventHandler eventHandler,
                                       String auditTrailInformation) {
+        this(collectionID, fileID, urlForResult, filePart, contributors, settings, messageSender, clientID,
+                eventHandler, auditTrailInformation, null, false);
+    }
+
+    /**
+     * @param collectionID          The ID of the collection
+     * @param fileID                The ID of the file
+     * @param urlForResult          The URL to deliver the results to
+     * @param filePart              The part of the file. Null if whole file is wanted.
+     * @param contributors          The contributors used in the conversation
+     * @param settings              The settings
+     * @param messageSender         The MessageSender for sending messages
+     * @param clientID              The ID of the client
+     * @param eventHandler          The EventHandler for handling incoming events
+     * @param auditTrailInformation The audittrail information for the contributors
+     * @param pillarHistory         The history of the pillars' performance to select the pillar by and record the
+     *                              delivery in. Null if the pillar should be selected by the reported time to deliver.
+     * @param skipDegradedPillars   Whether pillars, which are degraded in the history, should be skipped.
+     * @see ConversationContext for general parameter documentation.
+     */
+    public GetFileConversationContext(String collectionID,
+                                      String fileID, URL urlForResult, FilePart filePart, Collection<String> contributors,
+                                      Settings settings, MessageSender messageSender, String clientID, EventHandler eventHandler,
+                                      String auditTrailInformation, PillarPerformanceHistory pillarHistory,
+                                      boolean skipDegradedPillars) {
         super(collectionID, OperationType.GET_FILE, settings, messageSender, clientID, fileID, contributors,
                 eventHandler, auditTrailInformation);
         this.filePart = filePart;
         this.urlForResult = urlForResult;
+        this.pillarHistory = pillarHistory;
+        this.skipDegradedPillars = skipDegradedPillars;
     }
 
     /**
@@ -74,4 +104,19 @@ public class GetFileConversationContext extends ConversationContext {
     public URL getUrlForResult() {
         return urlForResult;
     }
+
+    /**
+     * @return The history of the pillars' performance, or null if the pillar is selected by the reported time to
+     * deliver.
+     */
+    public PillarPerformanceHistory getPillarHistory() {
+        return pillarHistory;
+    }
+
+    /**
+     * @return Whether pillars, which are degraded in the history, should be skipped.
+     */
+    public boolean isSkipDegradedPillars() {
+        return skipDegradedPillars;
+    }
 }
@@ -24,6 +24,10 @@
  */
 package org.bitrepository.access.getfile.conversation;
 
+import org.bitrepository.access.getfile.selectors.PillarPerformanceHistory;
+import org.bitrepository.bitrepositoryelements.FilePart;
+import org.bitrepository.bitrepositoryelements.ResponseCode;
+import org.bitrepository.bitrepositorymessages.GetFileProgressResponse;
 import org.bitrepository.bitrepositorymessages.GetFileRequest;
 import org.bitrepository.bitrepositorymessages.MessageResponse;
 import org.bitrepository.client.conversation.ConversationContext;
@@ -41,11 +45,21 @@ import java.util.HashSet;
  * <p>
  * Note that this is only used by the GetFileConversation in the same package, therefore the visibility is package
  * protected.
+ * <p>
+ * If the context has a history of the pillars' performance, the delivery time and the size of the delivered data,
+ * or the failure of the delivery, is recorded in it. The delivery time is measured from the pillar accepted the
+ * request and started to retrieve the data, as the delay before that is covered by the time to deliver reported by
+ * the pillar, and should not be counted twice.
  */
 class GettingFile extends PerformingOperationState {
     private final GetFileConversationContext context;
     private final SelectedComponentInfo selectedPillar;
     private final Collection<String> contributors;
+    private long requestSentNanos;
+    /** The time the pillar accepted the request and started the delivery, or -1 if not yet accepted. */
+    private long deliveryStartedNanos = -1;
+    /** The size of the file reported by the pillar, or -1 if not reported. */
+    private long fileSize = -1;
 
     /**
      * @param context The related conversation containing context information.
@@ -69,11 +83,35 @@ class GettingFile extends PerformingOperationState {
         msg.setPillarID(selectedPillar.getID());
         msg.setDestination(selectedPillar.getDestination());
         context.getMonitor().requestSent("Sending GetFileRequest to ", selectedPillar.toString());
+        requestSentNanos = System.nanoTime();
         context.getMessageSender().sendMessage(msg);
     }
 
+    @Override
+    protected boolean processMessage(MessageResponse msg) throws UnableToFinishException {
+        if (msg instanceof GetFileProgressResponse && ((GetFileProgressResponse) msg).getFileSize() != null) {
+            fileSize = ((GetFileProgressResponse) msg).getFileSize().longValue();
+        }
+        if (deliveryStartedNanos < 0
+                && ResponseCode.OPERATION_ACCEPTED_PROGRESS.equals(msg.getResponseInfo().getResponseCode())) {
+            deliveryStartedNanos = System.nanoTime();
+        }
+        return super.processMessage(msg);
+    }
+
+    @Override
+    protected void logStateTimeout() throws UnableToFinishException {
+        if (context.getPillarHistory() != null) {
+            context.getPillarHistory().recordFailure(selectedPillar.getID());
+        }
+        super.logStateTimeout();
+    }
+
     @Override
     protected boolean handleFailureResponse(MessageResponse msg) throws UnableToFinishException {
+        if (context.getPillarHistory() != null) {
+            context.getPillarHistory().recordFailure(msg.getFrom());
+        }
         getContext().getMonitor()
                 .contributorFailed(msg.getResponseInfo().getResponseText(), msg.getFrom(), msg.getResponseInfo().getResponseCode());
         throw new UnableToFinishException("Failed to get file from " + msg.getFrom() + ", " + msg.getResponseInfo());
@@ -81,6 +119,11 @@ class GettingFile extends PerformingOperationState {
 
     @Override
     protected void generateContributorCompleteEvent(MessageResponse msg) {
+        PillarPerformanceHistory history = context.getPillarHistory();
+        if (history != null) {
+            long startNanos = deliveryStartedNanos < 0 ? requestSentNanos : deliveryStartedNanos;
+            history.recordDelivery(msg.getFrom(), getDeliveredBytes(), System.nanoTime() - startNanos);
+        }
         getContext().getMonitor().contributorComplete(new ContributorCompleteEvent(msg.getFrom(), msg.getCollectionID()));
     }
 
@@ -97,4 +140,18 @@ class GettingFile extends PerformingOperationState {
     protected Collection<String> getContributors() {
         return contributors;
     }
+
+    /**
+     * @return The number of bytes delivered of the file or the requested part of it, or -1 if the size of the file
+     * was not reported by the pillar.
+     */
+    private long getDeliveredBytes() {
+        FilePart filePart = context.getFilePart();
+        if (fileSize < 0 || filePart == null) {
+            return fileSize;
+        }
+        long offset = filePart.getPartOffSet() == null ? 0 : filePart.getPartOffSet().longValue();
+        long length = filePart.getPartLength() == null ? fileSize : filePart.getPartLength().longValue();
+        return Math.max(0, Math.min(length, fileSize - offset));
+    }
 }
@@ -25,6 +25,7 @@
 package org.bitrepository.access.getfile.conversation;
 
 import org.bitrepository.access.getfile.selectors.FastestPillarSelectorForGetFile;
+import org.bitrepository.access.getfile.selectors.ThroughputAwarePillarSelectorForGetFile;
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileRequest;
 import org.bitrepository.client.conversation.ConversationContext;
 import org.bitrepository.client.conversation.GeneralConversationState;
@@ -37,6 +38,7 @@ import org.bitrepository.client.conversation.selector.SelectedComponentInfo;
  */
 public class IdentifyingPillarsForGetFile extends IdentifyingState {
     private final GetFileConversationContext context;
+    private ThroughputAwarePillarSelectorForGetFile throughputAwareSelector;
 
     /**
      * The constructor for the indicated conversation.
@@ -48,7 +50,13 @@ public class IdentifyingPillarsForGetFile extends IdentifyingState {
         this.context = context;
         context.getMonitor().markAsFailedOnContributorFailure(false);
         if (context.getContributors().size() > 1) {
-            setSelector(new FastestPillarSelectorForGetFile());
+            if (context.getPillarHistory() != null) {
+                throughputAwareSelector = new ThroughputAwarePillarSelectorForGetFile(context.getPillarHistory(),
+                        context.isSkipDegradedPillars());
+                setSelector(throughputAwareSelector);
+            } else {
+                setSelector(new FastestPillarSelectorForGetFile());
+            }
         }
     }
 
@@ -64,6 +72,9 @@ public class IdentifyingPillarsForGetFile extends IdentifyingState {
         initializeMessage(msg);
         msg.setDestination(context.getSettings().getCollectionDestination());
         msg.setFileID(context.getFileID());
+        if (throughputAwareSelector != null) {
+            throughputAwareSelector.identifyRequestSent();
+        }
         context.getMessageSender().sendMessage(msg);
         context.getMonitor().identifyRequestSent("Identifying pillars for GetFile");
 
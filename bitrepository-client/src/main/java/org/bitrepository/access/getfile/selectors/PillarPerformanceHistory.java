@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile.selectors;
+
+import org.bitrepository.common.ArgumentValidator;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a record of how fast the pillars have delivered files to a client, so the pillar to get a file from can be
+ * chosen based on the observed performance, and not only on the time to deliver estimated by the pillars.
+ * <p/>
+ * For each pillar an exponentially weighted moving average is kept of the latency of the identify responses and of
+ * the throughput of the file deliveries. A pillar is considered degraded after a number of consecutive failed
+ * deliveries, until a period has passed since the latest failure. The record is meant to be kept by the client,
+ * so it is used across the conversations.
+ */
+public class PillarPerformanceHistory {
+    /** The weight of a new observation in the moving averages. */
+    public static final double OBSERVATION_WEIGHT = 0.3;
+    /** The default number of consecutive failed deliveries, after which a pillar is considered degraded. */
+    public static final int DEFAULT_DEGRADED_AFTER_FAILURES = 2;
+    /** The default period after the latest failure, where a degraded pillar is considered degraded. */
+    public static final Duration DEFAULT_DEGRADED_PERIOD = Duration.ofMinutes(10);
+
+    private final Map<String, PillarRecord> records = new ConcurrentHashMap<>();
+    private final int degradedAfterFailures;
+    private final long degradedPeriodNanos;
+    /** The moving average of the sizes of the delivered files, in bytes. Negative until a file has been delivered. */
+    private double typicalDeliverySize = -1;
+
+    /**
+     * Creates a history with the default degradation.
+     */
+    public PillarPerformanceHistory() {
+        this(DEFAULT_DEGRADED_AFTER_FAILURES, DEFAULT_DEGRADED_PERIOD);
+    }
+
+    /**
+     * @param degradedAfterFailures The number of consecutive failed deliveries, after which a pillar is considered
+     *                              degraded.
+     * @param degradedPeriod        The period after the latest failure, where a degraded pillar is considered
+     *                              degraded.
+     */
+    public PillarPerformanceHistory(int degradedAfterFailures, Duration degradedPeriod) {
+        ArgumentValidator.checkPositive(degradedAfterFailures, "int degradedAfterFailures");
+        ArgumentValidator.checkNotNull(degradedPeriod, "Duration degradedPeriod");
+        this.degradedAfterFailures = degradedAfterFailures;
+        this.degradedPeriodNanos = degradedPeriod.toNanos();
+    }
+
+    /**
+     * Records the time from an identify request was sent, until the pillar responded to it.
+     *
+     * @param pillarID     The ID of the pillar.
+     * @param latencyNanos The latency in nanoseconds.
+     */
+    public void recordIdentifyLatency(String pillarID, long latencyNanos) {
+        getRecord(pillarID).recordIdentifyLatency(latencyNanos / 1e6);
+    }
+
+    /**
+     * Records a successful delivery of a file.
+     *
+     * @param pillarID      The ID of the pillar, which delivered the file.
+     * @param bytes         The number of bytes delivered, or a negative number if unknown.
+     * @param durationNanos The time from the pillar accepted the request, until it reported the file delivered.
+     */
+    public void recordDelivery(String pillarID, long bytes, long durationNanos) {
+        double throughput = -1;
+        if (bytes >= 0) {
+            throughput = bytes / Math.max(durationNanos / 1e6, 1);
+            synchronized (this) {
+                typicalDeliverySize = typicalDeliverySize < 0 ? bytes : average(typicalDeliverySize, bytes);
+            }
+        }
+        getRecord(pillarID).recordDelivery(throughput);
+    }
+
+    /**
+     * Records a failed delivery of a file.
+     *
+     * @param pillarID The ID of the pillar, which failed to deliver the file.
+     */
+    public void recordFailure(String pillarID) {
+        getRecord(pillarID).recordFailure(System.nanoTime());
+    }
+
+    /**
+     * @param pillarID The ID of the pillar.
+     * @return Whether the latest deliveries from the pillar have failed, and it has not been long enough since the
+     * latest failure to try the pillar again.
+     */
+    public boolean isDegraded(String pillarID) {
+        PillarRecord record = records.get(pillarID);
+        return record != null && record.isDegraded(degradedAfterFailures, degradedPeriodNanos, System.nanoTime());
+    }
+
+    /**
+     * Estimates the time for a pillar to deliver a file of the typical size of the delivered files. The estimate is
+     * the time to deliver reported by the pillar, with the observed identify latency and the transfer time at the
+     * observed throughput added. Observations which have not yet been made are not added, so pillars without a
+     * history are tried.
+     *
+     * @param pillarID                    The ID of the pillar.
+     * @param reportedTimeToDeliverMillis The time to deliver the pillar has reported, in milliseconds.
+     * @return The estimated delivery time in milliseconds.
+     */
+    public double estimateDeliveryTime(String pillarID, long reportedTimeToDeliverMillis) {
+        double estimate = reportedTimeToDeliverMillis;
+        PillarRecord record = records.get(pillarID);
+        if (record != null) {
+            double typicalSize;
+            synchronized (this) {
+                typicalSize = typicalDeliverySize;
+            }
+            estimate += record.estimateObservedTime(typicalSize);
+        }
+        return estimate;
+    }
+
+    @Override
+    public String toString() {
+        return "PillarPerformanceHistory" + records;
+    }
+
+    private PillarRecord getRecord(String pillarID) {
+        ArgumentValidator.checkNotNullOrEmpty(pillarID, "String pillarID");
+        return records.computeIfAbsent(pillarID, id -> new PillarRecord());
+    }
+
+    private static double average(double average, double observation) {
+        return average + OBSERVATION_WEIGHT * (observation - average);
+    }
+
+    /**
+     * The observations of a single pillar. Negative averages have not been observed.
+     */
+    private static final class PillarRecord {
+        private double identifyLatencyMillis = -1;
+        private double bytesPerMilli = -1;
+        private int consecutiveFailures = 0;
+        private long latestFailureNanos;
+
+        synchronized void recordIdentifyLatency(double latencyMillis) {
+            identifyLatencyMillis = identifyLatencyMillis < 0 ? latencyMillis
+                    : average(identifyLatencyMillis, latencyMillis);
+        }
+
+        synchronized void recordDelivery(double throughput) {
+            consecutiveFailures = 0;
+            if (throughput >= 0) {
+                bytesPerMilli = bytesPerMilli < 0 ? throughput : average(bytesPerMilli, throughput);
+            }
+        }
+
+        synchronized void recordFailure(long nowNanos) {
+            consecutiveFailures++;
+            latestFailureNanos = nowNanos;
+        }
+
+        synchronized boolean isDegraded(int degradedAfterFailures, long degradedPeriodNanos, long nowNanos) {
+            return consecutiveFailures >= degradedAfterFailures
+                    && nowNanos - latestFailureNanos < degradedPeriodNanos;
+        }
+
+        synchronized double estimateObservedTime(double size) {
+            double time = Math.max(identifyLatencyMillis, 0);
+            if (size >= 0 && bytesPerMilli > 0) {
+                time += size / bytesPerMilli;
+            }
+            return time;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "{identifyLatencyMillis=" + identifyLatencyMillis + ", bytesPerMilli=" + bytesPerMilli
+                    + ", consecutiveFailures=" + consecutiveFailures + "}";
+        }
+    }
+}
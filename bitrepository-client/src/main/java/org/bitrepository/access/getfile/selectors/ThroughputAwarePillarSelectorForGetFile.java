@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile.selectors;
+
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileResponse;
+import org.bitrepository.bitrepositorymessages.MessageResponse;
+import org.bitrepository.client.conversation.selector.ComponentSelector;
+import org.bitrepository.client.conversation.selector.SelectedComponentInfo;
+import org.bitrepository.client.exceptions.UnexpectedResponseException;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.TimeMeasurementUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * GetFile specific selector, which chooses the pillar expected to deliver the file fastest, based on both the
+ * <code>timeToDeliver</code> reported by the pillars and the performance the pillars have shown in the past, see
+ * {@link PillarPerformanceHistory}. The latency of the identify responses is recorded in the history.
+ * <p/>
+ * Pillars which are degraded in the history can be skipped, unless all the identified pillars are degraded.
+ */
+public class ThroughputAwarePillarSelectorForGetFile extends ComponentSelector {
+    private final PillarPerformanceHistory history;
+    private final boolean skipDegradedPillars;
+    private final List<Candidate> candidates = new ArrayList<>();
+    private long identifyRequestSentNanos = -1;
+
+    /**
+     * @param history             The history of the pillars' performance.
+     * @param skipDegradedPillars Whether to skip the pillars, which are degraded in the history.
+     */
+    public ThroughputAwarePillarSelectorForGetFile(PillarPerformanceHistory history, boolean skipDegradedPillars) {
+        ArgumentValidator.checkNotNull(history, "PillarPerformanceHistory history");
+        this.history = history;
+        this.skipDegradedPillars = skipDegradedPillars;
+    }
+
+    /**
+     * Marks the identify request as sent, so the latency of the responses can be recorded.
+     */
+    public synchronized void identifyRequestSent() {
+        identifyRequestSentNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void selectComponent(MessageResponse message) throws UnexpectedResponseException {
+        IdentifyPillarsForGetFileResponse response = (IdentifyPillarsForGetFileResponse) message;
+        if (identifyRequestSentNanos >= 0) {
+            history.recordIdentifyLatency(response.getFrom(), System.nanoTime() - identifyRequestSentNanos);
+        }
+        long reportedTimeToDeliver = response.getTimeToDeliver() == null ? 0
+                : TimeMeasurementUtils.getTimeMeasureInLong(response.getTimeToDeliver());
+        candidates.add(new Candidate(new SelectedComponentInfo(response.getFrom(), response.getReplyTo()),
+                reportedTimeToDeliver));
+    }
+
+    /**
+     * Selects the pillar with the lowest estimated delivery time among the identified pillars.
+     *
+     * @return The selected pillar, or an empty set if no pillars have been identified.
+     */
+    @Override
+    public synchronized Set<SelectedComponentInfo> getSelectedComponents() {
+        selectedComponents.clear();
+        Candidate best = findFastest(skipDegradedPillars);
+        if (best == null) {
+            best = findFastest(false);
+        }
+        if (best != null) {
+            selectedComponents.add(best.pillar);
+        }
+        return selectedComponents;
+    }
+
+    private Candidate findFastest(boolean skipDegraded) {
+        Candidate best = null;
+        double bestEstimate = Double.MAX_VALUE;
+        for (Candidate candidate : candidates) {
+            if (skipDegraded && history.isDegraded(candidate.pillar.getID())) {
+                continue;
+            }
+            double estimate = history.estimateDeliveryTime(candidate.pillar.getID(), candidate.reportedTimeToDeliver);
+            if (best == null || estimate < bestEstimate) {
+                best = candidate;
+                bestEstimate = estimate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * An identified pillar with its reported time to deliver in milliseconds.
+     */
+    private static final class Candidate {
+        private final SelectedComponentInfo pillar;
+        private final long reportedTimeToDeliver;
+
+        private Candidate(SelectedComponentInfo pillar, long reportedTimeToDeliver) {
+            this.pillar = pillar;
+            this.reportedTimeToDeliver = reportedTimeToDeliver;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.commandline;
+
+import org.apache.commons.cli.Option;
+import org.bitrepository.common.utils.FileIDValidator;
+import org.bitrepository.modify.ModifyComponentFactory;
+import org.bitrepository.modify.putfile.BulkPutFileClient;
+import org.bitrepository.modify.putfile.BulkPutFileClient.BulkPutResult;
+import org.bitrepository.modify.putfile.BulkPutJournal;
+import org.bitrepository.modify.putfile.BulkPutManifest;
+import org.bitrepository.modify.putfile.PutFileClient;
+import org.bitrepository.protocol.FileExchange;
+import org.bitrepository.protocol.ProtocolComponentFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import static org.bitrepository.commandline.Constants.ARGUMENT_IS_NOT_REQUIRED;
+import static org.bitrepository.commandline.Constants.ARGUMENT_IS_REQUIRED;
+import static org.bitrepository.commandline.Constants.DELETE_FILE_ARG;
+import static org.bitrepository.commandline.Constants.DELETE_FILE_DESC;
+import static org.bitrepository.commandline.Constants.EXIT_ARGUMENT_FAILURE;
+import static org.bitrepository.commandline.Constants.EXIT_OPERATION_FAILURE;
+import static org.bitrepository.commandline.Constants.EXIT_SUCCESS;
+import static org.bitrepository.commandline.Constants.FILE_ARG;
+import static org.bitrepository.commandline.Constants.FILE_ID_ARG;
+import static org.bitrepository.commandline.Constants.HAS_ARGUMENT;
+import static org.bitrepository.commandline.Constants.JOURNAL_ARG;
+import static org.bitrepository.commandline.Constants.NO_ARGUMENT;
+import static org.bitrepository.commandline.Constants.REQUEST_CHECKSUM_SALT_ARG;
+import static org.bitrepository.commandline.Constants.REQUEST_CHECKSUM_SALT_DESC;
+import static org.bitrepository.commandline.Constants.REQUEST_CHECKSUM_TYPE_ARG;
+import static org.bitrepository.commandline.Constants.REQUEST_CHECKSUM_TYPE_DESC;
+import static org.bitrepository.commandline.Constants.WINDOW_ARG;
+
+/**
+ * Ingests all the files in a directory or listed in a manifest, using a window of concurrent PutFile operations.
+ * The progress is recorded in a journal, so an interrupted ingest can be resumed by running the command again.
+ */
+public class BulkPutFileCmd extends CommandLineClient {
+    /** The suffix of the default journal, which is placed next to the directory or manifest. */
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    private final PutFileClient client;
+
+    /**
+     * @param args The arguments for performing the bulk PutFile operation.
+     */
+    public static void main(String[] args) {
+        try {
+            BulkPutFileCmd client = new BulkPutFileCmd(args);
+            client.runCommand();
+        } catch (IllegalArgumentException iae) {
+            System.exit(EXIT_ARGUMENT_FAILURE);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(EXIT_OPERATION_FAILURE);
+        }
+    }
+
+    /**
+     * @param args Valid arguments are: <p/>
+     *             k = Location of file with private security key. <br/>
+     *             s = Location of folder with setting files. <br/>
+     *             c = ID of the Collection. <br/>
+     *             f = The directory with the files to put, or the manifest listing them. <br/>
+     *             j = The journal to record the progress in. <br/>
+     *             w = The number of files to put concurrently. <br/>
+     */
+    protected BulkPutFileCmd(String... args) {
+        super(args);
+        client = ModifyComponentFactory.getInstance().retrievePutClient(settings, securityManager, getComponentID());
+    }
+
+    @Override
+    protected boolean isFileIDArgumentRequired() {
+        return false;
+    }
+
+    @Override
+    protected void createOptionsForCmdArgumentHandler() {
+        super.createOptionsForCmdArgumentHandler();
+
+        Option fileOption = new Option(FILE_ARG, HAS_ARGUMENT, "The directory with the files to put, or a manifest "
+                + "with a line for each file to put with its path and optionally its file id separated by a tab.");
+        fileOption.setRequired(ARGUMENT_IS_REQUIRED);
+        cmdHandler.addOption(fileOption);
+
+        Option journalOption = new Option(JOURNAL_ARG, HAS_ARGUMENT, "[OPTIONAL] The journal to record the progress "
+                + "in, and resume from. Defaults to the directory or manifest with the suffix '" + JOURNAL_SUFFIX
+                + "'.");
+        journalOption.setRequired(ARGUMENT_IS_NOT_REQUIRED);
+        cmdHandler.addOption(journalOption);
+
+        Option windowOption = new Option(WINDOW_ARG, HAS_ARGUMENT, "[OPTIONAL] The number of files to put "
+                + "concurrently. Defaults to " + BulkPutFileClient.DEFAULT_WINDOW + ".");
+        windowOption.setRequired(ARGUMENT_IS_NOT_REQUIRED);
+        cmdHandler.addOption(windowOption);
+
+        Option checksumTypeOption = new Option(REQUEST_CHECKSUM_TYPE_ARG, HAS_ARGUMENT, REQUEST_CHECKSUM_TYPE_DESC);
+        checksumTypeOption.setRequired(ARGUMENT_IS_NOT_REQUIRED);
+        cmdHandler.addOption(checksumTypeOption);
+
+        Option checksumSaltOption = new Option(REQUEST_CHECKSUM_SALT_ARG, HAS_ARGUMENT, REQUEST_CHECKSUM_SALT_DESC);
+        checksumSaltOption.setRequired(ARGUMENT_IS_NOT_REQUIRED);
+        cmdHandler.addOption(checksumSaltOption);
+
+        Option deleteOption = new Option(DELETE_FILE_ARG, NO_ARGUMENT, DELETE_FILE_DESC);
+        deleteOption.setRequired(ARGUMENT_IS_NOT_REQUIRED);
+        cmdHandler.addOption(deleteOption);
+    }
+
+    /**
+     * Run the default validation, and validates that the input exists, that no single file id is given, and that the
+     * window is a positive number.
+     */
+    @Override
+    protected void validateArguments() {
+        super.validateArguments();
+
+        if (cmdHandler.hasOption(FILE_ID_ARG)) {
+            throw new IllegalArgumentException("The file ids are given by the directory or manifest (-f), not by the "
+                    + "file id argument (-i).");
+        }
+        if (!getInput().exists()) {
+            throw new IllegalArgumentException("The directory or manifest '" + getInput() + "' does not exist.");
+        }
+        getWindow();
+    }
+
+    /**
+     * Performs the bulk PutFile operation.
+     */
+    @Override
+    public void performOperation() {
+        List<BulkPutManifest.Entry> entries;
+        try {
+            entries = BulkPutManifest.read(getInput());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read the files to put from '" + getInput() + "'", e);
+        }
+        List<String> invalidFileIDs = BulkPutManifest.findInvalidFileIDs(entries, new FileIDValidator(settings));
+        if (!invalidFileIDs.isEmpty()) {
+            invalidFileIDs.forEach(output::error);
+            output.error("None of the files were put, as " + invalidFileIDs.size() + " of them have invalid file "
+                    + "ids. Files in subdirectories can be given valid file ids in a manifest.");
+            throw new IllegalArgumentException("Invalid file ids: " + invalidFileIDs);
+        }
+        File journalFile = cmdHandler.hasOption(JOURNAL_ARG) ? new File(cmdHandler.getOptionValue(JOURNAL_ARG))
+                : new File(getInput().getAbsolutePath() + JOURNAL_SUFFIX);
+        output.startupInfo("Putting " + entries.size() + " files, journal in " + journalFile);
+
+        FileExchange fileExchange = ProtocolComponentFactory.getInstance().getFileExchange(settings);
+        BulkPutFileClient bulkClient = new BulkPutFileClient(client, fileExchange, getWindow(),
+                cmdHandler.hasOption(DELETE_FILE_ARG));
+        BulkPutResult result;
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            result = bulkClient.putFiles(getCollectionID(), entries, journal, getDefaultChecksumSpec(),
+                    getRequestChecksumSpecOrNull(), null, null);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not use the journal '" + journalFile + "'", e);
+        }
+
+        output.resultLine(String.format(Locale.ROOT, "Completed %d, failed %d, skipped %d files (%d bytes) in %s",
+                result.getCompleted(), result.getFailed(), result.getSkipped(), result.getCompletedBytes(),
+                result.getDuration()));
+        result.getPillarThroughputs().forEach((pillarID, throughput) -> output.resultLine(String.format(Locale.ROOT,
+                "%s: %d files, %d bytes, %.1f MB/s, average latency %s", pillarID, throughput.getFiles(),
+                throughput.getBytes(), result.getBytesPerSecond(throughput) / 1e6, throughput.getAverageLatency())));
+        if (result.getFailed() == 0) {
+            System.exit(EXIT_SUCCESS);
+        } else {
+            output.warn(result.getFailed() + " files failed, see the journal " + journalFile);
+            System.exit(EXIT_OPERATION_FAILURE);
+        }
+    }
+
+    private File getInput() {
+        return new File(cmdHandler.getOptionValue(FILE_ARG));
+    }
+
+    private int getWindow() {
+        if (!cmdHandler.hasOption(WINDOW_ARG)) {
+            return BulkPutFileClient.DEFAULT_WINDOW;
+        }
+        try {
+            int window = Integer.parseInt(cmdHandler.getOptionValue(WINDOW_ARG));
+            if (window > 0) {
+                return window;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new IllegalArgumentException("The window (-w) must be a positive number, but was '"
+                + cmdHandler.getOptionValue(WINDOW_ARG) + "'.");
+    }
+}
@@ -93,6 +93,14 @@ public class Constants {
      * The argument for the location of the results.
      */
     public static final String LOCATION_ARG = "l";
+    /**
+     * The argument for the journal of a bulk operation.
+     */
+    public static final String JOURNAL_ARG = "j";
+    /**
+     * The argument for the number of concurrent operations.
+     */
+    public static final String WINDOW_ARG = "w";
 
     public static final String PILLAR_DESC =
             "The id of the pillar where the operation should be performed. " +
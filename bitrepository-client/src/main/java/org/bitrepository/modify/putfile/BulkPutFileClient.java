@@ -0,0 +1,407 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.modify.putfile;
+
+import org.apache.commons.codec.DecoderException;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.client.eventhandler.ContributorEvent;
+import org.bitrepository.client.eventhandler.EventHandler;
+import org.bitrepository.client.eventhandler.OperationEvent;
+import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.ChecksumCalculatingInputStream;
+import org.bitrepository.protocol.FileExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ingests a batch of files by pipelining the PutFile operations through a {@link PutFileClient}.
+ * <p/>
+ * Each file is uploaded to the file exchange while its checksum is calculated, so the file is only read once, and
+ * then put on the pillars. A window of files are uploaded and put concurrently, so the ingest is not limited by the
+ * round trips of a single PutFile conversation at a time. The outcome of each file is recorded in a
+ * {@link BulkPutJournal}, and the files already completed according to the journal are skipped, so an interrupted
+ * ingest can be resumed.
+ */
+public class BulkPutFileClient {
+    /** The default number of files uploaded and put concurrently. */
+    public static final int DEFAULT_WINDOW = 10;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final PutFileClient client;
+    private final FileExchange fileExchange;
+    private final int window;
+    private final boolean deleteAfterPut;
+
+    /**
+     * @param client         The client to put the files with.
+     * @param fileExchange   The file exchange to upload the files to.
+     * @param window         The number of files uploaded and put concurrently.
+     * @param deleteAfterPut Whether to delete the files from the file exchange, when they have been put.
+     */
+    public BulkPutFileClient(PutFileClient client, FileExchange fileExchange, int window, boolean deleteAfterPut) {
+        ArgumentValidator.checkNotNull(client, "PutFileClient client");
+        ArgumentValidator.checkNotNull(fileExchange, "FileExchange fileExchange");
+        ArgumentValidator.checkPositive(window, "int window");
+        this.client = client;
+        this.fileExchange = fileExchange;
+        this.window = window;
+        this.deleteAfterPut = deleteAfterPut;
+    }
+
+    /**
+     * Puts the files, which have not already been completed according to the journal, and blocks until all of them
+     * have been either completed or failed.
+     *
+     * @param collectionID          The ID of the collection to put the files in.
+     * @param entries               The files to put.
+     * @param journal               The journal to resume from, and record the outcome of the files in.
+     * @param checksumSpec          The checksum specification of the checksums for validation at the pillars.
+     * @param requestedChecksumSpec The checksum specification of the checksums the pillars should return, or null.
+     * @param eventHandler          The EventHandler to pass the events of the PutFile operations on to, or null.
+     * @param auditTrailInformation The audit trail information.
+     * @return The result of the ingest.
+     * @throws IllegalArgumentException If the IDs of some of the files cannot be recorded in the journal. No files are
+     *                                  put in that case.
+     */
+    public BulkPutResult putFiles(String collectionID, List<BulkPutManifest.Entry> entries, BulkPutJournal journal,
+                                  ChecksumSpecTYPE checksumSpec, ChecksumSpecTYPE requestedChecksumSpec,
+                                  EventHandler eventHandler, String auditTrailInformation) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkNotNull(entries, "List<BulkPutManifest.Entry> entries");
+        ArgumentValidator.checkNotNull(journal, "BulkPutJournal journal");
+        ArgumentValidator.checkNotNull(checksumSpec, "ChecksumSpecTYPE checksumSpec");
+        List<String> unrecordableFileIDs = new ArrayList<>();
+        for (BulkPutManifest.Entry entry : entries) {
+            if (!BulkPutJournal.isRecordable(entry.getFileID())) {
+                unrecordableFileIDs.add(entry.getFileID());
+            }
+        }
+        if (!unrecordableFileIDs.isEmpty()) {
+            throw new IllegalArgumentException("The file IDs " + unrecordableFileIDs + " contain tabs or line "
+                    + "breaks, and cannot be recorded in the journal");
+        }
+
+        BulkPutResult result = new BulkPutResult();
+        ExecutorService executor = Executors.newFixedThreadPool(window,
+                new DefaultThreadFactory(getClass().getSimpleName() + "-", Thread.NORM_PRIORITY, true));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (BulkPutManifest.Entry entry : entries) {
+                if (journal.isCompleted(entry.getFileID())) {
+                    result.recordSkipped();
+                    continue;
+                }
+                futures.add(executor.submit(() -> putFile(collectionID, entry, journal, checksumSpec,
+                        requestedChecksumSpec, eventHandler, auditTrailInformation, result)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while ingesting the files", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected failure while ingesting the files", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            result.finish();
+        }
+        return result;
+    }
+
+    /**
+     * Uploads a single file while calculating its checksum, puts it, and records the outcome in the journal.
+     */
+    private void putFile(String collectionID, BulkPutManifest.Entry entry, BulkPutJournal journal,
+                         ChecksumSpecTYPE checksumSpec, ChecksumSpecTYPE requestedChecksumSpec,
+                         EventHandler eventHandler, String auditTrailInformation, BulkPutResult result) {
+        String fileID = entry.getFileID();
+        long size = entry.getFile().length();
+        URL url = null;
+        try {
+            url = fileExchange.getURL(fileID);
+            String checksum;
+            try (ChecksumCalculatingInputStream in = new ChecksumCalculatingInputStream(
+                    new BufferedInputStream(new FileInputStream(entry.getFile())), List.of(checksumSpec))) {
+                fileExchange.putFile(in, url);
+                checksum = in.getChecksums().get(0);
+            }
+
+            long putStarted = System.nanoTime();
+            PutFileHandler handler = new PutFileHandler(eventHandler, size, putStarted, result);
+            client.putFile(collectionID, url, fileID, size, createChecksumData(checksum, checksumSpec),
+                    requestedChecksumSpec, handler, auditTrailInformation);
+            OperationEvent finishEvent = handler.awaitFinished();
+            if (finishEvent.getEventType() == OperationEventType.COMPLETE) {
+                log.debug("Put '{}' with checksum '{}'", fileID, checksum);
+                journal.recordCompleted(fileID, checksum);
+                result.recordCompleted(size);
+            } else {
+                log.warn("Failed to put '{}': {}", fileID, finishEvent.getInfo());
+                journal.recordFailed(fileID, finishEvent.getInfo());
+                result.recordFailed();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to put '{}' from '{}'", fileID, entry.getFile(), e);
+            try {
+                journal.recordFailed(fileID, String.valueOf(e.getMessage()));
+            } catch (IOException journalException) {
+                log.error("Could not record the failure of '{}' in the journal", fileID, journalException);
+            }
+            result.recordFailed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.recordFailed();
+        } finally {
+            if (deleteAfterPut && url != null) {
+                deleteFile(url);
+            }
+        }
+    }
+
+    private ChecksumDataForFileTYPE createChecksumData(String checksum, ChecksumSpecTYPE checksumSpec) {
+        ChecksumDataForFileTYPE checksumData = new ChecksumDataForFileTYPE();
+        checksumData.setCalculationTimestamp(CalendarUtils.getNow());
+        checksumData.setChecksumSpec(checksumSpec);
+        try {
+            checksumData.setChecksumValue(Base16Utils.encodeBase16(checksum));
+        } catch (DecoderException e) {
+            throw new IllegalStateException("Could not decode the calculated checksum '" + checksum + "'", e);
+        }
+        return checksumData;
+    }
+
+    private void deleteFile(URL url) {
+        try {
+            fileExchange.deleteFile(url);
+        } catch (Exception e) {
+            log.warn("Could not delete '{}' from the file exchange", url, e);
+        }
+    }
+
+    /**
+     * Passes the events of a PutFile operation on, records the time each pillar takes to store the file, and
+     * blocks until the operation has finished.
+     */
+    private static class PutFileHandler implements EventHandler {
+        private final EventHandler eventHandler;
+        private final long size;
+        private final long putStarted;
+        private final BulkPutResult result;
+        private OperationEvent finishEvent;
+
+        private PutFileHandler(EventHandler eventHandler, long size, long putStarted, BulkPutResult result) {
+            this.eventHandler = eventHandler;
+            this.size = size;
+            this.putStarted = putStarted;
+            this.result = result;
+        }
+
+        @Override
+        public void handleEvent(OperationEvent event) {
+            if (eventHandler != null) {
+                eventHandler.handleEvent(event);
+            }
+            if (event.getEventType() == OperationEventType.COMPONENT_COMPLETE) {
+                result.recordPillarDelivery(((ContributorEvent) event).getContributorID(), size,
+                        System.nanoTime() - putStarted);
+            } else if (event.getEventType() == OperationEventType.COMPLETE
+                    || event.getEventType() == OperationEventType.FAILED) {
+                synchronized (this) {
+                    finishEvent = event;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized OperationEvent awaitFinished() throws InterruptedException {
+            while (finishEvent == null) {
+                wait();
+            }
+            return finishEvent;
+        }
+    }
+
+    /**
+     * The result of a bulk ingest, with the number of files of each outcome and the throughput of each pillar.
+     */
+    public static class BulkPutResult {
+        private final long started = System.nanoTime();
+        private final Map<String, PillarThroughput> pillarThroughputs = new TreeMap<>();
+        private long finished = -1;
+        private int completed = 0;
+        private int failed = 0;
+        private int skipped = 0;
+        private long completedBytes = 0;
+
+        private synchronized void recordCompleted(long bytes) {
+            completed++;
+            completedBytes += bytes;
+        }
+
+        private synchronized void recordFailed() {
+            failed++;
+        }
+
+        private synchronized void recordSkipped() {
+            skipped++;
+        }
+
+        private synchronized void recordPillarDelivery(String pillarID, long bytes, long durationNanos) {
+            pillarThroughputs.computeIfAbsent(pillarID, id -> new PillarThroughput()).record(bytes, durationNanos);
+        }
+
+        private synchronized void finish() {
+            finished = System.nanoTime();
+        }
+
+        /**
+         * @return The number of files put on the pillars.
+         */
+        public synchronized int getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return The number of files, which could not be put on the pillars.
+         */
+        public synchronized int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return The number of files skipped, as they were already completed according to the journal.
+         */
+        public synchronized int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return The number of bytes in the files put on the pillars.
+         */
+        public synchronized long getCompletedBytes() {
+            return completedBytes;
+        }
+
+        /**
+         * @return The duration of the ingest, or until now if it has not finished.
+         */
+        public synchronized Duration getDuration() {
+            return Duration.ofNanos((finished < 0 ? System.nanoTime() : finished) - started);
+        }
+
+        /**
+         * @return The throughput of each pillar, ordered by the ID of the pillars.
+         */
+        public synchronized Map<String, PillarThroughput> getPillarThroughputs() {
+            Map<String, PillarThroughput> copy = new TreeMap<>();
+            pillarThroughputs.forEach((pillarID, throughput) -> copy.put(pillarID, throughput.copy()));
+            return Collections.unmodifiableMap(copy);
+        }
+
+        /**
+         * @param pillarThroughput The throughput of a pillar in the ingest.
+         * @return The number of bytes per second stored by the pillar over the duration of the ingest.
+         */
+        public double getBytesPerSecond(PillarThroughput pillarThroughput) {
+            double seconds = Math.max(getDuration().toNanos(), 1) / 1e9;
+            return pillarThroughput.getBytes() / seconds;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "BulkPutResult{completed=" + completed + ", failed=" + failed + ", skipped=" + skipped
+                    + ", completedBytes=" + completedBytes + ", duration=" + getDuration()
+                    + ", pillarThroughputs=" + pillarThroughputs + "}";
+        }
+    }
+
+    /**
+     * The files stored by a single pillar in a bulk ingest.
+     */
+    public static class PillarThroughput {
+        private int files = 0;
+        private long bytes = 0;
+        private long totalLatencyNanos = 0;
+
+        private void record(long bytes, long latencyNanos) {
+            this.files++;
+            this.bytes += bytes;
+            this.totalLatencyNanos += latencyNanos;
+        }
+
+        private PillarThroughput copy() {
+            PillarThroughput copy = new PillarThroughput();
+            copy.files = files;
+            copy.bytes = bytes;
+            copy.totalLatencyNanos = totalLatencyNanos;
+            return copy;
+        }
+
+        /**
+         * @return The number of files stored by the pillar.
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return The number of bytes stored by the pillar.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The average time from the PutFile operation was started, until the pillar had stored the file.
+         */
+        public Duration getAverageLatency() {
+            return Duration.ofNanos(files == 0 ? 0 : totalLatencyNanos / files);
+        }
+
+        @Override
+        public String toString() {
+            return "{files=" + files + ", bytes=" + bytes + ", averageLatency=" + getAverageLatency() + "}";
+        }
+    }
+}
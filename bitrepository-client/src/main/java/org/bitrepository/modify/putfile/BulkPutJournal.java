@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.modify.putfile;
+
+import org.bitrepository.common.ArgumentValidator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Journal of the progress of a bulk ingest, which allows an interrupted ingest to be resumed without putting the
+ * files already ingested again.
+ * <p/>
+ * The journal is a text file, which is appended a line for each ingested file, with the outcome, the file ID and
+ * either the checksum of the file or the reason for the failure, separated by tabs. The latest line for a file
+ * decides its outcome. Lines which cannot be parsed, e.g. a line partially written when the ingest was killed, are
+ * ignored, and a new line is started after such a partial line when the journal is reopened. File IDs containing
+ * tabs or line breaks cannot be recorded in the journal.
+ */
+public class BulkPutJournal implements Closeable {
+    /** The outcome of a file, which has been put on the pillars. */
+    public static final String COMPLETED = "COMPLETED";
+    /** The outcome of a file, which could not be put on the pillars. */
+    public static final String FAILED = "FAILED";
+    private static final String SEPARATOR = "\t";
+
+    private final Map<String, String> outcomes = new HashMap<>();
+    private final BufferedWriter writer;
+
+    /**
+     * Reads the outcomes already in the journal, and opens it for appending.
+     *
+     * @param journalFile The journal file. It is created if it does not exist.
+     * @throws IOException If the journal could not be read or opened.
+     */
+    public BulkPutJournal(File journalFile) throws IOException {
+        ArgumentValidator.checkNotNull(journalFile, "File journalFile");
+        if (journalFile.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(SEPARATOR, 3);
+                    if (parts.length == 3 && (COMPLETED.equals(parts[0]) || FAILED.equals(parts[0]))) {
+                        outcomes.put(parts[1], parts[0]);
+                    }
+                }
+            }
+        }
+        boolean endsWithPartialLine = endsWithPartialLine(journalFile);
+        writer = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        if (endsWithPartialLine) {
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * @param fileID The ID of a file.
+     * @return Whether the outcome of the file can be recorded in the journal, which requires that the ID does not
+     * contain tabs or line breaks.
+     */
+    public static boolean isRecordable(String fileID) {
+        return fileID != null && fileID.chars().noneMatch(c -> c == '\t' || c == '\n' || c == '\r');
+    }
+
+    /**
+     * @return Whether the journal file is not empty, and does not end with a line break.
+     */
+    private static boolean endsWithPartialLine(File journalFile) throws IOException {
+        if (!journalFile.isFile() || journalFile.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "r")) {
+            file.seek(file.length() - 1);
+            int lastByte = file.read();
+            return lastByte != '\n' && lastByte != '\r';
+        }
+    }
+
+    /**
+     * @param fileID The ID of the file.
+     * @return Whether the file has been put on the pillars according to the journal.
+     */
+    public synchronized boolean isCompleted(String fileID) {
+        return COMPLETED.equals(outcomes.get(fileID));
+    }
+
+    /**
+     * @return The number of files, which have been put on the pillars according to the journal.
+     */
+    public synchronized int getNumberOfCompletedFiles() {
+        return (int) outcomes.values().stream().filter(COMPLETED::equals).count();
+    }
+
+    /**
+     * Records that a file has been put on the pillars.
+     *
+     * @param fileID   The ID of the file.
+     * @param checksum The checksum of the file in hexadecimal.
+     * @throws IOException              If the outcome could not be written to the journal.
+     * @throws IllegalArgumentException If the file ID contains tabs or line breaks.
+     */
+    public synchronized void recordCompleted(String fileID, String checksum) throws IOException {
+        record(COMPLETED, fileID, checksum);
+    }
+
+    /**
+     * Records that a file could not be put on the pillars.
+     *
+     * @param fileID The ID of the file.
+     * @param reason The reason for the failure.
+     * @throws IOException              If the outcome could not be written to the journal.
+     * @throws IllegalArgumentException If the file ID contains tabs or line breaks.
+     */
+    public synchronized void recordFailed(String fileID, String reason) throws IOException {
+        record(FAILED, fileID, reason);
+    }
+
+    private void record(String outcome, String fileID, String details) throws IOException {
+        if (!isRecordable(fileID)) {
+            throw new IllegalArgumentException("The file ID '" + fileID + "' contains tabs or line breaks, and "
+                    + "cannot be recorded in the journal");
+        }
+        String cleanedDetails = String.valueOf(details).replaceAll("\\s", " ");
+        writer.write(outcome + SEPARATOR + fileID + SEPARATOR + cleanedDetails);
+        writer.newLine();
+        writer.flush();
+        outcomes.put(fileID, outcome);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.modify.putfile;
+
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.FileIDValidator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The files to ingest with the {@link BulkPutFileClient}, read from either a directory or a manifest.
+ * <ul>
+ *     <li>Directory: All the files in the directory and its subdirectories are ingested, with the path relative to
+ *     the directory as file ID.</li>
+ *     <li>Manifest: A text file with a line for each file to ingest, with the path of the file and optionally the file
+ *     ID separated by a tab. Relative paths are relative to the directory of the manifest. The name of the file is used
+ *     as file ID, if none is given. Empty lines and lines starting with '#' are ignored.</li>
+ * </ul>
+ * The file IDs of files in subdirectories contain '/', which is not allowed by the usual AllowedFileIDPattern of the
+ * repository settings. Such files must be listed in a manifest with valid file IDs, unless the pattern allows '/'.
+ * The file IDs should be checked with {@link #findInvalidFileIDs(List, FileIDValidator)} before the ingest is
+ * started.
+ */
+public final class BulkPutManifest {
+    /** The start of a line in a manifest, which is ignored. */
+    public static final String COMMENT_PREFIX = "#";
+    /** The separator between the path and the file ID in a manifest. */
+    public static final String SEPARATOR = "\t";
+
+    private BulkPutManifest() {}
+
+    /**
+     * @param directoryOrManifest The directory with the files, or the manifest listing them.
+     * @return The files to ingest.
+     * @throws IOException If the directory or manifest could not be read.
+     */
+    public static List<Entry> read(File directoryOrManifest) throws IOException {
+        ArgumentValidator.checkNotNull(directoryOrManifest, "File directoryOrManifest");
+        if (directoryOrManifest.isDirectory()) {
+            return readDirectory(directoryOrManifest);
+        }
+        return readManifest(directoryOrManifest);
+    }
+
+    /**
+     * @param directory The directory with the files to ingest.
+     * @return The files in the directory and its subdirectories, ordered by their file IDs.
+     * @throws IOException If the directory could not be read.
+     */
+    public static List<Entry> readDirectory(File directory) throws IOException {
+        Path root = directory.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> new Entry(path.toFile(), toFileID(root.relativize(path))))
+                    .sorted((entry1, entry2) -> entry1.getFileID().compareTo(entry2.getFileID()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @param manifest The manifest listing the files to ingest.
+     * @return The files in the order of the manifest.
+     * @throws IOException If the manifest could not be read.
+     */
+    public static List<Entry> readManifest(File manifest) throws IOException {
+        File baseDirectory = manifest.getAbsoluteFile().getParentFile();
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+                String[] parts = line.split(SEPARATOR, 2);
+                File file = new File(parts[0]);
+                if (!file.isAbsolute()) {
+                    file = new File(baseDirectory, parts[0]);
+                }
+                String fileID = parts.length > 1 && !parts[1].isBlank() ? parts[1].strip() : file.getName();
+                entries.add(new Entry(file, fileID));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Validates the file IDs of the entries against the allowed file IDs of the repository, so the files the pillars
+     * would refuse are found before the ingest is started.
+     *
+     * @param entries   The files to ingest.
+     * @param validator The validator of the file IDs.
+     * @return A description of each invalid file ID, or an empty list if all the file IDs are valid.
+     */
+    public static List<String> findInvalidFileIDs(List<Entry> entries, FileIDValidator validator) {
+        ArgumentValidator.checkNotNull(entries, "List<Entry> entries");
+        ArgumentValidator.checkNotNull(validator, "FileIDValidator validator");
+        List<String> invalidFileIDs = new ArrayList<>();
+        for (Entry entry : entries) {
+            try {
+                validator.checkFileID(entry.getFileID());
+            } catch (IllegalArgumentException e) {
+                invalidFileIDs.add(entry.getFile() + ": " + e.getMessage());
+            }
+        }
+        return invalidFileIDs;
+    }
+
+    private static String toFileID(Path relativePath) {
+        List<String> names = new ArrayList<>();
+        relativePath.forEach(name -> names.add(name.toString()));
+        return String.join("/", names);
+    }
+
+    /**
+     * A file to ingest, with the ID to ingest it as.
+     */
+    public static final class Entry {
+        private final File file;
+        private final String fileID;
+
+        /**
+         * @param file   The file to ingest.
+         * @param fileID The ID to ingest the file as.
+         */
+        public Entry(File file, String fileID) {
+            ArgumentValidator.checkNotNull(file, "File file");
+            ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+            this.file = file;
+            this.fileID = fileID;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getFileID() {
+            return fileID;
+        }
+
+        @Override
+        public String toString() {
+            return fileID + " (" + file + ")";
+        }
+    }
+}
@@ -18,6 +18,7 @@ set JAVA_OPTS=%JAVA_OPTS% "-Dlogback.configurationFile=%CONFDIR%\logback.xml"
 set JAVA_OPTS=%JAVA_OPTS% "-DBASEDIR=%BASEDIR%"
 
 set CMD=help
+if /I x%1%==xbulk-put-file  set CMD=BulkPutFileCmd
 if /I x%1%==xdelete-file        set CMD=DeleteFileCmd
 if /I x%1%==xget-checksums set CMD=GetChecksumsCmd
 if /I x%1%==xget-file      set CMD=GetFileCmd
@@ -28,6 +29,7 @@ if /I x%1%==xreplace-file  set CMD=ReplaceFileCmd
 if not "%CMD%"=="help" goto run
 echo. usage: %0% CMD PARAMS
 echo.   CMD is one of
+echo.     bulk-put-file
 echo.     delete-file
 echo.     get-checksums
 echo.     get-file
@@ -14,6 +14,7 @@ JAVA_OPTS+=(-Dlogback.configurationFile="$CONFDIR/logback.xml")
 JAVA_OPTS+=(-DBASEDIR="$BASEDIR")
 
 case "$1" in
+    bulk-put-file)	CMD=BulkPutFileCmd	;;
     delete-file)		CMD=DeleteFileCmd		;;
     get-checksums)	CMD=GetChecksumsCmd	;;
     get-file)		CMD=GetFileCmd		;;
@@ -24,6 +25,7 @@ case "$1" in
 	exec 1>&2
 	echo "usage: $0 CMD PARAMS"
 	echo "  CMD is one of"
+	echo "    bulk-put-file"
 	echo "    delete-file"
 	echo "    get-checksums"
 	echo "    get-file"
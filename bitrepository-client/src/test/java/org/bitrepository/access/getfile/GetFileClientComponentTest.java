@@ -25,6 +25,7 @@
 package org.bitrepository.access.getfile;
 
 import org.bitrepository.access.AccessComponentFactory;
+import org.bitrepository.access.getfile.selectors.PillarPerformanceHistory;
 import org.bitrepository.bitrepositoryelements.FilePart;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.bitrepositoryelements.TimeMeasureTYPE;
@@ -38,6 +39,7 @@ import org.bitrepository.client.TestEventHandler;
 import org.bitrepository.client.eventhandler.ContributorEvent;
 import org.bitrepository.client.eventhandler.IdentificationCompleteEvent;
 import org.bitrepository.client.eventhandler.OperationEvent.OperationEventType;
+import org.bitrepository.settings.referencesettings.ThroughputAwarePillarSelection;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -48,6 +50,8 @@ import java.math.BigInteger;
 import java.net.URL;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 /**
  * Test class for the 'GetFileClient'.
@@ -636,6 +640,104 @@ public class GetFileClientComponentTest extends AbstractGetFileClientTest {
         assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPLETE);
     }
 
+    @Test(groups = {"regressiontest"})
+    public void recordPillarPerformanceHistory() throws Exception {
+        addDescription("Tests that the deliveries and failures of the pillars are recorded in the history of the "
+                + "pillars' performance, and that the history is used when selecting the pillar.");
+        addFixture("Define throughput aware pillar selection, where a pillar is degraded after a single failure.");
+        ThroughputAwarePillarSelection selectionSettings = new ThroughputAwarePillarSelection();
+        selectionSettings.setDegradedAfterFailures(BigInteger.ONE);
+        settingsForCUT.getReferenceSettings().getClientSettings().setThroughputAwarePillarSelection(selectionSettings);
+        ConversationBasedGetFileClient getFileClient = new ConversationBasedGetFileClient(messageBus,
+                conversationMediator, settingsForCUT, settingsForTestClient.getComponentID());
+        GetFileClient client = new GetFileClientTestWrapper(getFileClient, testEventManager);
+        PillarPerformanceHistory history = getFileClient.getPillarHistory();
+        assertEquals(history.estimateDeliveryTime(PILLAR1_ID, 0), 0.0);
+        TestEventHandler testEventHandler = new TestEventHandler(testEventManager);
+
+        addStep("Get a file from pillar1, which delivers it.",
+                "The delivery of the file is recorded in the history for pillar1.");
+        client.getFileFromSpecificPillar(collectionID, DEFAULT_FILE_ID, NO_FILE_PART,
+                httpServerConfiguration.getURL(DEFAULT_FILE_ID), PILLAR1_ID, testEventHandler, null);
+        IdentifyPillarsForGetFileRequest identifyRequest =
+                collectionReceiver.waitForMessage(IdentifyPillarsForGetFileRequest.class);
+        messageBus.sendMessage(messageFactory.createIdentifyPillarsForGetFileResponse(
+                identifyRequest, PILLAR1_ID, pillar1DestinationId));
+        GetFileRequest getFileRequest = pillar1Receiver.waitForMessage(GetFileRequest.class);
+        GetFileProgressResponse progressResponse = messageFactory.createGetFileProgressResponse(
+                getFileRequest, PILLAR1_ID, pillar1DestinationId);
+        progressResponse.setFileSize(BigInteger.valueOf(1000000L));
+        messageBus.sendMessage(progressResponse);
+        messageBus.sendMessage(messageFactory.createGetFileFinalResponse(
+                getFileRequest, PILLAR1_ID, pillar1DestinationId));
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.IDENTIFY_REQUEST_SENT);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPONENT_IDENTIFIED);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.IDENTIFICATION_COMPLETE);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.REQUEST_SENT);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.PROGRESS);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPONENT_COMPLETE);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPLETE);
+        assertTrue(history.estimateDeliveryTime(PILLAR1_ID, 0) > 0, "The throughput of pillar1 should be recorded");
+        assertFalse(history.isDegraded(PILLAR1_ID));
+
+        addStep("Get a file from pillar2, which fails to deliver it.",
+                "The failure is recorded in the history, so pillar2 is degraded.");
+        client.getFileFromSpecificPillar(collectionID, DEFAULT_FILE_ID, NO_FILE_PART,
+                httpServerConfiguration.getURL(DEFAULT_FILE_ID), PILLAR2_ID, testEventHandler, null);
+        identifyRequest = collectionReceiver.waitForMessage(IdentifyPillarsForGetFileRequest.class);
+        messageBus.sendMessage(messageFactory.createIdentifyPillarsForGetFileResponse(
+                identifyRequest, PILLAR2_ID, pillar2DestinationId));
+        getFileRequest = pillar2Receiver.waitForMessage(GetFileRequest.class);
+        GetFileFinalResponse failureResponse = messageFactory.createGetFileFinalResponse(
+                getFileRequest, PILLAR2_ID, pillar2DestinationId);
+        failureResponse.getResponseInfo().setResponseCode(ResponseCode.FAILURE);
+        messageBus.sendMessage(failureResponse);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.IDENTIFY_REQUEST_SENT);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPONENT_IDENTIFIED);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.IDENTIFICATION_COMPLETE);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.REQUEST_SENT);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPONENT_FAILED);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.FAILED);
+        assertTrue(history.isDegraded(PILLAR2_ID));
+
+        addStep("Set a 500 ms operation timeout and get a file from the fastest pillar, where pillar2 reports the "
+                + "shortest time to deliver.", "The degraded pillar2 is skipped, so the file is requested from "
+                + "pillar1.");
+        settingsForCUT.getRepositorySettings().getClientSettings()
+                .setOperationTimeoutDuration(datatypeFactory.newDuration(500));
+        client.getFileFromFastestPillar(collectionID, DEFAULT_FILE_ID, NO_FILE_PART,
+                httpServerConfiguration.getURL(DEFAULT_FILE_ID), testEventHandler, null);
+        identifyRequest = collectionReceiver.waitForMessage(IdentifyPillarsForGetFileRequest.class);
+        IdentifyPillarsForGetFileResponse slowResponse = messageFactory.createIdentifyPillarsForGetFileResponse(
+                identifyRequest, PILLAR1_ID, pillar1DestinationId);
+        TimeMeasureTYPE slowTime = new TimeMeasureTYPE();
+        slowTime.setTimeMeasureUnit(TimeMeasureUnit.HOURS);
+        slowTime.setTimeMeasureValue(BigInteger.ONE);
+        slowResponse.setTimeToDeliver(slowTime);
+        messageBus.sendMessage(slowResponse);
+        IdentifyPillarsForGetFileResponse fastResponse = messageFactory.createIdentifyPillarsForGetFileResponse(
+                identifyRequest, PILLAR2_ID, pillar2DestinationId);
+        TimeMeasureTYPE fastTime = new TimeMeasureTYPE();
+        fastTime.setTimeMeasureUnit(TimeMeasureUnit.MILLISECONDS);
+        fastTime.setTimeMeasureValue(BigInteger.ONE);
+        fastResponse.setTimeToDeliver(fastTime);
+        messageBus.sendMessage(fastResponse);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.IDENTIFY_REQUEST_SENT);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPONENT_IDENTIFIED);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.COMPONENT_IDENTIFIED);
+        IdentificationCompleteEvent identificationCompleteEvent =
+                (IdentificationCompleteEvent) testEventHandler.waitForEvent();
+        assertEquals(identificationCompleteEvent.getEventType(), OperationEventType.IDENTIFICATION_COMPLETE);
+        assertEquals(identificationCompleteEvent.getContributorIDs().get(0), PILLAR1_ID);
+        pillar1Receiver.waitForMessage(GetFileRequest.class);
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.REQUEST_SENT);
+
+        addStep("Wait for pillar1 to time out.",
+                "A FAILED event is generated, and the timeout is recorded in the history, so pillar1 is degraded.");
+        assertEquals(testEventHandler.waitForEvent().getEventType(), OperationEventType.FAILED);
+        assertTrue(history.isDegraded(PILLAR1_ID));
+    }
+
     /**
      * Creates a new test GetFileClient based on the supplied settings.
      *
@@ -0,0 +1,330 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.bitrepositoryelements.FilePart;
+import org.bitrepository.client.eventhandler.CompleteEvent;
+import org.bitrepository.client.eventhandler.EventHandler;
+import org.bitrepository.client.eventhandler.OperationFailedEvent;
+import org.bitrepository.client.exceptions.InvalidChecksumException;
+import org.bitrepository.client.exceptions.NegativeResponseException;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.bitrepository.protocol.LocalFileExchange;
+import org.bitrepository.settings.referencesettings.FileExchangeSettings;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MultiPillarGetFileClientTest extends ExtendedTestCase {
+    private static final String COLLECTION_ID = "collection";
+    private static final String FILE_ID = "file";
+    private static final int FILE_SIZE = 10000;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private byte[] content;
+    private File exchangeDirectory;
+    private LocalFileExchange fileExchange;
+    private ControlledGetFileClient getFileClient;
+    private File destination;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws IOException {
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        exchangeDirectory = Files.createTempDirectory("multi-pillar-get-file").toFile();
+        exchangeDirectory.deleteOnExit();
+        FileExchangeSettings fileExchangeSettings = new FileExchangeSettings();
+        fileExchangeSettings.setPath(exchangeDirectory.getPath());
+        fileExchange = new LocalFileExchange(fileExchangeSettings);
+        getFileClient = new ControlledGetFileClient();
+        destination = File.createTempFile("multi-pillar-get-file", ".tmp");
+        destination.deleteOnExit();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void hedgedGetFileUsesFastestDeliveryTest() throws Exception {
+        addDescription("Tests that a hedged GetFile uses the first complete delivery and deletes the slower one.");
+        getFileClient.addPillar("slow-pillar", true);
+        getFileClient.holdPillar("slow-pillar");
+        getFileClient.addPillar("fast-pillar", true);
+        getFileClient.addPillar("unused-pillar", true);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1);
+
+        addStep("Get the file hedged from the slow and the fast pillar, while the slow pillar is held back",
+                "The file should be retrieved from the fast pillar without waiting for the slow pillar");
+        client.getFileHedged(COLLECTION_ID, FILE_ID, Arrays.asList("slow-pillar", "fast-pillar", "unused-pillar"),
+                destination, createChecksum(content), null, null);
+        Assert.assertEquals(Files.readAllBytes(destination.toPath()), content);
+        Assert.assertEquals(getFileClient.requestedPillars, Arrays.asList("slow-pillar", "fast-pillar"));
+
+        addStep("Let the slow pillar deliver", "The slower delivery should be deleted");
+        getFileClient.releasePillar("slow-pillar");
+        getFileClient.awaitDelivery("slow-pillar");
+        assertNoDeliveriesLeft();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void hedgedGetFileFailsWhenAllDeliveriesFailTest() throws Exception {
+        addDescription("Tests that a hedged GetFile fails when none of the pillars deliver the file.");
+        getFileClient.addPillar("pillar1", false);
+        getFileClient.addPillar("pillar2", false);
+        getFileClient.addPillar("pillar3", false);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1);
+        try {
+            client.getFileHedged(COLLECTION_ID, FILE_ID, Arrays.asList("pillar1", "pillar2", "pillar3"), destination,
+                    null, null, null);
+            Assert.fail("Should have thrown a NegativeResponseException");
+        } catch (NegativeResponseException e) {
+            // expected
+        }
+        Assert.assertEquals(getFileClient.requestedPillars, Arrays.asList("pillar1", "pillar2", "pillar3"));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void hedgedGetFileFallsBackToRemainingPillarsTest() throws Exception {
+        addDescription("Tests that a hedged GetFile requests the file from the remaining pillars, when the two first "
+                + "pillars fail to deliver it.");
+        getFileClient.addPillar("failing-pillar1", false);
+        getFileClient.addPillar("failing-pillar2", false);
+        getFileClient.addPillar("pillar3", true);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1);
+        client.getFileHedged(COLLECTION_ID, FILE_ID, Arrays.asList("failing-pillar1", "failing-pillar2", "pillar3"),
+                destination, createChecksum(content), null, null);
+        Assert.assertEquals(Files.readAllBytes(destination.toPath()), content);
+        Assert.assertEquals(getFileClient.requestedPillars,
+                Arrays.asList("failing-pillar1", "failing-pillar2", "pillar3"));
+        assertNoDeliveriesLeft();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void hedgedGetFileDeletesDeliveriesAfterInterruptTest() throws Exception {
+        addDescription("Tests that the hedged deliveries, which are in progress when the wait for them is "
+                + "interrupted, are deleted once they are delivered.");
+        getFileClient.addPillar("pillar1", true);
+        getFileClient.holdPillar("pillar1");
+        getFileClient.addPillar("pillar2", true);
+        getFileClient.holdPillar("pillar2");
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1);
+
+        addStep("Interrupt the hedged GetFile, while both pillars are held back", "An IOException is thrown");
+        Exception failure = runInterrupted(() -> client.getFileHedged(COLLECTION_ID, FILE_ID,
+                Arrays.asList("pillar1", "pillar2"), destination, null, null, null), 2);
+        Assert.assertTrue(failure instanceof IOException, "Unexpected failure " + failure);
+
+        addStep("Let the pillars deliver", "Both deliveries should be deleted");
+        getFileClient.releasePillar("pillar1");
+        getFileClient.releasePillar("pillar2");
+        getFileClient.awaitDelivery("pillar1");
+        getFileClient.awaitDelivery("pillar2");
+        assertNoDeliveriesLeft();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void stripedGetFileTest() throws Exception {
+        addDescription("Tests that a striped GetFile reassembles the parts delivered by the pillars.");
+        getFileClient.addPillar("pillar1", true);
+        getFileClient.addPillar("pillar2", true);
+        getFileClient.addPillar("pillar3", true);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1000);
+        client.getFileStriped(COLLECTION_ID, FILE_ID, FILE_SIZE, Arrays.asList("pillar1", "pillar2", "pillar3"),
+                destination, createChecksum(content), null, null);
+        Assert.assertEquals(Files.readAllBytes(destination.toPath()), content);
+        Assert.assertEquals(getFileClient.requestedPillars.size(), 3);
+        assertNoDeliveriesLeft();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void stripedGetFileRetriesFailedPartTest() throws Exception {
+        addDescription("Tests that a part, which a pillar fails to deliver, is requested from another pillar.");
+        getFileClient.addPillar("pillar1", true);
+        getFileClient.addPillar("failing-pillar", false);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1000);
+        client.getFileStriped(COLLECTION_ID, FILE_ID, FILE_SIZE, Arrays.asList("pillar1", "failing-pillar"),
+                destination, createChecksum(content), null, null);
+        Assert.assertEquals(Files.readAllBytes(destination.toPath()), content);
+        Assert.assertEquals(getFileClient.requestedPillars,
+                Arrays.asList("pillar1", "failing-pillar", "pillar1"));
+        assertNoDeliveriesLeft();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void stripedGetFileDeletesPartsInProgressAfterInterruptTest() throws Exception {
+        addDescription("Tests that a part, which is still being delivered when the striped GetFile fails, is "
+                + "deleted once it is delivered.");
+        getFileClient.addPillar("held-pillar", true);
+        getFileClient.holdPillar("held-pillar");
+        getFileClient.addPillar("pillar2", true);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1000);
+
+        addStep("Interrupt the striped GetFile, while the first part is held back", "An IOException is thrown");
+        Exception failure = runInterrupted(() -> client.getFileStriped(COLLECTION_ID, FILE_ID, FILE_SIZE,
+                Arrays.asList("held-pillar", "pillar2"), destination, createChecksum(content), null, null), 2);
+        Assert.assertTrue(failure instanceof IOException, "Unexpected failure " + failure);
+
+        addStep("Let the held back part be delivered", "The part should be deleted");
+        getFileClient.releasePillar("held-pillar");
+        getFileClient.awaitDelivery("held-pillar");
+        getFileClient.awaitDelivery("pillar2");
+        assertNoDeliveriesLeft();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void stripedGetFileVerifiesChecksumTest() throws Exception {
+        addDescription("Tests that a striped GetFile fails when the reassembled file has a wrong checksum.");
+        getFileClient.addPillar("pillar1", true);
+        getFileClient.addPillar("pillar2", true);
+        MultiPillarGetFileClient client = new MultiPillarGetFileClient(getFileClient, fileExchange, null, 1000);
+        try {
+            client.getFileStriped(COLLECTION_ID, FILE_ID, FILE_SIZE, Arrays.asList("pillar1", "pillar2"),
+                    destination, createChecksum(new byte[]{1, 2, 3}), null, null);
+            Assert.fail("Should have thrown an InvalidChecksumException");
+        } catch (InvalidChecksumException e) {
+            Assert.assertFalse(destination.exists());
+        }
+    }
+
+    private ChecksumDataForFileTYPE createChecksum(byte[] data) throws Exception {
+        ChecksumSpecTYPE checksumSpec = new ChecksumSpecTYPE();
+        checksumSpec.setChecksumType(ChecksumType.MD5);
+        ChecksumDataForFileTYPE checksumData = new ChecksumDataForFileTYPE();
+        checksumData.setChecksumSpec(checksumSpec);
+        checksumData.setChecksumValue(Base16Utils.encodeBase16(
+                ChecksumUtils.generateChecksum(new ByteArrayInputStream(data), checksumSpec)));
+        return checksumData;
+    }
+
+    /**
+     * Runs the retrieval in another thread, and interrupts it once the given number of deliveries have been
+     * requested.
+     *
+     * @return The exception thrown by the retrieval, or null if none was thrown.
+     */
+    private Exception runInterrupted(Retrieval retrieval, int requests) throws Exception {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                retrieval.run();
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        Assert.assertTrue(getFileClient.requests.tryAcquire(requests, TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        Assert.assertFalse(thread.isAlive(), "The retrieval should have stopped");
+        return failure.get();
+    }
+
+    private void assertNoDeliveriesLeft() {
+        Assert.assertEquals(exchangeDirectory.list(), new String[0], "Remaining deliveries");
+    }
+
+    private interface Retrieval {
+        void run() throws Exception;
+    }
+
+    /**
+     * Delivers the requested file or file part to the file exchange. The deliveries of a pillar can be held back
+     * until the pillar is released.
+     */
+    private class ControlledGetFileClient implements GetFileClient {
+        private final Map<String, Boolean> delivering = new ConcurrentHashMap<>();
+        private final Map<String, CountDownLatch> held = new ConcurrentHashMap<>();
+        private final Map<String, CountDownLatch> delivered = new ConcurrentHashMap<>();
+        private final List<String> requestedPillars = new CopyOnWriteArrayList<>();
+        private final Semaphore requests = new Semaphore(0);
+
+        private void addPillar(String pillarID, boolean delivers) {
+            delivering.put(pillarID, delivers);
+            held.put(pillarID, new CountDownLatch(0));
+            delivered.put(pillarID, new CountDownLatch(1));
+        }
+
+        private void holdPillar(String pillarID) {
+            held.put(pillarID, new CountDownLatch(1));
+        }
+
+        private void releasePillar(String pillarID) {
+            held.get(pillarID).countDown();
+        }
+
+        /**
+         * Waits until the pillar has delivered a file, and the delivery has been handled.
+         */
+        private void awaitDelivery(String pillarID) throws InterruptedException {
+            Assert.assertTrue(delivered.get(pillarID).await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void getFileFromFastestPillar(String collectionID, String fileID, FilePart filePart, URL uploadUrl,
+                                             EventHandler eventHandler, String auditTrailInformation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getFileFromSpecificPillar(String collectionID, String fileID, FilePart filePart, URL uploadUrl,
+                                              String pillarID, EventHandler eventHandler,
+                                              String auditTrailInformation) {
+            requestedPillars.add(pillarID);
+            CountDownLatch hold = held.get(pillarID);
+            new Thread(() -> {
+                try {
+                    hold.await();
+                    if (delivering.get(pillarID)) {
+                        int offset = filePart == null ? 0 : filePart.getPartOffSet().intValue();
+                        int length = filePart == null ? content.length : filePart.getPartLength().intValue();
+                        fileExchange.putFile(new ByteArrayInputStream(content, offset, length), uploadUrl);
+                        eventHandler.handleEvent(new CompleteEvent(collectionID, null));
+                    } else {
+                        eventHandler.handleEvent(new OperationFailedEvent(collectionID, "Failed", null));
+                    }
+                } catch (InterruptedException | IOException e) {
+                    eventHandler.handleEvent(new OperationFailedEvent(collectionID, e.getMessage(), null));
+                }
+                delivered.get(pillarID).countDown();
+            }).start();
+            requests.release();
+        }
+    }
+}
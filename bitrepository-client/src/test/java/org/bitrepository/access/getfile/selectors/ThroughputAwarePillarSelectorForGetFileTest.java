@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.access.getfile.selectors;
+
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileResponse;
+import org.bitrepository.client.conversation.selector.SelectedComponentInfo;
+import org.bitrepository.common.utils.TimeMeasurementUtils;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Set;
+
+public class ThroughputAwarePillarSelectorForGetFileTest extends ExtendedTestCase {
+    private static final String FAST_PILLAR = "fast-pillar";
+    private static final String SLOW_PILLAR = "slow-pillar";
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Test(groups = {"regressiontest"})
+    public void selectsReportedFastestWithoutHistoryTest() throws Exception {
+        addDescription("Tests that the pillar with the lowest reported time to deliver is selected, when no "
+                + "performance has been observed for the pillars.");
+        ThroughputAwarePillarSelectorForGetFile selector =
+                new ThroughputAwarePillarSelectorForGetFile(new PillarPerformanceHistory(), true);
+        selector.selectComponent(createResponse(SLOW_PILLAR, 2000));
+        selector.selectComponent(createResponse(FAST_PILLAR, 1000));
+        assertSelected(selector, FAST_PILLAR);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void selectsByObservedThroughputTest() throws Exception {
+        addDescription("Tests that the observed throughput of the pillars overrules their reported time to "
+                + "deliver.");
+        PillarPerformanceHistory history = new PillarPerformanceHistory();
+        addStep("Record a delivery of 100 MB taking 1 second from the fast pillar and 100 seconds from the slow "
+                + "pillar", "");
+        history.recordDelivery(FAST_PILLAR, 100 * MEGABYTE, Duration.ofSeconds(1).toNanos());
+        history.recordDelivery(SLOW_PILLAR, 100 * MEGABYTE, Duration.ofSeconds(100).toNanos());
+
+        addStep("Let the slow pillar report the lowest time to deliver", "The fast pillar should be selected");
+        ThroughputAwarePillarSelectorForGetFile selector = new ThroughputAwarePillarSelectorForGetFile(history, true);
+        selector.selectComponent(createResponse(SLOW_PILLAR, 1000));
+        selector.selectComponent(createResponse(FAST_PILLAR, 5000));
+        assertSelected(selector, FAST_PILLAR);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void skipsDegradedPillarsTest() throws Exception {
+        addDescription("Tests that degraded pillars are skipped, unless all the identified pillars are degraded.");
+        PillarPerformanceHistory history = new PillarPerformanceHistory(2, Duration.ofMinutes(10));
+        addStep("Record two failures for the fast pillar", "The pillar should be degraded");
+        history.recordFailure(FAST_PILLAR);
+        Assert.assertFalse(history.isDegraded(FAST_PILLAR));
+        history.recordFailure(FAST_PILLAR);
+        Assert.assertTrue(history.isDegraded(FAST_PILLAR));
+
+        addStep("Select between the degraded and a slower pillar", "The slower pillar should be selected");
+        ThroughputAwarePillarSelectorForGetFile selector = new ThroughputAwarePillarSelectorForGetFile(history, true);
+        selector.selectComponent(createResponse(FAST_PILLAR, 1000));
+        selector.selectComponent(createResponse(SLOW_PILLAR, 2000));
+        assertSelected(selector, SLOW_PILLAR);
+
+        addStep("Select between the degraded pillar only", "The degraded pillar should be selected");
+        selector = new ThroughputAwarePillarSelectorForGetFile(history, true);
+        selector.selectComponent(createResponse(FAST_PILLAR, 1000));
+        assertSelected(selector, FAST_PILLAR);
+
+        addStep("Select without skipping degraded pillars", "The degraded pillar should be selected");
+        selector = new ThroughputAwarePillarSelectorForGetFile(history, false);
+        selector.selectComponent(createResponse(FAST_PILLAR, 1000));
+        selector.selectComponent(createResponse(SLOW_PILLAR, 2000));
+        assertSelected(selector, FAST_PILLAR);
+
+        addStep("Record a successful delivery from the degraded pillar", "The pillar should no longer be degraded");
+        history.recordDelivery(FAST_PILLAR, MEGABYTE, Duration.ofSeconds(1).toNanos());
+        Assert.assertFalse(history.isDegraded(FAST_PILLAR));
+    }
+
+    private IdentifyPillarsForGetFileResponse createResponse(String pillarID, long timeToDeliverMillis) {
+        IdentifyPillarsForGetFileResponse response = new IdentifyPillarsForGetFileResponse();
+        response.setFrom(pillarID);
+        response.setPillarID(pillarID);
+        response.setReplyTo(pillarID + "-topic");
+        response.setTimeToDeliver(
+                TimeMeasurementUtils.getTimeMeasurementFromMilliseconds(BigInteger.valueOf(timeToDeliverMillis)));
+        return response;
+    }
+
+    private void assertSelected(ThroughputAwarePillarSelectorForGetFile selector, String pillarID) {
+        Set<SelectedComponentInfo> selected = selector.getSelectedComponents();
+        Assert.assertEquals(selected.size(), 1);
+        Assert.assertEquals(selected.iterator().next().getID(), pillarID);
+    }
+}
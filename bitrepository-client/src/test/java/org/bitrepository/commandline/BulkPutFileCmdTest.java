@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.commandline;
+
+import org.bitrepository.client.DefaultFixtureClientTest;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class BulkPutFileCmdTest extends DefaultFixtureClientTest {
+    private static final String SETTINGS_DIR = "settings/xml/bitrepository-devel";
+    private static final String KEY_FILE = "KeyFile";
+
+    private String DEFAULT_COLLECTION_ID;
+    private File directory;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setupClient() throws Exception {
+        DEFAULT_COLLECTION_ID = settingsForTestClient.getCollections().get(0).getID();
+        directory = Files.createTempDirectory("bulk-put-file").toFile();
+        directory.deleteOnExit();
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void directorySuccessScenarioTest() throws Exception {
+        addDescription("Tests simplest arguments for running the bulk PutFile CmdLineClient on a directory");
+        String[] args = new String[]{"-s" + SETTINGS_DIR,
+                "-k" + KEY_FILE,
+                "-c" + DEFAULT_COLLECTION_ID,
+                "-f" + directory.getPath()};
+        new BulkPutFileCmd(args);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void journalAndWindowArgumentsTest() throws Exception {
+        addDescription("Tests the arguments for the journal and the window");
+        String[] args = new String[]{"-s" + SETTINGS_DIR,
+                "-k" + KEY_FILE,
+                "-c" + DEFAULT_COLLECTION_ID,
+                "-f" + directory.getPath(),
+                "-j" + new File(directory, "journal").getPath(),
+                "-w" + "50"};
+        new BulkPutFileCmd(args);
+    }
+
+    @Test(groups = { "regressiontest" }, expectedExceptions = IllegalArgumentException.class)
+    public void missingInputTest() throws Exception {
+        addDescription("Tests the scenario, where the directory or manifest does not exist.");
+        String[] args = new String[]{"-s" + SETTINGS_DIR,
+                "-k" + KEY_FILE,
+                "-c" + DEFAULT_COLLECTION_ID,
+                "-f" + new File(directory, "missing").getPath()};
+        new BulkPutFileCmd(args);
+    }
+
+    @Test(groups = { "regressiontest" }, expectedExceptions = IllegalArgumentException.class)
+    public void invalidWindowTest() throws Exception {
+        addDescription("Tests the scenario, where the window is not a positive number.");
+        String[] args = new String[]{"-s" + SETTINGS_DIR,
+                "-k" + KEY_FILE,
+                "-c" + DEFAULT_COLLECTION_ID,
+                "-f" + directory.getPath(),
+                "-w" + "0"};
+        new BulkPutFileCmd(args);
+    }
+
+    @Test(groups = { "regressiontest" }, expectedExceptions = IllegalArgumentException.class)
+    public void fileIDArgumentTest() throws Exception {
+        addDescription("Tests the scenario, where a single file id is given.");
+        String[] args = new String[]{"-s" + SETTINGS_DIR,
+                "-k" + KEY_FILE,
+                "-c" + DEFAULT_COLLECTION_ID,
+                "-f" + directory.getPath(),
+                "-i" + DEFAULT_FILE_ID};
+        new BulkPutFileCmd(args);
+    }
+}
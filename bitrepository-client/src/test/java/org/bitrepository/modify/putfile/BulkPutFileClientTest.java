@@ -0,0 +1,294 @@
+/*
+ * #%L
+ * Bitrepository Access
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.modify.putfile;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.client.eventhandler.CompleteEvent;
+import org.bitrepository.client.eventhandler.ContributorCompleteEvent;
+import org.bitrepository.client.eventhandler.EventHandler;
+import org.bitrepository.client.eventhandler.OperationFailedEvent;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.bitrepository.common.utils.FileIDValidator;
+import org.bitrepository.modify.putfile.BulkPutFileClient.BulkPutResult;
+import org.bitrepository.protocol.LocalFileExchange;
+import org.bitrepository.settings.referencesettings.FileExchangeSettings;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkPutFileClientTest extends ExtendedTestCase {
+    private static final String COLLECTION_ID = "collection";
+    private static final int NUMBER_OF_FILES = 20;
+    private static final int WINDOW = 4;
+    /** The usual allowed file IDs, which do not allow the IDs of files in subdirectories. */
+    private static final String DEFAULT_FILE_ID_PATTERN = "[a-zA-Z_\\.\\-0-9]{1,250}";
+    /** Allowed file IDs, which also allow the IDs of files in subdirectories. */
+    private static final String FILE_ID_PATTERN_WITH_SUBDIRECTORIES = "[a-zA-Z_\\.\\-0-9/]{1,250}";
+
+    private Settings settings;
+
+    private File directory;
+    private ChecksumSpecTYPE checksumSpec;
+    private File exchangeDirectory;
+    private LocalFileExchange fileExchange;
+    private DelayingPutFileClient putFileClient;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bulk-put-file").toFile();
+        File subdirectory = new File(directory, "sub");
+        Assert.assertTrue(subdirectory.mkdir());
+        for (int i = 0; i < NUMBER_OF_FILES; i++) {
+            File file = new File(i % 2 == 0 ? directory : subdirectory, "file" + i);
+            Files.write(file.toPath(), ("content of file " + i).getBytes(StandardCharsets.UTF_8));
+            file.deleteOnExit();
+        }
+        subdirectory.deleteOnExit();
+        directory.deleteOnExit();
+        settings = TestSettingsProvider.reloadSettings(getClass().getSimpleName());
+        settings.getRepositorySettings().getProtocolSettings()
+                .setAllowedFileIDPattern(FILE_ID_PATTERN_WITH_SUBDIRECTORIES);
+        checksumSpec = new ChecksumSpecTYPE();
+        checksumSpec.setChecksumType(ChecksumType.MD5);
+        exchangeDirectory = Files.createTempDirectory("bulk-put-file-exchange").toFile();
+        exchangeDirectory.deleteOnExit();
+        FileExchangeSettings fileExchangeSettings = new FileExchangeSettings();
+        fileExchangeSettings.setPath(exchangeDirectory.getPath());
+        fileExchange = new LocalFileExchange(fileExchangeSettings);
+        putFileClient = new DelayingPutFileClient(new FileIDValidator(settings));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void putDirectoryTest() throws Exception {
+        addDescription("Tests that all the files in a directory are uploaded and put with their checksums, using a "
+                + "window of concurrent PutFile operations.");
+        List<BulkPutManifest.Entry> entries = BulkPutManifest.read(directory);
+        Assert.assertEquals(entries.size(), NUMBER_OF_FILES);
+        Assert.assertTrue(entries.stream().anyMatch(entry -> entry.getFileID().equals("sub/file1")));
+
+        BulkPutResult result;
+        File journalFile = new File(directory.getPath() + ".journal");
+        journalFile.deleteOnExit();
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            result = new BulkPutFileClient(putFileClient, fileExchange, WINDOW, true)
+                    .putFiles(COLLECTION_ID, entries, journal, checksumSpec, null, null, null);
+        }
+
+        Assert.assertEquals(result.getCompleted(), NUMBER_OF_FILES);
+        Assert.assertEquals(result.getFailed(), 0);
+        Assert.assertEquals(putFileClient.putFiles.size(), NUMBER_OF_FILES);
+        for (BulkPutManifest.Entry entry : entries) {
+            String expectedChecksum = ChecksumUtils.generateChecksum(entry.getFile(), checksumSpec);
+            Assert.assertEquals(putFileClient.putFiles.get(entry.getFileID()), expectedChecksum);
+        }
+        Assert.assertTrue(putFileClient.maxConcurrentPuts.get() > 1);
+        Assert.assertTrue(putFileClient.maxConcurrentPuts.get() <= WINDOW);
+        Assert.assertEquals(exchangeDirectory.list(), new String[0], "The uploaded files should have been deleted");
+        Assert.assertEquals(result.getPillarThroughputs().keySet(), Set.of("pillar1", "pillar2"));
+        Assert.assertEquals(result.getPillarThroughputs().get("pillar1").getFiles(), NUMBER_OF_FILES);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void resumeFromJournalTest() throws Exception {
+        addDescription("Tests that an ingest resumed from the journal only puts the files, which were not completed.");
+        List<BulkPutManifest.Entry> entries = BulkPutManifest.read(directory);
+        File journalFile = File.createTempFile("bulk-put-file", ".journal");
+        journalFile.deleteOnExit();
+
+        addStep("Put the files, where two of them fail", "The failures are recorded in the journal");
+        putFileClient.failingFileIDs.add("file0");
+        putFileClient.failingFileIDs.add("sub/file1");
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            BulkPutResult result = new BulkPutFileClient(putFileClient, fileExchange, WINDOW, true)
+                    .putFiles(COLLECTION_ID, entries, journal, checksumSpec, null, null, null);
+            Assert.assertEquals(result.getCompleted(), NUMBER_OF_FILES - 2);
+            Assert.assertEquals(result.getFailed(), 2);
+        }
+
+        addStep("Resume the ingest from the journal", "Only the failed files are put");
+        putFileClient.failingFileIDs.clear();
+        putFileClient.putFiles.clear();
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            Assert.assertEquals(journal.getNumberOfCompletedFiles(), NUMBER_OF_FILES - 2);
+            BulkPutResult result = new BulkPutFileClient(putFileClient, fileExchange, WINDOW, true)
+                    .putFiles(COLLECTION_ID, entries, journal, checksumSpec, null, null, null);
+            Assert.assertEquals(result.getCompleted(), 2);
+            Assert.assertEquals(result.getSkipped(), NUMBER_OF_FILES - 2);
+        }
+        Assert.assertEquals(putFileClient.putFiles.keySet(), Set.of("file0", "sub/file1"));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void journalAfterPartialLineTest() throws Exception {
+        addDescription("Tests that a journal ending with a partially written line can be appended to.");
+        File journalFile = File.createTempFile("bulk-put-file", ".journal");
+        journalFile.deleteOnExit();
+        Files.write(journalFile.toPath(), ("COMPLETED\tfile0\tabc" + System.lineSeparator() + "COMPLETED\tfil")
+                .getBytes(StandardCharsets.UTF_8));
+
+        addStep("Reopen the journal and record a file", "The partial line is ignored, and the file is recorded");
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            Assert.assertEquals(journal.getNumberOfCompletedFiles(), 1);
+            journal.recordCompleted("file1", "def");
+        }
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            Assert.assertTrue(journal.isCompleted("file0"));
+            Assert.assertTrue(journal.isCompleted("file1"));
+            Assert.assertEquals(journal.getNumberOfCompletedFiles(), 2);
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void fileIDsWithTabsOrLineBreaksTest() throws Exception {
+        addDescription("Tests that files with IDs, which cannot be recorded in the journal, are rejected before "
+                + "any files are put.");
+        File journalFile = File.createTempFile("bulk-put-file", ".journal");
+        journalFile.deleteOnExit();
+        List<BulkPutManifest.Entry> entries = List.of(new BulkPutManifest.Entry(new File(directory, "file0"), "file0"),
+                new BulkPutManifest.Entry(new File(directory, "file2"), "file\n2"));
+        try (BulkPutJournal journal = new BulkPutJournal(journalFile)) {
+            try {
+                journal.recordCompleted("file\t1", "abc");
+                Assert.fail("Should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                new BulkPutFileClient(putFileClient, fileExchange, WINDOW, true)
+                        .putFiles(COLLECTION_ID, entries, journal, checksumSpec, null, null, null);
+                Assert.fail("Should have thrown an IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        Assert.assertTrue(putFileClient.putFiles.isEmpty());
+        Assert.assertEquals(Files.readAllBytes(journalFile.toPath()).length, 0);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void findInvalidFileIDsTest() throws Exception {
+        addDescription("Tests that the file IDs, which are not allowed by the repository settings, are found before "
+                + "the ingest is started.");
+        List<BulkPutManifest.Entry> entries = BulkPutManifest.read(directory);
+
+        addStep("Validate the file IDs of the directory against the usual allowed file IDs",
+                "The IDs of the files in the subdirectory are invalid");
+        settings.getRepositorySettings().getProtocolSettings().setAllowedFileIDPattern(DEFAULT_FILE_ID_PATTERN);
+        List<String> invalidFileIDs = BulkPutManifest.findInvalidFileIDs(entries, new FileIDValidator(settings));
+        Assert.assertEquals(invalidFileIDs.size(), NUMBER_OF_FILES / 2);
+        Assert.assertTrue(invalidFileIDs.stream().allMatch(invalid -> invalid.contains("'sub/file")),
+                "Invalid file ids: " + invalidFileIDs);
+
+        addStep("Validate the file IDs against allowed file IDs, which allow subdirectories",
+                "All the file IDs are valid");
+        settings.getRepositorySettings().getProtocolSettings()
+                .setAllowedFileIDPattern(FILE_ID_PATTERN_WITH_SUBDIRECTORIES);
+        Assert.assertEquals(BulkPutManifest.findInvalidFileIDs(entries, new FileIDValidator(settings)), List.of());
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void readManifestTest() throws Exception {
+        addDescription("Tests the reading of a manifest with relative and absolute paths, and given file ids.");
+        File manifest = new File(directory, "manifest");
+        manifest.deleteOnExit();
+        Files.write(manifest.toPath(), List.of("# comment", "file0", "", "sub/file1\tother-id",
+                new File(directory, "file2").getAbsolutePath()), StandardCharsets.UTF_8);
+        List<BulkPutManifest.Entry> entries = BulkPutManifest.read(manifest);
+        Assert.assertEquals(entries.size(), 3);
+        Assert.assertEquals(entries.get(0).getFileID(), "file0");
+        Assert.assertEquals(entries.get(0).getFile(), new File(directory, "file0"));
+        Assert.assertEquals(entries.get(1).getFileID(), "other-id");
+        Assert.assertEquals(entries.get(1).getFile(), new File(directory, "sub/file1"));
+        Assert.assertEquals(entries.get(2).getFileID(), "file2");
+    }
+
+    /**
+     * Completes the PutFile operations after a delay, if the file has been uploaded to the file exchange with the
+     * given checksum. The file IDs are validated like the PutFile client does.
+     */
+    private class DelayingPutFileClient implements PutFileClient {
+        private final FileIDValidator fileIDValidator;
+        private final Map<String, String> putFiles = new ConcurrentHashMap<>();
+        private final Set<String> failingFileIDs = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger concurrentPuts = new AtomicInteger();
+        private final AtomicInteger maxConcurrentPuts = new AtomicInteger();
+
+        private DelayingPutFileClient(FileIDValidator fileIDValidator) {
+            this.fileIDValidator = fileIDValidator;
+        }
+
+        @Override
+        public void putFile(String collectionID, URL url, String fileID, long sizeOfFile,
+                            ChecksumDataForFileTYPE checksumForValidationAtPillar,
+                            ChecksumSpecTYPE checksumRequestsForValidation, EventHandler eventHandler,
+                            String auditTrailInformation) {
+            fileIDValidator.checkFileID(fileID);
+            maxConcurrentPuts.accumulateAndGet(concurrentPuts.incrementAndGet(), Math::max);
+            new Thread(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String checksum = Base16Utils.decodeBase16(checksumForValidationAtPillar.getChecksumValue());
+                byte[] uploaded = readUploadedFile(url);
+                concurrentPuts.decrementAndGet();
+                if (uploaded == null || failingFileIDs.contains(fileID) || !checksum.equals(
+                        ChecksumUtils.generateChecksum(new ByteArrayInputStream(uploaded), checksumSpec))) {
+                    eventHandler.handleEvent(new OperationFailedEvent(collectionID, "Failed", null));
+                } else {
+                    putFiles.put(fileID, checksum);
+                    eventHandler.handleEvent(new ContributorCompleteEvent("pillar1", collectionID));
+                    eventHandler.handleEvent(new ContributorCompleteEvent("pillar2", collectionID));
+                    eventHandler.handleEvent(new CompleteEvent(collectionID, null));
+                }
+            }).start();
+        }
+
+        private byte[] readUploadedFile(URL url) {
+            try (InputStream in = fileExchange.getFile(url)) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
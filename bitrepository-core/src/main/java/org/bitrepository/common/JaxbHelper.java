@@ -34,7 +34,11 @@ import org.xml.sax.SAXException;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
@@ -42,44 +46,89 @@ import javax.xml.validation.Validator;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Provides extra JAXB related utilities
- * This class should not be considered light-weight, as it loads XSD from specified source!
+ * Provides extra JAXB related utilities.
+ * <p>
+ * The parsed schemas and the {@link JAXBContext}s are cached across instances, as they are expensive to create and
+ * thread-safe. The {@link Marshaller}, {@link Unmarshaller} and {@link Validator} instances are not thread-safe, and
+ * are therefore kept per thread and reused for every call made by that thread.
  */
 public final class JaxbHelper {
+    private static final Map<String, Schema> schemaCache = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, JAXBContext> contextCache = new ConcurrentHashMap<>();
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newFactory();
+
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final Schema schema;
+    private final ThreadLocal<Map<Class<?>, Marshaller>> marshallers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<Class<?>, Unmarshaller>> unmarshallers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<Class<?>, Marshaller>> validatingMarshallers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<Class<?>, Unmarshaller>> validatingUnmarshallers =
+            ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Validator> validators;
 
     /**
      * Used for creating a JaxbHelper instance for a specific schema.
+     * The schema is only loaded the first time it is used.
      *
      * @param pathToSchema The location of the schema in the classpath.
      * @param schemaName   The name of the schema to use.
      */
     public JaxbHelper(String pathToSchema, String schemaName) {
         ArgumentValidator.checkNotNullOrEmpty(schemaName, "schemaName");
-        if (pathToSchema == null) {
-            pathToSchema = "";
-        }
+        final String schemaPath = (pathToSchema == null) ? "" : pathToSchema;
+        schema = schemaCache.computeIfAbsent(schemaPath + schemaName, key -> loadSchema(schemaPath, schemaName));
+        validators = ThreadLocal.withInitial(schema::newValidator);
+    }
 
+    /**
+     * Parses the schema from the classpath.
+     *
+     * @param pathToSchema The location of the schema in the classpath.
+     * @param schemaName   The name of the schema to use.
+     * @return The parsed schema.
+     */
+    private Schema loadSchema(String pathToSchema, String schemaName) {
         InputStream schemaStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(pathToSchema + schemaName);
-        log.debug("Creating JAXBHelper based on schema from: {}",
+        log.debug("Loading schema for JAXBHelper from: {}",
                 Thread.currentThread().getContextClassLoader().getResource(pathToSchema + schemaName));
         LSResourceResolver resourceResolver = new ResourceResolver(pathToSchema);
         SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
         schemaFactory.setResourceResolver(resourceResolver);
         try {
-            schema = schemaFactory.newSchema(new SAXSource(new InputSource(schemaStream)));
+            return schemaFactory.newSchema(new SAXSource(new InputSource(schemaStream)));
         } catch (SAXException e) {
             throw new IllegalArgumentException("Unable to parse schema " + schemaName, e);
         }
     }
 
+    /**
+     * Retrieves the JAXB context for the given class. The context is only created the first time a class is used.
+     *
+     * @param type The class to retrieve the context for.
+     * @return The JAXB context for the class.
+     * @throws JAXBException If the context could not be created.
+     */
+    static JAXBContext getContext(Class<?> type) throws JAXBException {
+        JAXBContext context = contextCache.get(type);
+        if (context == null) {
+            context = JAXBContext.newInstance(type);
+            JAXBContext existing = contextCache.putIfAbsent(type, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+        return context;
+    }
+
     /**
      * Uses JAXB to create a object representation of an xml file. The class used to load the XML has been generated
      * based on the xsd for the xml.
@@ -93,9 +142,28 @@ public final class JaxbHelper {
     public <T> T loadXml(Class<T> xmlRoot, InputStream inputStream) throws JAXBException {
         ArgumentValidator.checkNotNull(xmlRoot, "xmlRoot");
         ArgumentValidator.checkNotNull(inputStream, "inputStream");
-        JAXBContext context = JAXBContext.newInstance(xmlRoot);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
-        return xmlRoot.cast(unmarshaller.unmarshal(inputStream));
+        return xmlRoot.cast(getUnmarshaller(xmlRoot, unmarshallers, null).unmarshal(inputStream));
+    }
+
+    /**
+     * Loads the xml into an object representation while validating it against the schema, so the xml only needs to
+     * be parsed once.
+     *
+     * @param <T>         The root class to deserialize to.
+     * @param xmlRoot     The root class to deserialize to.
+     * @param inputStream The input stream containing the xml data.
+     * @return Returns a new object representation of the xml data.
+     * @throws SAXException  The xml didn't validate.
+     * @throws JAXBException The attempt to load the xml into a new object representation failed.
+     */
+    public <T> T loadAndValidateXml(Class<T> xmlRoot, InputStream inputStream) throws SAXException, JAXBException {
+        ArgumentValidator.checkNotNull(xmlRoot, "xmlRoot");
+        ArgumentValidator.checkNotNull(inputStream, "inputStream");
+        try {
+            return xmlRoot.cast(getUnmarshaller(xmlRoot, validatingUnmarshallers, schema).unmarshal(inputStream));
+        } catch (JAXBException e) {
+            throw asValidationException(e);
+        }
     }
 
     /**
@@ -106,8 +174,12 @@ public final class JaxbHelper {
      * @throws IOException  Problems accessing the input stream.
      */
     public void validate(InputStream inputStream) throws SAXException, IOException {
-        Validator schemaValidator = schema.newValidator();
-        schemaValidator.validate(new SAXSource(new InputSource(inputStream)));
+        Validator schemaValidator = validators.get();
+        try {
+            schemaValidator.validate(new SAXSource(new InputSource(inputStream)));
+        } finally {
+            schemaValidator.reset();
+        }
     }
 
     /**
@@ -119,14 +191,98 @@ public final class JaxbHelper {
      */
     public String serializeToXml(Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JAXBContext.newInstance(object.getClass()).createMarshaller().marshal(object, baos);
-        String baosContent;
+        getMarshaller(object.getClass(), marshallers, null).marshal(object, baos);
+        return baos.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes the JAXB object to a string while validating the produced xml against the schema, so the xml does
+     * not need to be parsed again for validation.
+     *
+     * @param object The xml-serializable object which should be made into XML.
+     * @return The XML representation of the message object.
+     * @throws SAXException  The produced xml didn't validate.
+     * @throws JAXBException If the object could not be serialized as a JAXB object.
+     */
+    public String serializeAndValidateToXml(Object object) throws SAXException, JAXBException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            getMarshaller(object.getClass(), validatingMarshallers, schema).marshal(object, baos);
+        } catch (JAXBException e) {
+            throw asValidationException(e);
+        }
+        return baos.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes the JAXB object directly to a stream through a StAX writer while validating it against the schema,
+     * so the xml is never held in memory. This allows objects, whose lists are produced while they are traversed, to
+     * be serialized with constant memory use.
+     * If the validation fails, then the xml written to the stream until then is incomplete.
+     *
+     * @param rootType The JAXB class of the root element. The object may be of a subclass of this class.
+     * @param object   The xml-serializable object which should be made into XML.
+     * @param out      The stream to write the XML to. It is not closed.
+     * @throws SAXException  The produced xml didn't validate.
+     * @throws JAXBException If the object could not be serialized as a JAXB object.
+     */
+    public void serializeAndValidateToStream(Class<?> rootType, Object object, OutputStream out)
+            throws SAXException, JAXBException {
+        ArgumentValidator.checkNotNull(rootType, "rootType");
+        ArgumentValidator.checkNotNull(object, "object");
+        ArgumentValidator.checkNotNull(out, "out");
         try {
-            baosContent = baos.toString(StandardCharsets.UTF_8.name());
-        } catch (UnsupportedEncodingException e) {
-            throw new AssertionError("UTF-8 not supported");
+            XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+            try {
+                getMarshaller(rootType, validatingMarshallers, schema).marshal(object, writer);
+                writer.flush();
+            } finally {
+                writer.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new JAXBException("Could not write the xml to the stream.", e);
+        } catch (JAXBException e) {
+            throw asValidationException(e);
+        }
+    }
+
+    private Unmarshaller getUnmarshaller(Class<?> type, ThreadLocal<Map<Class<?>, Unmarshaller>> pool,
+                                         Schema validationSchema) throws JAXBException {
+        Map<Class<?>, Unmarshaller> threadUnmarshallers = pool.get();
+        Unmarshaller unmarshaller = threadUnmarshallers.get(type);
+        if (unmarshaller == null) {
+            unmarshaller = getContext(type).createUnmarshaller();
+            unmarshaller.setSchema(validationSchema);
+            threadUnmarshallers.put(type, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    private Marshaller getMarshaller(Class<?> type, ThreadLocal<Map<Class<?>, Marshaller>> pool,
+                                     Schema validationSchema) throws JAXBException {
+        Map<Class<?>, Marshaller> threadMarshallers = pool.get();
+        Marshaller marshaller = threadMarshallers.get(type);
+        if (marshaller == null) {
+            marshaller = getContext(type).createMarshaller();
+            marshaller.setSchema(validationSchema);
+            threadMarshallers.put(type, marshaller);
+        }
+        return marshaller;
+    }
+
+    /**
+     * Schema violations found while (un)marshalling are reported by JAXB as a JAXBException with the SAXException
+     * linked. These are unwrapped, so validation failures are reported the same way as by {@link #validate}.
+     *
+     * @param e The exception thrown by JAXB.
+     * @return The exception to rethrow.
+     * @throws SAXException If the exception was caused by a schema violation.
+     */
+    private JAXBException asValidationException(JAXBException e) throws SAXException {
+        if (e.getLinkedException() instanceof SAXException) {
+            throw (SAXException) e.getLinkedException();
         }
-        return baosContent;
+        return e;
     }
 
     private static class ResourceResolver implements LSResourceResolver {
@@ -46,6 +46,11 @@ public class DefaultFileInfo implements FileInfo {
         return new FileInputStream(file);
     }
 
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        return new FileRangeInputStream(file.toPath(), offset, length);
+    }
+
     @Override
     public Long getLastModifiedDate() {
         return file.lastModified();
@@ -21,6 +21,8 @@
  */
 package org.bitrepository.common.filestore;
 
+import org.bitrepository.common.utils.StreamUtils;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -29,6 +31,19 @@ public interface FileInfo {
 
     InputStream getInputStream() throws IOException;
 
+    /**
+     * Opens a stream for a part of the file. The default implementation skips to the offset in the stream of the
+     * whole file, so implementations with random access to the file should override it.
+     *
+     * @param offset The offset of the part in the file.
+     * @param length The length of the part. A part extending past the end of the file ends with the file.
+     * @return The stream with the content of the part.
+     * @throws IOException If the file cannot be read.
+     */
+    default InputStream getInputStream(long offset, long length) throws IOException {
+        return StreamUtils.getStreamPart(getInputStream(), offset, length);
+    }
+
     Long getLastModifiedDate();
 
     long getSize();
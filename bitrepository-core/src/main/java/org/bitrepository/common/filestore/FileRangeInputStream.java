@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.filestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input stream for a range of a file. The range is read with positional reads on a {@link FileChannel}, so the
+ * offset may be anywhere in the file without reading the preceding data, and only the buffer of the reader is used.
+ * A range extending past the end of the file is delivered up to the end of the file.
+ */
+public class FileRangeInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    /**
+     * @param path   The path to the file.
+     * @param offset The offset of the range in the file.
+     * @param length The length of the range.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileRangeInputStream(Path path, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range of the file '" + path + "', offset: " + offset
+                    + ", length: " + length);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.position = offset;
+        long requestedEnd = (Long.MAX_VALUE - offset < length) ? Long.MAX_VALUE : offset + length;
+        this.end = Math.min(requestedEnd, channel.size());
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        int toRead = (int) Math.min(len, end - position);
+        int bytesRead = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        if (bytesRead < 0) {
+            position = end;
+            return -1;
+        }
+        position += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Math.max(0, end - position), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
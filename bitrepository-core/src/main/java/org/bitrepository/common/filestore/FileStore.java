@@ -27,6 +27,7 @@ package org.bitrepository.common.filestore;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 public interface FileStore {
     /**
@@ -56,6 +57,30 @@ public interface FileStore {
      */
     Collection<String> getAllFileIds(String collectionID);
 
+    /**
+     * Retrieves the file info for the files with a last modified timestamp within the given interval, ordered by
+     * their last modified timestamp and then by file id.
+     *
+     * @param collectionID       the collection id
+     * @param minTimestamp       The minimum last modified timestamp in milliseconds, or null for no lower limit.
+     * @param maxTimestamp       The maximum last modified timestamp in milliseconds, or null for no upper limit.
+     * @param maxNumberOfResults The maximum number of files to retrieve, or null for no limit.
+     * @return The file info for the files.
+     */
+    List<FileInfo> getFileInfos(String collectionID, Long minTimestamp, Long maxTimestamp, Long maxNumberOfResults);
+
+    /**
+     * Identifies the storage location (e.g. the disk) of a file, so files on different locations can be accessed
+     * independently of each other.
+     *
+     * @param fileID       The id of the file.
+     * @param collectionID the collection id
+     * @return The identifier of the storage location of the file. The default is the same location for all files.
+     */
+    default String getStorageLocation(String fileID, String collectionID) {
+        return "";
+    }
+
     /**
      * Stores a file given through an InputStream. The file is only intended to be stored in a temporary zone until it
      * has been validated. Then it should be archived through the 'moveToArchive' method.
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which bytes are processed to a budget of bytes per second, which can be shared by several
+ * threads. The budget is handed out in the order it is requested, so no thread is starved.
+ */
+public class ByteRateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private final long bytesPerSecond;
+    /** The time at which the budget is next available. */
+    private long nextAvailableNanos;
+
+    /**
+     * @param bytesPerSecond The maximum number of bytes per second. Must be positive.
+     */
+    public ByteRateLimiter(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("The bytes per second must be positive, was: " + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.nextAvailableNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The maximum number of bytes per second.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Reserves the budget for the given number of bytes, and waits until the bytes may be processed.
+     *
+     * @param bytes The number of bytes to reserve the budget for.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        if (bytes <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextAvailableNanos);
+            nextAvailableNanos = start + toNanos(bytes);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @param bytes The number of bytes.
+     * @return The time it takes to process the bytes at the allowed rate.
+     */
+    private long toNanos(long bytes) {
+        long seconds = bytes / bytesPerSecond;
+        long remainder = bytes % bytesPerSecond;
+        return seconds * NANOS_PER_SECOND + remainder * NANOS_PER_SECOND / bytesPerSecond;
+    }
+}
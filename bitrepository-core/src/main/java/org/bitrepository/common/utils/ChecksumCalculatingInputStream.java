@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Input stream calculating checksums of the data read through it. This allows the checksums of e.g. a downloaded
+ * file to be calculated while the file is written to disk, instead of reading the file again afterwards.
+ * <p/>
+ * The checksums can be retrieved when the stream has been read to the end.
+ */
+public class ChecksumCalculatingInputStream extends FilterInputStream {
+    private final List<ChecksumUtils.ChecksumCalculator> calculators;
+    private boolean endOfStream = false;
+    private List<String> checksums;
+
+    /**
+     * @param in      The stream to read the data from.
+     * @param csSpecs The checksum specifications, salted or unsalted, for the checksums to calculate.
+     */
+    public ChecksumCalculatingInputStream(InputStream in, List<ChecksumSpecTYPE> csSpecs) {
+        super(in);
+        this.calculators = ChecksumUtils.createCalculators(csSpecs, false);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            endOfStream = true;
+        } else {
+            byte[] singleByte = {(byte) b};
+            for (ChecksumUtils.ChecksumCalculator calculator : calculators) {
+                calculator.update(singleByte, 0, 1);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int bytesRead = super.read(bytes, offset, length);
+        if (bytesRead == -1) {
+            endOfStream = true;
+        } else {
+            for (ChecksumUtils.ChecksumCalculator calculator : calculators) {
+                calculator.update(bytes, offset, bytesRead);
+            }
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Skipping is done by reading the skipped data, so it is included in the checksums.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 1))];
+        long skipped = 0;
+        while (skipped < n) {
+            int bytesRead = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (bytesRead == -1) {
+                break;
+            }
+            skipped += bytesRead;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // Marking is not supported, as the data already given to the checksum calculations cannot be taken back.
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return The checksums in hexadecimal of all the data in the stream, in the same order as the checksum
+     * specifications.
+     * @throws IllegalStateException If the stream has not been read to the end.
+     */
+    public List<String> getChecksums() {
+        if (!endOfStream) {
+            throw new IllegalStateException("The checksums are only available when the stream has been read to the end.");
+        }
+        if (checksums == null) {
+            checksums = ChecksumUtils.finish(calculators);
+        }
+        return checksums;
+    }
+}
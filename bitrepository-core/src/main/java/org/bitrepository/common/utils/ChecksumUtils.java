@@ -27,9 +27,13 @@ package org.bitrepository.common.utils;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.filestore.DefaultFileInfo;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.protocol.CoordinationLayerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -37,17 +41,69 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.Key;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility class for handling checksum calculations.
  * Uses the HMAC method for calculating the checksums with salt.
+ * <p/>
+ * The MessageDigest and Mac instances and the stream read buffers are cached per thread, so repeated calculations do
+ * not look up the algorithms or allocate buffers again. Files are read through a FileChannel into a direct buffer
+ * from a small shared pool, so the native memory used for the buffers is bounded independently of the number of
+ * threads calculating checksums. When all the pooled buffers are in use, the file is read as a stream instead, since
+ * reading a FileChannel into a heap buffer makes the JDK cache a temporary direct buffer in the reading thread.
  */
 public final class ChecksumUtils {
-    private static final int BYTE_ARRAY_SIZE_FOR_DIGEST = 4096;
+    private static final Logger log = LoggerFactory.getLogger(ChecksumUtils.class);
+    /** The size of the buffer used when reading from an input stream. */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    /** The size of the direct buffer used when reading files through a FileChannel. */
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+    /** The maximum number of direct file buffers. Further concurrent calculations read the file as a stream. */
+    static final int MAX_DIRECT_FILE_BUFFERS = 4;
+
+    /**
+     * The JCA names of the algorithms. The 'SHA' algorithms need a dash, '-', after the SHA, and the 'HMAC'
+     * algorithms need the underscore, '_', removed, compared to the protocol defined algorithm names.
+     */
+    private static final Map<ChecksumType, String> ALGORITHM_NAMES = new EnumMap<>(ChecksumType.class);
+
+    static {
+        for (ChecksumType checksumType : ChecksumType.values()) {
+            String name = checksumType.name();
+            if (name.startsWith("SHA")) {
+                name = name.replace("SHA", "SHA-");
+            } else {
+                name = name.replace("_", "");
+            }
+            ALGORITHM_NAMES.put(checksumType, name);
+        }
+    }
+
+    private static final ThreadLocal<Map<ChecksumType, MessageDigest>> messageDigests =
+            ThreadLocal.withInitial(() -> new EnumMap<>(ChecksumType.class));
+    private static final ThreadLocal<Map<ChecksumType, Mac>> macs =
+            ThreadLocal.withInitial(() -> new EnumMap<>(ChecksumType.class));
+    private static final ThreadLocal<byte[]> streamBuffers = ThreadLocal.withInitial(() -> new byte[STREAM_BUFFER_SIZE]);
+    private static final BlockingQueue<ByteBuffer> directFileBuffers =
+            new ArrayBlockingQueue<>(MAX_DIRECT_FILE_BUFFERS);
+    private static final AtomicInteger allocatedDirectFileBuffers = new AtomicInteger();
 
     private ChecksumUtils() {
     }
@@ -60,11 +116,101 @@ public final class ChecksumUtils {
      * @return The checksum of the file in hexadecimal.
      */
     public static String generateChecksum(File file, ChecksumSpecTYPE csSpec) {
+        return generateChecksum(file.toPath(), csSpec);
+    }
+
+    /**
+     * Computes the checksum for a file based on the given checksum algorithm, where the computation is salted.
+     * The file is read through a FileChannel into a large, pooled direct buffer.
+     *
+     * @param path   The file to calculate the checksum for.
+     * @param csSpec The checksum specification for the calculation of the checksum.
+     * @return The checksum of the file in hexadecimal.
+     */
+    public static String generateChecksum(Path path, ChecksumSpecTYPE csSpec) {
+        return generateChecksums(path, List.of(csSpec)).get(0);
+    }
+
+    /**
+     * Computes several checksums of a file in a single read of the file. Each block read from the file is given to
+     * all the checksum calculations.
+     *
+     * @param file    The file to calculate the checksums for.
+     * @param csSpecs The checksum specifications, salted or unsalted, for the checksums to calculate.
+     * @return The checksums of the file in hexadecimal, in the same order as the checksum specifications.
+     */
+    public static List<String> generateChecksums(File file, List<ChecksumSpecTYPE> csSpecs) {
+        return generateChecksums(file.toPath(), csSpecs);
+    }
+
+    /**
+     * Computes several checksums of a file in a single read of the file. Each block read from the file is given to
+     * all the checksum calculations.
+     *
+     * @param path    The file to calculate the checksums for.
+     * @param csSpecs The checksum specifications, salted or unsalted, for the checksums to calculate.
+     * @return The checksums of the file in hexadecimal, in the same order as the checksum specifications.
+     */
+    public static List<String> generateChecksums(Path path, List<ChecksumSpecTYPE> csSpecs) {
+        List<ChecksumCalculator> calculators = createCalculators(csSpecs);
+        long start = System.nanoTime();
+        long size;
+        ByteBuffer buffer = borrowFileBuffer();
+        try {
+            if (buffer != null) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    size = digest(channel, buffer, calculators);
+                }
+            } else {
+                try (InputStream content = new FileInputStream(path.toFile())) {
+                    size = digest(content, calculators);
+                }
+            }
+        } catch (IOException e) {
+            throw new CoordinationLayerException("Could not calculate the checksum for the file '"
+                    + path.toAbsolutePath() + "'.", e);
+        } finally {
+            returnFileBuffer(buffer);
+        }
+        logThroughput(csSpecs, path, size, System.nanoTime() - start);
+        return finish(calculators);
+    }
+
+    /**
+     * Computes several checksums of a file in a single read of the file.
+     *
+     * @param fileInfo The file to calculate the checksums for.
+     * @param csSpecs  The checksum specifications, salted or unsalted, for the checksums to calculate.
+     * @return The checksums of the file in hexadecimal, in the same order as the checksum specifications.
+     * @see #generateChecksums(Path, List)
+     */
+    public static List<String> generateChecksums(FileInfo fileInfo, List<ChecksumSpecTYPE> csSpecs) {
+        if (fileInfo instanceof DefaultFileInfo) {
+            return generateChecksums(((DefaultFileInfo) fileInfo).getFile(), csSpecs);
+        }
+        try (InputStream content = fileInfo.getInputStream()) {
+            return generateChecksums(content, csSpecs);
+        } catch (IOException e) {
+            throw new CoordinationLayerException("Could not calculate the checksum for the file '" + fileInfo.getFileID() + "'.", e);
+        }
+    }
+
+    /**
+     * Computes several checksums of the content of an input stream in a single read of the stream. The input stream
+     * is not closed.
+     *
+     * @param content The input-stream for the data to calculate the checksums of.
+     * @param csSpecs The checksum specifications, salted or unsalted, for the checksums to calculate.
+     * @return The checksums of the content in hexadecimal, in the same order as the checksum specifications.
+     */
+    public static List<String> generateChecksums(InputStream content, List<ChecksumSpecTYPE> csSpecs) {
+        List<ChecksumCalculator> calculators = createCalculators(csSpecs);
         try {
-            return generateChecksum(new FileInputStream(file), csSpec);
+            digest(content, calculators);
         } catch (IOException e) {
-            throw new CoordinationLayerException("Could not calculate the checksum for the file '" + file.getAbsolutePath() + "'.", e);
+            throw new CoordinationLayerException("Cannot calculate the checksum.", e);
         }
+        return finish(calculators);
     }
 
     /**
@@ -75,11 +221,7 @@ public final class ChecksumUtils {
      * @return The checksum of the file in hexadecimal.
      */
     public static String generateChecksum(FileInfo fileInfo, ChecksumSpecTYPE csSpec) {
-        try {
-            return generateChecksum(fileInfo.getInputStream(), csSpec);
-        } catch (IOException e) {
-            throw new CoordinationLayerException("Could not calculate the checksum for the file '" + fileInfo.getFileID() + "'.", e);
-        }
+        return generateChecksums(fileInfo, List.of(csSpec)).get(0);
     }
 
     /**
@@ -110,6 +252,7 @@ public final class ChecksumUtils {
 
     /**
      * Computes a checksum from an input-stream based on a checksum-algorithm specification with optional salt.
+     * The input stream is not closed.
      *
      * @param content The input-stream for the data to calculate the checksum of.
      * @param csSpec  The algorithm to use for calculation together wih a optional salt. If it is not prefixed with 'Hmac', then it is
@@ -117,93 +260,256 @@ public final class ChecksumUtils {
      * @return The HMAC calculated checksum in hexadecimal.
      */
     public static String generateChecksum(InputStream content, ChecksumSpecTYPE csSpec) {
-        byte[] digest;
-        ChecksumType algorithm = csSpec.getChecksumType();
+        return generateChecksums(content, List.of(csSpec)).get(0);
+    }
 
+    /**
+     * Reads the rest of the stream into the calculators.
+     *
+     * @return The number of bytes read.
+     */
+    private static long digest(InputStream content, List<ChecksumCalculator> calculators) throws IOException {
+        byte[] bytes = streamBuffers.get();
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = content.read(bytes)) >= 0) {
+            for (ChecksumCalculator calculator : calculators) {
+                calculator.update(bytes, 0, bytesRead);
+            }
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    /**
+     * Reads the rest of the channel into the calculators through the given direct buffer.
+     *
+     * @return The number of bytes read.
+     */
+    private static long digest(FileChannel channel, ByteBuffer buffer, List<ChecksumCalculator> calculators)
+            throws IOException {
+        long total = 0;
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            total += buffer.remaining();
+            for (ChecksumCalculator calculator : calculators) {
+                buffer.rewind();
+                calculator.update(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * @return A direct buffer from the pool, a new direct buffer if fewer than the maximum number have been allocated,
+     * or else null, when all the direct buffers are in use.
+     */
+    static ByteBuffer borrowFileBuffer() {
+        ByteBuffer buffer = directFileBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocatedDirectFileBuffers.getAndUpdate(n -> n < MAX_DIRECT_FILE_BUFFERS ? n + 1 : n)
+                < MAX_DIRECT_FILE_BUFFERS) {
+            return ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        }
+        return null;
+    }
+
+    /**
+     * @param buffer The buffer borrowed from the pool, or null if none was borrowed.
+     */
+    static void returnFileBuffer(ByteBuffer buffer) {
+        if (buffer != null) {
+            directFileBuffers.offer(buffer);
+        }
+    }
+
+    static List<String> finish(List<ChecksumCalculator> calculators) {
+        List<String> checksums = new ArrayList<>(calculators.size());
+        for (ChecksumCalculator calculator : calculators) {
+            checksums.add(Base16Utils.decodeBase16(calculator.finish()));
+        }
+        return checksums;
+    }
+
+    private static void logThroughput(List<ChecksumSpecTYPE> csSpecs, Path path, long size, long elapsedNanos) {
+        if (log.isDebugEnabled()) {
+            List<ChecksumType> checksumTypes = new ArrayList<>(csSpecs.size());
+            for (ChecksumSpecTYPE csSpec : csSpecs) {
+                checksumTypes.add(csSpec.getChecksumType());
+            }
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            log.debug("Calculated {} checksums of '{}' ({} bytes) in {} ms, {} MB/s", checksumTypes, path, size,
+                    elapsedNanos / 1_000_000, String.format("%.1f", size / seconds / (1024 * 1024)));
+        }
+    }
+
+    /**
+     * Creates the calculators for the checksum specifications. The algorithm instances cached for the current thread
+     * are used for the first specification of each algorithm, while new instances are created for further
+     * specifications with the same algorithm, e.g. HMACs with different salts.
+     *
+     * @param csSpecs The checksum specifications.
+     * @return The calculators ready to receive the data, in the same order as the specifications.
+     */
+    private static List<ChecksumCalculator> createCalculators(List<ChecksumSpecTYPE> csSpecs) {
+        return createCalculators(csSpecs, true);
+    }
+
+    /**
+     * Creates the calculators for the checksum specifications.
+     *
+     * @param csSpecs        The checksum specifications.
+     * @param useThreadCache Whether the algorithm instances cached for the current thread may be used. Must be false
+     *                       if the calculators outlive the call creating them, as other calculations in the thread would
+     *                       otherwise reset them.
+     * @return The calculators ready to receive the data, in the same order as the specifications.
+     */
+    static List<ChecksumCalculator> createCalculators(List<ChecksumSpecTYPE> csSpecs, boolean useThreadCache) {
+        ArgumentValidator.checkNotNullOrEmpty(csSpecs, "csSpecs");
+        List<ChecksumCalculator> calculators = new ArrayList<>(csSpecs.size());
+        Set<ChecksumType> usedTypes = EnumSet.noneOf(ChecksumType.class);
+        for (ChecksumSpecTYPE csSpec : csSpecs) {
+            boolean firstOfType = usedTypes.add(csSpec.getChecksumType());
+            calculators.add(createCalculator(csSpec, useThreadCache && firstOfType));
+        }
+        return calculators;
+    }
+
+    /**
+     * Creates the calculator for a checksum specification.
+     *
+     * @param csSpec         The checksum specification.
+     * @param useThreadCache Whether to use the algorithm instance cached for the current thread.
+     * @return The calculator ready to receive the data.
+     */
+    private static ChecksumCalculator createCalculator(ChecksumSpecTYPE csSpec, boolean useThreadCache) {
+        ChecksumType algorithm = csSpec.getChecksumType();
         try {
             if (requiresSalt(algorithm)) {
                 if (csSpec.getChecksumSalt() == null || csSpec.getChecksumSalt().length == 0) {
                     throw new IllegalArgumentException("Cannot perform a HMAC checksum calculation without salt as requested:" + csSpec);
                 }
-                digest = calculateChecksumWithHMAC(content, algorithm, csSpec.getChecksumSalt());
+                return new MacCalculator(getMac(algorithm, csSpec.getChecksumSalt(), useThreadCache));
             } else {
                 if (csSpec.getChecksumSalt() != null && csSpec.getChecksumSalt().length > 0) {
                     throw new IllegalArgumentException(
                             "Cannot perform a message-digest checksum calculation with salt " + "as requested:" + csSpec);
                 }
-                digest = calculateChecksumWithMessageDigest(content, algorithm);
+                return new MessageDigestCalculator(getMessageDigest(algorithm, useThreadCache));
             }
         } catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException("The checksum algorithm '" + csSpec.getChecksumType().name() + "' is not supported.");
         }
-
-        return Base16Utils.decodeBase16(digest);
     }
 
     /**
-     * Computes the checksum for a given input stream through the use of message digestion on the checksum
-     * type as algorithm.
-     * <p>
-     * NOTE: the 'SHA' algorithm need a dash, '-', after the SHA, which is currently not in the org.bitrepository.org.bitrepository
-     * .protocol defined
-     * algorithm names.
-     *
-     * @param content The input stream with the content to calculate the checksum of.
-     * @param csType  The type of checksum to calculate, e.g. the algorithm.
-     * @return The calculated checksum.
+     * @param csType         The type of checksum to calculate, e.g. the algorithm.
+     * @param useThreadCache Whether to use the instance cached for the current thread, or create a new instance.
+     * @return The message digest, reset to calculate a new checksum.
      */
-    private static byte[] calculateChecksumWithMessageDigest(InputStream content, ChecksumType csType) {
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE_FOR_DIGEST];
-        int bytesRead;
-
-        try {
-            String algorithmName = csType.name();
-            if (algorithmName.startsWith("SHA")) {
-                algorithmName = algorithmName.replace("SHA", "SHA-");
-            }
+    private static MessageDigest getMessageDigest(ChecksumType csType, boolean useThreadCache)
+            throws NoSuchAlgorithmException {
+        if (!useThreadCache) {
+            return MessageDigest.getInstance(ALGORITHM_NAMES.get(csType));
+        }
+        Map<ChecksumType, MessageDigest> digests = messageDigests.get();
+        MessageDigest digester = digests.get(csType);
+        if (digester == null) {
+            digester = MessageDigest.getInstance(ALGORITHM_NAMES.get(csType));
+            digests.put(csType, digester);
+        } else {
+            digester.reset();
+        }
+        return digester;
+    }
 
-            MessageDigest digester = MessageDigest.getInstance(algorithmName);
-            while ((bytesRead = content.read(bytes)) > 0) {
-                digester.update(bytes, 0, bytesRead);
+    /**
+     * @param csType         The type of checksum to calculate, e.g. the algorithm.
+     * @param salt           The salt for key encrypting the HMAC calculation.
+     * @param useThreadCache Whether to use the instance cached for the current thread, or create a new instance.
+     * @return The mac, initialized with the salt.
+     */
+    private static Mac getMac(ChecksumType csType, byte[] salt, boolean useThreadCache)
+            throws NoSuchAlgorithmException {
+        String algorithmName = ALGORITHM_NAMES.get(csType);
+        Mac messageAuthenticationCode;
+        if (useThreadCache) {
+            Map<ChecksumType, Mac> threadMacs = macs.get();
+            messageAuthenticationCode = threadMacs.get(csType);
+            if (messageAuthenticationCode == null) {
+                messageAuthenticationCode = Mac.getInstance(algorithmName);
+                threadMacs.put(csType, messageAuthenticationCode);
             }
-            return digester.digest();
-        } catch (Exception e) {
-            throw new CoordinationLayerException("Cannot calculate the checksum.", e);
+        } else {
+            messageAuthenticationCode = Mac.getInstance(algorithmName);
+        }
+        try {
+            messageAuthenticationCode.init(new SecretKeySpec(salt, algorithmName));
+        } catch (InvalidKeyException e) {
+            throw new CoordinationLayerException(
+                    "Cannot calculate the checksum with algorithm '" + algorithmName + "' and salt '" + Arrays.toString(salt) + "'", e);
         }
+        return messageAuthenticationCode;
     }
 
     /**
-     * Calculation of the checksum for a given input stream through the use of HMAC based on the checksum type as
-     * algorithm and the optional salt.
-     * <p>
-     * NOTE: the 'HMAC' algorithms need to have the underscore, '_', after the HMAC removed, which is currently in the
-     * org.bitrepository.org.bitrepository.protocol defined algorithm names.
-     *
-     * @param content The input stream with the content to calculate the checksum of.
-     * @param csType  The type of checksum to calculate, e.g. the algorithm.
-     * @param salt    The salt for key encrypting the HMAC calculation.
-     * @return The calculated checksum.
+     * Common interface for the message digest and HMAC calculations.
      */
-    private static byte[] calculateChecksumWithHMAC(InputStream content, ChecksumType csType, byte[] salt) {
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE_FOR_DIGEST];
-        int bytesRead;
-        String algorithmName = csType.name().replace("_", "");
+    interface ChecksumCalculator {
+        void update(byte[] bytes, int offset, int length);
 
-        try {
-            Mac messageAuthenticationCode = Mac.getInstance(algorithmName);
-            Key key = new SecretKeySpec(salt, algorithmName);
+        void update(ByteBuffer buffer);
 
-            // digest the content for calculating the checksum.
-            messageAuthenticationCode.init(key);
-            while ((bytesRead = content.read(bytes)) > 0) {
-                messageAuthenticationCode.update(bytes, 0, bytesRead);
-            }
+        byte[] finish();
+    }
+
+    private static final class MessageDigestCalculator implements ChecksumCalculator {
+        private final MessageDigest digester;
+
+        private MessageDigestCalculator(MessageDigest digester) {
+            this.digester = digester;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            digester.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            digester.update(buffer);
+        }
+
+        @Override
+        public byte[] finish() {
+            return digester.digest();
+        }
+    }
 
+    private static final class MacCalculator implements ChecksumCalculator {
+        private final Mac messageAuthenticationCode;
+
+        private MacCalculator(Mac messageAuthenticationCode) {
+            this.messageAuthenticationCode = messageAuthenticationCode;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            messageAuthenticationCode.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            messageAuthenticationCode.update(buffer);
+        }
+
+        @Override
+        public byte[] finish() {
             return messageAuthenticationCode.doFinal();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new CoordinationLayerException(
-                    "Cannot calculate the checksum with algorithm '" + algorithmName + "' and salt '" + Arrays.toString(salt) + "'", e);
         }
     }
 
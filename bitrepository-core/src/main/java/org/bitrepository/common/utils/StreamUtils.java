@@ -24,6 +24,7 @@
  */
 package org.bitrepository.common.utils;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -63,4 +64,85 @@ public final class StreamUtils {
         }
     }
 
+    /**
+     * Limits a stream to a part of its content. The data before the part is skipped.
+     *
+     * @param in     The stream.
+     * @param offset The offset of the part in the stream.
+     * @param length The length of the part. A part extending past the end of the stream ends with the stream.
+     * @return The stream with the content of the part. Closing it closes the given stream.
+     * @throws IOException If the data before the part cannot be skipped.
+     */
+    public static InputStream getStreamPart(InputStream in, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid part of stream, offset: " + offset + ", length: " + length);
+        }
+        long remainingToSkip = offset;
+        while (remainingToSkip > 0) {
+            long skipped = in.skip(remainingToSkip);
+            if (skipped <= 0) {
+                // Skip may stop before the end of the stream, so make sure it is not the end.
+                if (in.read() == -1) {
+                    break;
+                }
+                skipped = 1;
+            }
+            remainingToSkip -= skipped;
+        }
+        return new LimitedInputStream(in, length);
+    }
+
+    /**
+     * Stream delivering at most a given number of bytes from another stream.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int bytesRead = super.read(b, off, (int) Math.min(len, remaining));
+            if (bytesRead > 0) {
+                remaining -= bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import org.bitrepository.common.ArgumentValidator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Input stream, which limits the rate at which the data is read through a {@link ByteRateLimiter}.
+ * The limiter may be shared by several streams, which then share its budget.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    private final ByteRateLimiter limiter;
+
+    /**
+     * @param in      The stream to read from.
+     * @param limiter The limiter for the rate of reading.
+     */
+    public ThrottledInputStream(InputStream in, ByteRateLimiter limiter) {
+        super(in);
+        ArgumentValidator.checkNotNull(in, "InputStream in");
+        ArgumentValidator.checkNotNull(limiter, "ByteRateLimiter limiter");
+        this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int res = super.read();
+        if (res != -1) {
+            throttle(1);
+        }
+        return res;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int res = super.read(b, off, len);
+        throttle(res);
+        return res;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped data is not read, so it does not use the budget.
+        return super.skip(n);
+    }
+
+    /**
+     * Waits until the read bytes are within the budget.
+     *
+     * @param bytes The number of bytes read.
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    private void throttle(long bytes) throws InterruptedIOException {
+        try {
+            limiter.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the read rate limit.");
+        }
+    }
+}
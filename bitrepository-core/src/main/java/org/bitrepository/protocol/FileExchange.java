@@ -24,6 +24,10 @@
  */
 package org.bitrepository.protocol;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.ChecksumUtils;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -55,6 +59,41 @@ public interface FileExchange {
      */
     URL putFile(File file);
 
+    /**
+     * Places a given file onto the file exchange, and verifies that the uploaded data has the given checksum.
+     * If the checksum doesn't match, the uploaded file is removed again.
+     * <p/>
+     * The default implementation reads the uploaded file back through {@link #getFile(URL)}. Implementations should
+     * instead calculate the checksum while the file is transferred.
+     *
+     * @param file     The file to be put into the file exchange.
+     * @param checksum The expected checksum of the file, or null for no verification.
+     * @return The url for the file, when it has been placed onto the file exchange.
+     * @throws CoordinationLayerException If the uploaded data does not have the expected checksum.
+     */
+    default URL putFile(File file, ChecksumDataForFileTYPE checksum) {
+        URL url = putFile(file);
+        if (checksum != null) {
+            String actualChecksum;
+            try (InputStream in = getFile(url)) {
+                actualChecksum = ChecksumUtils.generateChecksum(in, checksum.getChecksumSpec());
+            } catch (IOException e) {
+                throw new CoordinationLayerException("Could not read back the uploaded file '" + url + "'.", e);
+            }
+            try {
+                verifyChecksum(url.toExternalForm(), checksum, actualChecksum);
+            } catch (CoordinationLayerException e) {
+                try {
+                    deleteFile(url);
+                } catch (IOException | URISyntaxException deleteFailure) {
+                    e.addSuppressed(deleteFailure);
+                }
+                throw e;
+            }
+        }
+        return url;
+    }
+
     /**
      * Retrieves the data from a given url and puts it onto a given output-stream.
      *
@@ -81,6 +120,41 @@ public interface FileExchange {
      */
     void getFile(File outputFile, String fileAddress);
 
+    /**
+     * Method for downloading a file at a given address, and verifying that the downloaded data has the given checksum.
+     * <p/>
+     * The default implementation reads the downloaded file again. Implementations should instead calculate the
+     * checksum while the file is transferred.
+     *
+     * @param outputFile  The file where the data at the address should be placed.
+     * @param fileAddress The address where the data should be downloaded from.
+     * @param checksum    The expected checksum of the data, or null for no verification.
+     * @throws CoordinationLayerException If the downloaded data does not have the expected checksum.
+     */
+    default void getFile(File outputFile, String fileAddress, ChecksumDataForFileTYPE checksum) {
+        getFile(outputFile, fileAddress);
+        if (checksum != null) {
+            verifyChecksum(fileAddress, checksum,
+                    ChecksumUtils.generateChecksum(outputFile, checksum.getChecksumSpec()));
+        }
+    }
+
+    /**
+     * Verifies the checksum calculated of transferred data.
+     *
+     * @param location       The location of the transferred data, for the error message.
+     * @param expected       The expected checksum.
+     * @param actualChecksum The checksum of the data in hexadecimal.
+     * @throws CoordinationLayerException If the checksums differ.
+     */
+    static void verifyChecksum(String location, ChecksumDataForFileTYPE expected, String actualChecksum) {
+        String expectedChecksum = Base16Utils.decodeBase16(expected.getChecksumValue());
+        if (!expectedChecksum.equals(actualChecksum)) {
+            throw new CoordinationLayerException("The checksum of the data transferred to or from '" + location
+                    + "' was '" + actualChecksum + "', but '" + expectedChecksum + "' was expected.");
+        }
+    }
+
     /**
      * Creates the file-exchange URL based on a filename.
      *
@@ -48,14 +48,16 @@ import org.bitrepository.protocol.messagebus.logger.GetStatusMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.MessageLoggerProvider;
 import org.bitrepository.protocol.messagebus.logger.PutFileMessageLogger;
 import org.bitrepository.protocol.messagebus.logger.ReplaceFileMessageLogger;
+import org.bitrepository.protocol.security.MessageVerificationContext;
 import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.settings.referencesettings.GeneralSettings;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
 import org.bitrepository.settings.repositorysettings.MessageBusConfiguration;
-import org.bouncycastle.cms.SignerId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
@@ -67,12 +69,13 @@ import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -95,6 +98,18 @@ public class ActiveMQMessageBus implements MessageBus {
      */
     public static final String MESSAGE_SIGNATURE_KEY = "org.bitrepository.messages.signature";
     public static final String MESSAGE_TO_KEY = "org.bitrepository.messages.to";
+    /**
+     * The key for the encoding of the message body, if it isn't plain XML in a text message.
+     */
+    public static final String MESSAGE_ENCODING_KEY = "org.bitrepository.messages.encoding";
+    /**
+     * The key for announcing the message encoding the sending component accepts in addition to plain XML.
+     */
+    public static final String ACCEPT_ENCODING_KEY = "org.bitrepository.messages.acceptencoding";
+    /**
+     * The default size in bytes of the XML of a message, below which the compact encoding isn't used.
+     */
+    private static final int DEFAULT_COMPACT_ENCODING_MINIMUM_SIZE = 8192;
     /**
      * Default transacted.
      */
@@ -106,12 +121,23 @@ public class ActiveMQMessageBus implements MessageBus {
     private static final String CONSUMER_KEY_SEPARATOR = "#";
 
     /**
-     * The session for sending messages. Should not be the same as the consumer session,
-     * as sessions are not thread safe. This also means the session should be used in a synchronized manor.
-     * TODO Switch to use a session pool/producer poll to allow multithreaded message sending, see
-     *  https://sbforge.org/jira/browse/BITMAG-357.
+     * The sessions and producers for sending messages. Should not be the same as the consumer session,
+     * as sessions are not thread safe. This also means each session should be used in a synchronized manor.
+     * The producer used for a message is selected by the destination of the message, so messages to the same
+     * destination are sent in order.
      */
-    private final Session producerSession;
+    private final List<ProducerChannel> producerChannels = new ArrayList<>();
+
+    /**
+     * Whether compact encoding of messages is enabled for this component.
+     */
+    private final boolean compactEncoding;
+    private final int compactEncodingMinimumSize;
+    /**
+     * The components which have announced they accept the compact encoding, mapped to the destination they receive
+     * their replies on.
+     */
+    private final Map<String, String> compactEncodingComponents = new ConcurrentHashMap<>();
 
     /**
      * The session for receiving messages.
@@ -125,25 +151,30 @@ public class ActiveMQMessageBus implements MessageBus {
      */
     private final Map<String, MessageConsumer> consumers = Collections
             .synchronizedMap(new HashMap<>());
+    /**
+     * The destination IDs of the consumers using the identify request selector, mapped from the consumer key.
+     * These consumers are recreated when the selector changes.
+     */
+    private final Map<String, String> selectorConsumerDestinations = new HashMap<>();
     /**
      * Map of destinations, mapping from ID to destination.
      */
-    private final Map<String, Destination> destinations = new HashMap<>();
+    private final Map<String, Destination> destinations = Collections.synchronizedMap(new HashMap<>());
     /**
      * The configuration for the connection to the activeMQ.
      */
     private final MessageBusConfiguration configuration;
     private final JaxbHelper jaxbHelper;
+    /**
+     * Whether messages are validated as part of the (un)marshalling instead of in a separate parse.
+     */
+    private final boolean singlePassValidation;
     private final Connection connection;
     private final SecurityManager securityManager;
 
-    private final Set<String> componentFilter = new HashSet<>();
-    private final Set<String> collectionFilter = new HashSet<>();
+    private final Set<String> componentFilter = ConcurrentHashMap.newKeySet();
+    private final Set<String> collectionFilter = ConcurrentHashMap.newKeySet();
 
-    /**
-     * The single producer used to send all messages. The destination need to be sent on the messages.
-     */
-    private final MessageProducer producer;
     /**
      * Takes care of handling the further processing by the listeners in separated thread.
      */
@@ -171,6 +202,15 @@ public class ActiveMQMessageBus implements MessageBus {
         clientID = settings.getComponentID();
         String schemaLocation = "BitRepositoryMessages.xsd";
         jaxbHelper = new JaxbHelper("xsd/", schemaLocation);
+        GeneralSettings generalSettings = settings.getReferenceSettings().getGeneralSettings();
+        singlePassValidation = generalSettings != null && generalSettings.isSetSinglePassMessageValidation()
+                && generalSettings.isSinglePassMessageValidation();
+        compactEncoding = generalSettings != null && generalSettings.isSetCompactMessageEncoding();
+        if (compactEncoding && generalSettings.getCompactMessageEncoding().isSetMinimumSize()) {
+            compactEncodingMinimumSize = generalSettings.getCompactMessageEncoding().getMinimumSize().intValue();
+        } else {
+            compactEncodingMinimumSize = DEFAULT_COMPACT_ENCODING_MINIMUM_SIZE;
+        }
         ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(configuration.getURL());
         registerCustomMessageLoggers();
         try {
@@ -178,10 +218,14 @@ public class ActiveMQMessageBus implements MessageBus {
             connection.setClientID(clientID);
             connection.setExceptionListener(new MessageBusExceptionListener());
 
-            producerSession = connection.createSession(TRANSACTED, Session.AUTO_ACKNOWLEDGE);
+            int numberOfProducerSessions = 1;
+            if (generalSettings != null && generalSettings.isSetMessageProducerSessions()) {
+                numberOfProducerSessions = generalSettings.getMessageProducerSessions().intValue();
+            }
+            for (int i = 0; i < numberOfProducerSessions; i++) {
+                producerChannels.add(new ProducerChannel(connection.createSession(TRANSACTED, Session.AUTO_ACKNOWLEDGE)));
+            }
             consumerSession = connection.createSession(TRANSACTED, Session.AUTO_ACKNOWLEDGE);
-            producer = producerSession.createProducer(null);
-            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
 
             startListeningForMessages();
         } catch (JMSException e) {
@@ -190,8 +234,8 @@ public class ActiveMQMessageBus implements MessageBus {
         log.debug("ActiveMQConnection initialized for '{}'", configuration);
 
         MessageThreadPools messageThreadPoolConfig = null;
-        if (settings.getReferenceSettings().getGeneralSettings() != null) {
-            messageThreadPoolConfig = settings.getReferenceSettings().getGeneralSettings().getMessageThreadPools();
+        if (generalSettings != null) {
+            messageThreadPoolConfig = generalSettings.getMessageThreadPools();
         }
         receivedMessageHandler = new ReceivedMessageHandler(messageThreadPoolConfig);
     }
@@ -244,14 +288,17 @@ public class ActiveMQMessageBus implements MessageBus {
                     "Unable to remove listener '" + listener + "' from destinationID '" + destinationID + "'", e);
         }
         consumers.remove(getConsumerHash(destinationID, listener));
+        selectorConsumerDestinations.remove(getConsumerHash(destinationID, listener));
     }
 
     @Override
     public void close() throws JMSException {
         receivedMessageHandler.close();
         log.info("Closing message bus: {}", configuration);
-        producerSession.close();
-        log.debug("Producer session closed.");
+        for (ProducerChannel producerChannel : producerChannels) {
+            producerChannel.session.close();
+        }
+        log.debug("Producer sessions closed.");
         consumerSession.close();
         log.debug("Consumer session closed.");
         connection.close();
@@ -268,7 +315,12 @@ public class ActiveMQMessageBus implements MessageBus {
     /**
      * Send a message using ActiveMQ.
      * <p/>
-     * Note that the method is synchronized to avoid multithreaded usage of the providerSession.
+     * The message is serialized, validated and signed in the calling thread. Only the sending itself is synchronized
+     * on the producer session used for the destination, to avoid multithreaded usage of the session.
+     * <p/>
+     * Messages to a recipient which has announced it accepts the compact encoding, and sent to the recipient's own
+     * destination, are sent compressed in a bytes message, if compact encoding is enabled and the message is large
+     * enough. The signature then covers the compressed bytes.
      *
      * @param destinationID Name of destination to send message to.
      * @param replyTo       The queue to reply to.
@@ -277,7 +329,7 @@ public class ActiveMQMessageBus implements MessageBus {
      * @param correlationID The correlation ID of the message.
      * @param content       JAXB-serializable object to send.
      */
-    private synchronized void sendMessage(String destinationID,
+    private void sendMessage(String destinationID,
                                           String replyTo,
                                           String recipient,
                                           String collectionID,
@@ -285,24 +337,50 @@ public class ActiveMQMessageBus implements MessageBus {
                                           Message content) {
         String xmlContent = null;
         try {
-            xmlContent = jaxbHelper.serializeToXml(content);
-            jaxbHelper.validate(new ByteArrayInputStream(xmlContent.getBytes(StandardCharsets.UTF_8)));
+            if (singlePassValidation) {
+                xmlContent = jaxbHelper.serializeAndValidateToXml(content);
+            } else {
+                xmlContent = jaxbHelper.serializeToXml(content);
+                jaxbHelper.validate(new ByteArrayInputStream(xmlContent.getBytes(StandardCharsets.UTF_8)));
+            }
             log.trace("The following message is sent to the destination '{}' on message-bus '{}': \n{}",
                     destinationID, configuration.getName(), xmlContent);
 
-            TextMessage msg = producerSession.createTextMessage(xmlContent);
-            String stringData = msg.getText();
-            String messageSignature = securityManager.signMessage(stringData);
-            msg.setStringProperty(MESSAGE_SIGNATURE_KEY, messageSignature);
-            msg.setStringProperty(MESSAGE_TYPE_KEY, content.getClass().getSimpleName());
-            if (recipient != null) {
-                msg.setStringProperty(MESSAGE_TO_KEY, recipient);
+            byte[] compactContent = null;
+            String messageSignature;
+            if (useCompactEncoding(destinationID, recipient, xmlContent)) {
+                compactContent = DeflateMessageCodec.compress(xmlContent.getBytes(StandardCharsets.UTF_8));
+                messageSignature = securityManager.signMessage(compactContent);
+            } else {
+                messageSignature = securityManager.signMessage(xmlContent);
             }
-            msg.setStringProperty(COLLECTION_ID_KEY, collectionID);
-            msg.setJMSCorrelationID(correlationID);
-            msg.setJMSReplyTo(getDestination(replyTo, producerSession));
 
-            producer.send(getDestination(destinationID, producerSession), msg);
+            ProducerChannel producerChannel = getProducerChannel(destinationID);
+            synchronized (producerChannel) {
+                Session producerSession = producerChannel.session;
+                javax.jms.Message msg;
+                if (compactContent != null) {
+                    BytesMessage bytesMessage = producerSession.createBytesMessage();
+                    bytesMessage.writeBytes(compactContent);
+                    bytesMessage.setStringProperty(MESSAGE_ENCODING_KEY, DeflateMessageCodec.ENCODING_NAME);
+                    msg = bytesMessage;
+                } else {
+                    msg = producerSession.createTextMessage(xmlContent);
+                }
+                if (compactEncoding) {
+                    msg.setStringProperty(ACCEPT_ENCODING_KEY, DeflateMessageCodec.ENCODING_NAME);
+                }
+                msg.setStringProperty(MESSAGE_SIGNATURE_KEY, messageSignature);
+                msg.setStringProperty(MESSAGE_TYPE_KEY, content.getClass().getSimpleName());
+                if (recipient != null) {
+                    msg.setStringProperty(MESSAGE_TO_KEY, recipient);
+                }
+                msg.setStringProperty(COLLECTION_ID_KEY, collectionID);
+                msg.setJMSCorrelationID(correlationID);
+                msg.setJMSReplyTo(getDestination(replyTo, producerSession));
+
+                producerChannel.producer.send(getDestination(destinationID, producerSession), msg);
+            }
         } catch (SAXException e) {
             throw new CoordinationLayerException("Rejecting to send invalid message: " + xmlContent, e);
         } catch (Exception e) {
@@ -310,9 +388,41 @@ public class ActiveMQMessageBus implements MessageBus {
         }
     }
 
+    /**
+     * Decides whether a message should be sent in the compact encoding. This is only the case for messages to a
+     * single recipient, which has announced it accepts the compact encoding, sent to the destination the recipient
+     * receives its replies on. A message on a shared destination, e.g. the collection topic, is also received by
+     * components which may not understand the compact encoding, so it is always sent as plain XML.
+     *
+     * @param destinationID The destination the message is sent to.
+     * @param recipient     The recipient of the message, or null if the message isn't for a specific component.
+     * @param xmlContent    The XML of the message.
+     * @return Whether the message should be sent in the compact encoding.
+     */
+    private boolean useCompactEncoding(String destinationID, String recipient, String xmlContent) {
+        // The length in characters is a lower bound for the length in UTF-8 bytes.
+        return compactEncoding && recipient != null && xmlContent.length() >= compactEncodingMinimumSize
+                && destinationID.equals(compactEncodingComponents.get(recipient));
+    }
+
+    /**
+     * Selects the producer channel for the destination. The same destination always gives the same channel.
+     *
+     * @param destinationID The ID of the destination to send to.
+     * @return The producer channel to send the message through.
+     */
+    private ProducerChannel getProducerChannel(String destinationID) {
+        return producerChannels.get(Math.floorMod(destinationID.hashCode(), producerChannels.size()));
+    }
+
     /**
      * Retrieves a consumer for the specific destination id and message listener.
      * If no such consumer already exists, then it is created.
+     * <p/>
+     * Non-durable consumers on topics are created with a selector for the component and collection filters, so the
+     * broker discards identify requests for other components and collections. The selector isn't used on queues, where
+     * unselected messages would stay on the queue, nor on durable subscribers, where changing the selector would
+     * discard the stored messages.
      *
      * @param destinationID The id of the destination to consume messages from.
      * @param listener      The listener to consume the messages.
@@ -337,6 +447,9 @@ public class ActiveMQMessageBus implements MessageBus {
                         throw new IllegalArgumentException("Can not create durable subscriber on " + destinationID +
                                 " is is not a topic");
                     }
+                } else if (destination instanceof Topic) {
+                    consumer = consumerSession.createConsumer(destination, createMessageSelector());
+                    selectorConsumerDestinations.put(key, destinationID);
                 } else {
                     consumer = consumerSession.createConsumer(destination);
                 }
@@ -348,6 +461,41 @@ public class ActiveMQMessageBus implements MessageBus {
         return consumers.get(key);
     }
 
+    /**
+     * @return The selector for the current component and collection filters, or null if no filters are defined.
+     */
+    private String createMessageSelector() {
+        return IdentifyRequestSelector.create(componentFilter, collectionFilter);
+    }
+
+    /**
+     * Recreates the consumers using the identify request selector, so the selector reflects the current filters.
+     * The old consumer is closed before the new one is created, as a message published to the topic while both
+     * consumers exist would otherwise be delivered to the listener twice. Messages published in between are not
+     * received, which is acceptable as the filters are normally only set while the component starts.
+     */
+    private void rebuildSelectorConsumers() {
+        String selector = createMessageSelector();
+        log.debug("Using message selector: {}", selector);
+        for (Map.Entry<String, String> entry : selectorConsumerDestinations.entrySet()) {
+            MessageConsumer oldConsumer = consumers.get(entry.getKey());
+            try {
+                javax.jms.MessageListener jmsListener = oldConsumer.getMessageListener();
+                oldConsumer.setMessageListener(null);
+                oldConsumer.close();
+                MessageConsumer newConsumer = consumerSession.createConsumer(
+                        getDestination(entry.getValue(), consumerSession), selector);
+                if (jmsListener != null) {
+                    newConsumer.setMessageListener(jmsListener);
+                }
+                consumers.put(entry.getKey(), newConsumer);
+            } catch (JMSException e) {
+                throw new CoordinationLayerException("Could not update the message selector for destination '"
+                        + entry.getValue() + "'", e);
+            }
+        }
+    }
+
     /**
      * Creates a unique hash of the message listener and the destination id.
      *
@@ -367,6 +515,12 @@ public class ActiveMQMessageBus implements MessageBus {
      * @return The object representing that destination. Will always return the same destination object for the same destination ID.
      */
     private Destination getDestination(String destinationID, Session session) {
+        synchronized (destinations) {
+            return getOrCreateDestination(destinationID, session);
+        }
+    }
+
+    private Destination getOrCreateDestination(String destinationID, Session session) {
         Destination destination = destinations.get(destinationID);
         if (destination == null) {
             try {
@@ -401,6 +555,20 @@ public class ActiveMQMessageBus implements MessageBus {
         return destination;
     }
 
+    /**
+     * A session for sending messages together with its producer. The destination need to be set on the messages.
+     */
+    private static final class ProducerChannel {
+        private final Session session;
+        private final MessageProducer producer;
+
+        private ProducerChannel(Session session) throws JMSException {
+            this.session = session;
+            this.producer = session.createProducer(null);
+            this.producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        }
+    }
+
     /**
      * Class for handling the message bus exceptions.
      */
@@ -451,6 +619,7 @@ public class ActiveMQMessageBus implements MessageBus {
             try {
                 String recipientID = jmsMessage.getStringProperty(MESSAGE_TO_KEY);
                 type = jmsMessage.getStringProperty(MESSAGE_TYPE_KEY);
+                // Topic consumers have these filters applied by the broker, but queue and durable consumers do not.
                 if (type.startsWith("Identify") && type.endsWith("Request")) {
                     if (!componentFilter.isEmpty()) {
                         if (recipientID != null && !componentFilter.contains(recipientID)) {
@@ -467,27 +636,44 @@ public class ActiveMQMessageBus implements MessageBus {
                     }
                 }
                 String signature = jmsMessage.getStringProperty(MESSAGE_SIGNATURE_KEY);
-                text = ((TextMessage) jmsMessage).getText();
-                log.trace("Received xml message: '{}'", text);
-                jaxbHelper.validate(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
-                Message content = (Message) jaxbHelper.loadXml(
-                        Class.forName("org.bitrepository.bitrepositorymessages." + type),
-                        new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+                String encoding = jmsMessage.getStringProperty(MESSAGE_ENCODING_KEY);
+                byte[] xmlBytes;
                 log.trace("Checking signature '{}'", signature);
-                SignerId signer = securityManager.authenticateMessage(text, signature);
-                securityManager.authorizeCertificateUse(content.getFrom(), text, signature);
+                MessageVerificationContext verification;
+                if (encoding == null) {
+                    text = ((TextMessage) jmsMessage).getText();
+                    xmlBytes = text.getBytes(StandardCharsets.UTF_8);
+                    verification = securityManager.verifyMessage(text, signature);
+                } else if (DeflateMessageCodec.ENCODING_NAME.equals(encoding)) {
+                    BytesMessage bytesMessage = (BytesMessage) jmsMessage;
+                    byte[] compactContent = new byte[(int) bytesMessage.getBodyLength()];
+                    bytesMessage.readBytes(compactContent);
+                    verification = securityManager.verifyMessage(compactContent, signature);
+                    xmlBytes = DeflateMessageCodec.decompress(compactContent);
+                    text = new String(xmlBytes, StandardCharsets.UTF_8);
+                } else {
+                    throw new CoordinationLayerException("Unsupported message encoding '" + encoding + "'");
+                }
+                log.trace("Received xml message: '{}'", text);
+                Class<?> messageClass = Class.forName("org.bitrepository.bitrepositorymessages." + type);
+                Message content;
+                if (singlePassValidation) {
+                    content = (Message) jaxbHelper.loadAndValidateXml(messageClass, new ByteArrayInputStream(xmlBytes));
+                } else {
+                    jaxbHelper.validate(new ByteArrayInputStream(xmlBytes));
+                    content = (Message) jaxbHelper.loadXml(messageClass, new ByteArrayInputStream(xmlBytes));
+                }
+                securityManager.authorizeCertificateUse(content.getFrom(), verification);
                 if (content instanceof MessageRequest) {
-                    securityManager.authorizeOperation(content.getClass().getSimpleName(), text, signature,
+                    securityManager.authorizeOperation(content.getClass().getSimpleName(), verification,
                             content.getCollectionID());
                 }
+                registerAcceptedEncoding(content.getFrom(), content.getReplyTo(),
+                        jmsMessage.getStringProperty(ACCEPT_ENCODING_KEY));
                 MessageVersionValidator.validateMessageVersion(content);
                 MessageLoggerProvider.getInstance().logMessageReceived(content);
 
-                String certificateFingerprint = null;
-                if (signer != null) {
-                    certificateFingerprint = securityManager.getCertificateFingerprint(signer);
-                }
-                MessageContext messageContext = new MessageContext(certificateFingerprint);
+                MessageContext messageContext = new MessageContext(verification.getCertificateFingerprint());
                 receivedMessageHandler.deliver(messageListener, content, messageContext);
             } catch (SAXException e) {
                 log.error("Error validating message {}", jmsMessage, e);
@@ -497,6 +683,26 @@ public class ActiveMQMessageBus implements MessageBus {
         }
     }
 
+    /**
+     * Remembers whether the sender of a received message accepts the compact encoding, and the destination it
+     * receives its replies on. A component which stops announcing it, e.g. because it is downgraded, is sent plain
+     * XML again.
+     *
+     * @param componentID      The component which sent the message.
+     * @param replyTo          The destination the component receives its replies on.
+     * @param acceptedEncoding The value of the accepted encoding property of the message.
+     */
+    private void registerAcceptedEncoding(String componentID, String replyTo, String acceptedEncoding) {
+        if (componentID == null) {
+            return;
+        }
+        if (DeflateMessageCodec.ENCODING_NAME.equals(acceptedEncoding) && replyTo != null) {
+            compactEncodingComponents.put(componentID, replyTo);
+        } else {
+            compactEncodingComponents.remove(componentID);
+        }
+    }
+
     // This should be done on a per-module basis, but how?
     private void registerCustomMessageLoggers() {
         MessageLoggerProvider loggerProvider = MessageLoggerProvider.getInstance();
@@ -512,16 +718,18 @@ public class ActiveMQMessageBus implements MessageBus {
     }
 
     @Override
-    public void setComponentFilter(List<String> componentIDs) {
+    public synchronized void setComponentFilter(List<String> componentIDs) {
         log.info("Settings component filter to: {}", componentIDs);
         componentFilter.clear();
         componentFilter.addAll(componentIDs);
+        rebuildSelectorConsumers();
     }
 
     @Override
-    public void setCollectionFilter(List<String> collectionIDs) {
+    public synchronized void setCollectionFilter(List<String> collectionIDs) {
         log.info("Settings collection filter to: {}", collectionIDs);
         collectionFilter.clear();
         collectionFilter.addAll(collectionIDs);
+        rebuildSelectorConsumers();
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the XML of messages sent in the compact encoding on the message bus.
+ */
+public final class DeflateMessageCodec {
+    /** The value of the encoding property for deflate compressed XML. */
+    public static final String ENCODING_NAME = "deflate";
+    /** The largest decompressed message accepted, to protect against messages expanding without bounds. */
+    public static final int MAX_DECOMPRESSED_SIZE = 256 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private DeflateMessageCodec() {}
+
+    /**
+     * @param xml The XML of the message.
+     * @return The deflate compressed XML.
+     */
+    public static byte[] compress(byte[] xml) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(xml);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, xml.length / 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param compressed The deflate compressed XML of a message.
+     * @return The XML of the message.
+     * @throws DataFormatException If the data isn't valid deflate data, or decompresses to more than
+     * {@link #MAX_DECOMPRESSED_SIZE} bytes.
+     */
+    public static byte[] decompress(byte[] compressed) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(MAX_DECOMPRESSED_SIZE, compressed.length * 4L));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compressed message");
+                }
+                if (out.size() + length > MAX_DECOMPRESSED_SIZE) {
+                    throw new DataFormatException("Compressed message exceeds " + MAX_DECOMPRESSED_SIZE
+                            + " bytes when decompressed");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Creates the JMS message selectors letting the broker filter away identify requests for other components and
+ * collections, so these are never sent to the message bus.
+ * <p/>
+ * The selectors match the filtering done by the message bus itself: An identify request is only discarded if it has
+ * a recipient which is not in the component filter, or a collection which is not in the collection filter. All other
+ * messages are accepted.
+ */
+final class IdentifyRequestSelector {
+    private IdentifyRequestSelector() {}
+
+    /**
+     * @param componentIDs  The components to accept identify requests for. Empty if all should be accepted.
+     * @param collectionIDs The collections to accept identify requests for. Empty if all should be accepted.
+     * @return The message selector, or null if all messages should be accepted.
+     */
+    static String create(Collection<String> componentIDs, Collection<String> collectionIDs) {
+        if (componentIDs.isEmpty() && collectionIDs.isEmpty()) {
+            return null;
+        }
+        StringBuilder selector = new StringBuilder();
+        selector.append("(").append(ActiveMQMessageBus.MESSAGE_TYPE_KEY).append(" IS NULL OR NOT (")
+                .append(ActiveMQMessageBus.MESSAGE_TYPE_KEY).append(" LIKE 'Identify%Request'))");
+        StringBuilder condition = new StringBuilder();
+        appendPropertyCondition(condition, ActiveMQMessageBus.MESSAGE_TO_KEY, componentIDs);
+        appendPropertyCondition(condition, ActiveMQMessageBus.COLLECTION_ID_KEY, collectionIDs);
+        selector.append(" OR (").append(condition).append(")");
+        return selector.toString();
+    }
+
+    /**
+     * Appends a condition accepting messages where the property is undefined or one of the values.
+     */
+    private static void appendPropertyCondition(StringBuilder condition, String property, Collection<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        if (condition.length() > 0) {
+            condition.append(" AND ");
+        }
+        condition.append("(").append(property).append(" IS NULL OR ").append(property).append(" IN (");
+        Iterator<String> iterator = values.iterator();
+        while (iterator.hasNext()) {
+            condition.append(quote(iterator.next()));
+            if (iterator.hasNext()) {
+                condition.append(", ");
+            }
+        }
+        condition.append("))");
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -24,25 +24,35 @@
  */
 package org.bitrepository.protocol.http;
 
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.ChunkyManagedHttpClientConnectionFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.ChecksumCalculatingInputStream;
 import org.bitrepository.common.utils.StreamUtils;
+import org.bitrepository.common.utils.XmlUtils;
 import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.protocol.FileExchange;
 import org.bitrepository.settings.referencesettings.FileExchangeSettings;
+import org.bitrepository.settings.referencesettings.HttpConnectionPool;
+import org.bitrepository.settings.referencesettings.ParallelTransfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -50,18 +60,50 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * File exchange through a HTTP server.
+ * The uploads, downloads and deletes go through a pooled HTTP client, which is shared by all the file exchanges of
+ * the same type and pool configuration. The connections are thereby kept alive and reused across the transfers,
+ * instead of a new connection being set up for each file.
+ * <p/>
+ * If defined in the settings, large files are transferred to and from local files in parallel ranges, see
+ * {@link ParallelHttpTransfer}. Transfers to and from streams are always a single stream.
+ */
 public class HttpFileExchange implements FileExchange {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private static final int HTTP_ERROR_CODE_BARRIER = 300;
     protected int HTTP_BUFFER_SIZE = 1024 * 1024;
     protected static final int HTTP_CHUNK_SIZE = 64 * 1024;
+    /** The default maximum number of pooled connections in total. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    /** The default maximum number of pooled connections to the same server. */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    /** The default time in milliseconds an unused connection is kept in the pool. */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+    /** The default time in milliseconds to wait for a connection from the pool. */
+    public static final long DEFAULT_CONNECTION_REQUEST_TIMEOUT = 60000;
+    /** The default time in milliseconds to wait for a new connection to be established. */
+    public static final long DEFAULT_CONNECT_TIMEOUT = 30000;
+    /** The default time in milliseconds to wait for data on an established connection. */
+    public static final long DEFAULT_SOCKET_TIMEOUT = 300000;
+    /** The default size in bytes of the ranges of the parallel transfers. */
+    public static final long DEFAULT_RANGE_SIZE = 32 * 1024 * 1024;
+    /** The default number of retries of a range in the parallel transfers. */
+    public static final int DEFAULT_RETRIES_PER_RANGE = 3;
+    /** The time in milliseconds a pooled connection may be unused, before it is validated when leased again. */
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+    /** The shared HTTP clients, by the type of file exchange and the configuration of the pool. */
+    private static final ConcurrentMap<String, CloseableHttpClient> sharedClients = new ConcurrentHashMap<>();
     protected final FileExchangeSettings settings;
 
     public HttpFileExchange(FileExchangeSettings settings) {
@@ -80,6 +122,19 @@ public class HttpFileExchange implements FileExchange {
 
     @Override
     public URL putFile(File dataFile) {
+        return putFile(dataFile, null);
+    }
+
+    /**
+     * Uploads the file, while the checksum of the uploaded data is calculated. If the upload fails or the checksum
+     * doesn't match, then the partly or wrongly uploaded file is deleted from the server.
+     *
+     * @param dataFile The file to be put into the file exchange.
+     * @param checksum The expected checksum of the file, or null for no verification.
+     * @return The url for the file, when it has been placed onto the file exchange.
+     */
+    @Override
+    public URL putFile(File dataFile, ChecksumDataForFileTYPE checksum) {
         if (dataFile == null) {
             throw new IllegalArgumentException("The datafile may not be null.");
         }
@@ -91,8 +146,36 @@ public class HttpFileExchange implements FileExchange {
             // generate the URL for the file.
             URL url = getURL(dataFile.getName());
 
+            ChecksumSpecTYPE csSpec = checksum == null ? null : checksum.getChecksumSpec();
+            ParallelHttpTransfer parallelTransfer = getParallelTransfer();
+            if (parallelTransfer != null && Boolean.TRUE.equals(settings.getParallelTransfer().isRangedUploads())) {
+                try {
+                    String actualChecksum = parallelTransfer.upload(dataFile, url, csSpec);
+                    if (checksum != null) {
+                        FileExchange.verifyChecksum(url.toExternalForm(), checksum, actualChecksum);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Some of the ranges may have been uploaded.
+                    deleteAfterFailedUpload(url, e);
+                    throw e;
+                }
+                return url;
+            }
             try (InputStream in = new BufferedInputStream(new FileInputStream(dataFile), HTTP_BUFFER_SIZE)) {
-                performUpload(in, url);
+                if (checksum == null) {
+                    performUpload(in, url);
+                } else {
+                    ChecksumCalculatingInputStream checksumStream = new ChecksumCalculatingInputStream(in,
+                            List.of(csSpec));
+                    performUpload(checksumStream, url);
+                    try {
+                        FileExchange.verifyChecksum(url.toExternalForm(), checksum,
+                                checksumStream.getChecksums().get(0));
+                    } catch (CoordinationLayerException e) {
+                        deleteAfterFailedUpload(url, e);
+                        throw e;
+                    }
+                }
             }
             return url;
         } catch (IOException e) {
@@ -108,12 +191,42 @@ public class HttpFileExchange implements FileExchange {
 
     @Override
     public void getFile(File outputFile, String fileAddress) {
+        getFile(outputFile, fileAddress, null);
+    }
+
+    /**
+     * Downloads the file, while the checksum of the downloaded data is calculated.
+     *
+     * @param outputFile  The file where the data at the address should be placed.
+     * @param fileAddress The address where the data should be downloaded from.
+     * @param checksum    The expected checksum of the data, or null for no verification.
+     */
+    @Override
+    public void getFile(File outputFile, String fileAddress, ChecksumDataForFileTYPE checksum) {
         try {
             // retrieve the url and the output-stream for the file.
             URL url = new URL(fileAddress);
-            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
-                // download the file.
-                performDownload(out, url);
+            ChecksumSpecTYPE csSpec = checksum == null ? null : checksum.getChecksumSpec();
+            String actualChecksum;
+            ParallelHttpTransfer parallelTransfer = getParallelTransfer();
+            if (parallelTransfer != null) {
+                actualChecksum = parallelTransfer.download(url, outputFile, csSpec);
+            } else {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+                    // download the file.
+                    if (checksum == null) {
+                        performDownload(out, url);
+                        return;
+                    }
+                    try (ChecksumCalculatingInputStream in = new ChecksumCalculatingInputStream(retrieveStream(url),
+                            List.of(csSpec))) {
+                        StreamUtils.copyInputStreamToOutputStream(in, out);
+                        actualChecksum = in.getChecksums().get(0);
+                    }
+                }
+            }
+            if (checksum != null) {
+                FileExchange.verifyChecksum(fileAddress, checksum, actualChecksum);
             }
         } catch (IOException e) {
             throw new CoordinationLayerException("Could not download data from '" + fileAddress + "' to the file '" +
@@ -145,10 +258,25 @@ public class HttpFileExchange implements FileExchange {
      * @throws IOException If any problems occurs during the retrieval.
      */
     protected InputStream retrieveStream(URL url) throws IOException {
-        HttpURLConnection conn = getConnection(url);
-        conn.setDoInput(true);
-        conn.setRequestMethod("GET");
-        return conn.getInputStream();
+        ArgumentValidator.checkNotNull(url, "URL url");
+        CloseableHttpResponse response = getHttpClient().execute(new HttpGet(url.toExternalForm()));
+        try {
+            if (response.getStatusLine().getStatusCode() >= HTTP_ERROR_CODE_BARRIER) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("Could not download file from URL '" + url.toExternalForm()
+                        + "'. got status code '" + response.getStatusLine() + "'");
+            }
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                response.close();
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            // Closing the content stream releases the connection back to the pool.
+            return entity.getContent();
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
     }
 
     /**
@@ -168,12 +296,13 @@ public class HttpFileExchange implements FileExchange {
         ArgumentValidator.checkNotNull(in, "InputStream in");
         ArgumentValidator.checkNotNull(url, "URL url");
 
-        try (CloseableHttpClient httpClient = getHttpClient()) {
-            HttpPut httpPut = new HttpPut(url.toExternalForm());
-            InputStreamEntity reqEntity = new LargeChunkedInputStreamEntity(in);
-            reqEntity.setChunked(true);
-            httpPut.setEntity(reqEntity);
-            HttpResponse response = httpClient.execute(httpPut);
+        HttpPut httpPut = new HttpPut(url.toExternalForm());
+        InputStreamEntity reqEntity = new LargeChunkedInputStreamEntity(in);
+        reqEntity.setChunked(true);
+        httpPut.setEntity(reqEntity);
+        try (CloseableHttpResponse response = getHttpClient().execute(httpPut)) {
+            // The response has to be consumed for the connection to be reused.
+            EntityUtils.consume(response.getEntity());
 
             // HTTP code >= 300 means error!
             if (response.getStatusLine().getStatusCode() >= HTTP_ERROR_CODE_BARRIER) {
@@ -198,42 +327,150 @@ public class HttpFileExchange implements FileExchange {
     }
 
     /**
-     * Method for opening an HTTP connection to the given URL.
+     * Retrieves the shared HttpClient for this type of FileExchange and configuration of the connection pool.
+     * The client is created the first time it is needed, and must not be closed by the caller.
      *
-     * @param url The URL to open the connection to.
-     * @return The HTTP connection to the given URL.
+     * @return The HttpClient for this FileExchange.
      */
-    protected HttpURLConnection getConnection(URL url) {
-        try {
-            return (HttpURLConnection) url.openConnection();
-        } catch (IOException e) {
-            throw new CoordinationLayerException("Could not open the connection to the url '" + url + "'", e);
+    protected CloseableHttpClient getHttpClient() {
+        HttpConnectionPool poolSettings = settings == null ? null : settings.getHttpConnectionPool();
+        int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        long connectionRequestTimeout = DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+        long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        long socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+        if (poolSettings != null) {
+            if (poolSettings.getMaxConnections() != null) {
+                maxConnections = poolSettings.getMaxConnections().intValue();
+            }
+            if (poolSettings.getMaxConnectionsPerRoute() != null) {
+                maxConnectionsPerRoute = poolSettings.getMaxConnectionsPerRoute().intValue();
+            }
+            if (poolSettings.getIdleTimeout() != null) {
+                idleTimeout = XmlUtils.xmlDurationToMilliseconds(poolSettings.getIdleTimeout());
+                ArgumentValidator.checkPositive(idleTimeout, "HttpConnectionPool IdleTimeout");
+            }
+            if (poolSettings.getConnectionRequestTimeout() != null) {
+                connectionRequestTimeout = XmlUtils.xmlDurationToMilliseconds(
+                        poolSettings.getConnectionRequestTimeout());
+                ArgumentValidator.checkPositive(connectionRequestTimeout, "HttpConnectionPool ConnectionRequestTimeout");
+            }
+            if (poolSettings.getConnectTimeout() != null) {
+                connectTimeout = XmlUtils.xmlDurationToMilliseconds(poolSettings.getConnectTimeout());
+                ArgumentValidator.checkPositive(connectTimeout, "HttpConnectionPool ConnectTimeout");
+            }
+            if (poolSettings.getSocketTimeout() != null) {
+                socketTimeout = XmlUtils.xmlDurationToMilliseconds(poolSettings.getSocketTimeout());
+                ArgumentValidator.checkPositive(socketTimeout, "HttpConnectionPool SocketTimeout");
+            }
+        }
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(toTimeoutMillis(connectionRequestTimeout))
+                .setConnectTimeout(toTimeoutMillis(connectTimeout))
+                .setSocketTimeout(toTimeoutMillis(socketTimeout))
+                .build();
+        String key = getClass().getName() + ":" + maxConnections + ":" + maxConnectionsPerRoute + ":" + idleTimeout
+                + ":" + connectionRequestTimeout + ":" + connectTimeout + ":" + socketTimeout;
+        int finalMaxConnections = maxConnections;
+        int finalMaxConnectionsPerRoute = maxConnectionsPerRoute;
+        long finalIdleTimeout = idleTimeout;
+        return sharedClients.computeIfAbsent(key, k -> createHttpClient(finalMaxConnections,
+                finalMaxConnectionsPerRoute, finalIdleTimeout, requestConfig));
+    }
+
+    /**
+     * @param timeout A timeout in milliseconds.
+     * @return The timeout as the int used by the HttpClient, capped at the maximum int value.
+     */
+    private static int toTimeoutMillis(long timeout) {
+        return (int) Math.min(timeout, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates the transfer of files in parallel ranges defined in the settings, through the shared HttpClient.
+     *
+     * @return The parallel transfer, or null if parallel transfers are not defined in the settings.
+     */
+    protected ParallelHttpTransfer getParallelTransfer() {
+        ParallelTransfer parallelSettings = settings == null ? null : settings.getParallelTransfer();
+        if (parallelSettings == null) {
+            return null;
         }
+        long rangeSize = parallelSettings.getRangeSize() == null ? DEFAULT_RANGE_SIZE
+                : parallelSettings.getRangeSize().longValue();
+        int retries = parallelSettings.getRetriesPerRange() == null ? DEFAULT_RETRIES_PER_RANGE
+                : parallelSettings.getRetriesPerRange().intValue();
+        return new ParallelHttpTransfer(getHttpClient(), parallelSettings.getStreams().intValue(), rangeSize,
+                retries);
     }
 
     /**
-     * Retrieves the HttpClient with the correct setup.
+     * Creates a pooled HttpClient, which keeps the connections alive between requests and evicts the connections
+     * which have been idle for too long.
+     *
+     * @param maxConnections         The maximum number of connections in the pool.
+     * @param maxConnectionsPerRoute The maximum number of connections in the pool to the same server.
+     * @param idleTimeout            The time in milliseconds an unused connection is kept in the pool.
+     * @param requestConfig          The default configuration of the requests, with the timeouts for leasing a
+     *                               connection from the pool, connecting and waiting for data.
+     * @return The new HttpClient.
+     */
+    private CloseableHttpClient createHttpClient(int maxConnections, int maxConnectionsPerRoute, long idleTimeout,
+            RequestConfig requestConfig) {
+        log.debug("Creating pooled HTTP client with {} connections, {} per route, an idle timeout of {} ms and the "
+                + "request configuration {}", maxConnections, maxConnectionsPerRoute, idleTimeout, requestConfig);
+        PoolingHttpClientConnectionManager connectionManager = createConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * Creates the manager of the pooled connections with the correct setup.
      * For HTTPS this should be overridden with SSL context.
      *
-     * @return The HttpClient for this FileExchange.
+     * @return The connection manager for the HttpClient of this FileExchange.
      */
-    protected CloseableHttpClient getHttpClient() {
-        HttpClientBuilder builder = HttpClients.custom();
+    protected PoolingHttpClientConnectionManager createConnectionManager() {
         PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
                 new ChunkyManagedHttpClientConnectionFactory(HTTP_CHUNK_SIZE));
         SocketConfig socketConfig = SocketConfig.custom()
+                                                .setSoKeepAlive(true)
+                                                .setTcpNoDelay(true)
                                                 .setSndBufSize(HTTP_BUFFER_SIZE)
                                                 .setRcvBufSize(HTTP_BUFFER_SIZE).build();
         connectionManager.setDefaultSocketConfig(socketConfig);
-        builder.setConnectionManager(connectionManager);
-        return builder.build();
+        return connectionManager;
+    }
+
+    /**
+     * Deletes the target of an upload, which failed or delivered the wrong data.
+     *
+     * @param url     The URL of the upload.
+     * @param failure The failure of the upload, which the failure of the delete is added to.
+     */
+    private void deleteAfterFailedUpload(URL url, Exception failure) {
+        try {
+            deleteFile(url);
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.warn("Could not delete '{}' after the upload failed", url, e);
+            failure.addSuppressed(e);
+        }
     }
 
     @Override
     public void deleteFile(URL url) throws IOException, URISyntaxException {
-        try (CloseableHttpClient httpClient = getHttpClient()) {
-            HttpDelete deleteOperation = new HttpDelete(url.toURI());
-            httpClient.execute(deleteOperation);
+        HttpDelete deleteOperation = new HttpDelete(url.toURI());
+        try (CloseableHttpResponse response = getHttpClient().execute(deleteOperation)) {
+            EntityUtils.consume(response.getEntity());
+            log.debug("Deleted '{}' and received the response line '{}'", url, response.getStatusLine());
         }
     }
 }
@@ -31,20 +31,13 @@ import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.ChunkyManagedHttpClientConnectionFactory;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.conn.SystemDefaultDnsResolver;
-import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.settings.referencesettings.FileExchangeSettings;
 
 import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.NoSuchAlgorithmException;
 
 
@@ -56,27 +49,8 @@ public class HttpsFileExchange extends HttpFileExchange {
         hostnameVerifier = NoopHostnameVerifier.INSTANCE;
     }
 
-    /**
-     * Method for opening a HTTP connection to the given URL.
-     * TODO needs some SSL stuff??
-     *
-     * @param url The URL to open the connection to.
-     * @return The HTTP connection to the given URL.
-     */
     @Override
-    protected HttpURLConnection getConnection(URL url) {
-        try {
-            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-            connection.setHostnameVerifier(hostnameVerifier);
-            return connection;
-        } catch (IOException e) {
-            throw new CoordinationLayerException("Could not open the connection to the url '" + url + "'", e);
-        }
-    }
-
-    @Override
-    protected CloseableHttpClient getHttpClient() {
-        HttpClientBuilder builder = HttpClientBuilder.create();
+    protected PoolingHttpClientConnectionManager createConnectionManager() {
         try {
             Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
                     .register("http", PlainConnectionSocketFactory.getSocketFactory())
@@ -91,15 +65,13 @@ public class HttpsFileExchange extends HttpFileExchange {
 
             SocketConfig socketConfig = SocketConfig.custom()
                     .setSoKeepAlive(true)
+                    .setTcpNoDelay(true)
                     .setSndBufSize(HTTP_BUFFER_SIZE)
                     .setRcvBufSize(HTTP_BUFFER_SIZE).build();
             connectionManager.setDefaultSocketConfig(socketConfig);
-
-            builder.setConnectionManager(connectionManager);
+            return connectionManager;
         } catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException("Could not make Https Client.", e);
         }
-
-        return builder.build();
     }
 }
@@ -0,0 +1,491 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.utils.ChecksumCalculatingInputStream;
+import org.bitrepository.common.utils.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Transfers large files over several parallel HTTP connections, each moving a range of the file. A single TCP
+ * stream cannot fill a link with a high latency, while several streams together can.
+ * <p/>
+ * Downloads use HTTP Range requests, when the server announces support for them. Uploads use PUT requests with a
+ * Content-Range header, which is only supported by some servers, e.g. Apache mod_dav, so the caller has to know
+ * that the server supports it. The uploads fall back to a single stream, when the server does not announce support
+ * for ranges, or when the size of the uploaded file on the server shows that the ranges were not put together.
+ * A range which fails is retried on its own, without transferring the other ranges again. The checksum of the file
+ * is calculated while the file is transferred, by reading the ranges of the local file in order as soon as they are
+ * transferred.
+ * <p/>
+ * Only transfers between a server and a local file can be split into ranges. Transfers to and from streams, e.g. the
+ * pillars transferring the data directly into and out of their archives, are always a single stream.
+ */
+public class ParallelHttpTransfer {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_ERROR_CODE_BARRIER = 300;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final CloseableHttpClient httpClient;
+    private final int streams;
+    private final long rangeSize;
+    private final int retries;
+
+    /**
+     * @param httpClient The client to make the requests through. Its pool must allow the given number of
+     *                   connections to the server.
+     * @param streams    The maximum number of ranges to transfer in parallel.
+     * @param rangeSize  The size in bytes of the ranges. Files no larger than a single range are transferred as a
+     *                   single stream.
+     * @param retries    The number of times to retry the transfer of a range, before the transfer fails.
+     */
+    public ParallelHttpTransfer(CloseableHttpClient httpClient, int streams, long rangeSize, int retries) {
+        ArgumentValidator.checkNotNull(httpClient, "CloseableHttpClient httpClient");
+        ArgumentValidator.checkPositive(streams, "int streams");
+        ArgumentValidator.checkPositive(rangeSize, "long rangeSize");
+        ArgumentValidator.checkNotNegative(retries, "int retries");
+        this.httpClient = httpClient;
+        this.streams = streams;
+        this.rangeSize = rangeSize;
+        this.retries = retries;
+    }
+
+    /**
+     * Downloads the file at the URL. The size of the file is requested first, and the file is downloaded in
+     * parallel ranges if the server supports Range requests and the file is larger than a single range.
+     * Otherwise it is downloaded as a single stream.
+     *
+     * @param url        The URL of the file.
+     * @param outputFile The file to write the data to. It is overwritten if it exists.
+     * @param csSpec     The checksum to calculate of the data, or null if no checksum is needed.
+     * @return The checksum of the data in hexadecimal, or null if no checksum specification was given.
+     * @throws IOException If the file cannot be downloaded.
+     */
+    public String download(URL url, File outputFile, ChecksumSpecTYPE csSpec) throws IOException {
+        ArgumentValidator.checkNotNull(url, "URL url");
+        ArgumentValidator.checkNotNull(outputFile, "File outputFile");
+        long length = getLengthIfRangesSupported(url);
+        if (length <= rangeSize) {
+            return transferWithRetries(url, null, range -> downloadSingleStream(url, outputFile, csSpec));
+        }
+
+        List<Range> ranges = split(length);
+        log.debug("Downloading {} bytes from '{}' in {} ranges", length, url, ranges.size());
+        try (FileChannel channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transferRanges(url, outputFile, ranges, range -> downloadRange(url, channel, range), csSpec);
+        }
+    }
+
+    /**
+     * Uploads a file to the URL in parallel ranges. The file at the URL is first truncated by an empty PUT, and the
+     * ranges are then put with a Content-Range header. Files no larger than a single range are put as a single
+     * stream. So are files, where the server does not announce support for ranges for the truncated file, or where
+     * the size of the file on the server afterwards differs from the local file, since a server which ignores the
+     * Content-Range header replaces the file with each range.
+     *
+     * @param file   The file to upload.
+     * @param url    The URL to upload the file to.
+     * @param csSpec The checksum to calculate of the data, or null if no checksum is needed.
+     * @return The checksum of the data in hexadecimal, or null if no checksum specification was given.
+     * @throws IOException If the file cannot be uploaded.
+     */
+    public String upload(File file, URL url, ChecksumSpecTYPE csSpec) throws IOException {
+        ArgumentValidator.checkNotNull(file, "File file");
+        ArgumentValidator.checkNotNull(url, "URL url");
+        long length = file.length();
+        if (length <= rangeSize) {
+            return transferWithRetries(url, null, range -> uploadSingleStream(file, url, csSpec));
+        }
+
+        transferWithRetries(url, null, range -> {
+            put(url, new ByteArrayEntity(new byte[0]), null);
+            return null;
+        });
+        if (getLengthIfRangesSupported(url) < 0) {
+            log.debug("The server of '{}' does not announce support for ranges, so the file is uploaded as a single "
+                    + "stream", url);
+            return transferWithRetries(url, null, range -> uploadSingleStream(file, url, csSpec));
+        }
+
+        List<Range> ranges = split(length);
+        log.debug("Uploading {} bytes to '{}' in {} ranges", length, url, ranges.size());
+        String checksum = transferRanges(url, file, ranges, range -> uploadRange(file, url, range, length), csSpec);
+        long uploadedLength = getLength(url);
+        if (uploadedLength != length) {
+            log.warn("The server has {} bytes of the {} bytes uploaded in ranges to '{}', so it does not support "
+                    + "Content-Range uploads. Uploading the file again as a single stream.", uploadedLength, length,
+                    url);
+            return transferWithRetries(url, null, range -> uploadSingleStream(file, url, csSpec));
+        }
+        return checksum;
+    }
+
+    /**
+     * Transfers the ranges in parallel, while the checksum is calculated by reading the local file in order, as the
+     * ranges are transferred.
+     */
+    private String transferRanges(URL url, File localFile, List<Range> ranges, RangeTransfer transfer,
+                                  ChecksumSpecTYPE csSpec) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(streams, ranges.size()),
+                new DefaultThreadFactory(getClass().getSimpleName(), Thread.NORM_PRIORITY));
+        try {
+            List<Future<String>> transfers = new ArrayList<>(ranges.size());
+            for (Range range : ranges) {
+                transfers.add(executor.submit(() -> transferWithRetries(url, range, transfer)));
+            }
+            ChecksumCalculatingInputStream checksumStream = null;
+            try {
+                if (csSpec != null) {
+                    checksumStream = new ChecksumCalculatingInputStream(new FileInputStream(localFile),
+                            List.of(csSpec));
+                }
+                for (int i = 0; i < ranges.size(); i++) {
+                    awaitTransfer(transfers.get(i));
+                    if (checksumStream != null && checksumStream.skip(ranges.get(i).length) != ranges.get(i).length) {
+                        throw new IOException("The file '" + localFile + "' is shorter than the transferred data.");
+                    }
+                }
+                if (checksumStream == null) {
+                    return null;
+                }
+                if (checksumStream.read() != -1) {
+                    throw new IOException("The file '" + localFile + "' is longer than the transferred data.");
+                }
+                return checksumStream.getChecksums().get(0);
+            } finally {
+                if (checksumStream != null) {
+                    checksumStream.close();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void awaitTransfer(Future<String> transfer) throws IOException {
+        try {
+            transfer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the transfer of a range.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to transfer a range.", e.getCause());
+        }
+    }
+
+    /**
+     * Transfers a range, retrying it if it fails.
+     *
+     * @param range The range to transfer, or null if the whole file is transferred.
+     */
+    private String transferWithRetries(URL url, Range range, RangeTransfer transfer) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return transfer.transfer(range);
+            } catch (IOException e) {
+                if (attempt >= retries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                log.info("Retrying the transfer of {} of '{}' after failed attempt {}: {}",
+                        range == null ? "all data" : range, url, attempt + 1, e.getMessage());
+            }
+        }
+    }
+
+    private String downloadSingleStream(URL url, File outputFile, ChecksumSpecTYPE csSpec) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(url.toExternalForm()))) {
+            checkStatus(response, url);
+            HttpEntity entity = response.getEntity();
+            try (InputStream content = entity == null ? InputStream.nullInputStream() : entity.getContent();
+                 OutputStream out = new FileOutputStream(outputFile)) {
+                if (csSpec == null) {
+                    StreamUtils.copyInputStreamToOutputStream(content, out);
+                    return null;
+                }
+                ChecksumCalculatingInputStream checksumStream = new ChecksumCalculatingInputStream(content,
+                        List.of(csSpec));
+                StreamUtils.copyInputStreamToOutputStream(checksumStream, out);
+                return checksumStream.getChecksums().get(0);
+            }
+        }
+    }
+
+    private String downloadRange(URL url, FileChannel channel, Range range) throws IOException {
+        HttpGet httpGet = new HttpGet(url.toExternalForm());
+        httpGet.setHeader("Range", "bytes=" + range.start + "-" + range.getEnd());
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            Header contentRange = response.getFirstHeader("Content-Range");
+            if (response.getStatusLine().getStatusCode() != HTTP_PARTIAL_CONTENT || contentRange == null
+                    || !contentRange.getValue().startsWith("bytes " + range.start + "-" + range.getEnd() + "/")) {
+                EntityUtils.consume(response.getEntity());
+                throw new IOException("Could not download " + range + " from URL '" + url.toExternalForm()
+                        + "'. got status code '" + response.getStatusLine() + "' and content range '"
+                        + contentRange + "'");
+            }
+            try (InputStream in = response.getEntity().getContent()) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long position = range.start;
+                long remaining = range.length;
+                int bytesRead;
+                while (remaining > 0
+                        && (bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, bytesRead);
+                    while (data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+                    remaining -= bytesRead;
+                }
+                if (remaining > 0) {
+                    throw new IOException("The download of " + range + " from URL '" + url.toExternalForm()
+                            + "' ended " + remaining + " bytes early.");
+                }
+            }
+        }
+        return null;
+    }
+
+    private String uploadSingleStream(File file, URL url, ChecksumSpecTYPE csSpec) throws IOException {
+        FileRangeEntity entity = new FileRangeEntity(file, new Range(0, file.length()), csSpec);
+        put(url, entity, null);
+        return entity.getChecksum();
+    }
+
+    private String uploadRange(File file, URL url, Range range, long totalLength) throws IOException {
+        put(url, new FileRangeEntity(file, range, null),
+                "bytes " + range.start + "-" + range.getEnd() + "/" + totalLength);
+        return null;
+    }
+
+    private void put(URL url, HttpEntity entity, String contentRange) throws IOException {
+        HttpPut httpPut = new HttpPut(url.toExternalForm());
+        httpPut.setEntity(entity);
+        if (contentRange != null) {
+            httpPut.setHeader("Content-Range", contentRange);
+        }
+        try (CloseableHttpResponse response = httpClient.execute(httpPut)) {
+            EntityUtils.consume(response.getEntity());
+            checkStatus(response, url);
+        }
+    }
+
+    /**
+     * @return The length of the file at the URL, or -1 if the server does not announce support for byte ranges or
+     * the length of the file.
+     */
+    private long getLengthIfRangesSupported(URL url) throws IOException {
+        return getLength(url, true);
+    }
+
+    /**
+     * @return The length of the file at the URL, or -1 if the server does not announce the length of the file.
+     */
+    private long getLength(URL url) throws IOException {
+        return getLength(url, false);
+    }
+
+    /**
+     * Requests the length of the file at the URL with a HEAD request.
+     *
+     * @param url           The URL of the file.
+     * @param requireRanges Whether the server must announce support for byte ranges.
+     * @return The length of the file, or -1 if the length is not announced, or the support for byte ranges is
+     * required but not announced.
+     */
+    private long getLength(URL url, boolean requireRanges) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(new HttpHead(url.toExternalForm()))) {
+            checkStatus(response, url);
+            Header acceptRanges = response.getFirstHeader("Accept-Ranges");
+            Header contentLength = response.getFirstHeader("Content-Length");
+            if (requireRanges
+                    && (acceptRanges == null || !"bytes".equalsIgnoreCase(acceptRanges.getValue().trim()))) {
+                return -1;
+            }
+            if (contentLength == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(contentLength.getValue().trim());
+            } catch (NumberFormatException e) {
+                log.debug("Invalid content length '{}' for '{}'", contentLength.getValue(), url);
+                return -1;
+            }
+        }
+    }
+
+    private void checkStatus(CloseableHttpResponse response, URL url) throws IOException {
+        if (response.getStatusLine().getStatusCode() >= HTTP_ERROR_CODE_BARRIER) {
+            throw new IOException("Could not transfer data with URL '" + url.toExternalForm() + "'. got status code '"
+                    + response.getStatusLine() + "'");
+        }
+    }
+
+    private List<Range> split(long length) {
+        List<Range> ranges = new ArrayList<>();
+        for (long start = 0; start < length; start += rangeSize) {
+            ranges.add(new Range(start, Math.min(rangeSize, length - start)));
+        }
+        return ranges;
+    }
+
+    /**
+     * The transfer of a range of a file.
+     */
+    private interface RangeTransfer {
+        /**
+         * @param range The range to transfer, or null if the whole file is transferred.
+         * @return The checksum of the data, if it is calculated by the transfer.
+         * @throws IOException If the transfer fails.
+         */
+        String transfer(Range range) throws IOException;
+    }
+
+    /**
+     * Entity with a range of a local file. The file is opened again each time the entity is sent, so the client can
+     * send it again, e.g. when a kept alive connection turns out to have been closed by the server.
+     */
+    private static final class FileRangeEntity extends AbstractHttpEntity {
+        private final File file;
+        private final Range range;
+        private final ChecksumSpecTYPE csSpec;
+        private volatile String checksum;
+
+        /**
+         * @param file   The file.
+         * @param range  The range of the file to send.
+         * @param csSpec The checksum to calculate of the range while it is sent, or null if no checksum is needed.
+         */
+        private FileRangeEntity(File file, Range range, ChecksumSpecTYPE csSpec) {
+            this.file = file;
+            this.range = range;
+            this.csSpec = csSpec;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return range.length;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return StreamUtils.getStreamPart(new FileInputStream(file), range.start, range.length);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream content = getContent();
+            ChecksumCalculatingInputStream checksumStream = (csSpec == null) ? null
+                    : new ChecksumCalculatingInputStream(content, List.of(csSpec));
+            try (InputStream in = (checksumStream == null) ? content : checksumStream) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long written = 0;
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, bytesRead);
+                    written += bytesRead;
+                }
+                if (written != range.length) {
+                    throw new IOException("The file '" + file + "' ended " + (range.length - written)
+                            + " bytes before the end of " + range);
+                }
+                if (checksumStream != null) {
+                    checksum = checksumStream.getChecksums().get(0);
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        /**
+         * @return The checksum of the range from the last time it was sent, or null if no checksum is calculated.
+         */
+        private String getChecksum() {
+            return checksum;
+        }
+    }
+
+    /**
+     * A range of bytes in a file.
+     */
+    private static final class Range {
+        private final long start;
+        private final long length;
+
+        private Range(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        /** @return The position of the last byte of the range. */
+        private long getEnd() {
+            return start + length - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "bytes " + start + "-" + getEnd();
+        }
+    }
+}
@@ -72,6 +72,7 @@ public interface MessageBus extends MessageSender, AutoCloseable {
      * @param componentIDs Defines the list of componentIDs with receiver component ID relevant for this message bus instance. If
      *                     the list contains any elements, the receiverID for incoming messages are read before being parsed. This enables
      *                     the message bus to discard messages prior to parsing, if the message is meant for other components.
+     *                     The filtering may be done by the message broker, so these messages aren't received at all.
      *                     <p>
      *                     Messages will only be discarded if the componentFilter contains at least one componentID and the received
      *                     message has a defined receiver.
@@ -83,6 +84,7 @@ public interface MessageBus extends MessageSender, AutoCloseable {
      * @param collectionIDs If defined specifies the list of collectionIDs with should be handled. If
      *                      the list contains any elements, the collectionID for incoming messages are read before being parsed. This
      *                      enables the message bus to discard messages prior to parsing, if the message is meant for other collections.
+     *                      The filtering may be done by the message broker, so these messages aren't received at all.
      *                      <p>
      *                      Messages will only be discarded if the collection contains at least one collectionsID and the received
      *                      message has a defined collectionID.
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.messagebus;
+
+import org.bitrepository.settings.referencesettings.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of threads processing received messages, with an optionally bounded queue.
+ * <p/>
+ * When the queue is full the {@link OverflowPolicy} decides what happens. Both policies make the thread delivering
+ * the message, which is the message bus receiver, process or wait for the message, so the consumption from the
+ * message bus is paused instead of messages being dropped.
+ */
+class MessageProcessingPool {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final String name;
+    private final ExecutorService executor;
+    /** Limits the number of messages queued or being processed, null if unbounded. */
+    private final Semaphore capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long queueLatencyWarningNanos;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong totalQueueLatencyNanos = new AtomicLong();
+    private final AtomicLong maxQueueLatencyNanos = new AtomicLong();
+
+    /**
+     * @param name The name of the pool used in logging and statistics.
+     * @param executor The executor processing the messages.
+     * @param capacity The maximum number of messages queued or being processed, or null for no limit.
+     * @param overflowPolicy What to do when the capacity is reached. Null means {@link OverflowPolicy#BLOCK}.
+     * @param queueLatencyWarning Log a warning if a message waits longer than this in the queue, or null for no
+     * warnings.
+     */
+    MessageProcessingPool(String name, ExecutorService executor, Integer capacity, OverflowPolicy overflowPolicy,
+                          Duration queueLatencyWarning) {
+        this.name = name;
+        this.executor = executor;
+        this.capacity = capacity == null ? null : new Semaphore(capacity);
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+        this.queueLatencyWarningNanos = queueLatencyWarning == null ? Long.MAX_VALUE : queueLatencyWarning.toNanos();
+    }
+
+    /**
+     * Hands the processing of a message to the pool. If the queue of the pool is full this will either wait for room
+     * in the queue, or process the message in the calling thread, depending on the overflow policy.
+     *
+     * @param processor The processing of the message.
+     */
+    void execute(Runnable processor) {
+        if (capacity != null && !capacity.tryAcquire()) {
+            overflowCount.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+                log.debug("Queue of message thread pool '{}' is full, processing message in receiving thread.", name);
+                runTimed(processor, System.nanoTime());
+                return;
+            }
+            log.debug("Queue of message thread pool '{}' is full, pausing message reception.", name);
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for room in message thread pool '{}', processing message in "
+                        + "receiving thread.", name);
+                runTimed(processor, System.nanoTime());
+                return;
+            }
+        }
+
+        long enqueued = System.nanoTime();
+        maxQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+        try {
+            executor.execute(() -> {
+                queueDepth.decrementAndGet();
+                try {
+                    runTimed(processor, enqueued);
+                } finally {
+                    if (capacity != null) {
+                        capacity.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queueDepth.decrementAndGet();
+            if (capacity != null) {
+                capacity.release();
+            }
+            throw e;
+        }
+    }
+
+    private void runTimed(Runnable processor, long enqueued) {
+        long queueLatency = System.nanoTime() - enqueued;
+        totalQueueLatencyNanos.addAndGet(queueLatency);
+        maxQueueLatencyNanos.accumulateAndGet(queueLatency, Math::max);
+        if (queueLatency > queueLatencyWarningNanos) {
+            log.warn("Message waited {} ms in the queue of message thread pool '{}'.",
+                    TimeUnit.NANOSECONDS.toMillis(queueLatency), name);
+        }
+        try {
+            processor.run();
+        } finally {
+            processedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return A snapshot of the current statistics for the pool.
+     */
+    MessageThreadPoolStatistics getStatistics() {
+        long processed = processedCount.get();
+        long averageLatency = processed == 0 ? 0 : totalQueueLatencyNanos.get() / processed;
+        return new MessageThreadPoolStatistics(name, queueDepth.get(), maxQueueDepth.get(), processed,
+                overflowCount.get(), Duration.ofNanos(averageLatency), Duration.ofNanos(maxQueueLatencyNanos.get()));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
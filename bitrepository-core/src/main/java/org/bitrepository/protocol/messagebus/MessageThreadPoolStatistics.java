@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.messagebus;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the statistics for one of the thread pools processing received messages.
+ */
+public class MessageThreadPoolStatistics {
+    private final String poolName;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long processedMessages;
+    private final long overflows;
+    private final Duration averageQueueLatency;
+    private final Duration maxQueueLatency;
+
+    /**
+     * @param poolName The name of the pool.
+     * @param queueDepth The number of messages currently waiting for a processing thread.
+     * @param maxQueueDepth The largest number of messages which have been waiting for a processing thread.
+     * @param processedMessages The number of messages the pool has started processing.
+     * @param overflows The number of times a message was received while the queue of the pool was full.
+     * @param averageQueueLatency The average time a message waited before being processed.
+     * @param maxQueueLatency The longest time a message waited before being processed.
+     */
+    public MessageThreadPoolStatistics(String poolName, int queueDepth, int maxQueueDepth, long processedMessages,
+                                       long overflows, Duration averageQueueLatency, Duration maxQueueLatency) {
+        this.poolName = poolName;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.processedMessages = processedMessages;
+        this.overflows = overflows;
+        this.averageQueueLatency = averageQueueLatency;
+        this.maxQueueLatency = maxQueueLatency;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getProcessedMessages() {
+        return processedMessages;
+    }
+
+    public long getOverflows() {
+        return overflows;
+    }
+
+    public Duration getAverageQueueLatency() {
+        return averageQueueLatency;
+    }
+
+    public Duration getMaxQueueLatency() {
+        return maxQueueLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageThreadPoolStatistics{" +
+                "poolName='" + poolName + '\'' +
+                ", queueDepth=" + queueDepth +
+                ", maxQueueDepth=" + maxQueueDepth +
+                ", processedMessages=" + processedMessages +
+                ", overflows=" + overflows +
+                ", averageQueueLatency=" + averageQueueLatency +
+                ", maxQueueLatency=" + maxQueueLatency +
+                '}';
+    }
+}
@@ -23,6 +23,7 @@ package org.bitrepository.protocol.messagebus;
 
 import org.bitrepository.bitrepositorymessages.Message;
 import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.utils.XmlUtils;
 import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.protocol.utils.MessageCategoryUtils;
 import org.bitrepository.settings.referencesettings.MessageCategory;
@@ -32,23 +33,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Takes care of handling the further processing by the listeners in separated thread.
+ * <p/>
+ * The pools may have bounded queues. When the queue of a pool is full the delivering thread, which is the message bus
+ * receiver, is held back until the pool catches up, so the consumption of messages from the message bus is paused
+ * rather than messages being dropped.
+ * <p/>
+ * The statistics of the pools are logged periodically, so congested pools can be found while the message bus is
+ * running.
  */
 public class ReceivedMessageHandler {
+    /**
+     * The default interval between logging the statistics of the pools.
+     */
+    private static final Duration DEFAULT_STATISTICS_LOG_INTERVAL = Duration.ofHours(1);
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final ExecutorModel executorModel;
     private final ThreadFactory threadFactory = new DefaultThreadFactory("ReceivedMessageHandler-", Thread.NORM_PRIORITY, false);
+    /**
+     * Logs the statistics of the pools, or null if the statistics are not logged periodically.
+     */
+    private final ScheduledExecutorService statisticsLogger;
 
     public ReceivedMessageHandler(MessageThreadPools messageThreadPools) {
         executorModel = new ExecutorModel(messageThreadPools);
+        Duration statisticsLogInterval = DEFAULT_STATISTICS_LOG_INTERVAL;
+        if (messageThreadPools != null && messageThreadPools.isSetStatisticsLogInterval()) {
+            XmlUtils.validateNonNegative(messageThreadPools.getStatisticsLogInterval());
+            statisticsLogInterval = XmlUtils.xmlDurationToDuration(messageThreadPools.getStatisticsLogInterval());
+        }
+        if (statisticsLogInterval.isZero()) {
+            statisticsLogger = null;
+        } else {
+            statisticsLogger = Executors.newSingleThreadScheduledExecutor(
+                    new DefaultThreadFactory("ReceivedMessageHandlerStatistics", Thread.MIN_PRIORITY));
+            long intervalMillis = statisticsLogInterval.toMillis();
+            statisticsLogger.scheduleAtFixedRate(this::logStatistics, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -63,11 +97,35 @@ public class ReceivedMessageHandler {
         executorModel.retrieveExecutor(message).execute(processor);
     }
 
+    /**
+     * @return The current statistics for each of the message thread pools.
+     */
+    public List<MessageThreadPoolStatistics> getStatistics() {
+        List<MessageThreadPoolStatistics> statistics = new ArrayList<>();
+        for (MessageProcessingPool pool : executorModel.pools) {
+            statistics.add(pool.getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Logs the current statistics of each of the message thread pools.
+     */
+    public void logStatistics() {
+        for (MessageThreadPoolStatistics statistics : getStatistics()) {
+            log.info("Message thread pool statistics: {}", statistics);
+        }
+    }
+
     /**
      * Use this to close down the running executors.
      */
     public void close() {
         log.debug("Shutting down handling of received messages");
+        if (statisticsLogger != null) {
+            statisticsLogger.shutdownNow();
+        }
+        logStatistics();
         executorModel.shutdown();
     }
 
@@ -109,6 +167,8 @@ public class ReceivedMessageHandler {
         private CollectionExecutorModel defaultCollectionExecutorModel;
         private final Map<String, CollectionExecutorModel> collectionExecutorModelMap =
                 new HashMap<>();
+        /** All the created pools, used for statistics and shutdown. */
+        private final List<MessageProcessingPool> pools = new ArrayList<>();
 
         /**
          * Creates the different executor services based on the supplied configuration.
@@ -124,13 +184,14 @@ public class ReceivedMessageHandler {
                             if (!collectionExecutorModelMap.containsKey(collection)) {
                                 collectionExecutorModelMap.put(collection, new CollectionExecutorModel());
                             }
-                            collectionExecutorModelMap.get(collection).addPool(messageThreadPool);
+                            collectionExecutorModelMap.get(collection).addPool(messageThreadPool,
+                                    createPool(messageThreadPool, collection));
                         }
                     } else {
                         if (defaultCollectionExecutorModel == null) {
                             defaultCollectionExecutorModel = new CollectionExecutorModel();
                         }
-                        defaultCollectionExecutorModel.addPool(messageThreadPool);
+                        defaultCollectionExecutorModel.addPool(messageThreadPool, createPool(messageThreadPool, null));
                     }
                 }
             }
@@ -139,12 +200,15 @@ public class ReceivedMessageHandler {
                 defaultCollectionExecutorModel = new CollectionExecutorModel();
             }
             if (defaultCollectionExecutorModel.defaultExecutor == null) {
-                defaultCollectionExecutorModel.defaultExecutor = Executors.newCachedThreadPool(threadFactory);
+                MessageProcessingPool pool = new MessageProcessingPool("default",
+                        Executors.newCachedThreadPool(threadFactory), null, null, null);
+                pools.add(pool);
+                defaultCollectionExecutorModel.defaultExecutor = pool;
             }
         }
 
-        ExecutorService retrieveExecutor(Message message) {
-            ExecutorService executor = null;
+        MessageProcessingPool retrieveExecutor(Message message) {
+            MessageProcessingPool executor = null;
             if (message.getCollectionID() != null) {
                 CollectionExecutorModel collectionExecutorModel =
                         collectionExecutorModelMap.get(message.getCollectionID());
@@ -158,19 +222,90 @@ public class ReceivedMessageHandler {
             return executor;
         }
 
+        /**
+         * Shuts down all the pools, including the collection, category and message specific pools.
+         */
         public void shutdown() {
-            if (defaultCollectionExecutorModel != null) {
-                defaultCollectionExecutorModel.shutdown();
+            for (MessageProcessingPool pool : pools) {
+                pool.shutdown();
             }
         }
 
-        private ExecutorService createExecutorService(BigInteger poolSize) {
+        /**
+         * Creates the pool for a thread pool configuration. A configuration covering several collections gives a
+         * separate pool for each collection.
+         *
+         * @param configuration The configuration of the pool.
+         * @param collection The collection the pool is created for, or null if it is for all collections.
+         */
+        private MessageProcessingPool createPool(MessageThreadPool configuration, String collection) {
+            BigInteger poolSize = configuration.getPoolSize();
+            boolean virtualThreads = configuration.isSetVirtualThreads() && configuration.isVirtualThreads();
+            ExecutorService executor = createExecutorService(poolSize, virtualThreads);
+
+            Integer capacity = null;
+            if (configuration.isSetQueueSize()) {
+                capacity = configuration.getQueueSize().intValue() + (poolSize == null ? 0 : poolSize.intValue());
+            }
+            Duration queueLatencyWarning = null;
+            if (configuration.isSetQueueLatencyWarning()) {
+                XmlUtils.validateNonNegative(configuration.getQueueLatencyWarning());
+                queueLatencyWarning = XmlUtils.xmlDurationToDuration(configuration.getQueueLatencyWarning());
+            }
+            String name = configuration.isSetName() ? configuration.getName() : derivePoolName(configuration);
+            if (collection != null) {
+                name = collection + ":" + name;
+            }
+            MessageProcessingPool pool = new MessageProcessingPool(name, executor, capacity,
+                    configuration.getOverflowPolicy(), queueLatencyWarning);
+            pools.add(pool);
+            return pool;
+        }
+
+        private String derivePoolName(MessageThreadPool configuration) {
+            if (!configuration.getMessageName().isEmpty()) {
+                return String.join(",", configuration.getMessageName());
+            } else if (configuration.getMessageCategory() != null) {
+                return configuration.getMessageCategory().toString();
+            } else {
+                return "default";
+            }
+        }
+
+        private ExecutorService createExecutorService(BigInteger poolSize, boolean virtualThreads) {
+            ThreadFactory factory = threadFactory;
+            if (virtualThreads) {
+                ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+                if (virtualThreadFactory != null) {
+                    factory = virtualThreadFactory;
+                }
+            }
             if (poolSize == null) {
-                return Executors.newCachedThreadPool(threadFactory);
+                return Executors.newCachedThreadPool(factory);
             } else if (poolSize.intValue() == 1) {
-                return Executors.newSingleThreadExecutor(threadFactory);
+                return Executors.newSingleThreadExecutor(factory);
             } else {
-                return Executors.newFixedThreadPool(poolSize.intValue(), threadFactory);
+                return Executors.newFixedThreadPool(poolSize.intValue(), factory);
+            }
+        }
+
+        /**
+         * Creates a factory for virtual threads. Reflection is used, as the code is compiled for a Java version
+         * without virtual threads.
+         *
+         * @return The virtual thread factory, or null if virtual threads are not supported by the running Java version.
+         */
+        private ThreadFactory createVirtualThreadFactory() {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, "ReceivedMessageHandler-VirtualThread", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads are not supported by this Java version, using platform threads for "
+                        + "processing messages.");
+                return null;
             }
         }
 
@@ -178,14 +313,13 @@ public class ReceivedMessageHandler {
          * Contain the executors for a single collection.
          */
         private class CollectionExecutorModel {
-            private ExecutorService defaultExecutor;
-            private final Map<MessageCategory, ExecutorService> categoryExecutorMap = new HashMap<>();
-            private final Map<String, ExecutorService> messageExecutorMap = new HashMap<>();
+            private MessageProcessingPool defaultExecutor;
+            private final Map<MessageCategory, MessageProcessingPool> categoryExecutorMap = new HashMap<>();
+            private final Map<String, MessageProcessingPool> messageExecutorMap = new HashMap<>();
 
-            void addPool(MessageThreadPool messageThreadPool) {
+            void addPool(MessageThreadPool messageThreadPool, MessageProcessingPool executor) {
                 List<String> messageNames = messageThreadPool.getMessageName();
                 MessageCategory messageCategory = messageThreadPool.getMessageCategory();
-                ExecutorService executor = createExecutorService(messageThreadPool.getPoolSize());
                 if (messageNames != null && !messageNames.isEmpty()) {
                     for (String messageName : messageNames) {
                         messageExecutorMap.put(messageName, executor);
@@ -197,8 +331,8 @@ public class ReceivedMessageHandler {
                 }
             }
 
-            ExecutorService retrieveExecutor(Message message) {
-                ExecutorService executor = messageExecutorMap.get(message.getClass().getSimpleName());
+            MessageProcessingPool retrieveExecutor(Message message) {
+                MessageProcessingPool executor = messageExecutorMap.get(message.getClass().getSimpleName());
                 if (executor == null) {
                     MessageCategory messageCategory = MessageCategoryUtils.getCategory(message);
                     executor = categoryExecutorMap.get(messageCategory);
@@ -208,16 +342,6 @@ public class ReceivedMessageHandler {
                 }
                 return executor;
             }
-
-            void shutdown() {
-                if (defaultExecutor != null) {
-                    defaultExecutor.shutdown();
-                }
-
-                for (ExecutorService executor : messageExecutorMap.values()) {
-                    executor.shutdown();
-                }
-            }
         }
     }
 }
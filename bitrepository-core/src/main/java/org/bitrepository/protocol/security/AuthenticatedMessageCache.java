@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.security;
+
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.protocol.security.exception.SecurityException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of recently authenticated messages, so a message delivered to several listeners only needs to have
+ * its signature verified once. The entries are identified by a digest of the message and its signature, and expire
+ * after a fixed time to live. When the cache is full, the oldest entry is evicted.
+ */
+public class AuthenticatedMessageCache {
+    /**
+     * The algorithm used for the digest identifying a message and its signature.
+     */
+    private static final String KEY_DIGEST_ALGORITHM = "SHA-256";
+
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final Map<String, CacheEntry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize    The maximum number of messages to keep in the cache.
+     * @param timeToLive How long an authenticated message is kept in the cache.
+     */
+    public AuthenticatedMessageCache(int maxSize, Duration timeToLive) {
+        ArgumentValidator.checkPositive(maxSize, "maxSize");
+        ArgumentValidator.checkNotNull(timeToLive, "timeToLive");
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > AuthenticatedMessageCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Looks up the verification of a previously authenticated message.
+     *
+     * @param message   The received message.
+     * @param signature The signature of the received message.
+     * @return The verification of the message, or null if the message has not been authenticated within the time to
+     * live.
+     */
+    public MessageVerificationContext get(String message, String signature) {
+        return get(message.getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    /**
+     * Looks up the verification of a previously authenticated message.
+     *
+     * @param messageData The data of the received message.
+     * @param signature   The signature of the received message.
+     * @return The verification of the message, or null if the message has not been authenticated within the time to
+     * live.
+     */
+    public MessageVerificationContext get(byte[] messageData, String signature) {
+        String key = makeKey(messageData, signature);
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.verification;
+    }
+
+    /**
+     * Adds the verification of an authenticated message to the cache.
+     *
+     * @param message      The authenticated message.
+     * @param signature    The signature of the message.
+     * @param verification The verification of the message.
+     */
+    public void put(String message, String signature, MessageVerificationContext verification) {
+        put(message.getBytes(StandardCharsets.UTF_8), signature, verification);
+    }
+
+    /**
+     * Adds the verification of an authenticated message to the cache.
+     *
+     * @param messageData  The data of the authenticated message.
+     * @param signature    The signature of the message.
+     * @param verification The verification of the message.
+     */
+    public void put(byte[] messageData, String signature, MessageVerificationContext verification) {
+        String key = makeKey(messageData, signature);
+        synchronized (entries) {
+            entries.put(key, new CacheEntry(verification, System.nanoTime() + timeToLiveNanos));
+        }
+    }
+
+    /**
+     * @return The number of lookups, which found an authenticated message.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups, which did not find an authenticated message.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of messages currently in the cache, including expired messages not yet removed.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Creates the key for a message and signature, as the hex encoded digest of both.
+     */
+    private String makeKey(byte[] messageData, String signature) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+            digest.update(messageData);
+            digest.update((byte) 0);
+            digest.update(signature.getBytes(StandardCharsets.UTF_8));
+            return Base16Utils.decodeBase16(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new SecurityException(KEY_DIGEST_ALGORITHM + " not supported", e);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final MessageVerificationContext verification;
+        private final long expiryNanos;
+
+        private CacheEntry(MessageVerificationContext verification, long expiryNanos) {
+            this.verification = verification;
+            this.expiryNanos = expiryNanos;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiryNanos > 0;
+        }
+    }
+}
@@ -30,7 +30,6 @@ import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerId;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationVerifier;
-import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.operator.OperatorCreationException;
 
 import java.security.cert.X509Certificate;
@@ -56,12 +55,19 @@ public class BasicMessageAuthenticator implements MessageAuthenticator {
     public SignerId authenticateMessage(byte[] messageData, byte[] signatureData) throws MessageAuthenticationException {
         try {
             CMSSignedData s = new CMSSignedData(new CMSProcessableByteArray(messageData), signatureData);
-            SignerInformation signer = s.getSignerInfos().getSigners().iterator().next();
-            X509Certificate signingCert = permissionStore.getCertificate(signer.getSID());
-            SignerInformationVerifier verifier = new JcaSimpleSignerInfoVerifierBuilder().setProvider(
-                    SecurityModuleConstants.BC).build(signingCert);
+            return authenticateMessage(s.getSignerInfos().getSigners().iterator().next());
+        } catch (CMSException e) {
+            throw new SecurityException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public SignerId authenticateMessage(SignerInformation signer) throws MessageAuthenticationException {
+        try {
+            SignerInformationVerifier verifier = permissionStore.getVerifier(signer.getSID());
 
             if (!signer.verify(verifier)) {
+                X509Certificate signingCert = permissionStore.getCertificate(signer.getSID());
                 throw new MessageAuthenticationException("Signature does not match the message. Indicated " +
                         "certificate did not sign message. Certificate issuer: "
                         + signingCert.getIssuerX500Principal().getName() + ", serial: "
@@ -36,12 +36,16 @@ import java.security.cert.X509Certificate;
 
 /**
  * Handles signing of messages.
+ * Messages may be signed concurrently, as each thread uses its own content signer.
  */
 public class BasicMessageSigner implements MessageSigner {
     private static final boolean USE_ATTACHED_MODE = false;
     private PrivateKeyEntry privateKeyEntry;
     private JcaSignerInfoGeneratorBuilder builder;
-    private ContentSigner sha512Signer;
+    /**
+     * The content signers are not thread safe, so one is created for each thread signing messages.
+     */
+    private ThreadLocal<ContentSigner> sha512Signers;
 
     /**
      * Sets the privateKeyEntry member and initializes the objects that's needed for signing messages.
@@ -54,8 +58,15 @@ public class BasicMessageSigner implements MessageSigner {
         }
         this.privateKeyEntry = privateKeyEntry;
         try {
-            sha512Signer = new JcaContentSignerBuilder(SecurityModuleConstants.SignatureType).setProvider(SecurityModuleConstants.BC)
-                    .build(privateKeyEntry.getPrivateKey());
+            ContentSigner sha512Signer = createContentSigner(privateKeyEntry);
+            sha512Signers = ThreadLocal.withInitial(() -> {
+                try {
+                    return createContentSigner(privateKeyEntry);
+                } catch (OperatorCreationException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            });
+            sha512Signers.set(sha512Signer);
             builder = new JcaSignerInfoGeneratorBuilder(
                     new JcaDigestCalculatorProviderBuilder().setProvider(SecurityModuleConstants.BC).build());
             builder.setDirectSignature(true);
@@ -64,6 +75,11 @@ public class BasicMessageSigner implements MessageSigner {
         }
     }
 
+    private ContentSigner createContentSigner(PrivateKeyEntry privateKeyEntry) throws OperatorCreationException {
+        return new JcaContentSignerBuilder(SecurityModuleConstants.SignatureType).setProvider(SecurityModuleConstants.BC)
+                .build(privateKeyEntry.getPrivateKey());
+    }
+
     /**
      * Creates the CMS signature for a message.
      *
@@ -78,7 +94,7 @@ public class BasicMessageSigner implements MessageSigner {
         }
         try {
             CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
-            gen.addSignerInfoGenerator(builder.build(sha512Signer, (X509Certificate) privateKeyEntry.getCertificate()));
+            gen.addSignerInfoGenerator(builder.build(sha512Signers.get(), (X509Certificate) privateKeyEntry.getCertificate()));
             CMSSignedData signedData = gen.generate(new CMSProcessableByteArray(messageData), USE_ATTACHED_MODE);
 
             return signedData.getEncoded();
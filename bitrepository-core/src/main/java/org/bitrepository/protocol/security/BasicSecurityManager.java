@@ -26,6 +26,7 @@ import org.bitrepository.protocol.security.exception.CertificateUseException;
 import org.bitrepository.protocol.security.exception.MessageAuthenticationException;
 import org.bitrepository.protocol.security.exception.MessageSigningException;
 import org.bitrepository.protocol.security.exception.OperationAuthorizationException;
+import org.bitrepository.protocol.security.exception.PermissionStoreException;
 import org.bitrepository.protocol.security.exception.SecurityException;
 import org.bitrepository.protocol.security.exception.UnregisteredPermissionException;
 import org.bitrepository.settings.repositorysettings.InfrastructurePermission;
@@ -135,6 +136,10 @@ public class BasicSecurityManager implements SecurityManager {
      * The ID of the component where this instance of the BasicSecurityManager is running
      */
     private final String componentID;
+    /**
+     * Optional cache of recently authenticated messages. Null if messages should not be cached.
+     */
+    private volatile AuthenticatedMessageCache authenticatedMessageCache;
 
     /**
      * Constructor for the SecurityManager.
@@ -183,6 +188,71 @@ public class BasicSecurityManager implements SecurityManager {
         return null;
     }
 
+    @Override
+    public MessageVerificationContext verifyMessage(String message, String signature)
+            throws MessageAuthenticationException {
+        return verifyMessage(message.getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    @Override
+    public MessageVerificationContext verifyMessage(byte[] messageData, String signature)
+            throws MessageAuthenticationException {
+        boolean authenticate = repositorySettings.getProtocolSettings().isRequireMessageAuthentication();
+        boolean authorize = repositorySettings.getProtocolSettings().isRequireOperationAuthorization();
+        if (signature == null) {
+            if (authenticate) {
+                throw new MessageAuthenticationException("Received unsigned message, but authentication is required");
+            }
+            return new MessageVerificationContext(null, null, null);
+        }
+        if (!authenticate && !authorize) {
+            return new MessageVerificationContext(null, null, null);
+        }
+
+        AuthenticatedMessageCache cache = authenticate ? authenticatedMessageCache : null;
+        if (cache != null) {
+            MessageVerificationContext cachedVerification = cache.get(messageData, signature);
+            if (cachedVerification != null) {
+                return cachedVerification;
+            }
+        }
+
+        SignerInformation signerInformation = makeSignedData(messageData, signature).getSignerInfos().getSigners()
+                .iterator().next();
+        if (!authenticate) {
+            return new MessageVerificationContext(signerInformation.getSID(), null, null);
+        }
+        SignerId signerId = authenticator.authenticateMessage(signerInformation);
+        MessageVerificationContext verification;
+        try {
+            verification = new MessageVerificationContext(signerId, permissionStore.getCertificate(signerId),
+                    permissionStore.getCertificateFingerprint(signerId));
+        } catch (PermissionStoreException | UnregisteredPermissionException e) {
+            throw new MessageAuthenticationException(e.getMessage(), e);
+        }
+        if (cache != null) {
+            cache.put(messageData, signature, verification);
+        }
+        return verification;
+    }
+
+    /**
+     * Sets the cache of recently authenticated messages. A message found in the cache is not authenticated again,
+     * but the certificate use and operation is still authorized for every message.
+     *
+     * @param authenticatedMessageCache The cache to use, or null if messages should not be cached.
+     */
+    public void setAuthenticatedMessageCache(AuthenticatedMessageCache authenticatedMessageCache) {
+        this.authenticatedMessageCache = authenticatedMessageCache;
+    }
+
+    /**
+     * @return The cache of recently authenticated messages, or null if messages are not cached.
+     */
+    public AuthenticatedMessageCache getAuthenticatedMessageCache() {
+        return authenticatedMessageCache;
+    }
+
     /**
      * Method to sign a message
      *
@@ -191,13 +261,18 @@ public class BasicSecurityManager implements SecurityManager {
      * @throws MessageSigningException if signing of the message fails.
      */
     public String signMessage(String message) throws MessageSigningException {
+        try {
+            return signMessage(message.getBytes(SecurityModuleConstants.defaultEncodingType));
+        } catch (UnsupportedEncodingException e) {
+            throw new SecurityException(SecurityModuleConstants.defaultEncodingType + " encoding not supported", e);
+        }
+    }
+
+    @Override
+    public String signMessage(byte[] messageData) throws MessageSigningException {
         if (repositorySettings.getProtocolSettings().isRequireMessageAuthentication()) {
-            try {
-                byte[] signature = signer.signMessage(message.getBytes(SecurityModuleConstants.defaultEncodingType));
-                return new String(Base64.encode(signature), StandardCharsets.UTF_8);
-            } catch (UnsupportedEncodingException e) {
-                throw new SecurityException(SecurityModuleConstants.defaultEncodingType + " encoding not supported", e);
-            }
+            byte[] signature = signer.signMessage(messageData);
+            return new String(Base64.encode(signature), StandardCharsets.UTF_8);
         } else {
             return null;
         }
@@ -242,6 +317,34 @@ public class BasicSecurityManager implements SecurityManager {
         }
     }
 
+    @Override
+    public void authorizeCertificateUse(String certificateUser, MessageVerificationContext context)
+            throws CertificateUseException {
+        if (repositorySettings.getProtocolSettings().isRequireOperationAuthorization()) {
+            if (context.getSignerId() == null) {
+                throw new CertificateUseException("Unable to authorize the certificate use of '" + certificateUser
+                        + "' for an unsigned message");
+            }
+            authorizer.authorizeCertificateUse(certificateUser, context.getSignerId());
+        }
+    }
+
+    @Override
+    public void authorizeOperation(String operationType, MessageVerificationContext context, String collectionID)
+            throws OperationAuthorizationException {
+        if (repositorySettings.getProtocolSettings().isRequireOperationAuthorization()) {
+            if (context.getSignerId() == null) {
+                throw new OperationAuthorizationException("Unable to authorize the operation '" + operationType
+                        + "' for an unsigned message");
+            }
+            try {
+                authorizer.authorizeOperation(operationType, context.getSignerId(), collectionID);
+            } catch (UnregisteredPermissionException e) {
+                log.info(e.getMessage());
+            }
+        }
+    }
+
     /**
      * Encapsulates the data of a message request and a signature into a CMSSignedData object.
      *
@@ -250,10 +353,14 @@ public class BasicSecurityManager implements SecurityManager {
      * @return the signed data.
      */
     private CMSSignedData makeSignedData(String messageData, String signature) {
+        return makeSignedData(messageData.getBytes(StandardCharsets.UTF_8), signature);
+    }
+
+    private CMSSignedData makeSignedData(byte[] messageData, String signature) {
         byte[] decodeSig = Base64.decode(signature.getBytes(StandardCharsets.UTF_8));
         CMSSignedData signedData;
         try {
-            signedData = new CMSSignedData(new CMSProcessableByteArray(messageData.getBytes(StandardCharsets.UTF_8)), decodeSig);
+            signedData = new CMSSignedData(new CMSProcessableByteArray(messageData), decodeSig);
         } catch (CMSException e) {
             throw new SecurityException(e.getMessage(), e);
         }
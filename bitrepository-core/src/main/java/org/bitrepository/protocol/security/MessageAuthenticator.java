@@ -23,6 +23,7 @@ package org.bitrepository.protocol.security;
 
 import org.bitrepository.protocol.security.exception.MessageAuthenticationException;
 import org.bouncycastle.cms.SignerId;
+import org.bouncycastle.cms.SignerInformation;
 
 /**
  * Interface for classes to authenticate messages based on a CMS signature.
@@ -38,4 +39,13 @@ public interface MessageAuthenticator {
      * @throws MessageAuthenticationException in case authentication fails.
      */
     SignerId authenticateMessage(byte[] messageData, byte[] signatureData) throws MessageAuthenticationException;
+
+    /**
+     * Method to authenticate a message based on the already parsed signer information of its signature.
+     *
+     * @param signer the signer information from the CMS signature of the message.
+     * @return The ID of the message signer
+     * @throws MessageAuthenticationException in case authentication fails.
+     */
+    SignerId authenticateMessage(SignerInformation signer) throws MessageAuthenticationException;
 }
@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.security;
+
+import org.bouncycastle.cms.SignerId;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * The result of verifying a received message. Holds the signer of the message, so the message can be authorized
+ * without decoding and parsing the signature again.
+ */
+public class MessageVerificationContext {
+    private final SignerId signerId;
+    private final X509Certificate certificate;
+    private final String certificateFingerprint;
+
+    /**
+     * @param signerId               The ID of the signer of the message, or null if the message was not signed or
+     *                               the signature was not needed.
+     * @param certificate            The certificate which was used to authenticate the message, or null if the
+     *                               message was not authenticated.
+     * @param certificateFingerprint The fingerprint of the certificate, or null if the message was not
+     *                               authenticated.
+     */
+    public MessageVerificationContext(SignerId signerId, X509Certificate certificate, String certificateFingerprint) {
+        this.signerId = signerId;
+        this.certificate = certificate;
+        this.certificateFingerprint = certificateFingerprint;
+    }
+
+    /**
+     * @return The ID of the signer of the message, or null if unknown.
+     */
+    public SignerId getSignerId() {
+        return signerId;
+    }
+
+    /**
+     * @return The certificate used to authenticate the message, or null if the message was not authenticated.
+     */
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    /**
+     * @return The fingerprint of the certificate used to authenticate the message, or null if the message was not
+     * authenticated.
+     */
+    public String getCertificateFingerprint() {
+        return certificateFingerprint;
+    }
+}
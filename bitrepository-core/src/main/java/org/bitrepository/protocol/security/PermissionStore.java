@@ -30,7 +30,10 @@ import org.bitrepository.settings.repositorysettings.OperationPermission;
 import org.bitrepository.settings.repositorysettings.Permission;
 import org.bitrepository.settings.repositorysettings.PermissionSet;
 import org.bouncycastle.cms.SignerId;
+import org.bouncycastle.cms.SignerInformationVerifier;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -142,6 +145,27 @@ public class PermissionStore {
         }
     }
 
+    /**
+     * Retrieve the verifier for signatures made with the certificate identified by the signerId.
+     * The verifier is only created the first time it is needed, and is reused for all later signatures made with the
+     * certificate.
+     *
+     * @param signer the identification data of the certificate to retrieve the verifier for.
+     * @return The verifier for the certificate represented by the SignerId.
+     * @throws PermissionStoreException  if no certificate can be found based on the SignerId.
+     * @throws OperatorCreationException if the verifier could not be created for the certificate.
+     */
+    public SignerInformationVerifier getVerifier(SignerId signer)
+            throws PermissionStoreException, OperatorCreationException {
+        CertificateID certificateID = new CertificateID(signer.getIssuer(), signer.getSerialNumber());
+        CertificatePermission permission = permissionMap.get(certificateID);
+        if (permission != null) {
+            return permission.getVerifier();
+        } else {
+            throw new PermissionStoreException("Failed to find certificate for the requested signer:" + certificateID);
+        }
+    }
+
     /**
      * @param signer          the signerId of the certificate used to sign the message.
      * @param certificateUser the user that claims to have used the certificate.
@@ -227,6 +251,11 @@ public class PermissionStore {
         private final Set<String> allowedUsers;
         private final X509Certificate certificate;
         private final String fingerprint;
+        /**
+         * The verifier for signatures made with the certificate. Created on first use, as most certificates are
+         * never used for verifying signatures.
+         */
+        private volatile SignerInformationVerifier verifier;
 
         /**
          * @param certificate                 the certificate which permissions are to be represented.
@@ -297,5 +326,22 @@ public class PermissionStore {
         public String getFingerprint() {
             return fingerprint;
         }
+
+        /**
+         * Retrieve the verifier for the certificate. The verifier can be used concurrently, as it creates new
+         * content verifiers for each verification.
+         *
+         * @return The verifier for signatures made with the certificate.
+         * @throws OperatorCreationException if the verifier could not be created.
+         */
+        public SignerInformationVerifier getVerifier() throws OperatorCreationException {
+            SignerInformationVerifier result = verifier;
+            if (result == null) {
+                result = new JcaSimpleSignerInfoVerifierBuilder().setProvider(SecurityModuleConstants.BC)
+                        .build(certificate);
+                verifier = result;
+            }
+            return result;
+        }
     }
 }
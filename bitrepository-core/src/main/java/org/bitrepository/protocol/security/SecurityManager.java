@@ -39,6 +39,31 @@ public interface SecurityManager {
      */
     SignerId authenticateMessage(String message, String signature) throws MessageAuthenticationException;
 
+    /**
+     * Method to verify a received message. The signature is only decoded and parsed once, and the resulting context
+     * can be used to authorize the message through {@link #authorizeCertificateUse(String, MessageVerificationContext)}
+     * and {@link #authorizeOperation(String, MessageVerificationContext, String)}.
+     *
+     * @param message   the message that needs to be verified.
+     * @param signature the signature belonging to the message.
+     * @return The context with the signer and certificate of the message.
+     * @throws MessageAuthenticationException in case the message could not be authenticated.
+     */
+    MessageVerificationContext verifyMessage(String message, String signature) throws MessageAuthenticationException;
+
+    /**
+     * Method to verify a received message, where the signature covers the raw bytes of the message as they were
+     * transferred, e.g. a compressed encoding of the message.
+     *
+     * @param messageData the data of the message that needs to be verified.
+     * @param signature   the signature belonging to the message data.
+     * @return The context with the signer and certificate of the message.
+     * @throws MessageAuthenticationException in case the message could not be authenticated.
+     * @see #verifyMessage(String, String)
+     */
+    MessageVerificationContext verifyMessage(byte[] messageData, String signature)
+            throws MessageAuthenticationException;
+
     /**
      * Method to sign a message
      *
@@ -48,6 +73,15 @@ public interface SecurityManager {
      */
     String signMessage(String message) throws MessageSigningException;
 
+    /**
+     * Method to sign the raw bytes of a message, e.g. a compressed encoding of the message.
+     *
+     * @param messageData the data to sign
+     * @return the signature for the message data, or null if authentication is disabled.
+     * @throws MessageSigningException if signing of the message fails.
+     */
+    String signMessage(byte[] messageData) throws MessageSigningException;
+
     /**
      * Method to authorize an operation
      *
@@ -70,6 +104,27 @@ public interface SecurityManager {
      */
     void authorizeCertificateUse(String certificateUser, String messageData, String signature) throws CertificateUseException;
 
+    /**
+     * Method to authorize an operation based on an already verified message.
+     *
+     * @param operationType the type of operation that is to be authorized.
+     * @param context       the verification context of the message request.
+     * @param collectionID  the collection to authorize the operation for
+     * @throws OperationAuthorizationException in case of failure.
+     */
+    void authorizeOperation(String operationType, MessageVerificationContext context, String collectionID)
+            throws OperationAuthorizationException;
+
+    /**
+     * Method to authorize the use of a certificate based on an already verified message.
+     *
+     * @param certificateUser the user who signed the message
+     * @param context         the verification context of the message.
+     * @throws CertificateUseException in case the certificate use could not be authorized.
+     */
+    void authorizeCertificateUse(String certificateUser, MessageVerificationContext context)
+            throws CertificateUseException;
+
     /**
      * Returns the fingerprint for the certificate.
      *
@@ -1,6 +1,9 @@
 package org.bitrepository.protocol.security;
 
 import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.utils.XmlUtils;
+import org.bitrepository.settings.referencesettings.GeneralSettings;
+import org.bitrepository.settings.referencesettings.VerifiedMessageCache;
 
 import java.nio.file.Path;
 
@@ -33,7 +36,26 @@ public class SecurityManagerUtil {
         MessageAuthenticator authenticator = new BasicMessageAuthenticator(permissionStore);
         MessageSigner signer = new BasicMessageSigner();
         OperationAuthorizer authorizer = new BasicOperationAuthorizer(permissionStore);
-        return new BasicSecurityManager(settings.getRepositorySettings(), componentCertificate.toString(),
-                authenticator, signer, authorizer, permissionStore, componentID);
+        BasicSecurityManager securityManager = new BasicSecurityManager(settings.getRepositorySettings(),
+                componentCertificate.toString(), authenticator, signer, authorizer, permissionStore, componentID);
+        securityManager.setAuthenticatedMessageCache(createAuthenticatedMessageCache(settings));
+        return securityManager;
+    }
+
+    /**
+     * Creates the cache of authenticated messages defined in the settings.
+     *
+     * @param settings The settings to create the cache from
+     * @return The cache, or null if no cache is defined in the settings.
+     */
+    public static AuthenticatedMessageCache createAuthenticatedMessageCache(Settings settings) {
+        GeneralSettings generalSettings = settings.getReferenceSettings().getGeneralSettings();
+        if (generalSettings == null || generalSettings.getVerifiedMessageCache() == null) {
+            return null;
+        }
+        VerifiedMessageCache cacheSettings = generalSettings.getVerifiedMessageCache();
+        XmlUtils.validateNonNegative(cacheSettings.getTimeToLive());
+        return new AuthenticatedMessageCache(cacheSettings.getMaxSize().intValue(),
+                XmlUtils.xmlDurationToDuration(cacheSettings.getTimeToLive()));
     }
 }
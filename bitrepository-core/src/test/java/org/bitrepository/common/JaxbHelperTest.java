@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common;
+
+import org.apache.activemq.util.ByteArrayInputStream;
+import org.bitrepository.bitrepositorymessages.AlarmMessage;
+import org.bitrepository.bitrepositorymessages.GetChecksumsFinalResponse;
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileRequest;
+import org.bitrepository.protocol.message.ExampleMessageFactory;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class JaxbHelperTest extends ExtendedTestCase {
+
+    @Test(groups = {"regressiontest"})
+    public void contextIsCachedTest() throws Exception {
+        addDescription("Tests that the JAXB context is only created once per class.");
+        addStep("Retrieve the context for the same class twice", "The same instance should be returned");
+        Assert.assertSame(JaxbHelper.getContext(IdentifyPillarsForGetFileRequest.class),
+                JaxbHelper.getContext(IdentifyPillarsForGetFileRequest.class));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void roundTripTest() throws Exception {
+        addDescription("Tests that messages can be serialized, validated and loaded repeatedly with the same helper.");
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        GetChecksumsFinalResponse original = ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class);
+        String originalXml = jaxbHelper.serializeToXml(original);
+
+        for (int i = 0; i < 3; i++) {
+            addStep("Round trip the message, iteration " + i, "The loaded message should equal the original");
+            Assert.assertEquals(roundTrip(jaxbHelper, original), originalXml);
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void concurrentRoundTripTest() throws Exception {
+        addDescription("Tests that a single helper can be used by several threads at the same time.");
+        final JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA,
+                ExampleMessageFactory.SCHEMA_NAME);
+        final IdentifyPillarsForGetFileRequest identify =
+                ExampleMessageFactory.createMessage(IdentifyPillarsForGetFileRequest.class);
+        final GetChecksumsFinalResponse response = ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class);
+
+        addStep("Round trip both message types from a number of threads", "All messages should survive unchanged");
+        final String identifyXml = jaxbHelper.serializeToXml(identify);
+        final String responseXml = jaxbHelper.serializeToXml(response);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final Object message = (i % 2 == 0) ? identify : response;
+                final String expectedXml = (i % 2 == 0) ? identifyXml : responseXml;
+                results.add(executor.submit(() -> expectedXml.equals(roundTrip(jaxbHelper, message))));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void singlePassRoundTripTest() throws Exception {
+        addDescription("Tests that messages can be validated as part of the serialization and loading.");
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        GetChecksumsFinalResponse original = ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class);
+
+        addStep("Serialize and load the message with validation", "The loaded message should equal the original");
+        String xml = jaxbHelper.serializeAndValidateToXml(original);
+        GetChecksumsFinalResponse loaded = jaxbHelper.loadAndValidateXml(GetChecksumsFinalResponse.class,
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(jaxbHelper.serializeToXml(loaded), jaxbHelper.serializeToXml(original));
+    }
+
+    @Test(groups = {"regressiontest"}, expectedExceptions = SAXException.class)
+    public void singlePassLoadOfInvalidMessageTest() throws Exception {
+        addDescription("Tests that invalid messages are rejected with a SAXException when validated while loading.");
+        String messagePath = ExampleMessageFactory.PATH_TO_EXAMPLES + "BadMessages/" +
+                "BadDateAlarmMessage" + ExampleMessageFactory.EXAMPLE_FILE_POSTFIX;
+        InputStream messageIS = Thread.currentThread().getContextClassLoader().getResourceAsStream(messagePath);
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        jaxbHelper.loadAndValidateXml(AlarmMessage.class, messageIS);
+    }
+
+    @Test(groups = {"regressiontest"}, expectedExceptions = SAXException.class)
+    public void singlePassSerializationOfInvalidMessageTest() throws Exception {
+        addDescription("Tests that invalid messages are rejected with a SAXException when validated while "
+                + "serializing.");
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        jaxbHelper.serializeAndValidateToXml(new AlarmMessage());
+    }
+
+    /**
+     * Serializes, validates and loads the message, and returns the serialized form of the loaded message.
+     */
+    private String roundTrip(JaxbHelper jaxbHelper, Object message) throws Exception {
+        String xml = jaxbHelper.serializeToXml(message);
+        jaxbHelper.validate(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        Object loaded = jaxbHelper.loadXml(message.getClass(),
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        return jaxbHelper.serializeToXml(loaded);
+    }
+}
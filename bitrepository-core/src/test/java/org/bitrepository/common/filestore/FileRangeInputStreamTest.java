@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.filestore;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+public class FileRangeInputStreamTest extends ExtendedTestCase {
+    private static final long LARGE_OFFSET = 5L * 1024 * 1024 * 1024;
+    private static final String DATA = "Data placed beyond the 32 bit boundary.";
+
+    @Test(groups = {"regressiontest"})
+    public void readRangeBeyondIntegerOffsets() throws Exception {
+        addDescription("Tests that a file part can be read at an offset larger than what fits in an int.");
+        addStep("Create a sparse file with data placed after 5 GB", "");
+        File file = File.createTempFile("FileRangeInputStreamTest", ".dat");
+        file.deleteOnExit();
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(LARGE_OFFSET);
+                raf.seek(LARGE_OFFSET);
+                raf.write(DATA.getBytes(StandardCharsets.UTF_8));
+            }
+
+            addStep("Read a part of the data at the large offset", "Only the requested part should be returned");
+            try (InputStream in = new DefaultFileInfo(file).getInputStream(LARGE_OFFSET + 5, 6)) {
+                Assert.assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8), "placed");
+            }
+
+            addStep("Read a part extending beyond the end of the file", "The rest of the file should be returned");
+            try (InputStream in = new FileRangeInputStream(file.toPath(), LARGE_OFFSET, Long.MAX_VALUE)) {
+                Assert.assertEquals(in.available(), DATA.length());
+                Assert.assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8), DATA);
+                Assert.assertEquals(in.read(), -1);
+            }
+
+            addStep("Skip within the part", "Skipping should not go beyond the end of the part");
+            try (InputStream in = new FileRangeInputStream(file.toPath(), LARGE_OFFSET, 4)) {
+                Assert.assertEquals(in.skip(10), 4);
+                Assert.assertEquals(in.read(), -1);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(groups = {"regressiontest"}, expectedExceptions = IllegalArgumentException.class)
+    public void negativeOffsetIsRejected() throws Exception {
+        addDescription("Tests that a negative offset is rejected.");
+        File file = File.createTempFile("FileRangeInputStreamTest", ".dat");
+        file.deleteOnExit();
+        new FileRangeInputStream(file.toPath(), -1, 1).close();
+    }
+}
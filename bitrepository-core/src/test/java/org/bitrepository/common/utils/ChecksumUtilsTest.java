@@ -26,6 +26,7 @@ package org.bitrepository.common.utils;
 
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
 import org.jaccept.structure.ExtendedTestCase;
@@ -35,8 +36,15 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ChecksumUtilsTest extends ExtendedTestCase {
     @Test(groups = { "regressiontest" })
@@ -267,4 +275,172 @@ public class ChecksumUtilsTest extends ExtendedTestCase {
                 settings.getRepositorySettings().getProtocolSettings().getDefaultChecksumType());
         Assert.assertNull(csType.getChecksumSalt(), "Should not contain any salt.");
     }
+
+    @Test(groups = { "regressiontest" })
+    public void fileChecksumMatchesStreamChecksum() throws Exception {
+        addDescription("Tests that checksums calculated by reading a file through a FileChannel are identical to "
+                + "the checksums calculated from a stream of the file content, for all algorithms.");
+        addStep("Create a file larger than the read buffers", "Should be OK");
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        File testFile = File.createTempFile("ChecksumUtilsTest", ".bin");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), content);
+
+        addStep("Calculate the checksums of the file and of the content", "The checksums should be identical");
+        for (ChecksumType checksumType : ChecksumType.values()) {
+            if (checksumType == ChecksumType.OTHER) {
+                continue;
+            }
+            ChecksumSpecTYPE csSpec = new ChecksumSpecTYPE();
+            csSpec.setChecksumType(checksumType);
+            if (ChecksumUtils.requiresSalt(checksumType)) {
+                csSpec.setChecksumSalt("salt".getBytes(StandardCharsets.UTF_8));
+            }
+            Assert.assertEquals(ChecksumUtils.generateChecksum(testFile, csSpec),
+                    ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), csSpec), checksumType.name());
+        }
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void fileInfoStreamIsClosed() throws Exception {
+        addDescription("Tests that the stream of a FileInfo is closed after calculating the checksum.");
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        FileInfo fileInfo = new FileInfo() {
+            @Override
+            public String getFileID() {
+                return "test-file";
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream("content".getBytes(StandardCharsets.UTF_8)) {
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+            }
+
+            @Override
+            public Long getLastModifiedDate() {
+                return 0L;
+            }
+
+            @Override
+            public long getSize() {
+                return 7;
+            }
+        };
+        ChecksumUtils.generateChecksum(fileInfo, ChecksumUtils.getDefault(TestSettingsProvider.getSettings("ChecksumUtils")));
+        Assert.assertTrue(closed.get());
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void multipleChecksumsInSinglePass() throws Exception {
+        addDescription("Tests that several checksums, including HMACs of the same algorithm with different salts, "
+                + "can be calculated in a single pass, with the same results as separate calculations.");
+        byte[] content = new byte[2 * 1024 * 1024 + 5];
+        new Random(7).nextBytes(content);
+        File testFile = File.createTempFile("ChecksumUtilsTest", ".bin");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), content);
+
+        ChecksumSpecTYPE md5 = new ChecksumSpecTYPE();
+        md5.setChecksumType(ChecksumType.MD5);
+        ChecksumSpecTYPE sha256 = new ChecksumSpecTYPE();
+        sha256.setChecksumType(ChecksumType.SHA256);
+        ChecksumSpecTYPE hmacSalt1 = new ChecksumSpecTYPE();
+        hmacSalt1.setChecksumType(ChecksumType.HMAC_SHA1);
+        hmacSalt1.setChecksumSalt("salt1".getBytes(StandardCharsets.UTF_8));
+        ChecksumSpecTYPE hmacSalt2 = new ChecksumSpecTYPE();
+        hmacSalt2.setChecksumType(ChecksumType.HMAC_SHA1);
+        hmacSalt2.setChecksumSalt("salt2".getBytes(StandardCharsets.UTF_8));
+        List<ChecksumSpecTYPE> csSpecs = Arrays.asList(md5, sha256, hmacSalt1, hmacSalt2);
+
+        addStep("Calculate the checksums of the file and of a stream in one pass",
+                "Should be identical to the separately calculated checksums");
+        List<String> fileChecksums = ChecksumUtils.generateChecksums(testFile, csSpecs);
+        List<String> streamChecksums = ChecksumUtils.generateChecksums(new ByteArrayInputStream(content), csSpecs);
+        for (int i = 0; i < csSpecs.size(); i++) {
+            String expected = ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), csSpecs.get(i));
+            Assert.assertEquals(fileChecksums.get(i), expected);
+            Assert.assertEquals(streamChecksums.get(i), expected);
+        }
+        Assert.assertNotEquals(fileChecksums.get(2), fileChecksums.get(3));
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void checksumOfFileWhileAllFileBuffersAreInUse() throws Exception {
+        addDescription("Tests that the checksum of a file is calculated from a stream, when all the pooled direct "
+                + "buffers are in use, instead of reading the file channel into a heap buffer.");
+        byte[] content = new byte[1024 * 1024 + 5];
+        new Random(5).nextBytes(content);
+        File testFile = File.createTempFile("ChecksumUtilsTest", ".bin");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), content);
+        ChecksumSpecTYPE md5 = new ChecksumSpecTYPE();
+        md5.setChecksumType(ChecksumType.MD5);
+
+        addStep("Borrow all the direct file buffers", "No more buffers are handed out");
+        List<ByteBuffer> borrowed = new ArrayList<>();
+        try {
+            ByteBuffer buffer;
+            while ((buffer = ChecksumUtils.borrowFileBuffer()) != null) {
+                Assert.assertTrue(buffer.isDirect());
+                borrowed.add(buffer);
+            }
+            Assert.assertEquals(borrowed.size(), ChecksumUtils.MAX_DIRECT_FILE_BUFFERS);
+
+            addStep("Calculate the checksum of the file", "Should be the checksum of the content");
+            Assert.assertEquals(ChecksumUtils.generateChecksum(testFile, ChecksumType.MD5),
+                    ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), md5));
+            Assert.assertNull(ChecksumUtils.borrowFileBuffer());
+        } finally {
+            borrowed.forEach(ChecksumUtils::returnFileBuffer);
+        }
+
+        addStep("Calculate the checksum again with the buffers returned", "The buffers are handed out again");
+        Assert.assertEquals(ChecksumUtils.generateChecksum(testFile, ChecksumType.MD5),
+                ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), md5));
+        ByteBuffer buffer = ChecksumUtils.borrowFileBuffer();
+        Assert.assertNotNull(buffer);
+        ChecksumUtils.returnFileBuffer(buffer);
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void checksumsCalculatedWhileReading() throws Exception {
+        addDescription("Tests that the checksums calculated from the data read through a "
+                + "ChecksumCalculatingInputStream are identical to the checksums of the data.");
+        byte[] content = new byte[300 * 1024 + 3];
+        new Random(11).nextBytes(content);
+        ChecksumSpecTYPE md5 = new ChecksumSpecTYPE();
+        md5.setChecksumType(ChecksumType.MD5);
+        ChecksumSpecTYPE hmac = new ChecksumSpecTYPE();
+        hmac.setChecksumType(ChecksumType.HMAC_SHA256);
+        hmac.setChecksumSalt("salt".getBytes(StandardCharsets.UTF_8));
+        List<ChecksumSpecTYPE> csSpecs = Arrays.asList(md5, hmac);
+
+        addStep("Read part of the stream", "The checksums should not be available yet");
+        ChecksumCalculatingInputStream in = new ChecksumCalculatingInputStream(
+                new ByteArrayInputStream(content), csSpecs);
+        Assert.assertEquals(in.read(), content[0] & 0xff);
+        in.skip(1000);
+        try {
+            in.getChecksums();
+            Assert.fail("The checksums should not be available before the end of the stream");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        addStep("Read the rest of the stream, while calculating other checksums in the same thread",
+                "The checksums should be those of the entire content");
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+            ChecksumUtils.generateChecksum(new ByteArrayInputStream(buffer), md5);
+        }
+        List<String> checksums = in.getChecksums();
+        Assert.assertEquals(checksums.get(0), ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), md5));
+        Assert.assertEquals(checksums.get(1), ChecksumUtils.generateChecksum(new ByteArrayInputStream(content), hmac));
+    }
 }
@@ -60,4 +60,20 @@ public class StreamUtilsTest extends ExtendedTestCase {
         Assert.assertEquals(out.toString(StandardCharsets.UTF_8), DATA);
     }
 
+    @Test(groups = {"regressiontest"})
+    public void streamPartTester() throws Exception {
+        addDescription("Tests extracting a part of a stream.");
+        addStep("Extract a part in the middle of the data", "Should only contain the requested part.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamUtils.copyInputStreamToOutputStream(StreamUtils.getStreamPart(
+                new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8)), 4, 4), out);
+        Assert.assertEquals(out.toString(StandardCharsets.UTF_8), "data");
+
+        addStep("Extract a part extending beyond the end of the data", "Should contain the rest of the data.");
+        out = new ByteArrayOutputStream();
+        StreamUtils.copyInputStreamToOutputStream(StreamUtils.getStreamPart(
+                new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8)), 17, 100), out);
+        Assert.assertEquals(out.toString(StandardCharsets.UTF_8), "streams.");
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.common.utils;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+public class ThrottledInputStreamTest extends ExtendedTestCase {
+
+    @Test(groups = {"regressiontest"})
+    public void throttledReadTest() throws Exception {
+        addDescription("Tests that the throttled input stream delivers the data at the limited rate.");
+        addStep("Read 2000 bytes through a stream limited to 4000 bytes per second",
+                "All the data is read, and it takes around half a second.");
+        byte[] data = new byte[2000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteRateLimiter limiter = new ByteRateLimiter(4000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.currentTimeMillis();
+        try (InputStream in = new ThrottledInputStream(new ByteArrayInputStream(data), limiter)) {
+            byte[] buffer = new byte[100];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertEquals(out.toByteArray(), data);
+        Assert.assertTrue(duration >= 400, "Reading took only " + duration + " ms");
+
+        addStep("Share the limiter with a new stream", "The new stream can read its data.");
+        start = System.currentTimeMillis();
+        try (InputStream in = new ThrottledInputStream(new ByteArrayInputStream(new byte[1]), limiter)) {
+            Assert.assertEquals(in.read(), 0);
+            Assert.assertEquals(in.read(), -1);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void invalidRateTest() {
+        addDescription("Tests that the rate limiter requires a positive rate.");
+        try {
+            new ByteRateLimiter(0);
+            Assert.fail("Should throw an exception here.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
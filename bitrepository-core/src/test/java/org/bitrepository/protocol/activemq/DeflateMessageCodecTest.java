@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+public class DeflateMessageCodecTest extends ExtendedTestCase {
+
+    @Test(groups = {"regressiontest"})
+    public void compressAndDecompressTest() throws Exception {
+        addDescription("Tests that compressed message XML is restored by decompression.");
+        StringBuilder xml = new StringBuilder("<GetChecksumsFinalResponse>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<ChecksumDataItem><FileID>file-").append(i).append("</FileID></ChecksumDataItem>");
+        }
+        xml.append("</GetChecksumsFinalResponse>");
+        byte[] xmlBytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+        addStep("Compress the XML", "The compressed data should be smaller than the XML");
+        byte[] compressed = DeflateMessageCodec.compress(xmlBytes);
+        Assert.assertTrue(compressed.length < xmlBytes.length);
+
+        addStep("Decompress the data", "The original XML should be returned");
+        Assert.assertEquals(DeflateMessageCodec.decompress(compressed), xmlBytes);
+    }
+
+    @Test(groups = {"regressiontest"}, expectedExceptions = DataFormatException.class)
+    public void truncatedDataTest() throws Exception {
+        addDescription("Tests that truncated compressed data is rejected.");
+        byte[] compressed = DeflateMessageCodec.compress("<Message>content</Message>".getBytes(StandardCharsets.UTF_8));
+        DeflateMessageCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.activemq;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class IdentifyRequestSelectorTest extends ExtendedTestCase {
+
+    @Test(groups = {"regressiontest"})
+    public void noFiltersTest() {
+        addDescription("Tests that no selector is created when no filters are defined.");
+        Assert.assertNull(IdentifyRequestSelector.create(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void componentAndCollectionFilterTest() {
+        addDescription("Tests the selector for both a component and collection filter.");
+        String selector = IdentifyRequestSelector.create(List.of("pillar1"), List.of("col1", "col2"));
+        Assert.assertEquals(selector,
+                "(org.bitrepository.messages.type IS NULL OR NOT (org.bitrepository.messages.type LIKE "
+                        + "'Identify%Request')) OR ((org.bitrepository.messages.to IS NULL OR "
+                        + "org.bitrepository.messages.to IN ('pillar1')) AND (org.bitrepository.messages.collectionid "
+                        + "IS NULL OR org.bitrepository.messages.collectionid IN ('col1', 'col2')))");
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void quotedValueTest() {
+        addDescription("Tests that quotes in the filter values are escaped.");
+        String selector = IdentifyRequestSelector.create(Collections.emptyList(), List.of("it's"));
+        Assert.assertTrue(selector.endsWith("IN ('it''s')))"), selector);
+    }
+}
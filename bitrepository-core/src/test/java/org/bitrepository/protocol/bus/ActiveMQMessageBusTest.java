@@ -24,19 +24,29 @@ package org.bitrepository.protocol.bus;
 import org.bitrepository.bitrepositorymessages.DeleteFileRequest;
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForDeleteFileRequest;
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForDeleteFileResponse;
+import org.bitrepository.common.settings.Settings;
 import org.bitrepository.protocol.ProtocolComponentFactory;
 import org.bitrepository.protocol.activemq.ActiveMQMessageBus;
+import org.bitrepository.protocol.activemq.DeflateMessageCodec;
 import org.bitrepository.protocol.message.ExampleMessageFactory;
+import org.bitrepository.settings.referencesettings.CompactMessageEncoding;
 import org.testng.annotations.Test;
 
+import javax.jms.BytesMessage;
 import javax.jms.Message;
 import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 /**
  * Runs the GeneralMessageBusTest using a LocalActiveMQBroker (if useEmbeddedMessageBus is true) and a suitable
@@ -90,6 +100,63 @@ public class ActiveMQMessageBusTest extends GeneralMessageBusTest {
         collectionReceiver.checkNoMessageIsReceived(IdentifyPillarsForDeleteFileRequest.class);
     }
 
+    @Test(groups = {"regressiontest"})
+    public final void brokerSelectorFilterTest() throws Exception {
+        addDescription("Test that the identify requests to other components and collections are filtered, when the "
+                + "filters are changed on a running message bus, and that each accepted message is delivered once.");
+        String componentID = "SelectorFilterComponent";
+        String myCollectionID = "MyCollection";
+        Settings filterSettings = loadSettings(componentID);
+        ActiveMQMessageBus filteringBus = new ActiveMQMessageBus(filterSettings, securityManager);
+        RawMessagebus rawMessagebus = new RawMessagebus(
+                settingsForTestClient.getMessageBusConfiguration(),
+                securityManager);
+        try {
+            addStep("Add a listener to the collection destination and change the component and collection filters",
+                    "The consumer is recreated with the new message selector, which the broker accepts");
+            final BlockingQueue<String> receivedCorrelationIDs = new LinkedBlockingDeque<>();
+            filteringBus.addListener(settingsForTestClient.getCollectionDestination(),
+                    (message, messageContext) -> receivedCorrelationIDs.add(message.getCorrelationID()));
+            filteringBus.setComponentFilter(Arrays.asList(componentID));
+            filteringBus.setCollectionFilter(Arrays.asList(myCollectionID));
+
+            addStep("Send identify requests to this component, to another component, to another collection and a "
+                    + "non-identify request to another component",
+                    "Only the identify request to this component and the non-identify request are received, "
+                            + "each of them once");
+            sendRawMessage(rawMessagebus, IdentifyPillarsForDeleteFileRequest.class, "toMe", componentID,
+                    myCollectionID);
+            sendRawMessage(rawMessagebus, IdentifyPillarsForDeleteFileRequest.class, "toOtherComponent",
+                    "OtherComponent", myCollectionID);
+            sendRawMessage(rawMessagebus, IdentifyPillarsForDeleteFileRequest.class, "toOtherCollection",
+                    componentID, "OtherCollection");
+            sendRawMessage(rawMessagebus, DeleteFileRequest.class, "nonIdentify", "OtherComponent",
+                    myCollectionID);
+            List<String> received = new ArrayList<>();
+            String correlationID;
+            while ((correlationID = receivedCorrelationIDs.poll(1, TimeUnit.SECONDS)) != null) {
+                received.add(correlationID);
+            }
+            Collections.sort(received);
+            assertEquals(received, Arrays.asList("nonIdentify", "toMe"));
+        } finally {
+            filteringBus.close();
+        }
+    }
+
+    private void sendRawMessage(RawMessagebus rawMessagebus,
+                                Class<? extends org.bitrepository.bitrepositorymessages.Message> messageType,
+                                String correlationID, String to, String collectionID) throws Exception {
+        org.bitrepository.bitrepositorymessages.Message message = ExampleMessageFactory.createMessage(messageType);
+        message.setCorrelationID(correlationID);
+        message.setCollectionID(collectionID);
+        message.setTo(to);
+        javax.jms.Message msg = rawMessagebus.createMessage(message);
+        rawMessagebus.addHeader(msg, messageType.getSimpleName(), message.getReplyTo(), collectionID, correlationID);
+        msg.setStringProperty(ActiveMQMessageBus.MESSAGE_TO_KEY, to);
+        rawMessagebus.sendMessage(settingsForTestClient.getCollectionDestination(), msg);
+    }
+
     @Test(groups = {"regressiontest"})
     public final void sendMessageToSpecificComponentTest() throws Exception {
         addDescription("Test that message bus correct uses the 'to' header property to indicated that the message " +
@@ -174,4 +241,85 @@ public class ActiveMQMessageBusTest extends GeneralMessageBusTest {
         rawMessagebus.sendMessage(settingsForTestClient.getCollectionDestination(), rq);
         collectionReceiver.waitForMessage(DeleteFileRequest.class);
     }
+
+    @Test(groups = {"regressiontest"})
+    public final void compactMessageReceptionTest() throws Exception {
+        addDescription("Test that the message bus understands messages sent in the compact encoding.");
+        addStep("Send a request with the XML deflate compressed in a bytes message.",
+                "Verify that the message bus delivers the request.");
+        RawMessagebus rawMessagebus = new RawMessagebus(
+                settingsForTestClient.getMessageBusConfiguration(),
+                securityManager);
+        DeleteFileRequest request = ExampleMessageFactory.createMessage(DeleteFileRequest.class);
+        javax.jms.Message msg = rawMessagebus.createCompactMessage(request);
+        rawMessagebus.addHeader(msg, request.getClass().getSimpleName(), request.getReplyTo(),
+                request.getCollectionID(), request.getCorrelationID());
+        rawMessagebus.sendMessage(settingsForTestClient.getCollectionDestination(), msg);
+        collectionReceiver.waitForMessage(DeleteFileRequest.class);
+
+        addStep("Send the request with an unknown encoding.", "Verify that the message bus ignores the request.");
+        msg.setStringProperty(ActiveMQMessageBus.MESSAGE_ENCODING_KEY, "unknown");
+        rawMessagebus.sendMessage(settingsForTestClient.getCollectionDestination(), msg);
+        collectionReceiver.checkNoMessageIsReceived(DeleteFileRequest.class);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public final void compactMessagesOnlyOnRecipientDestinationTest() throws Exception {
+        addDescription("Test that messages are only sent in the compact encoding on the recipient's own destination, "
+                + "so subscribers on a shared topic, which have not announced the compact encoding, get plain XML.");
+        String compactComponentID = "CompactComponent";
+        String compactComponentDestination = "CompactComponentDestination";
+        Settings compactSettings = loadSettings("CompactEncodingSender");
+        CompactMessageEncoding compactMessageEncoding = new CompactMessageEncoding();
+        compactMessageEncoding.setMinimumSize(BigInteger.ONE);
+        compactSettings.getReferenceSettings().getGeneralSettings().setCompactMessageEncoding(compactMessageEncoding);
+        ActiveMQMessageBus compactBus = new ActiveMQMessageBus(compactSettings, securityManager);
+        RawMessagebus rawMessagebus = new RawMessagebus(
+                settingsForTestClient.getMessageBusConfiguration(),
+                securityManager);
+        try {
+            addStep("Let a component announce it accepts the compact encoding on a message to the sender",
+                    "The sender receives the announcement");
+            final BlockingQueue<org.bitrepository.bitrepositorymessages.Message> announcements =
+                    new LinkedBlockingDeque<>();
+            compactBus.addListener(compactSettings.getReceiverDestinationID(),
+                    (message, messageContext) -> announcements.add(message));
+            DeleteFileRequest announcement = ExampleMessageFactory.createMessage(DeleteFileRequest.class);
+            announcement.setFrom(compactComponentID);
+            announcement.setReplyTo(compactComponentDestination);
+            Message announcementMsg = rawMessagebus.createMessage(announcement);
+            rawMessagebus.addHeader(announcementMsg, announcement.getClass().getSimpleName(),
+                    announcement.getReplyTo(), announcement.getCollectionID(), announcement.getCorrelationID());
+            announcementMsg.setStringProperty(ActiveMQMessageBus.ACCEPT_ENCODING_KEY,
+                    DeflateMessageCodec.ENCODING_NAME);
+            rawMessagebus.sendMessage(compactSettings.getReceiverDestinationID(), announcementMsg);
+            assertEquals(announcements.poll(3, TimeUnit.SECONDS).getFrom(), compactComponentID);
+
+            addStep("Send a message to the announcing component on the collection topic, where both the announcing "
+                    + "and a non-announcing component listens", "Both receive the message as plain XML");
+            final BlockingQueue<Message> announcingTopicMessages = new LinkedBlockingDeque<>();
+            final BlockingQueue<Message> otherTopicMessages = new LinkedBlockingDeque<>();
+            final BlockingQueue<Message> ownDestinationMessages = new LinkedBlockingDeque<>();
+            rawMessagebus.addListener(settingsForTestClient.getCollectionDestination(), announcingTopicMessages::add);
+            rawMessagebus.addListener(settingsForTestClient.getCollectionDestination(), otherTopicMessages::add);
+            rawMessagebus.addListener(compactComponentDestination, ownDestinationMessages::add);
+            DeleteFileRequest request = ExampleMessageFactory.createMessage(DeleteFileRequest.class);
+            request.setTo(compactComponentID);
+            request.setDestination(settingsForTestClient.getCollectionDestination());
+            compactBus.sendMessage(request);
+            assertTrue(announcingTopicMessages.poll(3, TimeUnit.SECONDS) instanceof TextMessage);
+            assertTrue(otherTopicMessages.poll(3, TimeUnit.SECONDS) instanceof TextMessage);
+
+            addStep("Send a message to the announcing component on its own destination",
+                    "The message is received in the compact encoding");
+            request.setDestination(compactComponentDestination);
+            compactBus.sendMessage(request);
+            Message compactMessage = ownDestinationMessages.poll(3, TimeUnit.SECONDS);
+            assertTrue(compactMessage instanceof BytesMessage);
+            assertEquals(compactMessage.getStringProperty(ActiveMQMessageBus.MESSAGE_ENCODING_KEY),
+                    DeflateMessageCodec.ENCODING_NAME);
+        } finally {
+            compactBus.close();
+        }
+    }
 }
@@ -26,11 +26,13 @@ import org.apache.activemq.ActiveMQConnectionFactory;
 import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.protocol.activemq.ActiveMQMessageBus;
+import org.bitrepository.protocol.activemq.DeflateMessageCodec;
 import org.bitrepository.protocol.security.SecurityManager;
 import org.bitrepository.settings.repositorysettings.MessageBusConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.Destination;
 import javax.jms.ExceptionListener;
@@ -40,6 +42,7 @@ import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
 import javax.xml.bind.JAXBException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -93,6 +96,23 @@ public class RawMessagebus {
         return producerSession.createTextMessage(xmlContent);
     }
 
+    /**
+     * Creates a message in the compact encoding, eg. with the XML deflate compressed in a bytes message.
+     */
+    public Message createCompactMessage(org.bitrepository.bitrepositorymessages.Message message) throws JMSException {
+        JaxbHelper jaxbHelper = new JaxbHelper("xsd/", "BitRepositoryMessages.xsd");
+        String xmlContent;
+        try {
+            xmlContent = jaxbHelper.serializeToXml(message);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e);
+        }
+        BytesMessage msg = producerSession.createBytesMessage();
+        msg.writeBytes(DeflateMessageCodec.compress(xmlContent.getBytes(StandardCharsets.UTF_8)));
+        msg.setStringProperty(ActiveMQMessageBus.MESSAGE_ENCODING_KEY, DeflateMessageCodec.ENCODING_NAME);
+        return msg;
+    }
+
     public void sendMessage(String destinationID, Message msg) throws JMSException {
         getProducer(destinationID).send(msg);
     }
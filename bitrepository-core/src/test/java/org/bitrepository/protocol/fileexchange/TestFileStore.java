@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 
 /** 
@@ -135,6 +136,24 @@ public class TestFileStore implements FileStore {
         return res;
     }
 
+    @Override
+    public List<FileInfo> getFileInfos(String collectionID, Long minTimestamp, Long maxTimestamp,
+                                       Long maxNumberOfResults) {
+        List<FileInfo> res = new ArrayList<>();
+        for(String id : getAllFileIds(collectionID)) {
+            FileInfo fileInfo = getFileInfo(id, collectionID);
+            if((minTimestamp == null || minTimestamp <= fileInfo.getLastModifiedDate()) &&
+                    (maxTimestamp == null || maxTimestamp >= fileInfo.getLastModifiedDate())) {
+                res.add(fileInfo);
+            }
+        }
+        res.sort(Comparator.comparing(FileInfo::getLastModifiedDate).thenComparing(FileInfo::getFileID));
+        if(maxNumberOfResults != null && res.size() > maxNumberOfResults) {
+            return new ArrayList<>(res.subList(0, maxNumberOfResults.intValue()));
+        }
+        return res;
+    }
+
     @Override
     public boolean hasFile(String fileID, String collectionID) {
         return (new File(storageDir, fileID)).isFile();
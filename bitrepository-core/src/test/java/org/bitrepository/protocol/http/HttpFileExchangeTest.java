@@ -21,18 +21,32 @@
  */
 package org.bitrepository.protocol.http;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.bitrepository.protocol.CoordinationLayerException;
 import org.bitrepository.settings.referencesettings.FileExchangeSettings;
+import org.bitrepository.settings.referencesettings.ParallelTransfer;
 import org.bitrepository.settings.referencesettings.ProtocolType;
 import org.jaccept.structure.ExtendedTestCase;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
 
 public class HttpFileExchangeTest extends ExtendedTestCase {
     @Test(groups = { "regressiontest" })
@@ -60,4 +74,104 @@ public class HttpFileExchangeTest extends ExtendedTestCase {
         String expectedEncodedPlusFilename = "test%2Bfile";
         assertEquals(plusFilenameUrl.getFile(), serverPathPrefix + expectedEncodedPlusFilename);
     }
-}
\ No newline at end of file
+
+    @Test(groups = { "regressiontest" })
+    public void reusesConnectionsTest() throws Exception {
+        addDescription("Tests that the uploads, downloads and deletes of files reuse the pooled connections.");
+        FileExchangeSettings fileExchangeSettings = new FileExchangeSettings();
+        fileExchangeSettings.setProtocolType(ProtocolType.HTTP);
+        HttpFileExchange fe = new HttpFileExchange(fileExchangeSettings);
+        byte[] content = "Some content for the file".getBytes(StandardCharsets.UTF_8);
+
+        try (LocalHttpServer server = new LocalHttpServer(1)) {
+            addStep("Upload a number of files one after the other", "The files are on the server");
+            for (int i = 0; i < 10; i++) {
+                fe.putFile(new ByteArrayInputStream(content), server.getURL("file-" + i));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(server.getFile("file-" + i), content);
+            }
+
+            addStep("Download and delete the files", "The content is downloaded and the files are deleted");
+            for (int i = 0; i < 10; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                fe.getFile(out, server.getURL("file-" + i));
+                assertEquals(out.toByteArray(), content);
+                fe.deleteFile(server.getURL("file-" + i));
+                assertNull(server.getFile("file-" + i));
+            }
+
+            addStep("Check the connections used", "All the requests went through a single connection");
+            assertEquals(server.getNumberOfConnections(), 1);
+        }
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void verifiesChecksumsOfParallelTransfersTest() throws Exception {
+        addDescription("Tests that the checksums of files transferred in parallel ranges are verified, and that the "
+                + "uploaded file is deleted, when a ranged upload fails.");
+        File file = Files.createTempFile("parallel-upload", ".bin").toFile();
+        file.deleteOnExit();
+        byte[] content = "Some content for the file, which is transferred in ranges".getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), content);
+        ChecksumSpecTYPE csSpec = new ChecksumSpecTYPE();
+        csSpec.setChecksumType(ChecksumType.MD5);
+        ChecksumDataForFileTYPE checksum = new ChecksumDataForFileTYPE();
+        checksum.setChecksumSpec(csSpec);
+        checksum.setChecksumValue(Base16Utils.encodeBase16(ChecksumUtils.generateChecksum(file, csSpec)));
+        ChecksumDataForFileTYPE wrongChecksum = new ChecksumDataForFileTYPE();
+        wrongChecksum.setChecksumSpec(csSpec);
+        wrongChecksum.setChecksumValue(Base16Utils.encodeBase16("00000000000000000000000000000000"));
+
+        try (LocalHttpServer server = new LocalHttpServer(4)) {
+            FileExchangeSettings fileExchangeSettings = new FileExchangeSettings();
+            fileExchangeSettings.setProtocolType(ProtocolType.HTTP);
+            fileExchangeSettings.setServerName(server.getURL(file.getName()).getHost());
+            fileExchangeSettings.setPort(BigInteger.valueOf(server.getPort()));
+            fileExchangeSettings.setPath(server.getPath());
+            ParallelTransfer parallelTransfer = new ParallelTransfer();
+            parallelTransfer.setStreams(BigInteger.valueOf(2));
+            parallelTransfer.setRangeSize(BigInteger.valueOf(8));
+            parallelTransfer.setRetriesPerRange(BigInteger.ZERO);
+            parallelTransfer.setRangedUploads(true);
+            fileExchangeSettings.setParallelTransfer(parallelTransfer);
+            HttpFileExchange fe = new HttpFileExchange(fileExchangeSettings);
+
+            addStep("Upload and download the file with the correct checksum", "The file is transferred");
+            URL url = fe.putFile(file, checksum);
+            assertEquals(server.getFile(file.getName()), content);
+            File downloaded = Files.createTempFile("parallel-download", ".bin").toFile();
+            downloaded.deleteOnExit();
+            fe.getFile(downloaded, url.toExternalForm(), checksum);
+            assertEquals(Files.readAllBytes(downloaded.toPath()), content);
+
+            addStep("Download the file with another checksum", "The download fails");
+            try {
+                fe.getFile(downloaded, url.toExternalForm(), wrongChecksum);
+                fail("The download should fail with the wrong checksum");
+            } catch (CoordinationLayerException e) {
+                // expected
+            }
+
+            addStep("Upload the file with another checksum", "The upload fails, and the file is deleted");
+            fe.deleteFile(url);
+            try {
+                fe.putFile(file, wrongChecksum);
+                fail("The upload should fail with the wrong checksum");
+            } catch (CoordinationLayerException e) {
+                // expected
+            }
+            assertNull(server.getFile(file.getName()));
+
+            addStep("Upload the file, while a range fails", "The upload fails, and the file is deleted");
+            server.failRangeRequests(1);
+            try {
+                fe.putFile(file, checksum);
+                fail("The upload should fail, when a range fails");
+            } catch (CoordinationLayerException e) {
+                // expected
+            }
+            assertNull(server.getFile(file.getName()));
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bitrepository.common.utils.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP server on the loopback interface for testing the HTTP file exchange. Files are kept in memory and
+ * can be put, retrieved and deleted. The server records the client addresses of the requests, so it is possible
+ * to see how many connections the clients have used.
+ * <p/>
+ * Ranges of files can be retrieved with Range requests and put with Content-Range headers, like on an Apache mod_dav
+ * server. Failures of the range requests can be injected, to test the retries of ranges.
+ */
+public class LocalHttpServer implements AutoCloseable {
+    private static final String PATH = "/files";
+    static {
+        // Without it the server delays the small responses on kept alive connections, until they are acknowledged.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Set<InetSocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicInteger rangeRequestsToFail = new AtomicInteger();
+    private volatile boolean rangesSupported = true;
+    private volatile boolean rangedPutsSupported = true;
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @param threads The number of threads handling the requests.
+     * @throws IOException If the server cannot be started.
+     */
+    public LocalHttpServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PATH, this::handle);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @param fileID The name of the file.
+     * @return The URL of the file on the server.
+     */
+    public URL getURL(String fileID) throws MalformedURLException {
+        return new URL("http", server.getAddress().getHostString(), getPort(), PATH + "/" + fileID);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getPath() {
+        return PATH;
+    }
+
+    /**
+     * @param fileID The name of the file.
+     * @return The content of the file on the server, or null if the file is not on the server.
+     */
+    public byte[] getFile(String fileID) {
+        return files.get(fileID);
+    }
+
+    /**
+     * Places a file on the server.
+     *
+     * @param fileID The name of the file.
+     * @param data   The content of the file.
+     */
+    public void putFile(String fileID, byte[] data) {
+        files.put(fileID, data);
+    }
+
+    /**
+     * @param rangesSupported Whether the server supports Range requests. Range headers are ignored, if not.
+     */
+    public void setRangesSupported(boolean rangesSupported) {
+        this.rangesSupported = rangesSupported;
+    }
+
+    /**
+     * @param rangedPutsSupported Whether the server supports PUT requests with a Content-Range header. The header is
+     *                            ignored, if not, so each range replaces the file.
+     */
+    public void setRangedPutsSupported(boolean rangedPutsSupported) {
+        this.rangedPutsSupported = rangedPutsSupported;
+    }
+
+    /**
+     * Makes the next range requests fail with a 503 status.
+     *
+     * @param count The number of range requests to fail.
+     */
+    public void failRangeRequests(int count) {
+        rangeRequestsToFail.set(count);
+    }
+
+    /**
+     * @return The number of requests for ranges of files, including the failed ones.
+     */
+    public int getNumberOfRangeRequests() {
+        return rangeRequests.get();
+    }
+
+    /**
+     * @return The number of distinct client connections, which have made requests to the server.
+     */
+    public int getNumberOfConnections() {
+        return clientAddresses.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientAddresses.add(exchange.getRemoteAddress());
+        String fileID = exchange.getRequestURI().getPath().substring(PATH.length() + 1);
+        String range = rangesSupported ? exchange.getRequestHeaders().getFirst("Range") : null;
+        String contentRange = rangedPutsSupported ? exchange.getRequestHeaders().getFirst("Content-Range") : null;
+        try {
+            if (range != null || contentRange != null) {
+                rangeRequests.incrementAndGet();
+                if (rangeRequestsToFail.getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+                    StreamUtils.copyInputStreamToOutputStream(exchange.getRequestBody(), new ByteArrayOutputStream());
+                    respond(exchange, 503, "Unavailable".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+            }
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    StreamUtils.copyInputStreamToOutputStream(exchange.getRequestBody(), content);
+                    if (contentRange == null) {
+                        files.put(fileID, content.toByteArray());
+                    } else {
+                        putRange(fileID, contentRange, content.toByteArray());
+                    }
+                    respond(exchange, 201, "Created".getBytes(StandardCharsets.UTF_8));
+                    break;
+                case "HEAD":
+                    byte[] headData = files.get(fileID);
+                    if (rangesSupported) {
+                        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                    }
+                    if (headData != null) {
+                        exchange.getResponseHeaders().set("Content-Length", String.valueOf(headData.length));
+                    }
+                    exchange.sendResponseHeaders(headData == null ? 404 : 200, -1);
+                    break;
+                case "GET":
+                    byte[] data = files.get(fileID);
+                    if (data == null) {
+                        respond(exchange, 404, "Not found".getBytes(StandardCharsets.UTF_8));
+                    } else if (range != null) {
+                        String[] positions = range.substring("bytes=".length()).split("-");
+                        int start = Integer.parseInt(positions[0]);
+                        int end = Math.min(Integer.parseInt(positions[1]), data.length - 1);
+                        exchange.getResponseHeaders().set("Content-Range",
+                                "bytes " + start + "-" + end + "/" + data.length);
+                        respond(exchange, 206, Arrays.copyOfRange(data, start, end + 1));
+                    } else {
+                        respond(exchange, 200, data);
+                    }
+                    break;
+                case "DELETE":
+                    if (files.remove(fileID) == null) {
+                        respond(exchange, 404, "Not found".getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        respond(exchange, 200, "Deleted".getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                default:
+                    respond(exchange, 405, "Not allowed".getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Writes a range into a file, extending the file if needed.
+     *
+     * @param contentRange The Content-Range header, e.g. 'bytes 0-99/1000'.
+     */
+    private synchronized void putRange(String fileID, String contentRange, byte[] data) {
+        String[] positions = contentRange.substring("bytes ".length()).split("[-/]");
+        int start = Integer.parseInt(positions[0]);
+        byte[] file = files.getOrDefault(fileID, new byte[0]);
+        if (file.length < start + data.length) {
+            file = Arrays.copyOf(file, start + data.length);
+        }
+        System.arraycopy(data, 0, file, start, data.length);
+        files.put(fileID, file);
+    }
+
+    /**
+     * Sends a response with a body. The server closes the connection after a response without a body, so a body is
+     * always sent to keep the connection alive.
+     */
+    private void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
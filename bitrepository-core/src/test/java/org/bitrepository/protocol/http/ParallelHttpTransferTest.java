@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.http;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class ParallelHttpTransferTest extends ExtendedTestCase {
+    private static final int RANGE_SIZE = 100000;
+    private static final int FILE_SIZE = 10 * RANGE_SIZE + 3;
+    private LocalHttpServer server;
+    private CloseableHttpClient httpClient;
+    private ChecksumSpecTYPE csSpec;
+    private byte[] data;
+    private File localFile;
+    private String expectedChecksum;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() throws IOException {
+        server = new LocalHttpServer(4);
+        httpClient = HttpClients.custom().setMaxConnPerRoute(4).setMaxConnTotal(4).build();
+        csSpec = new ChecksumSpecTYPE();
+        csSpec.setChecksumType(ChecksumType.MD5);
+        data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        localFile = File.createTempFile("ParallelHttpTransferTest", ".bin");
+        Files.write(localFile.toPath(), data);
+        expectedChecksum = ChecksumUtils.generateChecksum(localFile, csSpec);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws IOException {
+        server.close();
+        httpClient.close();
+        localFile.delete();
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void downloadInRangesTest() throws Exception {
+        addDescription("Tests that a large file is downloaded in ranges, with the checksum calculated on the way.");
+        server.putFile("file", data);
+        ParallelHttpTransfer transfer = new ParallelHttpTransfer(httpClient, 4, RANGE_SIZE, 0);
+        File outputFile = File.createTempFile("ParallelHttpTransferTest", ".out");
+        try {
+            addStep("Download the file", "The file is downloaded in 11 ranges with the correct content and checksum");
+            String checksum = transfer.download(server.getURL("file"), outputFile, csSpec);
+            assertEquals(Files.readAllBytes(outputFile.toPath()), data);
+            assertEquals(checksum, expectedChecksum);
+            assertEquals(server.getNumberOfRangeRequests(), 11);
+        } finally {
+            outputFile.delete();
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void retryFailedRangesTest() throws Exception {
+        addDescription("Tests that failed ranges are retried on their own.");
+        server.putFile("file", data);
+        ParallelHttpTransfer transfer = new ParallelHttpTransfer(httpClient, 4, RANGE_SIZE, 2);
+        File outputFile = File.createTempFile("ParallelHttpTransferTest", ".out");
+        try {
+            addStep("Download the file while the first 3 range requests fail",
+                    "Only the failed ranges are requested again, and the file is downloaded correctly");
+            server.failRangeRequests(3);
+            String checksum = transfer.download(server.getURL("file"), outputFile, csSpec);
+            assertEquals(Files.readAllBytes(outputFile.toPath()), data);
+            assertEquals(checksum, expectedChecksum);
+            assertEquals(server.getNumberOfRangeRequests(), 11 + 3);
+
+            addStep("Download the file while more range requests fail than the retries allow", "The download fails");
+            server.failRangeRequests(100);
+            try {
+                transfer.download(server.getURL("file"), outputFile, csSpec);
+                fail("The download should fail, when a range fails more times than the retries");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            outputFile.delete();
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void uploadInRangesTest() throws Exception {
+        addDescription("Tests that a large file is uploaded in ranges, replacing an existing larger file.");
+        server.putFile("file", new byte[2 * FILE_SIZE]);
+        ParallelHttpTransfer transfer = new ParallelHttpTransfer(httpClient, 4, RANGE_SIZE, 0);
+
+        addStep("Upload the file", "The file is uploaded in 11 ranges with the correct content and checksum");
+        String checksum = transfer.upload(localFile, server.getURL("file"), csSpec);
+        assertEquals(server.getFile("file"), data);
+        assertEquals(checksum, expectedChecksum);
+        assertEquals(server.getNumberOfRangeRequests(), 11);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void uploadToServerWithoutRangedPutsTest() throws Exception {
+        addDescription("Tests that a large file is uploaded as a single stream, when the server does not put the "
+                + "ranges together.");
+        ParallelHttpTransfer transfer = new ParallelHttpTransfer(httpClient, 4, RANGE_SIZE, 0);
+
+        addStep("Upload the file to a server without support for ranges",
+                "The file is uploaded as a single stream with the correct content and checksum");
+        server.setRangesSupported(false);
+        String checksum = transfer.upload(localFile, server.getURL("file"), csSpec);
+        assertEquals(server.getFile("file"), data);
+        assertEquals(checksum, expectedChecksum);
+        assertEquals(server.getNumberOfRangeRequests(), 0);
+
+        addStep("Upload the file to a server, which announces support for ranges, but ignores the Content-Range "
+                + "header of PUT requests", "The size of the uploaded file is wrong, so the file is uploaded again "
+                + "as a single stream with the correct content and checksum");
+        server.setRangesSupported(true);
+        server.setRangedPutsSupported(false);
+        checksum = transfer.upload(localFile, server.getURL("other"), csSpec);
+        assertEquals(server.getFile("other"), data);
+        assertEquals(checksum, expectedChecksum);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void singleStreamTest() throws Exception {
+        addDescription("Tests that files are transferred as a single stream, when they cannot be split.");
+        server.putFile("file", data);
+        ParallelHttpTransfer transfer = new ParallelHttpTransfer(httpClient, 4, RANGE_SIZE, 0);
+        File outputFile = File.createTempFile("ParallelHttpTransferTest", ".out");
+        try {
+            addStep("Download a file from a server without support for Range requests",
+                    "The file is downloaded as a single stream with the correct content and checksum");
+            server.setRangesSupported(false);
+            String checksum = transfer.download(server.getURL("file"), outputFile, csSpec);
+            assertEquals(Files.readAllBytes(outputFile.toPath()), data);
+            assertEquals(checksum, expectedChecksum);
+
+            addStep("Upload a file no larger than a single range",
+                    "The file is uploaded as a single stream with the correct content and checksum");
+            ParallelHttpTransfer largeRanges = new ParallelHttpTransfer(httpClient, 4, FILE_SIZE, 0);
+            checksum = largeRanges.upload(localFile, server.getURL("other"), csSpec);
+            assertEquals(server.getFile("other"), data);
+            assertEquals(checksum, expectedChecksum);
+            assertEquals(server.getNumberOfRangeRequests(), 0);
+        } finally {
+            outputFile.delete();
+        }
+    }
+}
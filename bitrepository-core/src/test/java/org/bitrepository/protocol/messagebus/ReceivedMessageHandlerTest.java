@@ -28,11 +28,14 @@ import org.bitrepository.protocol.MessageContext;
 import org.bitrepository.settings.referencesettings.MessageCategory;
 import org.bitrepository.settings.referencesettings.MessageThreadPool;
 import org.bitrepository.settings.referencesettings.MessageThreadPools;
+import org.bitrepository.settings.referencesettings.OverflowPolicy;
 import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
@@ -305,6 +308,83 @@ public class ReceivedMessageHandlerTest extends ExtendedTestCase {
         verify(secondCollection1Listener, timeout(100)).onMessage(putFileRequest, null);
     }
 
+    @Test(groups = { "regressiontest" })
+    public void fullQueueBlocksDelivery() throws Exception {
+        addDescription("Tests that delivery of a message waits when the queue of the pool is full, instead of " +
+                "dropping the message.");
+        addFixture("Create a ReceivedMessageHandler with a single thread and a queue of size 1.");
+        MessageThreadPool poolConfiguration = createMessageThreadPool(1, null, null, null);
+        poolConfiguration.setQueueSize(BigInteger.ONE);
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(poolConfiguration));
+
+        addStep("Dispatch two messages, blocking on the processing of the first message.",
+                "The second message should be queued.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        MessageListener queuedListener = mock(MessageListener.class);
+        Message message = new Message();
+        deliverAsynchronously(handler, message, blockingListener, queuedListener);
+        Assert.assertEquals(handler.getStatistics().get(0).getQueueDepth(), 1);
+
+        addStep("Dispatch a third message from a separate thread.", "The delivery should wait for room in the queue.");
+        MessageListener waitingListener = mock(MessageListener.class);
+        Thread deliveringThread = new Thread(() -> handler.deliver(waitingListener, message, null));
+        deliveringThread.start();
+        deliveringThread.join(200);
+        Assert.assertTrue(deliveringThread.isAlive(), "Delivery should wait for room in the queue");
+        verifyNoMoreInteractions(waitingListener);
+
+        addStep("Unblock the blocked listener", "All the messages should now be processed.");
+        blockingListener.unblock();
+        deliveringThread.join(1000);
+        Assert.assertFalse(deliveringThread.isAlive());
+        verify(blockingListener.listener, timeout(100)).onMessage(message, null);
+        verify(queuedListener, timeout(100)).onMessage(message, null);
+        verify(waitingListener, timeout(100)).onMessage(message, null);
+        Assert.assertEquals(handler.getStatistics().get(0).getOverflows(), 1);
+        handler.close();
+    }
+
+    @Test(groups = { "regressiontest" })
+    public void fullQueueWithCallerRunsPolicy() {
+        addDescription("Tests that a message is processed by the delivering thread when the queue of the pool is " +
+                "full and the overflow policy is CALLER_RUNS.");
+        addFixture("Create a ReceivedMessageHandler with a single thread and a queue of size 1.");
+        MessageThreadPool poolConfiguration = createMessageThreadPool(1, null, null, null);
+        poolConfiguration.setQueueSize(BigInteger.ONE);
+        poolConfiguration.setOverflowPolicy(OverflowPolicy.CALLER_RUNS);
+        poolConfiguration.setName("test-pool");
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(poolConfiguration));
+
+        addStep("Dispatch two messages, blocking on the processing of the first message.",
+                "The second message should be queued.");
+        BlockingMessageListener blockingListener = new BlockingMessageListener(mock(MessageListener.class));
+        MessageListener queuedListener = mock(MessageListener.class);
+        Message message = new Message();
+        deliverAsynchronously(handler, message, blockingListener, queuedListener);
+
+        addStep("Dispatch a third message.", "The message should be processed before the delivery returns.");
+        MessageListener callerRunsListener = mock(MessageListener.class);
+        handler.deliver(callerRunsListener, message, null);
+        verify(callerRunsListener).onMessage(message, null);
+        MessageThreadPoolStatistics statistics = handler.getStatistics().get(0);
+        Assert.assertEquals(statistics.getPoolName(), "test-pool");
+        Assert.assertEquals(statistics.getOverflows(), 1);
+
+        blockingListener.unblock();
+        verify(queuedListener, timeout(100)).onMessage(message, null);
+        handler.close();
+    }
+
+    @Test(groups = { "regressiontest" }, expectedExceptions = RejectedExecutionException.class)
+    public void closeShutsDownCategoryPools() {
+        addDescription("Tests that closing the handler also shuts down the message category pools.");
+        ReceivedMessageHandler handler = new ReceivedMessageHandler(createMessageThreadPools(
+                createMessageThreadPool(1, null, MessageCategory.SLOW, null)
+        ));
+        handler.close();
+        handler.deliver(mock(MessageListener.class), new PutFileRequest(), null);
+    }
+
     private BlockingMessageListener[] createBlockingMessageListeners(int number) {
         BlockingMessageListener[] listeners = new BlockingMessageListener[number];
         for (int i=0; i<number;i++) {
@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.performancetest;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the throughput of the checksum calculations for the different algorithms and file sizes, comparing
+ * the file based calculation to the stream based calculation.
+ */
+public class ChecksumUtilsThroughputStressTest extends ExtendedTestCase {
+    /** The file sizes to measure. */
+    private static final long[] FILE_SIZES = {64 * 1024, 16 * 1024 * 1024, 512 * 1024 * 1024};
+    /** The minimum number of bytes to digest for each measurement, to get stable numbers for small files. */
+    private static final long MINIMUM_BYTES_PER_MEASUREMENT = 1024 * 1024 * 1024;
+
+    @Test( groups = {"StressTest"} )
+    public void checksumThroughput() throws Exception {
+        addDescription("Measures the checksum throughput in MB/s for every algorithm and a range of file sizes.");
+        for (long fileSize : FILE_SIZES) {
+            File testFile = createFile(fileSize);
+            try {
+                for (ChecksumType checksumType : ChecksumType.values()) {
+                    if (checksumType == ChecksumType.OTHER) {
+                        continue;
+                    }
+                    ChecksumSpecTYPE csSpec = new ChecksumSpecTYPE();
+                    csSpec.setChecksumType(checksumType);
+                    if (ChecksumUtils.requiresSalt(checksumType)) {
+                        csSpec.setChecksumSalt("salt".getBytes(StandardCharsets.UTF_8));
+                    }
+                    measure(testFile, csSpec);
+                }
+            } finally {
+                testFile.delete();
+            }
+        }
+    }
+
+    private void measure(File testFile, ChecksumSpecTYPE csSpec) throws Exception {
+        long iterations = Math.max(1, MINIMUM_BYTES_PER_MEASUREMENT / testFile.length());
+        // Warm up the code paths and the file cache.
+        ChecksumUtils.generateChecksum(testFile, csSpec);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < iterations; i++) {
+            ChecksumUtils.generateChecksum(testFile, csSpec);
+        }
+        double fileRate = rate(testFile.length() * iterations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (long i = 0; i < iterations; i++) {
+            try (InputStream in = new FileInputStream(testFile)) {
+                ChecksumUtils.generateChecksum(in, csSpec);
+            }
+        }
+        double streamRate = rate(testFile.length() * iterations, System.nanoTime() - start);
+
+        System.out.println(String.format("%-12s %10d bytes: file %8.1f MB/s, stream %8.1f MB/s",
+                csSpec.getChecksumType(), testFile.length(), fileRate, streamRate));
+    }
+
+    private double rate(long bytes, long elapsedNanos) {
+        return bytes / (elapsedNanos / 1e9) / (1024 * 1024);
+    }
+
+    private File createFile(long size) throws Exception {
+        File file = File.createTempFile("ChecksumThroughput", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] block = new byte[1024 * 1024];
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (byte) (i * 31);
+            }
+            long written = 0;
+            while (written < size) {
+                int length = (int) Math.min(block.length, size - written);
+                raf.write(block, 0, length);
+                written += length;
+            }
+        }
+        return file;
+    }
+}
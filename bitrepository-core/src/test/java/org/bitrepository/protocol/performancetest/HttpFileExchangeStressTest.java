@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.performancetest;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.bitrepository.protocol.http.HttpFileExchange;
+import org.bitrepository.protocol.http.LocalHttpServer;
+import org.bitrepository.settings.referencesettings.FileExchangeSettings;
+import org.bitrepository.settings.referencesettings.ProtocolType;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the rate of uploads of many small files, like the result files of the pillars, to a local HTTP server.
+ * The pooled HTTP file exchange is compared to making the uploads with a new HTTP client for each file.
+ */
+public class HttpFileExchangeStressTest extends ExtendedTestCase {
+    /** The number of files to upload for each measurement. */
+    private static final int NUMBER_OF_FILES = 5000;
+    /** The size of each file in bytes. */
+    private static final int FILE_SIZE = 4 * 1024;
+    /** The numbers of parallel uploaders to measure. */
+    private static final int[] UPLOADERS = {1, 4, 16};
+
+    @Test( groups = {"StressTest"} )
+    public void uploadManySmallFiles() throws Exception {
+        addDescription("Measures the number of uploaded files per second with and without the pooled connections.");
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        FileExchangeSettings fileExchangeSettings = new FileExchangeSettings();
+        fileExchangeSettings.setProtocolType(ProtocolType.HTTP);
+        HttpFileExchange fileExchange = new HttpFileExchange(fileExchangeSettings);
+
+        for (int uploaders : UPLOADERS) {
+            try (LocalHttpServer server = new LocalHttpServer(uploaders)) {
+                long elapsed = upload(server, uploaders,
+                        url -> fileExchange.putFile(new ByteArrayInputStream(content), url));
+                report("pooled", uploaders, elapsed, server.getNumberOfConnections());
+            }
+            try (LocalHttpServer server = new LocalHttpServer(uploaders)) {
+                long elapsed = upload(server, uploaders, url -> {
+                    try (CloseableHttpClient client = HttpClients.createDefault()) {
+                        HttpPut put = new HttpPut(url.toExternalForm());
+                        put.setEntity(new ByteArrayEntity(content));
+                        try (CloseableHttpResponse response = client.execute(put)) {
+                            EntityUtils.consume(response.getEntity());
+                        }
+                    }
+                });
+                report("per file", uploaders, elapsed, server.getNumberOfConnections());
+            }
+        }
+    }
+
+    private long upload(LocalHttpServer server, int uploaders, Upload upload) throws Exception {
+        // Warm up the code paths.
+        for (int i = 0; i < 100; i++) {
+            upload.upload(server.getURL("warmup-" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(uploaders);
+        try {
+            long start = System.nanoTime();
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < NUMBER_OF_FILES; i++) {
+                URL url = server.getURL("file-" + i);
+                results.add(executor.submit(() -> {
+                    upload.upload(url);
+                    return null;
+                }));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void report(String type, int uploaders, long elapsedNanos, int connections) {
+        System.out.println(String.format("%-8s %2d uploaders: %8.1f files/s using %5d connections",
+                type, uploaders, NUMBER_OF_FILES / (elapsedNanos / 1e9), connections));
+    }
+
+    private interface Upload {
+        void upload(URL url) throws Exception;
+    }
+}
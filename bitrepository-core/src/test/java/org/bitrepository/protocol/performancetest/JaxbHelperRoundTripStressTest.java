@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.performancetest;
+
+import org.apache.activemq.util.ByteArrayInputStream;
+import org.bitrepository.bitrepositorymessages.GetChecksumsFinalResponse;
+import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetFileRequest;
+import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.protocol.message.ExampleMessageFactory;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the throughput of serializing, validating and loading messages through the JaxbHelper, corresponding to
+ * the work done by the message bus for each sent and received message.
+ */
+public class JaxbHelperRoundTripStressTest extends ExtendedTestCase {
+    /** The number of round trips used to warm up the JVM before measuring.*/
+    private static final int WARMUP_ROUND_TRIPS = 2000;
+    /** The number of round trips to measure.*/
+    private static final int MEASURED_ROUND_TRIPS = 10000;
+
+    @Test( groups = {"StressTest"} )
+    public void roundTripIdentifyPillarsForGetFileRequest() throws Exception {
+        addDescription("Measures the number of IdentifyPillarsForGetFileRequest round trips per second.");
+        measureRoundTrips(ExampleMessageFactory.createMessage(IdentifyPillarsForGetFileRequest.class));
+    }
+
+    @Test( groups = {"StressTest"} )
+    public void roundTripGetChecksumsFinalResponse() throws Exception {
+        addDescription("Measures the number of GetChecksumsFinalResponse round trips per second.");
+        measureRoundTrips(ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class));
+    }
+
+    @Test( groups = {"StressTest"} )
+    public void singlePassRoundTripGetChecksumsFinalResponse() throws Exception {
+        addDescription("Measures the number of GetChecksumsFinalResponse round trips per second, when the message is "
+                + "validated as part of the serialization and loading.");
+        measureRoundTrips(ExampleMessageFactory.createMessage(GetChecksumsFinalResponse.class), true);
+    }
+
+    private void measureRoundTrips(Object message) throws Exception {
+        measureRoundTrips(message, false);
+    }
+
+    private void measureRoundTrips(Object message, boolean singlePass) throws Exception {
+        JaxbHelper jaxbHelper = new JaxbHelper(ExampleMessageFactory.PATH_TO_SCHEMA, ExampleMessageFactory.SCHEMA_NAME);
+        addStep("Warm up with " + WARMUP_ROUND_TRIPS + " round trips", "Should not fail");
+        for (int i = 0; i < WARMUP_ROUND_TRIPS; i++) {
+            roundTrip(jaxbHelper, message, singlePass);
+        }
+
+        addStep("Perform " + MEASURED_ROUND_TRIPS + " round trips", "Should not fail");
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUND_TRIPS; i++) {
+            roundTrip(jaxbHelper, message, singlePass);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        System.out.println(message.getClass().getSimpleName() + ": " + MEASURED_ROUND_TRIPS + " round trips in "
+                + (elapsedNanos / 1000000) + " ms (" + (MEASURED_ROUND_TRIPS * 1000000000L / elapsedNanos)
+                + " per second).");
+    }
+
+    private void roundTrip(JaxbHelper jaxbHelper, Object message, boolean singlePass) throws Exception {
+        if (singlePass) {
+            String xml = jaxbHelper.serializeAndValidateToXml(message);
+            jaxbHelper.loadAndValidateXml(message.getClass(),
+                    new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            return;
+        }
+        String xml = jaxbHelper.serializeToXml(message);
+        jaxbHelper.validate(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        jaxbHelper.loadXml(message.getClass(), new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
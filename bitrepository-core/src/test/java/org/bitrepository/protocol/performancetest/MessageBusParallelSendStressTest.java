@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.performancetest;
+
+import org.bitrepository.bitrepositorymessages.AlarmMessage;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.protocol.activemq.ActiveMQMessageBus;
+import org.bitrepository.protocol.bus.LocalActiveMQBroker;
+import org.bitrepository.protocol.bus.MessageBusConfigurationFactory;
+import org.bitrepository.protocol.message.ExampleMessageFactory;
+import org.bitrepository.protocol.messagebus.MessageBus;
+import org.bitrepository.protocol.security.BasicMessageAuthenticator;
+import org.bitrepository.protocol.security.BasicMessageSigner;
+import org.bitrepository.protocol.security.BasicOperationAuthorizer;
+import org.bitrepository.protocol.security.BasicSecurityManager;
+import org.bitrepository.protocol.security.PermissionStore;
+import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.protocol.security.SecurityTestConstants;
+import org.bitrepository.settings.referencesettings.GeneralSettings;
+import org.bitrepository.settings.repositorysettings.MessageBusConfiguration;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of many threads sending messages through a single message bus instance, with one
+ * producer session compared to a pool of producer sessions. The messages are signed with a test certificate, so
+ * the measured throughput includes the signing of the messages, as in a repository requiring authentication.
+ */
+public class MessageBusParallelSendStressTest extends ExtendedTestCase {
+    /** The number of threads sending messages through the shared message bus.*/
+    private static final int NUMBER_OF_SENDERS = 8;
+    /** The number of messages sent by each thread.*/
+    private static final int MESSAGES_PER_SENDER = 500;
+
+    @Test( groups = {"StressTest"} )
+    public void sendInParallelThroughSharedMessageBus() throws Exception {
+        addDescription("Tests how many messages a single message bus can send when used from many threads, "
+                + "with one producer session and with a producer session per sender.");
+        MessageBusConfiguration conf = MessageBusConfigurationFactory.createEmbeddedMessageBusConfiguration();
+        LocalActiveMQBroker broker = new LocalActiveMQBroker(conf);
+
+        try {
+            addStep("Start the embedded broker.", "Should be allowed.");
+            broker.start();
+
+            addStep("Send messages from " + NUMBER_OF_SENDERS + " threads through one producer session.",
+                    "Prints the throughput.");
+            double singleSessionRate = sendMessages(1);
+
+            addStep("Send messages from " + NUMBER_OF_SENDERS + " threads through " + NUMBER_OF_SENDERS
+                    + " producer sessions.", "Prints the throughput.");
+            double pooledSessionRate = sendMessages(NUMBER_OF_SENDERS);
+
+            System.out.println("Parallel sending of signed messages: " + Math.round(singleSessionRate)
+                    + " msg/s with one producer session, " + Math.round(pooledSessionRate) + " msg/s with "
+                    + NUMBER_OF_SENDERS + " sessions.");
+        } finally {
+            broker.stop();
+        }
+    }
+
+    /**
+     * Sends the messages from all the sender threads through a single message bus.
+     * @param producerSessions The number of producer sessions the message bus should use.
+     * @return The number of messages sent per second.
+     */
+    private double sendMessages(int producerSessions) throws Exception {
+        Settings settings = TestSettingsProvider.reloadSettings(getClass().getSimpleName());
+        GeneralSettings generalSettings = settings.getReferenceSettings().getGeneralSettings();
+        if (generalSettings == null) {
+            generalSettings = new GeneralSettings();
+            settings.getReferenceSettings().setGeneralSettings(generalSettings);
+        }
+        generalSettings.setMessageProducerSessions(BigInteger.valueOf(producerSessions));
+        MessageBus bus = new ActiveMQMessageBus(settings, createSigningSecurityManager(settings));
+        ExecutorService senders = Executors.newFixedThreadPool(NUMBER_OF_SENDERS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < NUMBER_OF_SENDERS; i++) {
+                String destination = "PARALLEL-SEND-" + producerSessions + "-" + i + "-" + System.currentTimeMillis();
+                results.add(senders.submit(() -> {
+                    AlarmMessage message = ExampleMessageFactory.createMessage(AlarmMessage.class);
+                    message.setDestination(destination);
+                    for (int j = 0; j < MESSAGES_PER_SENDER; j++) {
+                        bus.sendMessage(message);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            Assert.assertTrue(elapsedNanos > 0);
+            return NUMBER_OF_SENDERS * MESSAGES_PER_SENDER * 1e9 / elapsedNanos;
+        } finally {
+            senders.shutdown();
+            bus.close();
+        }
+    }
+
+    /**
+     * @param settings The settings to require message authentication in.
+     * @return A security manager signing the messages with the test certificate.
+     */
+    private SecurityManager createSigningSecurityManager(Settings settings) throws Exception {
+        settings.getRepositorySettings().getProtocolSettings().setRequireMessageAuthentication(true);
+        settings.getRepositorySettings().setPermissionSet(SecurityTestConstants.getDefaultPermissions());
+        PermissionStore permissionStore = new PermissionStore();
+        return new BasicSecurityManager(settings.getRepositorySettings(), SecurityTestConstants.getKeyFile(),
+                new BasicMessageAuthenticator(permissionStore), new BasicMessageSigner(),
+                new BasicOperationAuthorizer(permissionStore), permissionStore, SecurityTestConstants.getComponentID());
+    }
+}
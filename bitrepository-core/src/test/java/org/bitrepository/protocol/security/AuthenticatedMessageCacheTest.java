@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * Bitrepository Core
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.protocol.security;
+
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+
+public class AuthenticatedMessageCacheTest extends ExtendedTestCase {
+    private static final String MESSAGE = "message";
+    private static final String SIGNATURE = "signature";
+
+    @Test(groups = {"regressiontest"})
+    public void cacheLookupTest() {
+        addDescription("Tests that only messages with the same signature are found in the cache.");
+        AuthenticatedMessageCache cache = new AuthenticatedMessageCache(10, Duration.ofMinutes(1));
+        MessageVerificationContext verification = new MessageVerificationContext(null, null, "fingerprint");
+        cache.put(MESSAGE, SIGNATURE, verification);
+
+        addStep("Lookup the message with the same and with another signature",
+                "Only the lookup with the same signature should find the verification");
+        Assert.assertSame(cache.get(MESSAGE, SIGNATURE), verification);
+        Assert.assertNull(cache.get(MESSAGE, "otherSignature"));
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void cacheIsBoundedTest() {
+        addDescription("Tests that the oldest message is evicted when the cache is full.");
+        AuthenticatedMessageCache cache = new AuthenticatedMessageCache(2, Duration.ofMinutes(1));
+        cache.put(MESSAGE + 1, SIGNATURE, new MessageVerificationContext(null, null, null));
+        cache.put(MESSAGE + 2, SIGNATURE, new MessageVerificationContext(null, null, null));
+        cache.put(MESSAGE + 3, SIGNATURE, new MessageVerificationContext(null, null, null));
+
+        addStep("Lookup the three messages", "The first message should have been evicted");
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertNull(cache.get(MESSAGE + 1, SIGNATURE));
+        Assert.assertNotNull(cache.get(MESSAGE + 2, SIGNATURE));
+        Assert.assertNotNull(cache.get(MESSAGE + 3, SIGNATURE));
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void cacheEntriesExpireTest() throws Exception {
+        addDescription("Tests that messages are not found after the time to live.");
+        AuthenticatedMessageCache cache = new AuthenticatedMessageCache(10, Duration.ofMillis(50));
+        cache.put(MESSAGE, SIGNATURE, new MessageVerificationContext(null, null, null));
+
+        addStep("Wait for the time to live and lookup the message", "The message should not be found");
+        Thread.sleep(100);
+        Assert.assertNull(cache.get(MESSAGE, SIGNATURE));
+        Assert.assertEquals(cache.size(), 0);
+    }
+}
@@ -36,12 +36,28 @@ public class DummySecurityManager implements SecurityManager {
         return null;
     }
 
+    @Override
+    public MessageVerificationContext verifyMessage(String message, String signature) {
+        return new MessageVerificationContext(null, null, null);
+    }
+
+    @Override
+    public MessageVerificationContext verifyMessage(byte[] messageData, String signature) {
+        return new MessageVerificationContext(null, null, null);
+    }
+
     @Override
     public String signMessage(String message) {
         // Safe empty implementation
         return null;
     }
 
+    @Override
+    public String signMessage(byte[] messageData) {
+        // Safe empty implementation
+        return null;
+    }
+
     @Override
     public void authorizeOperation(String operationType, String messageData, String signature, String collectionID) {
         // Safe empty implementation
@@ -52,6 +68,16 @@ public class DummySecurityManager implements SecurityManager {
         // Safe empty implementation
     }
 
+    @Override
+    public void authorizeOperation(String operationType, MessageVerificationContext context, String collectionID) {
+        // Safe empty implementation
+    }
+
+    @Override
+    public void authorizeCertificateUse(String certificateUser, MessageVerificationContext context) {
+        // Safe empty implementation
+    }
+
     @Override
     public String getCertificateFingerprint(SignerId signer) {
         return null;
@@ -25,6 +25,7 @@ import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerId;
 import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationVerifier;
 import org.bouncycastle.util.encoders.Base64;
 import org.jaccept.structure.ExtendedTestCase;
 import org.testng.annotations.BeforeMethod;
@@ -34,6 +35,8 @@ import java.math.BigInteger;
 import java.security.cert.X509Certificate;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 public class PermissionStoreTest extends ExtendedTestCase  {
     private static final String componentID = "TEST";
@@ -105,4 +108,20 @@ public class PermissionStoreTest extends ExtendedTestCase  {
         String referenceCertificateFingerprint = TestCertProvider.getFingerprintForPositiveCert();
         assertEquals(referenceCertificateFingerprint, certificateFingerprintFromStore);
     }
+
+    @Test(groups = {"regressiontest"})
+    public void verifierIsReusedTest() throws Exception {
+        addDescription("Tests that the signature verifier for a certificate is only created once.");
+        byte[] decodeSig =
+                Base64.decode(TestCertProvider.getPositiveCertSignature().getBytes(SecurityModuleConstants.defaultEncodingType));
+        CMSSignedData s = new CMSSignedData(new CMSProcessableByteArray(
+                SecurityTestConstants.getTestData().getBytes(SecurityModuleConstants.defaultEncodingType)), decodeSig);
+        SignerInformation signer = s.getSignerInfos().getSigners().iterator().next();
+
+        addStep("Retrieve the verifier for the signer twice", "The same verifier is returned, and it verifies the "
+                + "signature");
+        SignerInformationVerifier verifier = permissionStore.getVerifier(signer.getSID());
+        assertSame(permissionStore.getVerifier(signer.getSID()), verifier);
+        assertTrue(signer.verify(verifier));
+    }
 }
@@ -25,6 +25,7 @@ import org.bitrepository.bitrepositorymessages.GetFileRequest;
 import org.bitrepository.bitrepositorymessages.PutFileRequest;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
+import org.bitrepository.protocol.activemq.DeflateMessageCodec;
 import org.bitrepository.protocol.security.exception.CertificateUseException;
 import org.bitrepository.protocol.security.exception.MessageAuthenticationException;
 import org.bitrepository.protocol.security.exception.MessageSigningException;
@@ -46,6 +47,7 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 
 public class SecurityManagerTest extends ExtendedTestCase {
@@ -223,6 +225,108 @@ public class SecurityManagerTest extends ExtendedTestCase {
         }
     }
 
+    @Test(groups = {"regressiontest"})
+    public void verifyAndAuthorizeMessageTest() throws Exception {
+        addDescription("Tests that a message can be verified once, and the verification used for authorization.");
+        addStep("Sign a chunk of data and register the signing certificate.", "Data is signed successfully");
+        String signature = securityManager.signMessage(SecurityTestConstants.getTestData());
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+
+        addStep("Verify the message", "The verification should contain the signer, certificate and fingerprint");
+        MessageVerificationContext verification =
+                securityManager.verifyMessage(SecurityTestConstants.getTestData(), signature);
+        Assert.assertNotNull(verification.getSignerId());
+        Assert.assertEquals(verification.getCertificate(), TestCertProvider.loadSigningCert());
+        Assert.assertEquals(verification.getCertificateFingerprint(),
+                securityManager.getCertificateFingerprint(verification.getSignerId()));
+
+        addStep("Authorize the certificate use and operation based on the verification", "Both are allowed");
+        securityManager.authorizeCertificateUse(SecurityTestConstants.getAllowedCertificateUser(), verification);
+        securityManager.authorizeOperation(PutFileRequest.class.getSimpleName(), verification,
+                settings.getCollections().get(0).getID());
+
+        addStep("Authorize the certificate use for an unregistered user", "The certificate use is not allowed");
+        try {
+            securityManager.authorizeCertificateUse(SecurityTestConstants.getDisallowedCertificateUser(),
+                    verification);
+            Assert.fail("SecurityManager did not throw the expected CertificateUseException");
+        } catch (CertificateUseException ignored) {
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void verifyMessageDataTest() throws Exception {
+        addDescription("Tests that the raw bytes of an encoded message can be signed and verified.");
+        byte[] messageData = DeflateMessageCodec.compress(
+                SecurityTestConstants.getTestData().getBytes(StandardCharsets.UTF_8));
+        String signature = securityManager.signMessage(messageData);
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+
+        addStep("Verify the signed bytes", "The verification should contain the signer");
+        MessageVerificationContext verification = securityManager.verifyMessage(messageData, signature);
+        Assert.assertNotNull(verification.getSignerId());
+
+        addStep("Verify the bytes after changing one of them", "The verification fails");
+        messageData[messageData.length - 1]++;
+        try {
+            securityManager.verifyMessage(messageData, signature);
+            Assert.fail("Verification did not fail as expected!");
+        } catch (MessageAuthenticationException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void verifyCorruptMessageTest() throws Exception {
+        addDescription("Tests that verification of a message fails if the message does not match the signature.");
+        String signature = securityManager.signMessage(SecurityTestConstants.getTestData());
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+
+        addStep("Verify a message which differs from the signed data", "The verification fails");
+        try {
+            securityManager.verifyMessage(SecurityTestConstants.getTestData() + "foobar", signature);
+            Assert.fail("Verification did not fail as expected!");
+        } catch (MessageAuthenticationException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test(groups = {"regressiontest"})
+    public void authenticatedMessageCacheTest() throws Exception {
+        addDescription("Tests that a repeated message is only authenticated once, when a cache is used.");
+        AuthenticatedMessageCache cache = new AuthenticatedMessageCache(10, Duration.ofMinutes(1));
+        ((BasicSecurityManager) securityManager).setAuthenticatedMessageCache(cache);
+        String signature = securityManager.signMessage(SecurityTestConstants.getTestData());
+        permissionStore.loadPermissions(getSigningCertPermission(), SecurityTestConstants.getComponentID());
+
+        addStep("Verify the message twice", "The first verification is a miss, and the second a hit returning the "
+                + "same signer");
+        MessageVerificationContext first = securityManager.verifyMessage(SecurityTestConstants.getTestData(), signature);
+        MessageVerificationContext second =
+                securityManager.verifyMessage(SecurityTestConstants.getTestData(), signature);
+        Assert.assertEquals(cache.getMissCount(), 1);
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(second.getSignerId(), first.getSignerId());
+
+        addStep("Authorize the certificate use of an unregistered user based on the cached verification",
+                "The authorization is still enforced");
+        try {
+            securityManager.authorizeCertificateUse(SecurityTestConstants.getDisallowedCertificateUser(), second);
+            Assert.fail("SecurityManager did not throw the expected CertificateUseException");
+        } catch (CertificateUseException ignored) {
+        }
+
+        addStep("Verify a corrupted message with the same signature", "The message is not found in the cache, and "
+                + "the authentication fails");
+        try {
+            securityManager.verifyMessage(SecurityTestConstants.getTestData() + "foobar", signature);
+            Assert.fail("Verification did not fail as expected!");
+        } catch (MessageAuthenticationException e) {
+            log.info(e.getMessage());
+        }
+        Assert.assertEquals(cache.getMissCount(), 2);
+    }
+
     private PermissionSet getCollectionLimitedPermissionSet() throws Exception {
         PermissionSet permissions = new PermissionSet();
         Permission signingCertPerm = new Permission();
@@ -27,12 +27,14 @@ package org.bitrepository.pillar;
 import org.bitrepository.common.filestore.FileStore;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.XMLFileSettingsLoader;
+import org.bitrepository.common.utils.XmlUtils;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.common.PillarAlarmDispatcher;
 import org.bitrepository.pillar.common.SettingsHelper;
 import org.bitrepository.pillar.store.ChecksumStorageModel;
 import org.bitrepository.pillar.store.FileStorageModel;
 import org.bitrepository.pillar.store.StorageModel;
+import org.bitrepository.pillar.store.checksumdatabase.CachingChecksumStore;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumDAO;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumDatabaseManager;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
@@ -49,6 +51,7 @@ import org.bitrepository.protocol.security.MessageSigner;
 import org.bitrepository.protocol.security.OperationAuthorizer;
 import org.bitrepository.protocol.security.PermissionStore;
 import org.bitrepository.protocol.security.SecurityManager;
+import org.bitrepository.protocol.security.SecurityManagerUtil;
 import org.bitrepository.service.AlarmDispatcher;
 import org.bitrepository.service.audit.AuditTrailContributorDAOFactory;
 import org.bitrepository.service.audit.AuditTrailManager;
@@ -57,12 +60,18 @@ import org.bitrepository.service.database.DatabaseManager;
 import org.bitrepository.settings.referencesettings.PillarType;
 
 import java.lang.reflect.Constructor;
+import java.math.BigInteger;
+import java.time.Duration;
 
 /**
  * Component factory for this module.
  */
 public final class PillarComponentFactory {
     private static PillarComponentFactory instance;
+    /** The default maximum number of entries in the cache in front of the checksum database. */
+    private static final int DEFAULT_CHECKSUM_CACHE_SIZE = 100000;
+    /** The default interval between logging the statistics of the cache in front of the checksum database. */
+    private static final Duration DEFAULT_CHECKSUM_CACHE_STATISTICS_LOG_INTERVAL = Duration.ofHours(1);
 
     /**
      * @return The singleton instance of this factory class.
@@ -124,14 +133,28 @@ public final class PillarComponentFactory {
     }
 
     /**
-     * Instantiates the ChecksumStore.
+     * Instantiates the ChecksumStore, with the cache of single file entries in front of the database unless it is
+     * disabled.
      *
      * @param settings The settings.
      * @return The ChecksumStore.
      */
     private ChecksumStore getChecksumStore(Settings settings) {
         DatabaseManager checksumDatabaseManager = new ChecksumDatabaseManager(settings);
-        return new ChecksumDAO(checksumDatabaseManager);
+        ChecksumStore store = new ChecksumDAO(checksumDatabaseManager);
+        BigInteger cacheSize = settings.getReferenceSettings().getPillarSettings().getChecksumCacheSize();
+        int maxEntries = (cacheSize == null) ? DEFAULT_CHECKSUM_CACHE_SIZE : cacheSize.intValue();
+        if (maxEntries > 0) {
+            javax.xml.datatype.Duration interval = settings.getReferenceSettings().getPillarSettings()
+                    .getChecksumCacheStatisticsLogInterval();
+            Duration statisticsLogInterval = DEFAULT_CHECKSUM_CACHE_STATISTICS_LOG_INTERVAL;
+            if (interval != null) {
+                XmlUtils.validateNonNegative(interval);
+                statisticsLogInterval = XmlUtils.xmlDurationToDuration(interval);
+            }
+            store = new CachingChecksumStore(store, maxEntries, statisticsLogInterval);
+        }
+        return store;
     }
 
     /**
@@ -238,8 +261,9 @@ public final class PillarComponentFactory {
         MessageAuthenticator authenticator = new BasicMessageAuthenticator(permissionStore);
         MessageSigner signer = new BasicMessageSigner();
         OperationAuthorizer authorizer = new BasicOperationAuthorizer(permissionStore);
-        return new BasicSecurityManager(settings.getRepositorySettings(), privateKeyFile,
-                authenticator, signer, authorizer, permissionStore,
-                settings.getComponentID());
+        BasicSecurityManager securityManager = new BasicSecurityManager(settings.getRepositorySettings(),
+                privateKeyFile, authenticator, signer, authorizer, permissionStore, settings.getComponentID());
+        securityManager.setAuthenticatedMessageCache(SecurityManagerUtil.createAuthenticatedMessageCache(settings));
+        return securityManager;
     }
 }
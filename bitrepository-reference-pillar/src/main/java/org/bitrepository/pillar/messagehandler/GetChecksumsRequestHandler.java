@@ -24,7 +24,6 @@
  */
 package org.bitrepository.pillar.messagehandler;
 
-import org.apache.activemq.util.ByteArrayInputStream;
 import org.bitrepository.bitrepositorydata.GetChecksumsResults;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
@@ -38,30 +37,20 @@ import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
-import org.bitrepository.protocol.FileExchange;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.bitrepository.protocol.MessageContext;
-import org.bitrepository.protocol.utils.FileExchangeResolver;
 import org.bitrepository.protocol.utils.MessageUtils;
 import org.bitrepository.service.exception.InvalidMessageException;
 import org.bitrepository.service.exception.RequestHandlerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
 
-import javax.xml.bind.JAXBException;
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.Date;
 
 public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksumsRequest> {
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /** Kept for the lifetime of the handler, so its marshallers are reused between requests. */
+    private final JaxbHelper jaxbHelper = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
 
     /**
      * @param context The context for the message handling.
@@ -112,14 +101,16 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
             throws RequestHandlerException {
         log.debug("{} Performing GetChecksums for file(s) {} on collection '{}'",
                 MessageUtils.createMessageIdentifier(request), request.getFileIDs(), request.getCollectionID());
-        ExtractedChecksumResultSet extractedChecksums = extractChecksumResults(request);
-        ResultingChecksums checksumResults;
         if (request.getResultAddress() == null) {
-            checksumResults = compileResultsForMessage(extractedChecksums);
+            ExtractedChecksumResultSet extractedChecksums = extractChecksumResults(request);
+            ResultingChecksums checksumResults = compileResultsForMessage(extractedChecksums);
+            sendFinalResponse(request, checksumResults, extractedChecksums.hasMoreEntries());
         } else {
-            checksumResults = createAndUploadResults(request, extractedChecksums);
+            try (ExtractionCursor<ChecksumDataForChecksumSpecTYPE> checksumCursor = openChecksumResultCursor(request)) {
+                ResultingChecksums checksumResults = createAndUploadResults(request, checksumCursor);
+                sendFinalResponse(request, checksumResults, checksumCursor.hasMoreEntries());
+            }
         }
-        sendFinalResponse(request, checksumResults, extractedChecksums.hasMoreEntries());
     }
 
     /**
@@ -147,22 +138,50 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
         }
     }
 
+    /**
+     * Opens a cursor over the requested checksum results, so they can be delivered without extracting them all
+     * into memory first.
+     *
+     * @param request The message with the checksum request.
+     * @return The cursor over the results for the requested checksum.
+     * @throws RequestHandlerException If the requested checksum specification is not supported.
+     */
+    private ExtractionCursor<ChecksumDataForChecksumSpecTYPE> openChecksumResultCursor(GetChecksumsRequest request)
+            throws RequestHandlerException {
+        if (request.getFileIDs().isSetFileID()) {
+            ExtractedChecksumResultSet res = extractChecksumResults(request);
+            return ExtractionCursor.of(res.getEntries(), res.hasMoreEntries());
+        }
+        Long maxResults = null;
+        if (request.getMaxNumberOfResults() != null) {
+            maxResults = request.getMaxNumberOfResults().longValue();
+        }
+        return getPillarModel().getChecksumResultCursor(request.getMinTimestamp(), request.getMaxTimestamp(),
+                maxResults, request.getCollectionID(), request.getChecksumRequestForExistingFile());
+    }
+
     /**
      * Uploads the extracted checksum results to the given URL, and creates the ResultingChecksums object for
      * the final response message.
+     * The results are written and uploaded while they are read from the cursor.
      *
-     * @param request           The message requesting the calculation of the checksums.
-     * @param checksumResultSet List containing the requested checksums.
+     * @param request        The message requesting the calculation of the checksums.
+     * @param checksumCursor The cursor over the requested checksums.
      * @return The ResultingChecksums containing the URL.
      */
     private ResultingChecksums createAndUploadResults(GetChecksumsRequest request,
-                                                      ExtractedChecksumResultSet checksumResultSet) throws RequestHandlerException {
+            ExtractionCursor<ChecksumDataForChecksumSpecTYPE> checksumCursor) throws RequestHandlerException {
         ResultingChecksums res = new ResultingChecksums();
 
         String url = request.getResultAddress();
         try {
-            File fileToUpload = makeTemporaryChecksumFile(request, checksumResultSet);
-            uploadFile(fileToUpload, url);
+            GetChecksumsResults results = StreamingResultUploader.createChecksumsResults(checksumCursor);
+            results.setVersion(VERSION);
+            results.setMinVersion(MIN_VERSION);
+            results.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
+            results.setCollectionID(request.getCollectionID());
+            log.debug("Streaming the list of checksums to {}", url);
+            StreamingResultUploader.upload(GetChecksumsResults.class, results, jaxbHelper, new URL(url));
         } catch (Exception e) {
             throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not handle the creation "
                     + "and upload of the results due to: " + e.getMessage(), e);
@@ -188,62 +207,6 @@ public class GetChecksumsRequestHandler extends PerformRequestHandler<GetChecksu
         return res;
     }
 
-    /**
-     * Method for creating a file containing the list of calculated checksums.
-     *
-     * @param request           The GetChecksumMessage requesting the checksum calculations.
-     * @param checksumResultSet The list of checksums to put into the list.
-     * @return A file containing all the checksums in the list.
-     * @throws IOException   If something goes wrong in the upload.
-     * @throws JAXBException If the resulting structure cannot be serialized.
-     * @throws SAXException  If the results does not validate against the XSD.
-     */
-    private File makeTemporaryChecksumFile(GetChecksumsRequest request,
-                                           ExtractedChecksumResultSet checksumResultSet) throws IOException, JAXBException, SAXException {
-        // Create the temporary file.
-        File checksumResultFile = File.createTempFile(request.getCorrelationID(), new Date().getTime() + ".cs");
-        log.debug("Writing the list of checksums to the file '{}'", checksumResultFile);
-
-        // Create data format 
-        GetChecksumsResults results = new GetChecksumsResults();
-        results.setVersion(VERSION);
-        results.setMinVersion(MIN_VERSION);
-        results.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
-        results.setCollectionID(request.getCollectionID());
-        for (ChecksumDataForChecksumSpecTYPE cs : checksumResultSet.getEntries()) {
-            results.getChecksumDataItems().add(cs);
-        }
-
-        // Print all the checksums safely (close the streams!)
-        try (OutputStream os = new FileOutputStream(checksumResultFile)) {
-            JaxbHelper jaxb = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
-            String xmlMessage = jaxb.serializeToXml(results);
-            jaxb.validate(new ByteArrayInputStream(xmlMessage.getBytes(StandardCharsets.UTF_8)));
-            os.write(xmlMessage.getBytes(StandardCharsets.UTF_8));
-            os.flush();
-        }
-
-        return checksumResultFile;
-    }
-
-    /**
-     * Method for uploading a file to a given URL.
-     *
-     * @param fileToUpload The File to upload.
-     * @param url          The location where the file should be uploaded.
-     * @throws IOException If something goes wrong.
-     */
-    private void uploadFile(File fileToUpload, String url) throws IOException {
-        URL uploadUrl = new URL(url);
-
-        // Upload the file.
-        log.debug("Uploading file '{}' to {}", fileToUpload.getName(), url);
-        try (InputStream in = new BufferedInputStream(new FileInputStream(fileToUpload))) {
-            FileExchange fileExchange = FileExchangeResolver.getBasicFileExchangeFromURL(uploadUrl);
-            fileExchange.putFile(in, uploadUrl);
-        }
-    }
-
     /**
      * Method for sending a final response reporting the success.
      *
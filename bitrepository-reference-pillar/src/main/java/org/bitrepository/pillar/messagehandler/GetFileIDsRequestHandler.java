@@ -25,9 +25,9 @@
  */
 package org.bitrepository.pillar.messagehandler;
 
-import org.apache.activemq.util.ByteArrayInputStream;
 import org.bitrepository.bitrepositorydata.GetFileIDsResults;
 import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.bitrepositoryelements.ResponseInfo;
 import org.bitrepository.bitrepositoryelements.ResultingFileIDs;
@@ -39,30 +39,20 @@ import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
-import org.bitrepository.protocol.FileExchange;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.bitrepository.protocol.MessageContext;
-import org.bitrepository.protocol.utils.FileExchangeResolver;
 import org.bitrepository.protocol.utils.MessageUtils;
 import org.bitrepository.service.exception.InvalidMessageException;
 import org.bitrepository.service.exception.RequestHandlerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
 
-import javax.xml.bind.JAXBException;
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.Date;
 
 public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRequest> {
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /** Kept for the lifetime of the handler, so its marshallers are reused between requests. */
+    private final JaxbHelper jaxbHelper = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
 
     /**
      * @param context The context for the message handling.
@@ -112,15 +102,18 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
             throws RequestHandlerException {
         log.debug("{} Performing GetFileIDs for file(s) {} on collection '{}'",
                 MessageUtils.createMessageIdentifier(request), request.getFileIDs(), request.getCollectionID());
-        ExtractedFileIDsResultSet extractedFileIDs = retrieveFileIDsData(request);
         ResultingFileIDs results = new ResultingFileIDs();
         if (request.getResultAddress() == null) {
+            ExtractedFileIDsResultSet extractedFileIDs = retrieveFileIDsData(request);
             results.setFileIDsData(extractedFileIDs.getEntries());
+            sendFinalResponse(request, results, extractedFileIDs.hasMoreEntries());
         } else {
-            uploadResults(request, extractedFileIDs);
-            results.setResultAddress(request.getResultAddress());
+            try (ExtractionCursor<FileIDsDataItem> fileIDsCursor = openFileIDsCursor(request)) {
+                uploadResults(request, fileIDsCursor);
+                results.setResultAddress(request.getResultAddress());
+                sendFinalResponse(request, results, fileIDsCursor.hasMoreEntries());
+            }
         }
-        sendFinalResponse(request, results, extractedFileIDs);
     }
 
     /**
@@ -139,93 +132,60 @@ public class GetFileIDsRequestHandler extends PerformRequestHandler<GetFileIDsRe
     }
 
     /**
-     * Uploads the results to the URL in the request.
+     * Opens a cursor over the requested FileIDs, so they can be delivered without extracting them all into memory
+     * first.
      *
-     * @param request          The request.
-     * @param extractedFileIDs The extracted file ids.
-     * @throws RequestHandlerException If the file with the results could not be created, or could not be uploaded.
+     * @param message The requested for extracting the file ids.
+     * @return The cursor over the FileIDs found.
      */
-    private void uploadResults(GetFileIDsRequest request, ExtractedFileIDsResultSet extractedFileIDs)
-            throws RequestHandlerException {
-        String resultingAddress = request.getResultAddress();
-        try {
-            File outputFile = makeTemporaryResultFile(request, extractedFileIDs.getEntries());
-            uploadFile(outputFile, resultingAddress);
-        } catch (Exception e) {
-            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not deliver results.", e);
+    private ExtractionCursor<FileIDsDataItem> openFileIDsCursor(GetFileIDsRequest message) {
+        Long maxResults = null;
+        if (message.getMaxNumberOfResults() != null) {
+            maxResults = message.getMaxNumberOfResults().longValue();
         }
+        return getPillarModel().getFileIDsResultCursor(message.getFileIDs().getFileID(), message.getMinTimestamp(),
+                message.getMaxTimestamp(), maxResults, message.getCollectionID());
     }
 
     /**
-     * Method for creating a file containing the resulting list of file ids.
+     * Uploads the results to the URL in the request.
+     * The results are written and uploaded while they are read from the cursor.
      *
-     * @param request The GetFileIDsMessage requesting the checksum calculations.
-     * @param fileIDs The file ids to be put into the result file.
-     * @return A file containing all the checksums in the list.
-     * @throws IOException   If a problem occurs during accessing or handling the data.
-     * @throws JAXBException If the resulting structure cannot be serialized or if it is invalid.
+     * @param request       The request.
+     * @param fileIDsCursor The cursor over the file ids.
+     * @throws RequestHandlerException If the results could not be created, or could not be uploaded.
      */
-    private File makeTemporaryResultFile(GetFileIDsRequest request, FileIDsData fileIDs)
-            throws IOException, JAXBException {
-        // Create the temporary file.
-        File checksumResultFile = File.createTempFile(request.getCorrelationID(), new Date().getTime() + ".id");
-        log.info("Writing the requested fileIDs to the file '{}'", checksumResultFile);
-
-        // Print all the file ids data safely (close the streams!)
-        try (OutputStream is = new FileOutputStream(checksumResultFile)) {
+    private void uploadResults(GetFileIDsRequest request, ExtractionCursor<FileIDsDataItem> fileIDsCursor)
+            throws RequestHandlerException {
+        String resultingAddress = request.getResultAddress();
+        try {
+            FileIDsData fileIDsData = new FileIDsData();
+            fileIDsData.setFileIDsDataItems(StreamingResultUploader.createFileIDsDataItems(fileIDsCursor));
             GetFileIDsResults result = new GetFileIDsResults();
             result.setCollectionID(request.getCollectionID());
             result.setMinVersion(MIN_VERSION);
             result.setVersion(VERSION);
             result.setPillarID(getSettings().getReferenceSettings().getPillarSettings().getPillarID());
-            result.setFileIDsData(fileIDs);
-
-            JaxbHelper jaxbHelper = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
-            String file = jaxbHelper.serializeToXml(result);
-            try {
-                jaxbHelper.validate(new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)));
-            } catch (SAXException e) {
-                String errMsg = "The resulting XML for the GetFileIDsRequest does not validate. \n"
-                        + file;
-                log.error(errMsg, e);
-                throw new JAXBException(errMsg, e);
-            }
-            is.write(file.getBytes(StandardCharsets.UTF_8));
-            is.flush();
-        }
-
-        return checksumResultFile;
-    }
+            result.setFileIDsData(fileIDsData);
 
-    /**
-     * Method for uploading a file to a given URL.
-     *
-     * @param fileToUpload The File to upload.
-     * @param url          The location where the file should be uploaded.
-     * @throws IOException If something goes wrong.
-     */
-    private void uploadFile(File fileToUpload, String url) throws IOException {
-        URL uploadUrl = new URL(url);
-
-        log.debug("Uploading file '{}' to {}", fileToUpload.getName(), url);
-        try (InputStream in = new BufferedInputStream(new FileInputStream(fileToUpload))) {
-            FileExchange fileExchange = FileExchangeResolver.getBasicFileExchangeFromURL(uploadUrl);
-            fileExchange.putFile(in, uploadUrl);
+            log.info("Streaming the requested fileIDs to {}", resultingAddress);
+            StreamingResultUploader.upload(GetFileIDsResults.class, result, jaxbHelper, new URL(resultingAddress));
+        } catch (Exception e) {
+            throw new InvalidMessageException(ResponseCode.FILE_TRANSFER_FAILURE, "Could not deliver results.", e);
         }
     }
 
     /**
      * Send a positive final response telling that the operation has successfully finished.
      *
-     * @param request          The request to base the final response upon.
-     * @param results          The results to be put into the final response.
-     * @param extractedFileIDs The extracted file ids. Contains whether more results can be found.
+     * @param request        The request to base the final response upon.
+     * @param results        The results to be put into the final response.
+     * @param hasMoreEntries Whether more results can be found.
      */
-    private void sendFinalResponse(GetFileIDsRequest request, ResultingFileIDs results,
-                                   ExtractedFileIDsResultSet extractedFileIDs) {
+    private void sendFinalResponse(GetFileIDsRequest request, ResultingFileIDs results, boolean hasMoreEntries) {
         GetFileIDsFinalResponse response = createFinalResponse(request);
 
-        if (extractedFileIDs.hasMoreEntries()) {
+        if (hasMoreEntries) {
             response.setPartialResult(true);
         }
 
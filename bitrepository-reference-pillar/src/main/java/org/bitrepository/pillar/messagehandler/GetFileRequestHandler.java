@@ -44,7 +44,6 @@ import org.bitrepository.service.exception.RequestHandlerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
@@ -80,10 +79,31 @@ public class GetFileRequestHandler extends PerformRequestHandler<GetFileRequest>
         validateCollectionID(request);
         validatePillarID(request.getPillarID());
         validateFileIDFormat(request.getFileID());
+        validateFilePart(request.getFilePart());
 
         getPillarModel().verifyFileExists(request.getFileID(), request.getCollectionID());
     }
 
+    /**
+     * Validates that a requested file part, if any, has a non-negative offset and length within the supported range.
+     *
+     * @param filePart The requested file part.
+     * @throws RequestHandlerException If the file part is invalid.
+     */
+    private void validateFilePart(FilePart filePart) throws RequestHandlerException {
+        if (filePart == null) {
+            return;
+        }
+        BigInteger maxValue = BigInteger.valueOf(Long.MAX_VALUE);
+        for (BigInteger value : new BigInteger[]{filePart.getPartOffSet(), filePart.getPartLength()}) {
+            if (value == null || value.signum() < 0 || value.compareTo(maxValue) > 0) {
+                throw new InvalidMessageException(ResponseCode.REQUEST_NOT_UNDERSTOOD_FAILURE,
+                        "Invalid FilePart with offset '" + filePart.getPartOffSet() + "' and length '"
+                                + filePart.getPartLength() + "'");
+            }
+        }
+    }
+
     @Override
     protected void sendProgressResponse(GetFileRequest request, MessageContext requestContext)
             throws RequestHandlerException {
@@ -122,14 +142,9 @@ public class GetFileRequestHandler extends PerformRequestHandler<GetFileRequest>
                 message.getCollectionID());
         String fileAddress = message.getFileAddress();
 
-        try {
-            InputStream is;
-            if (message.getFilePart() == null) {
-                is = requestedFile.getInputStream();
-            } else {
-                is = extractFilePart(requestedFile, message.getFilePart());
-            }
-
+        try (InputStream is = (message.getFilePart() == null)
+                ? requestedFile.getInputStream()
+                : extractFilePart(requestedFile, message.getFilePart())) {
             log.info("Uploading file '{}' to {}", message.getFileID(), fileAddress);
             URL uploadUrl = new URL(fileAddress);
             FileExchange fileExchange = FileExchangeResolver.getBasicFileExchangeFromURL(uploadUrl);
@@ -143,7 +158,8 @@ public class GetFileRequestHandler extends PerformRequestHandler<GetFileRequest>
     }
 
     /**
-     * Extracts a given file part
+     * Opens a stream for a given file part. The part is read from the file while it is uploaded, so it is never
+     * held in memory.
      *
      * @param fileInfo The requested file to extract the file part from.
      * @param filePart The defined interval for the file part.
@@ -151,25 +167,10 @@ public class GetFileRequestHandler extends PerformRequestHandler<GetFileRequest>
      * @throws IOException If anything goes wrong.
      */
     private InputStream extractFilePart(FileInfo fileInfo, FilePart filePart) throws IOException {
-        int offset = filePart.getPartOffSet().intValue();
-        int size = filePart.getPartLength().intValue();
-        byte[] partOfFile = new byte[size];
-        InputStream fis = null;
-        try {
-            log.debug("Extracting {} bytes with offset {} from {}", size, offset, fileInfo.getFileID());
-            fis = fileInfo.getInputStream();
-
-            long skipped = fis.skip(offset);
-            int bytesRead = fis.read(partOfFile);
-            if (bytesRead == size) {
-                log.debug("Skipped {} bytes and extracted {} bytes successfully.", skipped, bytesRead);
-            }
-        } finally {
-            if (fis != null) {
-                fis.close();
-            }
-        }
-        return new ByteArrayInputStream(partOfFile);
+        long offset = filePart.getPartOffSet().longValueExact();
+        long size = filePart.getPartLength().longValueExact();
+        log.debug("Extracting {} bytes with offset {} from {}", size, offset, fileInfo.getFileID());
+        return fileInfo.getInputStream(offset, size);
     }
 
     /**
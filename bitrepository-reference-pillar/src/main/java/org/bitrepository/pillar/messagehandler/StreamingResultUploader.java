@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.messagehandler;
+
+import org.bitrepository.bitrepositorydata.GetChecksumsResults;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsData;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.JaxbHelper;
+import org.bitrepository.protocol.FileExchange;
+import org.bitrepository.protocol.utils.FileExchangeResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URL;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads the results of a request while they are being serialized, so neither the results nor the resulting xml
+ * are ever held in memory or written to a temporary file.
+ * <p>
+ * The results are serialized by a separate thread into a pipe, which is read by the upload. The lists of the
+ * results can be backed by cursors, e.g. over the checksum database, which are then only traversed once while the
+ * xml is written.
+ */
+final class StreamingResultUploader {
+    private static final Logger log = LoggerFactory.getLogger(StreamingResultUploader.class);
+    /** The size of the buffer between the serialization and the upload. */
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+    private static final ExecutorService writerExecutor = Executors.newCachedThreadPool(
+            new DefaultThreadFactory("StreamingResultWriter", Thread.NORM_PRIORITY));
+
+    private StreamingResultUploader() {
+    }
+
+    /**
+     * Serializes the results, validates them against the schema and uploads them to the given URL.
+     * If the serialization fails, then the upload fails too, so an incomplete result file is not delivered as
+     * complete.
+     *
+     * @param rootType The JAXB class of the results.
+     * @param results  The results to upload.
+     * @param jaxb     The helper for serializing and validating the results.
+     * @param url      The URL to upload the results to.
+     * @throws IOException If the results could not be serialized or uploaded.
+     */
+    static void upload(Class<?> rootType, Object results, JaxbHelper jaxb, URL url) throws IOException {
+        PipedInputStream pipeIn = new PipedInputStream(PIPE_BUFFER_SIZE);
+        OutputStream pipeOut = new PipedOutputStream(pipeIn);
+        Future<?> writer = writerExecutor.submit(() -> {
+            try (OutputStream out = pipeOut) {
+                jaxb.serializeAndValidateToStream(rootType, results, out);
+            }
+            return null;
+        });
+
+        try (InputStream in = new WriterCheckingInputStream(pipeIn, writer)) {
+            log.debug("Uploading the streamed results to {}", url);
+            FileExchange fileExchange = FileExchangeResolver.getBasicFileExchangeFromURL(url);
+            fileExchange.putFile(in, url);
+        } finally {
+            // The pipe is closed, so a writer still running fails fast. It must have stopped using the results
+            // before they are released by the caller.
+            awaitWriter(writer);
+        }
+    }
+
+    /**
+     * Waits for the serialization to finish.
+     *
+     * @param writer The serialization.
+     * @throws IOException If the serialization failed.
+     */
+    private static void awaitWriter(Future<?> writer) throws IOException {
+        try {
+            writer.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not serialize the results.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while serializing the results.", e);
+        }
+    }
+
+    /**
+     * Creates results for a GetChecksums request, where the checksum data items are read from a cursor while the
+     * results are serialized.
+     *
+     * @param items The cursor over the checksum data items.
+     * @return The results backed by the cursor. They can only be serialized once.
+     */
+    static GetChecksumsResults createChecksumsResults(Iterator<ChecksumDataForChecksumSpecTYPE> items) {
+        return new StreamedGetChecksumsResults(items);
+    }
+
+    /**
+     * Creates the file ids data items for GetFileIDs results, where the items are read from a cursor while the
+     * results are serialized.
+     *
+     * @param items The cursor over the file ids data items.
+     * @return The file ids data items backed by the cursor. They can only be serialized once.
+     */
+    static FileIDsData.FileIDsDataItems createFileIDsDataItems(Iterator<FileIDsDataItem> items) {
+        return new StreamedFileIDsDataItems(items);
+    }
+
+    /**
+     * GetChecksumsResults with the checksum data items backed by a cursor.
+     * It is serialized as its superclass, as JAXB uses the binding of the nearest known superclass.
+     */
+    private static class StreamedGetChecksumsResults extends GetChecksumsResults {
+        StreamedGetChecksumsResults(Iterator<ChecksumDataForChecksumSpecTYPE> items) {
+            checksumDataItems = new CursorList<>(items);
+        }
+    }
+
+    /**
+     * FileIDsDataItems with the items backed by a cursor.
+     * It is serialized as its superclass, as JAXB uses the binding of the nearest known superclass.
+     */
+    private static class StreamedFileIDsDataItems extends FileIDsData.FileIDsDataItems {
+        StreamedFileIDsDataItems(Iterator<FileIDsDataItem> items) {
+            fileIDsDataItem = new CursorList<>(items);
+        }
+    }
+
+    /**
+     * List view of a cursor, which only supports a single traversal through its iterator, as done when the list is
+     * serialized by JAXB. The size of the list is not known in advance.
+     *
+     * @param <T> The type of the elements.
+     */
+    private static class CursorList<T> extends AbstractList<T> {
+        private final Iterator<T> cursor;
+        private boolean traversed = false;
+
+        CursorList(Iterator<T> cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            if (traversed) {
+                throw new IllegalStateException("The elements of the cursor can only be traversed once.");
+            }
+            traversed = true;
+            return cursor;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !cursor.hasNext();
+        }
+
+        @Override
+        public T get(int index) {
+            throw new UnsupportedOperationException("The elements of a cursor can only be iterated.");
+        }
+
+        @Override
+        public int size() {
+            throw new UnsupportedOperationException("The size of a cursor is not known in advance.");
+        }
+    }
+
+    /**
+     * Reads the serialized results from the pipe. When the end of the pipe is reached, it is checked whether the
+     * serialization succeeded, and otherwise the read fails, so the upload is not completed.
+     */
+    private static class WriterCheckingInputStream extends FilterInputStream {
+        private final Future<?> writer;
+
+        WriterCheckingInputStream(InputStream in, Future<?> writer) {
+            super(in);
+            this.writer = writer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int res = super.read();
+            if (res == -1) {
+                awaitWriter(writer);
+            }
+            return res;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int res = super.read(b, off, len);
+            if (res == -1) {
+                awaitWriter(writer);
+            }
+            return res;
+        }
+    }
+}
@@ -21,6 +21,7 @@
  */
 package org.bitrepository.pillar.schedulablejobs;
 
+import org.bitrepository.pillar.store.ChecksumRecalculator;
 import org.bitrepository.pillar.store.StorageModel;
 import org.bitrepository.service.workflow.JobID;
 import org.bitrepository.service.workflow.SchedulableJob;
@@ -87,6 +88,10 @@ public class RecalculateChecksumJob implements SchedulableJob {
 
     @Override
     public String getHumanReadableState() {
+        ChecksumRecalculator.Progress progress = model.getChecksumRecalculationProgress(collectionID);
+        if (state == WorkflowState.RUNNING && progress != null) {
+            return state.name() + ": " + progress;
+        }
         return state.name();
     }
 }
@@ -0,0 +1,549 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store;
+
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.filestore.FileInfo;
+import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.common.settings.Settings;
+import org.bitrepository.common.utils.ByteRateLimiter;
+import org.bitrepository.common.utils.ChecksumUtils;
+import org.bitrepository.common.utils.FileSizeUtils;
+import org.bitrepository.common.utils.ThrottledInputStream;
+import org.bitrepository.common.utils.TimeUtils;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
+import org.bitrepository.settings.referencesettings.ChecksumRecalculation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calculates the checksums of many files in the file store: either recalculating the default checksums, which are
+ * stored in the checksum store, or calculating checksums with another specification, which are delivered directly.
+ * <p/>
+ * The files are read in parallel, but limited by the ChecksumRecalculation settings: the number of threads reading
+ * from the same storage location (e.g. archive directory on its own disk), the total number of threads, and the total
+ * number of bytes read per second. The limits are shared by all the recalculations running at the same time, so
+ * e.g. recalculations of several collections do not read more than the limits together. Each recalculated checksum
+ * is stored as soon as it is calculated, so an interrupted recalculation only has to be continued for the remaining
+ * files.
+ */
+public class ChecksumRecalculator {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** The default number of threads reading from the same storage location. */
+    private static final int DEFAULT_THREADS_PER_LOCATION = 1;
+    /** The interval between logging the progress of a recalculation. */
+    private static final long PROGRESS_LOG_INTERVAL_MINUTES = 1;
+    /** The maximum number of calculated checksums waiting to be delivered through a cursor. */
+    private static final int RESULT_QUEUE_SIZE = 1000;
+
+    private final FileStore fileArchive;
+    private final ChecksumStore cache;
+    private final ChecksumSpecTYPE checksumSpec;
+    private final int maxThreads;
+    private final int threadsPerLocation;
+    /** The maximum bytes per second for a recalculation, or 0 for no limit. */
+    private final long maxBytesPerSecond;
+    /** The progress of the running recalculations, mapped by their collection. */
+    private final Map<String, Progress> runningRecalculations = new ConcurrentHashMap<>();
+    /** The limiter of the read rate shared by the recalculations, or null if the rate is not limited. */
+    private final ByteRateLimiter sharedLimiter;
+    /** The permits for the total number of threads reading files for the recalculations. */
+    private final Semaphore threadPermits;
+    /** The permits for the number of threads reading from each storage location, mapped by the location. */
+    private final Map<String, Semaphore> locationPermits = new ConcurrentHashMap<>();
+    /** Runs the workers of the recalculations. The threads are reused, and stopped when idle. */
+    private final ExecutorService workerExecutor;
+
+    /**
+     * @param fileArchive  The file store with the files.
+     * @param cache        The checksum store for the calculated checksums.
+     * @param checksumSpec The specification of the checksums to calculate.
+     * @param settings     The settings.
+     */
+    public ChecksumRecalculator(FileStore fileArchive, ChecksumStore cache, ChecksumSpecTYPE checksumSpec,
+                                Settings settings) {
+        this.fileArchive = fileArchive;
+        this.cache = cache;
+        this.checksumSpec = checksumSpec;
+        ChecksumRecalculation config = settings.getReferenceSettings().getPillarSettings().getChecksumRecalculation();
+        if (config != null && config.getMaxThreads() != null) {
+            maxThreads = config.getMaxThreads().intValue();
+        } else {
+            maxThreads = Integer.MAX_VALUE;
+        }
+        if (config != null && config.getThreadsPerDirectory() != null) {
+            threadsPerLocation = config.getThreadsPerDirectory().intValue();
+        } else {
+            threadsPerLocation = DEFAULT_THREADS_PER_LOCATION;
+        }
+        if (config != null && config.getMaxBytesPerSecond() != null && config.getMaxBytesPerSecond() > 0) {
+            maxBytesPerSecond = config.getMaxBytesPerSecond();
+        } else {
+            maxBytesPerSecond = 0;
+        }
+        sharedLimiter = createRateLimiter();
+        threadPermits = new Semaphore(maxThreads, true);
+        workerExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory(getClass().getSimpleName(),
+                Thread.MIN_PRIORITY));
+    }
+
+    /**
+     * Recalculates the checksums of the given files, and waits for the recalculation to finish.
+     * Files which cannot be found or read are logged and skipped.
+     * If interrupted, the remaining files are skipped, and the interrupt flag is set when returning.
+     *
+     * @param collectionID The id of the collection of the files.
+     * @param fileIDs      The ids of the files to recalculate the checksums for.
+     * @return The progress of the finished recalculation.
+     */
+    public Progress recalculate(String collectionID, Collection<String> fileIDs) {
+        Progress progress = new Progress();
+        Map<String, Queue<String>> filesPerLocation = new LinkedHashMap<>();
+        for (String fileID : fileIDs) {
+            try {
+                long size = fileArchive.getFileInfo(fileID, collectionID).getSize();
+                String location = fileArchive.getStorageLocation(fileID, collectionID);
+                filesPerLocation.computeIfAbsent(location, l -> new ConcurrentLinkedQueue<>()).add(fileID);
+                progress.addFile(size);
+            } catch (RuntimeException e) {
+                log.warn("Cannot find the file '{}' in collection '{}' for recalculating its checksum.", fileID,
+                        collectionID, e);
+            }
+        }
+        if (filesPerLocation.isEmpty()) {
+            return progress;
+        }
+
+        log.info("Recalculating the checksums of {} files ({}) in collection '{}' with {} threads.",
+                progress.getTotalFiles(), FileSizeUtils.toHumanShort(progress.getTotalBytes()), collectionID,
+                getNumberOfThreads(filesPerLocation.size()));
+        runningRecalculations.put(collectionID, progress);
+        Workers workers = submitWorkers(filesPerLocation, fileID -> {
+            try {
+                FileInfo fileInfo = fileArchive.getFileInfo(fileID, collectionID);
+                String checksum = calculateChecksum(fileInfo, checksumSpec, sharedLimiter);
+                cache.insertChecksumCalculation(fileID, collectionID, checksum, new Date());
+                progress.fileRecalculated(fileInfo.getSize());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not recalculate the checksum of the file '{}' in collection '{}'.", fileID,
+                        collectionID, e);
+                progress.fileFailed();
+            }
+        });
+        try {
+            while (!workers.awaitFinished(PROGRESS_LOG_INTERVAL_MINUTES, TimeUnit.MINUTES)) {
+                log.info("Recalculating checksums in collection '{}': {}", collectionID, progress);
+            }
+            log.info("Finished recalculating checksums in collection '{}': {}", collectionID, progress);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while recalculating checksums in collection '{}': {}", collectionID, progress);
+            workers.cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            runningRecalculations.remove(collectionID, progress);
+        }
+        return progress;
+    }
+
+    /**
+     * @param collectionID The id of the collection.
+     * @return The progress of the running recalculation for the collection, or null if none is running.
+     */
+    public Progress getProgress(String collectionID) {
+        return runningRecalculations.get(collectionID);
+    }
+
+    /**
+     * Stops the workers of the running calculations.
+     */
+    public void close() {
+        workerExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts calculating the checksums of the given files with the given checksum specification, without storing
+     * them. The checksums are delivered through the returned cursor as soon as they are calculated, so they are not
+     * in the order of the file ids. The calculation shares the limits of the recalculations, so it does not read
+     * beyond them while a recalculation is running. Closing the cursor stops the calculation of the remaining
+     * checksums.
+     *
+     * @param collectionID The id of the collection of the files.
+     * @param fileIDs      The ids of the files to calculate the checksums for.
+     * @param csSpec       The specification of the checksums to calculate.
+     * @param moreEntries  Whether the cursor should report, that there are more entries than the given files.
+     * @return The cursor over the calculated checksums. Fails with an IllegalStateException when reaching a file,
+     * whose checksum could not be calculated.
+     */
+    public ExtractionCursor<ChecksumEntry> calculateChecksums(String collectionID, Collection<String> fileIDs,
+                                                              ChecksumSpecTYPE csSpec, boolean moreEntries) {
+        Map<String, Queue<String>> filesPerLocation = new LinkedHashMap<>();
+        for (String fileID : fileIDs) {
+            String location = fileArchive.getStorageLocation(fileID, collectionID);
+            filesPerLocation.computeIfAbsent(location, l -> new ConcurrentLinkedQueue<>()).add(fileID);
+        }
+        if (filesPerLocation.isEmpty()) {
+            return ExtractionCursor.of(Collections.emptyList(), moreEntries);
+        }
+
+        log.info("Calculating {} checksums of {} files in collection '{}' with {} threads.",
+                csSpec.getChecksumType(), fileIDs.size(), collectionID, getNumberOfThreads(filesPerLocation.size()));
+        BlockingQueue<CalculatedChecksum> results = new ArrayBlockingQueue<>(RESULT_QUEUE_SIZE);
+        Workers workers = submitWorkers(filesPerLocation, fileID -> {
+            CalculatedChecksum result;
+            try {
+                String checksum = calculateChecksum(fileArchive.getFileInfo(fileID, collectionID), csSpec,
+                        sharedLimiter);
+                result = new CalculatedChecksum(fileID, new ChecksumEntry(fileID, checksum, new Date()), null);
+            } catch (IOException | RuntimeException e) {
+                result = new CalculatedChecksum(fileID, null, e);
+            }
+            results.put(result);
+        });
+        return new CalculatedChecksumCursor(results, fileIDs.size(), moreEntries, workers);
+    }
+
+    /**
+     * @param locations The number of storage locations with files.
+     * @return The number of threads to use for the files.
+     */
+    private int getNumberOfThreads(int locations) {
+        return (int) Math.min(maxThreads, (long) locations * threadsPerLocation);
+    }
+
+    /**
+     * @return The limiter for the read rate of the calculations, or null if the rate is not limited.
+     */
+    private ByteRateLimiter createRateLimiter() {
+        return (maxBytesPerSecond > 0) ? new ByteRateLimiter(maxBytesPerSecond) : null;
+    }
+
+    /**
+     * Submits the workers, which process the files of the queues, to the shared executor. Each queue contains the
+     * files of one storage location. Each file is processed with a permit for its storage location and a permit for
+     * the total number of threads, so all the calculations together stay within the limits.
+     *
+     * @param filesPerLocation The queues of files, mapped by their storage location.
+     * @param task             The processing of each file.
+     * @return The submitted workers.
+     */
+    private Workers submitWorkers(Map<String, Queue<String>> filesPerLocation, FileTask task) {
+        Workers workers = new Workers(filesPerLocation.size() * threadsPerLocation);
+        // Spread the first workers over the locations, so all locations are read from before any gets another.
+        for (int i = 0; i < threadsPerLocation; i++) {
+            for (Map.Entry<String, Queue<String>> files : filesPerLocation.entrySet()) {
+                Semaphore permits = locationPermits.computeIfAbsent(files.getKey(),
+                        l -> new Semaphore(threadsPerLocation, true));
+                workers.submit(() -> processFiles(files.getValue(), permits, task));
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * Processes the files in the queue until it is empty, or the thread is interrupted. A file is only processed
+     * while holding a permit for its storage location and a permit for the total number of threads.
+     *
+     * @param files           The queue of files, which may be shared with other threads.
+     * @param locationPermits The permits for the storage location of the files.
+     * @param task            The processing of each file.
+     */
+    private void processFiles(Queue<String> files, Semaphore locationPermits, FileTask task) {
+        try {
+            while (!Thread.currentThread().isInterrupted() && !files.isEmpty()) {
+                locationPermits.acquire();
+                try {
+                    threadPermits.acquire();
+                    try {
+                        String fileID = files.poll();
+                        if (fileID != null) {
+                            task.process(fileID);
+                        }
+                    } finally {
+                        threadPermits.release();
+                    }
+                } finally {
+                    locationPermits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Calculates the checksum of a file, where the reading of the file is limited by the limiter.
+     *
+     * @param fileInfo The file.
+     * @param csSpec   The specification of the checksum.
+     * @param limiter  The limiter of the read rate, or null if not limited.
+     * @return The checksum of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private String calculateChecksum(FileInfo fileInfo, ChecksumSpecTYPE csSpec, ByteRateLimiter limiter)
+            throws IOException {
+        if (limiter == null) {
+            return ChecksumUtils.generateChecksum(fileInfo, csSpec);
+        }
+        try (InputStream in = new ThrottledInputStream(fileInfo.getInputStream(), limiter)) {
+            return ChecksumUtils.generateChecksum(in, csSpec);
+        }
+    }
+
+    /**
+     * The processing of a single file by a worker.
+     */
+    private interface FileTask {
+        void process(String fileID) throws InterruptedException;
+    }
+
+    /**
+     * The workers of one calculation, running in the shared executor.
+     */
+    private final class Workers {
+        private final List<Future<?>> futures;
+        private final CountDownLatch finished;
+
+        private Workers(int numberOfWorkers) {
+            futures = new ArrayList<>(numberOfWorkers);
+            finished = new CountDownLatch(numberOfWorkers);
+        }
+
+        private void submit(Runnable worker) {
+            futures.add(workerExecutor.submit(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    finished.countDown();
+                }
+            }));
+        }
+
+        /**
+         * @param timeout The maximum time to wait.
+         * @param unit    The unit of the timeout.
+         * @return Whether all the workers have finished.
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        private boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+            return finished.await(timeout, unit);
+        }
+
+        /**
+         * Stops the workers, also those which have not started yet.
+         */
+        private void cancel() {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The result of the calculation of a checksum: either the entry, or the failure.
+     */
+    private static final class CalculatedChecksum {
+        private final String fileID;
+        private final ChecksumEntry entry;
+        private final Exception failure;
+
+        private CalculatedChecksum(String fileID, ChecksumEntry entry, Exception failure) {
+            this.fileID = fileID;
+            this.entry = entry;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Cursor over the checksums calculated by the workers, in the order they are calculated.
+     */
+    private static final class CalculatedChecksumCursor implements ExtractionCursor<ChecksumEntry> {
+        private final BlockingQueue<CalculatedChecksum> results;
+        private final boolean moreEntries;
+        private final Workers workers;
+        private long remaining;
+
+        private CalculatedChecksumCursor(BlockingQueue<CalculatedChecksum> results, long expected,
+                                         boolean moreEntries, Workers workers) {
+            this.results = results;
+            this.remaining = expected;
+            this.moreEntries = moreEntries;
+            this.workers = workers;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public ChecksumEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more checksums.");
+            }
+            CalculatedChecksum result;
+            try {
+                result = results.take();
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the calculation of checksums.", e);
+            }
+            remaining--;
+            if (result.failure != null) {
+                close();
+                throw new IllegalStateException("Could not calculate the checksum of the file '" + result.fileID
+                        + "'.", result.failure);
+            }
+            return result.entry;
+        }
+
+        @Override
+        public boolean hasMoreEntries() {
+            return moreEntries;
+        }
+
+        @Override
+        public void close() {
+            remaining = 0;
+            workers.cancel();
+        }
+    }
+
+    /**
+     * The progress of a recalculation. Updated concurrently by the threads of the recalculation.
+     */
+    public static class Progress {
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicLong totalFiles = new AtomicLong();
+        private final AtomicLong totalBytes = new AtomicLong();
+        private final AtomicLong recalculatedFiles = new AtomicLong();
+        private final AtomicLong recalculatedBytes = new AtomicLong();
+        private final AtomicLong failedFiles = new AtomicLong();
+
+        private void addFile(long size) {
+            totalFiles.incrementAndGet();
+            totalBytes.addAndGet(size);
+        }
+
+        private void fileRecalculated(long size) {
+            recalculatedFiles.incrementAndGet();
+            recalculatedBytes.addAndGet(size);
+        }
+
+        private void fileFailed() {
+            failedFiles.incrementAndGet();
+        }
+
+        /**
+         * @return The number of files to recalculate the checksum for.
+         */
+        public long getTotalFiles() {
+            return totalFiles.get();
+        }
+
+        /**
+         * @return The total size of the files to recalculate the checksum for.
+         */
+        public long getTotalBytes() {
+            return totalBytes.get();
+        }
+
+        /**
+         * @return The number of files, which have had their checksum recalculated.
+         */
+        public long getRecalculatedFiles() {
+            return recalculatedFiles.get();
+        }
+
+        /**
+         * @return The total size of the files, which have had their checksum recalculated.
+         */
+        public long getRecalculatedBytes() {
+            return recalculatedBytes.get();
+        }
+
+        /**
+         * @return The number of files, for which the recalculation failed.
+         */
+        public long getFailedFiles() {
+            return failedFiles.get();
+        }
+
+        /**
+         * @return The estimated number of milliseconds until the recalculation is finished, based on the rate so far,
+         * or null if it cannot be estimated yet.
+         */
+        public Long getEstimatedTimeLeft() {
+            long bytesDone = getRecalculatedBytes();
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (bytesDone == 0 || elapsed == 0) {
+                return null;
+            }
+            long bytesLeft = Math.max(0, getTotalBytes() - bytesDone);
+            return (long) (bytesLeft * ((double) elapsed / bytesDone));
+        }
+
+        @Override
+        public String toString() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            StringBuilder res = new StringBuilder();
+            res.append(getRecalculatedFiles()).append(" of ").append(getTotalFiles()).append(" files (")
+                    .append(FileSizeUtils.toHumanShort(getRecalculatedBytes())).append(" of ")
+                    .append(FileSizeUtils.toHumanShort(getTotalBytes())).append(") recalculated at ")
+                    .append(FileSizeUtils.toHumanShort(getRecalculatedBytes() * 1000 / elapsed)).append("/s");
+            if (getFailedFiles() > 0) {
+                res.append(", ").append(getFailedFiles()).append(" failed");
+            }
+            Long timeLeft = getEstimatedTimeLeft();
+            if (timeLeft != null) {
+                res.append(", estimated time left: ").append(TimeUtils.millisecondsToHuman(timeLeft));
+            }
+            return res.toString();
+        }
+    }
+}
@@ -26,6 +26,7 @@ package org.bitrepository.pillar.store;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.settings.Settings;
@@ -34,6 +35,7 @@ import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.bitrepository.protocol.FileExchange;
 import org.bitrepository.protocol.utils.FileExchangeResolver;
 import org.bitrepository.service.AlarmDispatcher;
@@ -119,6 +121,12 @@ public class ChecksumStorageModel extends StorageModel {
         return cache.getFileIDs(minTimestamp, maxTimestamp, maxResults, fileID, collectionID);
     }
 
+    @Override
+    public ExtractionCursor<FileIDsDataItem> getFileIDsResultCursor(String fileID, XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID) {
+        return cache.getFileIDsCursor(minTimestamp, maxTimestamp, maxResults, fileID, collectionID);
+    }
+
     @Override
     protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID,
             ChecksumSpecTYPE csSpec) throws RequestHandlerException {
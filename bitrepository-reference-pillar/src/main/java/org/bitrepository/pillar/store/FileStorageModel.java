@@ -26,20 +26,24 @@ package org.bitrepository.pillar.store;
 
 import org.bitrepository.bitrepositoryelements.Alarm;
 import org.bitrepository.bitrepositoryelements.AlarmCode;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.filestore.FileStore;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.Base16Utils;
 import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.common.utils.ChecksumCalculatingInputStream;
 import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.common.utils.XmlUtils;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.bitrepository.protocol.FileExchange;
 import org.bitrepository.protocol.utils.FileExchangeResolver;
 import org.bitrepository.service.AlarmDispatcher;
@@ -55,9 +59,12 @@ import javax.xml.datatype.XMLGregorianCalendar;
 import java.io.IOException;
 import java.net.URL;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The storage model for a pillar with a file store, where it can store its actual files.
@@ -66,6 +73,7 @@ public class FileStorageModel extends StorageModel {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final Boolean verify = settings.getReferenceSettings().getPillarSettings()
                                            .isVerifyDataConsistencyOnMessage();
+    private final ChecksumRecalculator recalculator;
 
     /**
      * @param archives        The file archives.
@@ -76,6 +84,7 @@ public class FileStorageModel extends StorageModel {
     public FileStorageModel(FileStore archives, ChecksumStore cache, AlarmDispatcher alarmDispatcher,
                             Settings settings) {
         super(archives, cache, alarmDispatcher, settings);
+        recalculator = new ChecksumRecalculator(archives, cache, defaultChecksumSpec, settings);
         log.info("Instantiating the FileStorageModel: {}", getPillarID());
     }
 
@@ -109,14 +118,8 @@ public class FileStorageModel extends StorageModel {
     public ExtractedFileIDsResultSet getFileIDsResultSet(String fileID, XMLGregorianCalendar minTimestamp,
                                                          XMLGregorianCalendar maxTimestamp, Long maxResults,
                                                          String collectionID) {
-        Long minTime = null;
-        if (minTimestamp != null) {
-            minTime = CalendarUtils.convertFromXMLGregorianCalendar(minTimestamp).getTime();
-        }
-        Long maxTime = null;
-        if (maxTimestamp != null) {
-            maxTime = CalendarUtils.convertFromXMLGregorianCalendar(maxTimestamp).getTime();
-        }
+        Long minTime = toMillis(minTimestamp);
+        Long maxTime = toMillis(maxTimestamp);
 
         if (fileID == null) {
             return getFileIds(minTime, maxTime, maxResults, collectionID);
@@ -132,6 +135,26 @@ public class FileStorageModel extends StorageModel {
 
     }
 
+    @Override
+    public ExtractionCursor<FileIDsDataItem> getFileIDsResultCursor(String fileID, XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID) {
+        if (fileID != null) {
+            return super.getFileIDsResultCursor(fileID, minTimestamp, maxTimestamp, maxResults, collectionID);
+        }
+        return getFileIdsCursor(toMillis(minTimestamp), toMillis(maxTimestamp), maxResults, collectionID);
+    }
+
+    /**
+     * @param timestamp The timestamp to convert. May be null.
+     * @return The timestamp in milliseconds, or null if no timestamp was given.
+     */
+    private Long toMillis(XMLGregorianCalendar timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        return CalendarUtils.convertFromXMLGregorianCalendar(timestamp).getTime();
+    }
+
     @Override
     public void verifyEnoughFreeSpaceLeftForFile(Long fileSize, String collectionID) throws RequestHandlerException {
         long usableSizeLeft = fileArchive.sizeLeftInArchive(collectionID) -
@@ -148,21 +171,44 @@ public class FileStorageModel extends StorageModel {
     protected ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID,
                                                                         ChecksumSpecTYPE csSpec) {
         ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
-
-        long i = 0;
-        for (String fileID : cache.getAllFileIDs(collectionID)) {
-            if (maxResults != null && i > maxResults) {
-                break;
+        try (ExtractionCursor<ChecksumEntry> cursor = calculateNonDefaultChecksums(maxResults, collectionID,
+                csSpec)) {
+            while (cursor.hasNext()) {
+                res.insertChecksumEntry(cursor.next());
+            }
+            if (cursor.hasMoreEntries()) {
+                res.reportMoreEntriesFound();
             }
-            i++;
-
-            String checksum = getNonDefaultChecksum(fileID, collectionID, csSpec);
-            ChecksumEntry entry = new ChecksumEntry(fileID, checksum, new Date());
-            res.insertChecksumEntry(entry);
         }
         return res;
     }
 
+    @Override
+    protected ExtractionCursor<ChecksumDataForChecksumSpecTYPE> getNonDefaultChecksumResultCursor(Long maxResults,
+            String collectionID, ChecksumSpecTYPE csSpec) {
+        return calculateNonDefaultChecksums(maxResults, collectionID, csSpec)
+                .map(ExtractedChecksumResultSet::createChecksumData);
+    }
+
+    /**
+     * Starts calculating the non-default checksums of up to the maximum number of files in the collection. The
+     * checksums are calculated in parallel, and delivered through the cursor as soon as they are calculated.
+     *
+     * @param maxResults   The maximum number of results. Null, if no limit.
+     * @param collectionID The id of the collection.
+     * @param csSpec       The checksum specification.
+     * @return The cursor over the calculated checksums. Must be closed after use.
+     */
+    private ExtractionCursor<ChecksumEntry> calculateNonDefaultChecksums(Long maxResults, String collectionID,
+                                                                         ChecksumSpecTYPE csSpec) {
+        List<String> fileIDs = new ArrayList<>(cache.getAllFileIDs(collectionID));
+        boolean moreEntries = maxResults != null && fileIDs.size() > maxResults;
+        if (moreEntries) {
+            fileIDs = fileIDs.subList(0, maxResults.intValue());
+        }
+        return recalculator.calculateChecksums(collectionID, fileIDs, csSpec, moreEntries);
+    }
+
     @Override
     public void verifyFileExists(String fileID, String collectionID) throws RequestHandlerException {
         if (!hasFileID(fileID, collectionID)) {
@@ -181,19 +227,19 @@ public class FileStorageModel extends StorageModel {
     @Override
     public void putFile(String collectionID, String fileID, String fileAddress,
                         ChecksumDataForFileTYPE expectedChecksum) throws RequestHandlerException {
-        transferFileToTmp(fileID, collectionID, fileAddress);
-        verifyFileInTmp(fileID, collectionID, expectedChecksum);
+        List<String> checksums = transferFileToTmp(fileID, collectionID, fileAddress, expectedChecksum);
+        String checksum = verifyFileInTmp(fileID, expectedChecksum, checksums);
         fileArchive.moveToArchive(fileID, collectionID);
-        recalculateChecksum(fileID, collectionID);
+        cache.insertChecksumCalculation(fileID, collectionID, checksum, new Date());
     }
 
     @Override
     public void replaceFile(String fileID, String collectionID, String fileAddress,
                             ChecksumDataForFileTYPE expectedChecksum) throws RequestHandlerException {
-        transferFileToTmp(fileID, collectionID, fileAddress);
-        verifyFileInTmp(fileID, collectionID, expectedChecksum);
+        List<String> checksums = transferFileToTmp(fileID, collectionID, fileAddress, expectedChecksum);
+        String checksum = verifyFileInTmp(fileID, expectedChecksum, checksums);
         fileArchive.replaceFile(fileID, collectionID);
-        recalculateChecksum(fileID, collectionID);
+        cache.insertChecksumCalculation(fileID, collectionID, checksum, new Date());
     }
 
     /**
@@ -210,20 +256,8 @@ public class FileStorageModel extends StorageModel {
     }
 
     /**
-     * Calculates the checksum of a file within the tmpDir.
-     *
-     * @param fileID       The id of the file to calculate the checksum for.
-     * @param collectionID The id of the collection of the file.
-     * @param csType       The specification for the type of checksum to calculate.
-     * @return The checksum of the given type for the file with the given id.
-     */
-    private String getChecksumForTempFile(String fileID, String collectionID, ChecksumSpecTYPE csType) {
-        FileInfo fi = fileArchive.getFileInTmpDir(fileID, collectionID);
-        return ChecksumUtils.generateChecksum(fi, csType);
-    }
-
-    /**
-     * TODO this should be in the database instead.
+     * Finds the files with a last modified timestamp within the given interval, ordered by the timestamp.
+     * Files with identical timestamps are ordered by their file id.
      *
      * @param minTime            The minimum date for the timestamp of the extracted file ids entries.
      * @param maxTime            The maximum date for the timestamp of the extracted file ids entries.
@@ -234,30 +268,38 @@ public class FileStorageModel extends StorageModel {
     private ExtractedFileIDsResultSet getFileIds(Long minTime, Long maxTime, Long maxNumberOfResults,
                                                  String collectionID) {
         ExtractedFileIDsResultSet res = new ExtractedFileIDsResultSet();
-
-        // Map between lastModifiedDate and fileInfo.
-        ConcurrentSkipListMap<Long, FileInfo> sortedDateFileIDMap = new ConcurrentSkipListMap<>();
-        for (String fileID : fileArchive.getAllFileIds(collectionID)) {
-            FileInfo fi = fileArchive.getFileInfo(fileID, collectionID);
-            if ((minTime == null || minTime <= fi.getLastModifiedDate()) &&
-                    (maxTime == null || maxTime >= fi.getLastModifiedDate())) {
-                sortedDateFileIDMap.put(fi.getLastModifiedDate(), fi);
+        try (ExtractionCursor<FileIDsDataItem> cursor = getFileIdsCursor(minTime, maxTime, maxNumberOfResults,
+                collectionID)) {
+            while (cursor.hasNext()) {
+                res.insertFileIDsDataItem(cursor.next());
+            }
+            if (cursor.hasMoreEntries()) {
+                res.reportMoreEntriesFound();
             }
         }
+        return res;
+    }
 
-        int i = 0;
-        Map.Entry<Long, FileInfo> entry;
-        while ((entry = sortedDateFileIDMap.pollFirstEntry()) != null &&
-                (maxNumberOfResults == null || i < maxNumberOfResults)) {
-            res.insertFileInfo(entry.getValue());
-            i++;
-        }
-
-        if (maxNumberOfResults != null && i >= maxNumberOfResults) {
-            res.reportMoreEntriesFound();
+    /**
+     * Opens a cursor over the files within the restrictions. The result items are only created while the cursor is
+     * traversed.
+     *
+     * @param minTime            The minimum last modified date of the files. Null, if no lower limit.
+     * @param maxTime            The maximum last modified date of the files. Null, if no upper limit.
+     * @param maxNumberOfResults The maximum number of results. Null, if no limit.
+     * @param collectionID       The id of the collection.
+     * @return The cursor over the file ids.
+     */
+    private ExtractionCursor<FileIDsDataItem> getFileIdsCursor(Long minTime, Long maxTime, Long maxNumberOfResults,
+                                                               String collectionID) {
+        // Retrieve an extra entry to find out whether there are more entries than requested.
+        Long limit = (maxNumberOfResults == null) ? null : maxNumberOfResults + 1;
+        List<FileInfo> fileInfos = fileArchive.getFileInfos(collectionID, minTime, maxTime, limit);
+        boolean moreEntries = maxNumberOfResults != null && fileInfos.size() > maxNumberOfResults;
+        if (moreEntries) {
+            fileInfos = fileInfos.subList(0, maxNumberOfResults.intValue());
         }
-
-        return res;
+        return ExtractionCursor.of(fileInfos, moreEntries).map(ExtractedFileIDsResultSet::createFileIDsDataItem);
     }
 
     @Override
@@ -266,18 +308,34 @@ public class FileStorageModel extends StorageModel {
             verifyCacheToArchiveConsistencyForFile(fileID, collectionID);
         }
 
+        // The files without a checksum are calculated first, followed by the oldest checksums.
+        Set<String> fileIDsToRecalculate = new LinkedHashSet<>();
+        Set<String> cachedFileIDs = new HashSet<>(cache.getAllFileIDs(collectionID));
         for (String fileID : fileArchive.getAllFileIds(collectionID)) {
-            verifyArchiveToCacheConsistencyForFile(fileID, collectionID);
+            if (!cachedFileIDs.contains(fileID)) {
+                log.debug("No checksum cached for file '{}'. Calculating the checksum.", fileID);
+                fileIDsToRecalculate.add(fileID);
+            }
         }
 
         Duration maxAgeForChecksums = settings.getReferenceSettings().getPillarSettings().getMaxAgeForChecksums();
         Instant checksumDate = Instant.now().minus(XmlUtils.xmlDurationToDuration(maxAgeForChecksums));
-        for (String fileID : cache.getFileIDsWithOldChecksums(checksumDate, collectionID)) {
-            recalculateChecksum(fileID, collectionID);
-        }
+        fileIDsToRecalculate.addAll(cache.getFileIDsWithOldChecksums(checksumDate, collectionID));
+        recalculator.recalculate(collectionID, fileIDsToRecalculate);
         // TODO: validate the 'last modified' timestamp?
     }
 
+    @Override
+    public ChecksumRecalculator.Progress getChecksumRecalculationProgress(String collectionID) {
+        return recalculator.getProgress(collectionID);
+    }
+
+    @Override
+    public void close() {
+        recalculator.close();
+        super.close();
+    }
+
     /**
      * Ensures that a file id in the cache is also in the archive.
      * Will send an alarm, if the file is missing, then remove it from index.
@@ -301,35 +359,31 @@ public class FileStorageModel extends StorageModel {
     }
 
     /**
-     * Ensures that the cache has a non-obsolete checksum for the given file.
-     * Also validates, that the checksum is up-to-date with the file.
-     *
-     * @param fileID       The id of the file.
-     * @param collectionID The id of the collection of the file.
-     */
-    private void verifyArchiveToCacheConsistencyForFile(String fileID, String collectionID) {
-        if (!cache.hasFile(fileID, collectionID)) {
-            log.debug("No checksum cached for file '{}'. Calculating the checksum.", fileID);
-            recalculateChecksum(fileID, collectionID);
-        }
-    }
-
-    /**
-     * Downloads the file to temporary area.
+     * Downloads the file to temporary area. The default checksum, and the checksum of the expected type if any, are
+     * calculated from the data while it is written, so the downloaded file does not have to be read again.
      *
-     * @param fileID       The id of the file.
-     * @param collectionID The id of the collection.
-     * @param fileAddress  The address to download the file from.
+     * @param fileID           The id of the file.
+     * @param collectionID     The id of the collection.
+     * @param fileAddress      The address to download the file from.
+     * @param expectedChecksum The expected checksum for the downloaded file, or null if it is not to be validated.
+     * @return The default checksum of the downloaded file, followed by the checksum of the expected type if any.
      * @throws RequestHandlerException If the download fails.
      */
-    private void transferFileToTmp(String fileID, String collectionID, String fileAddress)
-            throws RequestHandlerException {
+    private List<String> transferFileToTmp(String fileID, String collectionID, String fileAddress,
+                                           ChecksumDataForFileTYPE expectedChecksum) throws RequestHandlerException {
         log.debug("Retrieving the data to be stored from URL: '{}'", fileAddress);
+        List<ChecksumSpecTYPE> csTypes = (expectedChecksum == null)
+                ? List.of(defaultChecksumSpec)
+                : List.of(defaultChecksumSpec, expectedChecksum.getChecksumSpec());
 
         try {
             URL fileURL = new URL(fileAddress);
             FileExchange fileExchange = FileExchangeResolver.getBasicFileExchangeFromURL(fileURL);
-            fileArchive.downloadFileForValidation(fileID, collectionID, fileExchange.getFile(fileURL));
+            try (ChecksumCalculatingInputStream in =
+                         new ChecksumCalculatingInputStream(fileExchange.getFile(fileURL), csTypes)) {
+                fileArchive.downloadFileForValidation(fileID, collectionID, in);
+                return in.getChecksums();
+            }
         } catch (IOException e) {
             String errMsg = "Could not retrieve the file from '" + fileAddress + "'";
             log.error(errMsg, e);
@@ -341,15 +395,15 @@ public class FileStorageModel extends StorageModel {
      * Verifies that a file in temporary area has the expected checksum.
      *
      * @param fileID           The id of the file.
-     * @param collectionID     The id of the collection.
      * @param expectedChecksum The expected checksum for the downloaded file.
+     * @param checksums        The checksums calculated during the download of the file.
+     * @return The default checksum of the file.
      * @throws RequestHandlerException If it does not have the expected checksum.
      */
-    private void verifyFileInTmp(String fileID, String collectionID, ChecksumDataForFileTYPE expectedChecksum)
+    private String verifyFileInTmp(String fileID, ChecksumDataForFileTYPE expectedChecksum, List<String> checksums)
             throws RequestHandlerException {
         if (expectedChecksum != null) {
-            String calculatedChecksum = getChecksumForTempFile(fileID, collectionID,
-                    expectedChecksum.getChecksumSpec());
+            String calculatedChecksum = checksums.get(1);
             String expectedChecksumValue = Base16Utils.decodeBase16(expectedChecksum.getChecksumValue());
             log.debug("Validating newly downloaded file '{}' against expected checksum '{}'",
                     fileID, expectedChecksumValue);
@@ -362,5 +416,6 @@ public class FileStorageModel extends StorageModel {
         } else {
             log.debug("No checksums for validating the newly downloaded file '{}'", fileID);
         }
+        return checksums.get(0);
     }
 }
@@ -25,8 +25,10 @@
 package org.bitrepository.pillar.store;
 
 import org.apache.commons.codec.DecoderException;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.filestore.FileStore;
@@ -38,6 +40,7 @@ import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.bitrepository.service.AlarmDispatcher;
 import org.bitrepository.service.exception.InvalidMessageException;
 import org.bitrepository.service.exception.RequestHandlerException;
@@ -205,6 +208,52 @@ public abstract class StorageModel {
         }
     }
 
+    /**
+     * Ensures, that all files are up-to-date, and opens a cursor over the requested entries.
+     * Default checksums are read from the store while the cursor is traversed, whereas non-default checksums are
+     * all calculated before the cursor is returned.
+     *
+     * @param minTimestamp The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimestamp The maximum date for the timestamp of the extracted checksum entries.
+     * @param maxResults   The maximum number of results.
+     * @param collectionID The id of the collection.
+     * @param csSpec       The checksum specification.
+     * @return The cursor over the checksum entries. Must be closed after use.
+     * @throws RequestHandlerException If it is a non-default checksum specification, which is not supported (e.g. if
+     *                                 it is a ChecksumPillar).
+     */
+    public ExtractionCursor<ChecksumDataForChecksumSpecTYPE> getChecksumResultCursor(
+            XMLGregorianCalendar minTimestamp, XMLGregorianCalendar maxTimestamp, Long maxResults,
+            String collectionID, ChecksumSpecTYPE csSpec) throws RequestHandlerException {
+        verifyFileToCacheConsistencyOfAllDataIfRequired(collectionID);
+        if (csSpec.equals(defaultChecksumSpec)) {
+            return cache.getChecksumResultsCursor(minTimestamp, maxTimestamp, maxResults, collectionID);
+        } else {
+            log.info("Bulk-extraction of non-default checksums for spec: {}, on collection {}, with maximum {} " +
+                    "results.", csSpec, collectionID, maxResults);
+            return getNonDefaultChecksumResultCursor(maxResults, collectionID, csSpec);
+        }
+    }
+
+    /**
+     * Opens a cursor over the requested file ids.
+     * The default implementation extracts all the file ids before the cursor is returned.
+     *
+     * @param fileID       The id of the file. Null, if all file ids.
+     * @param minTimestamp The minimum date for the timestamp of the extracted file ids.
+     * @param maxTimestamp The maximum date for the timestamp of the extracted file ids.
+     * @param maxResults   The maximum number of results.
+     * @param collectionID The id of the collection.
+     * @return The cursor over the file ids. Must be closed after use.
+     */
+    public ExtractionCursor<FileIDsDataItem> getFileIDsResultCursor(String fileID, XMLGregorianCalendar minTimestamp,
+            XMLGregorianCalendar maxTimestamp, Long maxResults, String collectionID) {
+        ExtractedFileIDsResultSet res = getFileIDsResultSet(fileID, minTimestamp, maxTimestamp, maxResults,
+                collectionID);
+        return ExtractionCursor.of(res.getEntries().getFileIDsDataItems().getFileIDsDataItem(),
+                res.hasMoreEntries());
+    }
+
     /**
      * Extracts the results set for a given checksum entry.
      * If it has the file, but its calculation date is not within the timestamp restrictions, then an empty
@@ -383,6 +432,15 @@ public abstract class StorageModel {
      */
     public abstract void verifyFileToCacheConsistencyOfAllData(String collectionID);
 
+    /**
+     * @param collectionID The id of the collection.
+     * @return The progress of the running recalculation of checksums for the collection, or null if no
+     * recalculation is running. ChecksumPillars never recalculate checksums.
+     */
+    public ChecksumRecalculator.Progress getChecksumRecalculationProgress(String collectionID) {
+        return null;
+    }
+
     /**
      * Retrieves the non-default checksum for a file, thus calculating the checksum of the file with the new
      * checksum specification.
@@ -436,6 +494,23 @@ public abstract class StorageModel {
     protected abstract ExtractedChecksumResultSet getNonDefaultChecksumResultSet(Long maxResults, String collectionID,
             ChecksumSpecTYPE csSpec) throws RequestHandlerException;
 
+    /**
+     * Opens a cursor over the checksums with a non-default checksum specification for some files.
+     * The default implementation retrieves all the checksums before the cursor is returned.
+     *
+     * @param maxResults   The maximum number of results.
+     * @param collectionID The id of the collection.
+     * @param csSpec       The checksum specification.
+     * @return The cursor over the checksum-results for the non-default checksum specification.
+     * @throws RequestHandlerException If the non-default checksum specification is not supported, e.g. if it is a
+     *                                 ChecksumPillar.
+     */
+    protected ExtractionCursor<ChecksumDataForChecksumSpecTYPE> getNonDefaultChecksumResultCursor(Long maxResults,
+            String collectionID, ChecksumSpecTYPE csSpec) throws RequestHandlerException {
+        ExtractedChecksumResultSet res = getNonDefaultChecksumResultSet(maxResults, collectionID, csSpec);
+        return ExtractionCursor.of(res.getEntries(), res.hasMoreEntries());
+    }
+
     /**
      * Throws an exception unless the actual file exists and is available.
      * Thus the ChecksumPillar will always throw an exception.
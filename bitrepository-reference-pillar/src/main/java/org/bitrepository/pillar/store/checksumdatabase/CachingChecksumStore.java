@@ -0,0 +1,367 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.checksumdatabase;
+
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.utils.CalendarUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of the checksum entries of single files in front of another checksum store.
+ * <p/>
+ * The lookups of single files (hasFile, getChecksum, getEntry, etc.) are answered from a bounded, least recently used
+ * map of the entries, where a file without an entry is cached as well. On a miss the entry is loaded with a single
+ * lookup in the underlying store. Changes are written directly to the underlying store, and invalidate the cached
+ * entry of the file. Operations on several files are always delegated to the underlying store.
+ * <p/>
+ * The statistics of the cache can be logged periodically, so its hit rate can be followed while the pillar is
+ * running.
+ */
+public class CachingChecksumStore implements ChecksumStore {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ChecksumStore store;
+    private final int maxEntries;
+    /** The cached entries, in the order of their latest use. Guarded by itself. */
+    private final Map<CacheKey, CachedEntry> entries;
+    /** The number of invalidations. Guarded by the entries. Used for not caching entries loaded before a change. */
+    private long invalidations = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    /** Logs the statistics of the cache, or null if the statistics are not logged periodically. */
+    private final ScheduledExecutorService statisticsLogger;
+
+    /**
+     * Creates the cache without periodic logging of its statistics.
+     *
+     * @param store      The underlying checksum store.
+     * @param maxEntries The maximum number of file entries to keep in the cache.
+     */
+    public CachingChecksumStore(ChecksumStore store, int maxEntries) {
+        this(store, maxEntries, null);
+    }
+
+    /**
+     * @param store                 The underlying checksum store.
+     * @param maxEntries            The maximum number of file entries to keep in the cache.
+     * @param statisticsLogInterval The interval between logging the statistics of the cache, or null or zero for
+     *                              no periodic logging.
+     */
+    public CachingChecksumStore(ChecksumStore store, int maxEntries, Duration statisticsLogInterval) {
+        ArgumentValidator.checkNotNull(store, "ChecksumStore store");
+        ArgumentValidator.checkPositive(maxEntries, "int maxEntries");
+        this.store = store;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedEntry> eldest) {
+                if (size() > CachingChecksumStore.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (statisticsLogInterval != null && !statisticsLogInterval.isZero()) {
+            statisticsLogger = Executors.newSingleThreadScheduledExecutor(
+                    new DefaultThreadFactory(getClass().getSimpleName(), Thread.MIN_PRIORITY));
+            long intervalMillis = statisticsLogInterval.toMillis();
+            statisticsLogger.scheduleAtFixedRate(() -> log.info("Checksum cache statistics: {}", getStatistics()),
+                    intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            statisticsLogger = null;
+        }
+    }
+
+    @Override
+    public Date getCalculationDate(String fileID, String collectionID) {
+        return getExistingEntry(fileID, collectionID).getCalculationDate();
+    }
+
+    @Override
+    public String getChecksum(String fileID, String collectionID) {
+        return getExistingEntry(fileID, collectionID).getChecksum();
+    }
+
+    @Override
+    public ChecksumEntry getEntry(String fileID, String collectionID) {
+        return getExistingEntry(fileID, collectionID);
+    }
+
+    @Override
+    public ChecksumEntry findEntry(String fileID, String collectionID) {
+        return lookup(fileID, collectionID).entry;
+    }
+
+    @Override
+    public boolean hasFile(String fileID, String collectionID) {
+        return lookup(fileID, collectionID).entry != null;
+    }
+
+    @Override
+    public ExtractedChecksumResultSet getChecksumResult(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, String fileID, String collectionID) {
+        ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+        ChecksumEntry entry = lookup(fileID, collectionID).entry;
+        if (entry != null) {
+            // Same restrictions as the database: after the minimum and no later than the maximum.
+            long date = entry.getCalculationDate().getTime();
+            boolean afterMin = minTimeStamp == null
+                    || date > CalendarUtils.convertFromXMLGregorianCalendar(minTimeStamp).getTime();
+            boolean beforeMax = maxTimeStamp == null
+                    || date <= CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime();
+            if (afterMin && beforeMax) {
+                res.insertChecksumEntry(entry);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void insertChecksumCalculation(String fileID, String collectionID, String checksum, Date calculationDate) {
+        try {
+            store.insertChecksumCalculation(fileID, collectionID, checksum, calculationDate);
+        } finally {
+            invalidate(fileID, collectionID);
+        }
+    }
+
+    @Override
+    public void deleteEntry(String fileID, String collectionID) {
+        try {
+            store.deleteEntry(fileID, collectionID);
+        } finally {
+            invalidate(fileID, collectionID);
+        }
+    }
+
+    @Override
+    public ExtractedChecksumResultSet getChecksumResults(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        return store.getChecksumResults(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
+    }
+
+    @Override
+    public ExtractionCursor<ChecksumDataForChecksumSpecTYPE> getChecksumResultsCursor(
+            XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults,
+            String collectionID) {
+        return store.getChecksumResultsCursor(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
+    }
+
+    @Override
+    public ExtractedFileIDsResultSet getFileIDs(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
+            Long maxNumberOfResults, String fileID, String collectionID) {
+        return store.getFileIDs(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID, collectionID);
+    }
+
+    @Override
+    public ExtractionCursor<FileIDsDataItem> getFileIDsCursor(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String fileID, String collectionID) {
+        return store.getFileIDsCursor(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID, collectionID);
+    }
+
+    @Override
+    public Collection<String> getAllFileIDs(String collectionID) {
+        return store.getAllFileIDs(collectionID);
+    }
+
+    @Override
+    public List<String> getFileIDsWithOldChecksums(Instant checksumDate, String collectionID) {
+        return store.getFileIDsWithOldChecksums(checksumDate, collectionID);
+    }
+
+    @Override
+    public void close() {
+        if (statisticsLogger != null) {
+            statisticsLogger.shutdownNow();
+        }
+        log.info("Closing the checksum cache: {}", getStatistics());
+        synchronized (entries) {
+            entries.clear();
+        }
+        store.close();
+    }
+
+    /**
+     * @return The number of lookups answered by the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups, which had to be loaded from the underlying store.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of entries removed from the cache to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The ratio of the lookups answered by the cache, or 0 if there has been no lookups.
+     */
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return The number of entries in the cache.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return A human readable description of the size and hit rate of the cache.
+     */
+    public String getStatistics() {
+        return String.format("%d of %d entries, %d hits, %d misses (hit rate %.1f%%), %d evictions", size(),
+                maxEntries, getHitCount(), getMissCount(), getHitRate() * 100, getEvictionCount());
+    }
+
+    /**
+     * @param fileID       The id of the file.
+     * @param collectionID The id of the collection of the file.
+     * @return The entry of the file.
+     * @throws IllegalStateException If there is no entry for the file.
+     */
+    private ChecksumEntry getExistingEntry(String fileID, String collectionID) {
+        ChecksumEntry entry = lookup(fileID, collectionID).entry;
+        if (entry == null) {
+            throw new IllegalStateException("No entry for the file '" + fileID + "'.");
+        }
+        return entry;
+    }
+
+    /**
+     * Finds the entry of a file in the cache, and loads it from the underlying store if it is not cached.
+     * An entry loaded while the cache was invalidated is not cached, since it might be outdated.
+     *
+     * @param fileID       The id of the file.
+     * @param collectionID The id of the collection of the file.
+     * @return The cached entry for the file.
+     */
+    private CachedEntry lookup(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        CacheKey key = new CacheKey(fileID, collectionID);
+        long invalidationsBeforeLoad;
+        synchronized (entries) {
+            CachedEntry cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+        misses.increment();
+        CachedEntry loaded = new CachedEntry(store.findEntry(fileID, collectionID));
+        synchronized (entries) {
+            if (invalidations == invalidationsBeforeLoad) {
+                entries.put(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Removes the entry of a file from the cache.
+     *
+     * @param fileID       The id of the file.
+     * @param collectionID The id of the collection of the file.
+     */
+    private void invalidate(String fileID, String collectionID) {
+        synchronized (entries) {
+            invalidations++;
+            entries.remove(new CacheKey(fileID, collectionID));
+        }
+    }
+
+    /**
+     * The cached result of a lookup, where the entry is null if the file has no entry.
+     */
+    private static final class CachedEntry {
+        private final ChecksumEntry entry;
+
+        private CachedEntry(ChecksumEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * The key for a file in a collection.
+     */
+    private static final class CacheKey {
+        private final String fileID;
+        private final String collectionID;
+
+        private CacheKey(String fileID, String collectionID) {
+            this.fileID = fileID;
+            this.collectionID = collectionID;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return fileID.equals(other.fileID) && collectionID.equals(other.collectionID);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileID, collectionID);
+        }
+    }
+}
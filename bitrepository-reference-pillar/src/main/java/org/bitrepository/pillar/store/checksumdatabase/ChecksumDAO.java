@@ -21,6 +21,8 @@
  */
 package org.bitrepository.pillar.store.checksumdatabase;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.service.database.DBConnector;
 import org.bitrepository.service.database.DatabaseManager;
@@ -82,6 +84,14 @@ public class ChecksumDAO implements ChecksumStore {
         return extractor.extractSingleEntry(fileID, collectionID);
     }
 
+    @Override
+    public ChecksumEntry findEntry(String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(fileID, "String fileID");
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+
+        return extractor.findSingleEntry(fileID, collectionID);
+    }
+
     @Override
     public ExtractedChecksumResultSet getChecksumResults(XMLGregorianCalendar minTimeStamp,
                                                          XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
@@ -89,6 +99,14 @@ public class ChecksumDAO implements ChecksumStore {
         return extractor.extractEntries(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
     }
 
+    @Override
+    public ExtractionCursor<ChecksumDataForChecksumSpecTYPE> getChecksumResultsCursor(
+            XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults,
+            String collectionID) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        return extractor.extractEntriesCursor(minTimeStamp, maxTimeStamp, maxNumberOfResults, collectionID);
+    }
+
     @Override
     public Date getCalculationDate(String fileID, String collectionID) {
         ArgumentValidator.checkNotNull(fileID, "String fileID");
@@ -109,6 +127,13 @@ public class ChecksumDAO implements ChecksumStore {
         return extractor.getFileIDs(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID, collectionID);
     }
 
+    @Override
+    public ExtractionCursor<FileIDsDataItem> getFileIDsCursor(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String fileID, String collectionID) {
+        ArgumentValidator.checkNotNull(collectionID, "String collectionID");
+        return extractor.getFileIDsCursor(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID, collectionID);
+    }
+
     @Override
     public boolean hasFile(String fileID, String collectionID) {
         ArgumentValidator.checkNotNull(fileID, "String fileID");
@@ -39,7 +39,7 @@ import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.
 public class ChecksumDBMigrator extends DatabaseMigrator {
     private static final Logger log = LoggerFactory.getLogger(DatabaseUtils.class);
     private final Settings settings;
-    private final Integer currentVersion = 4;
+    private final Integer currentVersion = 5;
     /**
      * The name of the update script for version 2 to 3.
      */
@@ -48,6 +48,10 @@ public class ChecksumDBMigrator extends DatabaseMigrator {
      * The name of the update script for version 3 to 4.
      */
     private static final String UPDATE_SCRIPT_VERSION_3_TO_4 = "sql/derby/checksumDB3to4Migration.sql";
+    /**
+     * The name of the update script for version 4 to 5.
+     */
+    private static final String UPDATE_SCRIPT_VERSION_4_TO_5 = "sql/derby/checksumDB4to5Migration.sql";
 
     /**
      * @param connector The connection to the database.
@@ -78,6 +82,10 @@ public class ChecksumDBMigrator extends DatabaseMigrator {
             log.warn("Migrating ChecksumDB from version 3 to 4.");
             migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_3_TO_4);
         }
+        if (!versions.containsKey(CHECKSUM_TABLE) || versions.get(CHECKSUM_TABLE) < 5) {
+            log.warn("Migrating ChecksumDB from version 4 to 5.");
+            migrateDerbyDatabase(UPDATE_SCRIPT_VERSION_4_TO_5);
+        }
     }
 
     /**
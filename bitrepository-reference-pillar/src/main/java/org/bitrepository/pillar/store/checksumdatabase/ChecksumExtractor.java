@@ -21,6 +21,8 @@
  */
 package org.bitrepository.pillar.store.checksumdatabase;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.service.database.DBConnector;
@@ -33,9 +35,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CHECKSUM_TABLE;
 import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.CS_CHECKSUM;
@@ -49,6 +56,8 @@ import static org.bitrepository.pillar.store.checksumdatabase.DatabaseConstants.
 public class ChecksumExtractor {
     private final Logger log = LoggerFactory.getLogger(getClass());
     protected static final int DEFAULT_FETCH_SIZE = 100;
+    /** The number of entries read from the database at a time by the cursors. */
+    protected static final int DEFAULT_PAGE_SIZE = 1000;
     private final DBConnector connector;
 
     /**
@@ -117,6 +126,21 @@ public class ChecksumExtractor {
      * @return The checksum entry for the file.
      */
     public ChecksumEntry extractSingleEntry(String fileID, String collectionID) {
+        ChecksumEntry res = findSingleEntry(fileID, collectionID);
+        if (res == null) {
+            throw new IllegalStateException("No entry for the file '" + fileID + "'.");
+        }
+        return res;
+    }
+
+    /**
+     * Extracts the checksum entry for a single file, if it exists.
+     *
+     * @param fileID       The id of the file whose checksum entry should be extracted.
+     * @param collectionID The collection id for the extraction.
+     * @return The checksum entry for the file, or null if there is no entry for the file.
+     */
+    public ChecksumEntry findSingleEntry(String fileID, String collectionID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
 
         String sql = "SELECT " + CS_FILE_ID + " , " + CS_CHECKSUM + " , " + CS_DATE + " FROM " + CHECKSUM_TABLE
@@ -125,7 +149,7 @@ public class ChecksumExtractor {
              PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql, fileID, collectionID)) {
             try (ResultSet res = ps.executeQuery()) {
                 if (!res.next()) {
-                    throw new IllegalStateException("No entry for the file '" + fileID + "'.");
+                    return null;
                 }
                 return extractChecksumEntry(res);
             }
@@ -192,54 +216,64 @@ public class ChecksumExtractor {
      */
     public ExtractedFileIDsResultSet getFileIDs(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
                                                 Long maxNumberOfResults, String fileID, String collectionID) {
-        List<Object> args = new ArrayList<>();
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT " + CS_FILE_ID + " , " + CS_DATE + " FROM " + CHECKSUM_TABLE + " WHERE "
-                + CS_COLLECTION_ID + " = ?");
-        args.add(collectionID);
-
-        if (minTimeStamp != null) {
-            sql.append(" AND " + CS_DATE + " >= ? ");
-            args.add(CalendarUtils.convertFromXMLGregorianCalendar(minTimeStamp).getTime());
-        }
-        if (maxTimeStamp != null) {
-            sql.append(" AND " + CS_DATE + " <= ? ");
-            args.add(CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime());
-        }
-        if (fileID != null) {
-            sql.append(" AND " + CS_FILE_ID + " = ? ");
-            args.add(fileID);
-        }
-        sql.append(" ORDER BY " + CS_DATE + " ASC ");
-
         ExtractedFileIDsResultSet results = new ExtractedFileIDsResultSet();
-        try (Connection conn = connector.getConnection();
-             PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql.toString(), args.toArray())) {
-            conn.setAutoCommit(false);
-            ps.setFetchSize(DEFAULT_FETCH_SIZE);
-            try (ResultSet res = ps.executeQuery()) {
-                int i = 0;
-                while (res.next() && (maxNumberOfResults == null || i < maxNumberOfResults)) {
-                    results.insertFileID(res.getString(DatabaseConstants.CS_FILE_ID),
-                            new Date(res.getLong(DatabaseConstants.CS_DATE)));
-                    i++;
-                }
-
-                if (maxNumberOfResults != null && i >= maxNumberOfResults) {
-                    results.reportMoreEntriesFound();
-                }
-            } finally {
-                conn.setAutoCommit(true);
+        try (ExtractionCursor<FileIDsDataItem> cursor = getFileIDsCursor(minTimeStamp, maxTimeStamp,
+                maxNumberOfResults, fileID, collectionID)) {
+            while (cursor.hasNext()) {
+                results.insertFileIDsDataItem(cursor.next());
+            }
+            if (cursor.hasMoreEntries()) {
+                results.reportMoreEntriesFound();
             }
-        } catch (SQLException e) {
-            throw new IllegalStateException("Cannot extract the file ids with the arguments, minTimestamp = '"
-                    + minTimeStamp + "', maxTimestamp = '" + maxTimeStamp + "', maxNumberOfResults = '"
-                    + maxNumberOfResults + "'", e);
         }
-
         return results;
     }
 
+    /**
+     * Opens a cursor over the file ids within the given optional limitations. The file ids are read from the
+     * database while the cursor is traversed, so they are never all held in memory.
+     *
+     * @param minTimeStamp       The minimum date for the timestamp of the extracted file ids.
+     * @param maxTimeStamp       The maximum date for the timestamp of the extracted file ids.
+     * @param fileID             The ID of the file to retrieve. Null if all file-ids.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID       The collection id for the extraction.
+     * @return The cursor over the requested file ids. Must be closed after use.
+     */
+    public ExtractionCursor<FileIDsDataItem> getFileIDsCursor(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String fileID, String collectionID) {
+        XMLGregorianCalendar snapshotMaxTimeStamp = getSnapshotMaxTimeStamp(maxTimeStamp, collectionID);
+        if (snapshotMaxTimeStamp == null) {
+            return new PagedCursor<>(maxNumberOfResults, (after, pageSize, consumer) -> null);
+        }
+        return new PagedCursor<>(maxNumberOfResults, (after, pageSize, consumer) -> getFileIDsPage(minTimeStamp,
+                snapshotMaxTimeStamp, fileID, after, pageSize, collectionID, consumer),
+                () -> hasEntriesAfterSnapshot(snapshotMaxTimeStamp, maxTimeStamp, fileID, collectionID));
+    }
+
+    /**
+     * Extracts a page of file ids within the given optional limitations, ordered by their calculation date and then
+     * by their file id. The file ids are given to the consumer as they are read from the database.
+     * The page is found through the index on the collection, calculation date and file id, so only the entries of
+     * the page are read, no matter how far into the extraction it is.
+     *
+     * @param minTimeStamp The minimum date for the timestamp of the extracted file ids.
+     * @param maxTimeStamp The maximum date for the timestamp of the extracted file ids.
+     * @param fileID       The ID of the file to retrieve. Null if all file-ids.
+     * @param after        The position of the last entry of the previous page. Null for the first page.
+     * @param pageSize     The maximum number of file ids in the page.
+     * @param collectionID The collection id for the extraction.
+     * @param consumer     The consumer of the file ids.
+     * @return The position of the last file id in the page, or null if the page is empty.
+     */
+    public ExtractionPosition getFileIDsPage(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
+            String fileID, ExtractionPosition after, int pageSize, String collectionID,
+            Consumer<? super FileIDsDataItem> consumer) {
+        return extractPage(CS_FILE_ID + " , " + CS_DATE, minTimeStamp, maxTimeStamp, fileID, after, pageSize,
+                collectionID, res -> ExtractedFileIDsResultSet.createFileIDsDataItem(res.getString(CS_FILE_ID), null,
+                        CalendarUtils.getFromMillis(res.getLong(CS_DATE))), consumer);
+    }
+
     /**
      * Retrieves all the file ids for a given collection id within the database.
      *
@@ -263,10 +297,141 @@ public class ChecksumExtractor {
      */
     public ExtractedChecksumResultSet extractEntries(XMLGregorianCalendar minTimeStamp,
                                                      XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        ExtractedChecksumResultSet results = new ExtractedChecksumResultSet();
+        try (ExtractionCursor<ChecksumDataForChecksumSpecTYPE> cursor = extractEntriesCursor(minTimeStamp,
+                maxTimeStamp, maxNumberOfResults, collectionID)) {
+            while (cursor.hasNext()) {
+                results.insertChecksumEntry(cursor.next());
+            }
+            if (cursor.hasMoreEntries()) {
+                results.reportMoreEntriesFound();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Opens a cursor over the checksum entries within the given optional limitations. The entries are read from the
+     * database while the cursor is traversed, so they are never all held in memory.
+     *
+     * @param minTimeStamp       The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimeStamp       The maximum date for the timestamp of the extracted checksum entries.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID       The collection id for the extraction.
+     * @return The cursor over the requested checksum entries. Must be closed after use.
+     */
+    public ExtractionCursor<ChecksumDataForChecksumSpecTYPE> extractEntriesCursor(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String collectionID) {
+        XMLGregorianCalendar snapshotMaxTimeStamp = getSnapshotMaxTimeStamp(maxTimeStamp, collectionID);
+        if (snapshotMaxTimeStamp == null) {
+            return new PagedCursor<ChecksumEntry>(maxNumberOfResults, (after, pageSize, consumer) -> null)
+                    .map(ExtractedChecksumResultSet::createChecksumData);
+        }
+        return new PagedCursor<ChecksumEntry>(maxNumberOfResults, (after, pageSize, consumer) -> extractEntriesPage(
+                minTimeStamp, snapshotMaxTimeStamp, after, pageSize, collectionID, consumer),
+                () -> hasEntriesAfterSnapshot(snapshotMaxTimeStamp, maxTimeStamp, null, collectionID))
+                .map(ExtractedChecksumResultSet::createChecksumData);
+    }
+
+    /**
+     * Finds the upper limit of the calculation dates for a cursor, as the latest calculation date in the collection
+     * when the cursor is opened. The pages of the cursor are read in separate queries, so a checksum recalculated
+     * while the cursor is traversed would otherwise be moved past the position of the cursor, and be delivered
+     * twice. Recalculated entries are instead left out of the cursor, since their new calculation date is after the
+     * extraction began, and the cursor reports more entries, see
+     * {@link #hasEntriesAfterSnapshot(XMLGregorianCalendar, XMLGregorianCalendar, String, String)}.
+     *
+     * @param maxTimeStamp The requested maximum date for the calculation date. Null for no upper limit.
+     * @param collectionID The collection id for the extraction.
+     * @return The upper limit for the calculation dates of the cursor, or null if there are no entries.
+     */
+    private XMLGregorianCalendar getSnapshotMaxTimeStamp(XMLGregorianCalendar maxTimeStamp, String collectionID) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        String sql = "SELECT MAX(" + CS_DATE + ") FROM " + CHECKSUM_TABLE + " WHERE " + CS_COLLECTION_ID + " = ?";
+        Long latestDate;
+        if (maxTimeStamp == null) {
+            latestDate = DatabaseUtils.selectFirstLongValue(connector, sql, collectionID);
+        } else {
+            latestDate = DatabaseUtils.selectFirstLongValue(connector, sql + " AND " + CS_DATE + " <= ?",
+                    collectionID, CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime());
+        }
+        return latestDate == null ? null : CalendarUtils.getFromMillis(latestDate);
+    }
+
+    /**
+     * Tells whether entries within the requested limitations have been calculated after the upper limit of a
+     * cursor. These are entries recalculated or added while the cursor was traversed, which may not have been
+     * delivered by the cursor, so the requester must be told to ask for the entries after those it received.
+     *
+     * @param snapshotMaxTimeStamp The upper limit for the calculation dates of the cursor.
+     * @param maxTimeStamp         The requested maximum date for the calculation date. Null for no upper limit.
+     * @param fileID               The id of the file of the extraction. Null for all files.
+     * @param collectionID         The collection id for the extraction.
+     * @return Whether any entry has a calculation date after the upper limit of the cursor.
+     */
+    private boolean hasEntriesAfterSnapshot(XMLGregorianCalendar snapshotMaxTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, String fileID, String collectionID) {
         List<Object> args = new ArrayList<>();
         StringBuilder sql = new StringBuilder();
-        sql.append("SELECT " + CS_FILE_ID + " , " + CS_CHECKSUM + " , " + CS_DATE + " FROM " + CHECKSUM_TABLE
-                + " WHERE " + CS_COLLECTION_ID + " = ?");
+        sql.append("SELECT MIN(" + CS_DATE + ") FROM " + CHECKSUM_TABLE + " WHERE " + CS_COLLECTION_ID + " = ?"
+                + " AND " + CS_DATE + " > ?");
+        args.add(collectionID);
+        args.add(CalendarUtils.convertFromXMLGregorianCalendar(snapshotMaxTimeStamp).getTime());
+        if (maxTimeStamp != null) {
+            sql.append(" AND " + CS_DATE + " <= ?");
+            args.add(CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime());
+        }
+        if (fileID != null) {
+            sql.append(" AND " + CS_FILE_ID + " = ?");
+            args.add(fileID);
+        }
+        return DatabaseUtils.selectFirstLongValue(connector, sql.toString(), args.toArray()) != null;
+    }
+
+    /**
+     * Extracts a page of checksum entries within the given optional limitations, ordered by their calculation date
+     * and then by their file id. The entries are given to the consumer as they are read from the database.
+     * The page is found through the index on the collection, calculation date and file id, so only the entries of
+     * the page are read, no matter how far into the extraction it is.
+     *
+     * @param minTimeStamp The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimeStamp The maximum date for the timestamp of the extracted checksum entries.
+     * @param after        The position of the last entry of the previous page. Null for the first page.
+     * @param pageSize     The maximum number of entries in the page.
+     * @param collectionID The collection id for the extraction.
+     * @param consumer     The consumer of the checksum entries.
+     * @return The position of the last entry in the page, or null if the page is empty.
+     */
+    public ExtractionPosition extractEntriesPage(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
+            ExtractionPosition after, int pageSize, String collectionID, Consumer<? super ChecksumEntry> consumer) {
+        return extractPage(CS_FILE_ID + " , " + CS_CHECKSUM + " , " + CS_DATE, minTimeStamp, maxTimeStamp, null,
+                after, pageSize, collectionID, this::extractChecksumEntry, consumer);
+    }
+
+    /**
+     * Extracts a page of entries ordered by their calculation date and then by their file id, starting after the
+     * given position.
+     *
+     * @param columns      The columns to select. Must include the file id and the calculation date.
+     * @param minTimeStamp The minimum date for the calculation date of the entries. Null for no lower limit.
+     * @param maxTimeStamp The maximum date for the calculation date of the entries. Null for no upper limit.
+     * @param fileID       The id of the file to extract. Null for all files.
+     * @param after        The position of the last entry of the previous page. Null for the first page.
+     * @param pageSize     The maximum number of entries in the page.
+     * @param collectionID The collection id for the extraction.
+     * @param mapper       Maps the rows to the entries.
+     * @param consumer     The consumer of the entries.
+     * @param <T>          The type of the entries.
+     * @return The position of the last entry in the page, or null if the page is empty.
+     */
+    private <T> ExtractionPosition extractPage(String columns, XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, String fileID, ExtractionPosition after, int pageSize,
+            String collectionID, RowMapper<T> mapper, Consumer<? super T> consumer) {
+        ArgumentValidator.checkNotNullOrEmpty(collectionID, "String collectionID");
+        ArgumentValidator.checkPositive(pageSize, "int pageSize");
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT " + columns + " FROM " + CHECKSUM_TABLE + " WHERE " + CS_COLLECTION_ID + " = ?");
         args.add(collectionID);
 
         if (minTimeStamp != null) {
@@ -277,33 +442,36 @@ public class ChecksumExtractor {
             sql.append(" AND " + CS_DATE + " <= ? ");
             args.add(CalendarUtils.convertFromXMLGregorianCalendar(maxTimeStamp).getTime());
         }
-        sql.append(" ORDER BY " + CS_DATE + " ASC ");
+        if (fileID != null) {
+            sql.append(" AND " + CS_FILE_ID + " = ? ");
+            args.add(fileID);
+        }
+        if (after != null) {
+            sql.append(" AND ( " + CS_DATE + " > ? OR ( " + CS_DATE + " = ? AND " + CS_FILE_ID + " > ? ) ) ");
+            args.add(after.getCalculationDate());
+            args.add(after.getCalculationDate());
+            args.add(after.getFileID());
+        }
+        // FETCH FIRST is supported by both Derby and PostgreSQL.
+        sql.append(" ORDER BY " + CS_DATE + " ASC , " + CS_FILE_ID + " ASC FETCH FIRST ? ROWS ONLY");
+        args.add(pageSize);
 
-        ExtractedChecksumResultSet results = new ExtractedChecksumResultSet();
+        ExtractionPosition last = null;
         try (Connection conn = connector.getConnection();
              PreparedStatement ps = DatabaseUtils.createPreparedStatement(conn, sql.toString(), args.toArray())) {
-            conn.setAutoCommit(false);
-            ps.setFetchSize(DEFAULT_FETCH_SIZE);
+            ps.setFetchSize(Math.min(pageSize, DEFAULT_FETCH_SIZE));
             try (ResultSet res = ps.executeQuery()) {
-                int i = 0;
-                while (res.next() && (maxNumberOfResults == null || i < maxNumberOfResults)) {
-                    results.insertChecksumEntry(extractChecksumEntry(res));
-                    i++;
-                }
-
-                if (maxNumberOfResults != null && i >= maxNumberOfResults) {
-                    results.reportMoreEntriesFound();
+                while (res.next()) {
+                    consumer.accept(mapper.map(res));
+                    last = new ExtractionPosition(res.getLong(CS_DATE), res.getString(CS_FILE_ID));
                 }
-            } finally {
-                conn.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            throw new IllegalStateException("Cannot extract the checksum entries with the arguments, minTimestamp = '"
-                    + minTimeStamp + "', maxTimestamp = '" + maxTimeStamp + "', maxNumberOfResults = '"
-                    + maxNumberOfResults + "'", e);
+            throw new IllegalStateException("Cannot extract the entries with the arguments, minTimestamp = '"
+                    + minTimeStamp + "', maxTimestamp = '" + maxTimeStamp + "', after = '" + after
+                    + "', pageSize = '" + pageSize + "'", e);
         }
-
-        return results;
+        return last;
     }
 
     /**
@@ -360,4 +528,120 @@ public class ChecksumExtractor {
         Date date = new Date(resSet.getLong(DatabaseConstants.CS_DATE));
         return new ChecksumEntry(fileID, checksum, date);
     }
+
+    /**
+     * Maps the current row of a result set to an entry.
+     *
+     * @param <T> The type of the entry.
+     */
+    private interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Extracts a page of entries.
+     *
+     * @param <T> The type of the entries.
+     */
+    private interface PageExtractor<T> {
+        /**
+         * @param after    The position of the last entry of the previous page. Null for the first page.
+         * @param pageSize The maximum number of entries in the page.
+         * @param consumer The consumer of the entries.
+         * @return The position of the last entry in the page, or null if the page is empty.
+         */
+        ExtractionPosition extract(ExtractionPosition after, int pageSize, Consumer<? super T> consumer);
+    }
+
+    /**
+     * Cursor over the entries of an extraction, which are read from the database a page of
+     * {@link #DEFAULT_PAGE_SIZE} entries at a time while the cursor is traversed. Each page is read in its own query
+     * continuing from the position of the previous page, so no database connection is held between the pages.
+     * The extractor must limit the calculation dates to those at the time the cursor was opened, see
+     * {@link #getSnapshotMaxTimeStamp(XMLGregorianCalendar, String)}. When the pages are exhausted, the cursor
+     * reports more entries if entries have been calculated after that time.
+     *
+     * @param <T> The type of the entries.
+     */
+    private static class PagedCursor<T> implements ExtractionCursor<T> {
+        private final Long maxNumberOfResults;
+        private final PageExtractor<T> extractor;
+        private final BooleanSupplier laterEntries;
+        private final Deque<T> page = new ArrayDeque<>();
+        private ExtractionPosition position = null;
+        private long count = 0;
+        private boolean exhausted = false;
+        private boolean moreEntries = false;
+
+        PagedCursor(Long maxNumberOfResults, PageExtractor<T> extractor) {
+            this(maxNumberOfResults, extractor, () -> false);
+        }
+
+        /**
+         * @param maxNumberOfResults The maximum number of results. Null for no limit.
+         * @param extractor          Extracts the pages.
+         * @param laterEntries       Tells whether entries have been calculated after the cursor was opened.
+         */
+        PagedCursor(Long maxNumberOfResults, PageExtractor<T> extractor, BooleanSupplier laterEntries) {
+            this.maxNumberOfResults = maxNumberOfResults;
+            this.extractor = extractor;
+            this.laterEntries = laterEntries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (page.isEmpty() && !exhausted) {
+                readPage();
+            }
+            return !page.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more entries.");
+            }
+            count++;
+            return page.poll();
+        }
+
+        @Override
+        public boolean hasMoreEntries() {
+            return moreEntries;
+        }
+
+        @Override
+        public void close() {
+            page.clear();
+            exhausted = true;
+        }
+
+        /**
+         * Reads the next page. When the maximum number of results is within the page, an extra entry is requested to
+         * find out whether there are more entries than the maximum. When the last page has been read, the entries
+         * calculated after the cursor was opened are looked for.
+         */
+        private void readPage() {
+            int pageSize = DEFAULT_PAGE_SIZE;
+            if (maxNumberOfResults != null && maxNumberOfResults - count < DEFAULT_PAGE_SIZE) {
+                pageSize = (int) (maxNumberOfResults - count) + 1;
+            }
+            List<T> entries = new ArrayList<>(pageSize);
+            ExtractionPosition last = extractor.extract(position, pageSize, entries::add);
+            if (last != null) {
+                position = last;
+            }
+            if (entries.size() < pageSize) {
+                exhausted = true;
+            }
+            if (maxNumberOfResults != null && count + entries.size() > maxNumberOfResults) {
+                entries.remove(entries.size() - 1);
+                moreEntries = true;
+                exhausted = true;
+            } else if (exhausted) {
+                moreEntries = laterEntries.getAsBoolean();
+            }
+            page.addAll(entries);
+        }
+    }
 }
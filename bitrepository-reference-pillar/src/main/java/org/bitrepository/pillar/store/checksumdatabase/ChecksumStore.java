@@ -21,6 +21,9 @@
  */
 package org.bitrepository.pillar.store.checksumdatabase;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
+
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.time.Instant;
 import java.util.Collection;
@@ -56,6 +59,18 @@ public interface ChecksumStore {
      */
     ChecksumEntry getEntry(String fileID, String collectionID);
 
+    /**
+     * Retrieves the entry for the file, if it exists. Unlike {@link #hasFile(String, String)} followed by
+     * {@link #getEntry(String, String)}, this only needs a single lookup.
+     *
+     * @param fileID       The id of the file.
+     * @param collectionID The id of the collection for the file.
+     * @return The entry with the checksum information about the file, or null if there is no entry for the file.
+     */
+    default ChecksumEntry findEntry(String fileID, String collectionID) {
+        return hasFile(fileID, collectionID) ? getEntry(fileID, collectionID) : null;
+    }
+
     /**
      * Retrieves the checksum result entries for the given restrictions from the store.
      *
@@ -68,6 +83,24 @@ public interface ChecksumStore {
     ExtractedChecksumResultSet getChecksumResults(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
                                                   Long maxNumberOfResults, String collectionID);
 
+    /**
+     * Opens a cursor over the checksum result entries for the given restrictions from the store.
+     * Stores which cannot deliver the entries incrementally extract them all before the cursor is returned.
+     *
+     * @param minTimeStamp       The minimum date for the timestamp of the extracted checksum entries.
+     * @param maxTimeStamp       The maximum date for the timestamp of the extracted checksum entries.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param collectionID       The id of the collection for the files.
+     * @return The cursor over the checksum entries from the store. Must be closed after use.
+     */
+    default ExtractionCursor<ChecksumDataForChecksumSpecTYPE> getChecksumResultsCursor(
+            XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults,
+            String collectionID) {
+        ExtractedChecksumResultSet results = getChecksumResults(minTimeStamp, maxTimeStamp, maxNumberOfResults,
+                collectionID);
+        return ExtractionCursor.of(results.getEntries(), results.hasMoreEntries());
+    }
+
     /**
      * Retrieves the checksum result entry for the given file from the store.
      *
@@ -103,6 +136,25 @@ public interface ChecksumStore {
     ExtractedFileIDsResultSet getFileIDs(XMLGregorianCalendar minTimeStamp, XMLGregorianCalendar maxTimeStamp,
                                          Long maxNumberOfResults, String fileID, String collectionID);
 
+    /**
+     * Opens a cursor over the file ids within the given restrictions.
+     * Stores which cannot deliver the file ids incrementally extract them all before the cursor is returned.
+     *
+     * @param minTimeStamp       The minimum date for the timestamp of the extracted file ids.
+     * @param maxTimeStamp       The maximum date for the timestamp of the extracted file ids.
+     * @param maxNumberOfResults The maximum number of results.
+     * @param fileID             The id of the file. If null or empty string, then all files.
+     * @param collectionID       The id of the collection for the file.
+     * @return The cursor over the file ids in the store within the restrictions. Must be closed after use.
+     */
+    default ExtractionCursor<FileIDsDataItem> getFileIDsCursor(XMLGregorianCalendar minTimeStamp,
+            XMLGregorianCalendar maxTimeStamp, Long maxNumberOfResults, String fileID, String collectionID) {
+        ExtractedFileIDsResultSet results = getFileIDs(minTimeStamp, maxTimeStamp, maxNumberOfResults, fileID,
+                collectionID);
+        return ExtractionCursor.of(results.getEntries().getFileIDsDataItems().getFileIDsDataItem(),
+                results.hasMoreEntries());
+    }
+
     /**
      * Retrieval of all the file ids in the store.
      *
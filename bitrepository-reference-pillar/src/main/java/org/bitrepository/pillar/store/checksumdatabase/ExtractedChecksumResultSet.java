@@ -59,6 +59,16 @@ public class ExtractedChecksumResultSet {
      * @param entry The entry to add.
      */
     public void insertChecksumEntry(ChecksumEntry entry) {
+        entries.add(createChecksumData(entry));
+    }
+
+    /**
+     * Converts a checksum entry into the format of the results.
+     *
+     * @param entry The entry to convert.
+     * @return The checksum data for the entry.
+     */
+    public static ChecksumDataForChecksumSpecTYPE createChecksumData(ChecksumEntry entry) {
         ChecksumDataForChecksumSpecTYPE res = new ChecksumDataForChecksumSpecTYPE();
         res.setCalculationTimestamp(CalendarUtils.getXmlGregorianCalendar(entry.getCalculationDate()));
         try {
@@ -68,7 +78,7 @@ public class ExtractedChecksumResultSet {
         }
 
         res.setFileID(entry.getFileId());
-        entries.add(res);
+        return res;
     }
 
     /**
@@ -50,8 +50,7 @@ public class ExtractedFileIDsResultSet {
      * @param fileInfo The file-info for the file to insert.
      */
     public void insertFileInfo(FileInfo fileInfo) {
-        insertFileID(fileInfo.getFileID(), BigInteger.valueOf(fileInfo.getSize()),
-                CalendarUtils.getFromMillis(fileInfo.getLastModifiedDate()));
+        insertFileIDsDataItem(createFileIDsDataItem(fileInfo));
     }
 
     /**
@@ -73,11 +72,44 @@ public class ExtractedFileIDsResultSet {
      * @param lastModified The last modified date for the file.
      */
     public void insertFileID(String fileID, BigInteger size, XMLGregorianCalendar lastModified) {
+        results.getFileIDsDataItems().getFileIDsDataItem().add(createFileIDsDataItem(fileID, size, lastModified));
+    }
+
+    /**
+     * Adds an already created file id item to this result set.
+     *
+     * @param item The item to add.
+     */
+    public void insertFileIDsDataItem(FileIDsDataItem item) {
+        results.getFileIDsDataItems().getFileIDsDataItem().add(item);
+    }
+
+    /**
+     * Creates the result item for a file.
+     *
+     * @param fileInfo The file-info for the file.
+     * @return The item for the file.
+     */
+    public static FileIDsDataItem createFileIDsDataItem(FileInfo fileInfo) {
+        return createFileIDsDataItem(fileInfo.getFileID(), BigInteger.valueOf(fileInfo.getSize()),
+                CalendarUtils.getFromMillis(fileInfo.getLastModifiedDate()));
+    }
+
+    /**
+     * Creates the result item for a file.
+     *
+     * @param fileID       The id of the file.
+     * @param size         The size of the file. Null, if the size is unknown.
+     * @param lastModified The last modified date for the file.
+     * @return The item for the file.
+     */
+    public static FileIDsDataItem createFileIDsDataItem(String fileID, BigInteger size,
+                                                        XMLGregorianCalendar lastModified) {
         FileIDsDataItem item = new FileIDsDataItem();
         item.setFileID(fileID);
         item.setFileSize(size);
         item.setLastModificationTime(lastModified);
-        results.getFileIDsDataItems().getFileIDsDataItem().add(item);
+        return item;
     }
 
     /**
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.checksumdatabase;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * Cursor over the results of an extraction, which delivers the entries one at a time instead of collecting them all
+ * in memory first. The cursor may hold on to database resources, and must therefore always be closed.
+ *
+ * @param <T> The type of the extracted entries.
+ */
+public interface ExtractionCursor<T> extends Iterator<T>, AutoCloseable {
+    /**
+     * @return Whether more entries than the requested maximum number of results exists. This is only known, when
+     * all the entries of the cursor has been read.
+     */
+    boolean hasMoreEntries();
+
+    @Override
+    void close();
+
+    /**
+     * Creates a cursor, which converts the entries of this cursor while it is traversed.
+     * Closing the new cursor closes this cursor.
+     *
+     * @param <R>    The type of the converted entries.
+     * @param mapper The conversion of the entries.
+     * @return The cursor over the converted entries.
+     */
+    default <R> ExtractionCursor<R> map(Function<? super T, ? extends R> mapper) {
+        ExtractionCursor<T> source = this;
+        return new ExtractionCursor<R>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public R next() {
+                return mapper.apply(source.next());
+            }
+
+            @Override
+            public boolean hasMoreEntries() {
+                return source.hasMoreEntries();
+            }
+
+            @Override
+            public void close() {
+                source.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a cursor over entries, which have already been extracted.
+     *
+     * @param <T>         The type of the entries.
+     * @param entries     The extracted entries.
+     * @param moreEntries Whether more entries than the extracted exists.
+     * @return The cursor over the entries.
+     */
+    static <T> ExtractionCursor<T> of(Collection<T> entries, boolean moreEntries) {
+        Iterator<T> iterator = entries.iterator();
+        return new ExtractionCursor<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public boolean hasMoreEntries() {
+                return moreEntries;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
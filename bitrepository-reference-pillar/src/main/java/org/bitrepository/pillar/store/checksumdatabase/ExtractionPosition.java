@@ -0,0 +1,62 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.checksumdatabase;
+
+import org.bitrepository.common.ArgumentValidator;
+
+/**
+ * The position of an entry in the order of the extractions from the checksum database: by calculation date, and then
+ * by file id. Used for continuing an extraction after the entry, without reading the entries before it again.
+ */
+public final class ExtractionPosition {
+    private final long calculationDate;
+    private final String fileID;
+
+    /**
+     * @param calculationDate The calculation date of the entry in milliseconds since epoch.
+     * @param fileID          The id of the file of the entry.
+     */
+    public ExtractionPosition(long calculationDate, String fileID) {
+        ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+        this.calculationDate = calculationDate;
+        this.fileID = fileID;
+    }
+
+    /**
+     * @return The calculation date of the entry in milliseconds since epoch.
+     */
+    public long getCalculationDate() {
+        return calculationDate;
+    }
+
+    /**
+     * @return The id of the file of the entry.
+     */
+    public String getFileID() {
+        return fileID;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + calculationDate + ", " + fileID + "]";
+    }
+}
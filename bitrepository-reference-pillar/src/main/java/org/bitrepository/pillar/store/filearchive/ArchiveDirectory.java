@@ -23,22 +23,30 @@ package org.bitrepository.pillar.store.filearchive;
 
 import org.bitrepository.common.ArgumentValidator;
 import org.bitrepository.common.utils.FileUtils;
+import org.bitrepository.settings.referencesettings.ArchiveLayout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
- * Manager interface for a given archival directory, with the subdirectories 'tempDir', 'fileDir', 'folderDir'
- * and 'retainDir'.
+ * Manager interface for a given archival directory, with the subdirectories 'tempDir', 'fileDir', 'shardDir',
+ * 'folderDir' and 'retainDir'.
  * A new file is ingested into the 'tempDir', where it can be validated before it is moved to the actual archive.
  * Depending on whether the file-id contains a directory-structure path, then it is either moved to the 'fileDir'
  * or the 'folderDir'.
  * If a file is to be deleted, then it is moved from the 'fileDir' or 'folderDir' to the 'retainDir'.
+ * <p/>
+ * With the sharded layout the files are instead placed in two levels of sub directories of the 'shardDir' named by
+ * a hash of the file id, e.g. 'shardDir/3f/a2/fileID'. The shards are kept out of the 'fileDir', so they can't clash
+ * with a file in the flat layout named like a shard, e.g. 'ab'. Files are found in both layouts, so an archive can be
+ * moved to another layout file by file while it is in use.
  */
 public class ArchiveDirectory {
     private static final Logger log = LoggerFactory.getLogger(ArchiveDirectory.class);
@@ -50,6 +58,10 @@ public class ArchiveDirectory {
      * Constant for the file archive name.
      */
     public static final String ARCHIVE_DIR = "fileDir";
+    /**
+     * Constant for the directory name of the files in the sharded layout.
+     */
+    public static final String SHARD_DIR = "shardDir";
     /**
      * Constant for the "retain" directory name.
      */
@@ -58,6 +70,14 @@ public class ArchiveDirectory {
      * The constant for the folder directory name.
      */
     public static final String FOLDER_DIR = "folderDir";
+    /**
+     * Constant for the suffix of the files in the temporary directory, which are still being written.
+     */
+    public static final String PARTIAL_FILE_SUFFIX = ".part";
+    /**
+     * The number of sub directory levels of the sharded layout.
+     */
+    private static final int SHARD_LEVELS = 2;
 
     /**
      * The directory for the files. Contains three subdirectories: tempDir, fileDir and retainDir.
@@ -72,6 +92,10 @@ public class ArchiveDirectory {
      * The directory where the files are being stored.
      */
     private final File fileDir;
+    /**
+     * The directory where the files are being stored in the sharded layout.
+     */
+    private final File shardDir;
     /**
      * The directory where the files are moved, when they are removed from the archive.
      */
@@ -80,21 +104,39 @@ public class ArchiveDirectory {
      * The directory where the files where the file-id contains a directory-path are stored.
      */
     private final File folderDir;
+    /**
+     * The layout for the files in the fileDir.
+     */
+    private final ArchiveLayout layout;
 
     /**
-     * Constructor. Initialises the file directory.
+     * Constructor. Initialises the file directory with the flat layout.
      *
      * @param dirName The directory for this archive.
      */
     public ArchiveDirectory(String dirName) {
+        this(dirName, ArchiveLayout.FLAT);
+    }
+
+    /**
+     * Constructor. Initialises the file directory.
+     *
+     * @param dirName The directory for this archive.
+     * @param layout  The layout for the files in the fileDir.
+     */
+    public ArchiveDirectory(String dirName, ArchiveLayout layout) {
         ArgumentValidator.checkNotNullOrEmpty(dirName, "String dirName");
+        ArgumentValidator.checkNotNull(layout, "ArchiveLayout layout");
+        this.layout = layout;
 
         // Instantiate the directories for this archive.
         baseDepositDir = FileUtils.retrieveDirectory(dirName);
         tmpDir = FileUtils.retrieveSubDirectory(baseDepositDir, TEMPORARY_DIR);
         fileDir = FileUtils.retrieveSubDirectory(baseDepositDir, ARCHIVE_DIR);
+        shardDir = FileUtils.retrieveSubDirectory(baseDepositDir, SHARD_DIR);
         retainDir = FileUtils.retrieveSubDirectory(baseDepositDir, RETAIN_DIR);
         folderDir = FileUtils.retrieveSubDirectory(baseDepositDir, FOLDER_DIR);
+        removePartialFiles(tmpDir);
     }
 
     /**
@@ -116,6 +158,7 @@ public class ArchiveDirectory {
 
     /**
      * Method for retrieving the abstract file for the given fileID, no matter whether the actual file exists or not.
+     * If the file only exists in the other layout, then the file in that layout is returned.
      *
      * @param fileID The id of the file to retrieve.
      * @return The file.
@@ -123,11 +166,56 @@ public class ArchiveDirectory {
     protected File getFile(String fileID) {
         if (isFolderFile(fileID)) {
             return new File(folderDir, fileID);
+        }
+        File res = getFileInLayout(fileID, layout);
+        if (!res.exists()) {
+            File fileInOtherLayout = getFileInLayout(fileID,
+                    layout == ArchiveLayout.FLAT ? ArchiveLayout.SHARDED : ArchiveLayout.FLAT);
+            if (fileInOtherLayout.exists()) {
+                return fileInOtherLayout;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param fileID The id of a file, which does not contain a directory path.
+     * @param layout The layout.
+     * @return The location of the file in the fileDir or shardDir with the given layout.
+     */
+    private File getFileInLayout(String fileID, ArchiveLayout layout) {
+        if (layout == ArchiveLayout.SHARDED) {
+            return new File(new File(shardDir, getShardPath(fileID)), fileID);
         } else {
             return new File(fileDir, fileID);
         }
     }
 
+    /**
+     * Finds the sub directory path for a file in the sharded layout. The path is part of the format of the archive
+     * on disk, so the hash must never be changed.
+     *
+     * @param fileID The id of the file.
+     * @return The path of the sub directories for the file, e.g. '3f/a2'.
+     */
+    static String getShardPath(String fileID) {
+        // Mix the bits of the hash code, so similar file ids are spread over the sub directories.
+        int hash = fileID.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        StringBuilder res = new StringBuilder();
+        for (int level = 0; level < SHARD_LEVELS; level++) {
+            if (level > 0) {
+                res.append(File.separator);
+            }
+            res.append(String.format("%02x", (hash >>> (8 * level)) & 0xff));
+        }
+        return res.toString();
+    }
+
     /**
      * Checks whether the fileID contains a directory-path, and thus should be placed in the folderDir.
      *
@@ -151,11 +239,95 @@ public class ArchiveDirectory {
      */
     public List<String> getFileIds() {
         List<String> res = new ArrayList<>();
-        res.addAll(Arrays.asList(Objects.requireNonNull(fileDir.list())));
+        res.addAll(getFlatFileIDs());
+        res.addAll(getShardedFileIDs(shardDir, 0));
         res.addAll(getSubFolderFileIDs(folderDir, ""));
         return res;
     }
 
+    /**
+     * @return The layout for the files in the fileDir.
+     */
+    public ArchiveLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return The ids of the files in the fileDir or shardDir, which are not placed according to the layout of this
+     * directory.
+     */
+    public List<String> getFileIdsNotInLayout() {
+        if (layout == ArchiveLayout.SHARDED) {
+            return getFlatFileIDs();
+        } else {
+            return getShardedFileIDs(shardDir, 0);
+        }
+    }
+
+    /**
+     * Moves a file in the fileDir or shardDir to its location in the layout of this directory, if it is placed according to
+     * another layout.
+     *
+     * @param fileID The id of the file.
+     * @return Whether the file was moved.
+     */
+    public boolean moveToLayout(String fileID) {
+        if (isFolderFile(fileID)) {
+            return false;
+        }
+        File currentFile = getFile(fileID);
+        File layoutFile = getFileInLayout(fileID, layout);
+        if (!currentFile.isFile() || currentFile.equals(layoutFile)) {
+            return false;
+        }
+        // Synchronized like the move from the tmpDir, since both may create the sub directories.
+        synchronized (folderDir) {
+            FileUtils.moveFile(currentFile, layoutFile);
+        }
+        return true;
+    }
+
+    /**
+     * @return The ids of the files placed directly in the fileDir.
+     */
+    private List<String> getFlatFileIDs() {
+        List<String> res = new ArrayList<>();
+        for (File f : Objects.requireNonNull(fileDir.listFiles())) {
+            if (f.isFile()) {
+                res.add(f.getName());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Retrieves the ids of the files in the sub directories of the sharded layout.
+     *
+     * @param dir   The current directory.
+     * @param level The sub directory level of the current directory.
+     * @return The ids of the files in the sub directories of the current directory.
+     */
+    private List<String> getShardedFileIDs(File dir, int level) {
+        List<String> res = new ArrayList<>();
+        for (File f : Objects.requireNonNull(dir.listFiles())) {
+            if (f.isDirectory()) {
+                if (level < SHARD_LEVELS - 1) {
+                    res.addAll(getShardedFileIDs(f, level + 1));
+                } else {
+                    res.addAll(Arrays.asList(Objects.requireNonNull(f.list())));
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return The base directory of this archive directory.
+     */
+    public File getBaseDirectory() {
+        return baseDepositDir;
+    }
+
     /**
      * @return The number of bytes left for the base directory.
      */
@@ -192,6 +364,85 @@ public class ArchiveDirectory {
         return res;
     }
 
+    /**
+     * Creates a new uniquely named file in the temporary directory, for writing the content of the file with the
+     * given id. When written, the file must either be completed with {@link #completeFileInTempDir(File, String)},
+     * or removed with {@link #removePartialFile(File, String)}.
+     *
+     * @param fileID The id of the file to write.
+     * @return The new empty partial file.
+     * @throws IOException If the file cannot be created.
+     */
+    public File createPartialFileInTempDir(String fileID) throws IOException {
+        File target = new File(tmpDir, fileID);
+        if (target.exists()) {
+            throw new IllegalStateException("Cannot create a new file in the temporary directory.");
+        }
+        File res = new File(target.getParentFile(), target.getName() + "." + UUID.randomUUID() + PARTIAL_FILE_SUFFIX);
+        // The file is created while holding the tmpDir, so the cleanup after another file cannot remove its directory.
+        synchronized (tmpDir) {
+            FileUtils.retrieveDirectory(res.getParent());
+            if (!res.createNewFile()) {
+                throw new IllegalStateException("Could not create the partial file '" + res.getAbsolutePath() + "'.");
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Makes a written partial file available in the temporary directory under its file id.
+     *
+     * @param partialFile The partial file created by {@link #createPartialFileInTempDir(String)}.
+     * @param fileID      The id of the file.
+     * @return The file in the temporary directory.
+     */
+    public File completeFileInTempDir(File partialFile, String fileID) {
+        File res = new File(tmpDir, fileID);
+        if (res.exists()) {
+            throw new IllegalStateException("Cannot create a new file in the temporary directory.");
+        }
+        if (!partialFile.renameTo(res)) {
+            throw new IllegalStateException("Could not move the file '" + partialFile.getAbsolutePath()
+                    + "' to the location '" + res.getAbsolutePath() + "'");
+        }
+        return res;
+    }
+
+    /**
+     * Removes a partial file, e.g. after a failed download.
+     *
+     * @param partialFile The partial file created by {@link #createPartialFileInTempDir(String)}.
+     * @param fileID      The id of the file, which was written to the partial file.
+     */
+    public void removePartialFile(File partialFile, String fileID) {
+        if (partialFile.exists() && !partialFile.delete()) {
+            log.warn("Could not remove the partial file '{}'", partialFile.getAbsolutePath());
+        }
+        cleanupDirs(fileID, tmpDir);
+    }
+
+    /**
+     * Removes the partial files left in a directory by downloads, which were interrupted by a shutdown.
+     *
+     * @param dir The directory to clean.
+     */
+    private void removePartialFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                removePartialFiles(f);
+            } else if (f.getName().endsWith(PARTIAL_FILE_SUFFIX)) {
+                log.info("Removing the partial file '{}' from an interrupted download", f.getAbsolutePath());
+                if (!f.delete()) {
+                    log.warn("Could not remove the partial file '{}'", f.getAbsolutePath());
+                }
+            }
+        }
+    }
+
     /**
      * @param fileID The id of the file.
      * @return Whether a given file exist in the temporary directory.
@@ -26,11 +26,16 @@ import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.filestore.FileStore;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.utils.SettingsUtils;
+import org.bitrepository.common.utils.XmlUtils;
+import org.bitrepository.settings.referencesettings.ArchiveLayout;
 import org.bitrepository.settings.referencesettings.CollectionDirs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -41,12 +46,34 @@ import java.util.Map;
  * The CollectionArchiveManager manages the archives of the different collections for the Pillar.
  */
 public class CollectionArchiveManager implements FileStore {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /**
+     * The default interval between reconciling the file indexes of the archives against the files on disk.
+     */
+    private static final Duration DEFAULT_FILE_INDEX_RECONCILIATION_INTERVAL = Duration.ofHours(1);
     private final Map<String, ReferenceArchive> archives = new HashMap<>();
+    private final Duration reconciliationInterval;
+    private final ArchiveLayout layout;
 
     /**
      * @param settings The settings for the repository.
      */
     public CollectionArchiveManager(Settings settings) {
+        javax.xml.datatype.Duration interval = settings.getReferenceSettings().getPillarSettings()
+                .getFileIndexReconciliationInterval();
+        if (interval != null) {
+            XmlUtils.validateNonNegative(interval);
+            reconciliationInterval = XmlUtils.xmlDurationToDuration(interval);
+            if (reconciliationInterval.isZero()) {
+                log.warn("The periodic reconciliation of the file indexes is disabled. Files changed on disk by other "
+                        + "means than the pillar are not indexed, and file index journals discarded after a failed "
+                        + "write are only rebuilt when the pillar is restarted.");
+            }
+        } else {
+            reconciliationInterval = DEFAULT_FILE_INDEX_RECONCILIATION_INTERVAL;
+        }
+        ArchiveLayout configuredLayout = settings.getReferenceSettings().getPillarSettings().getArchiveLayout();
+        layout = (configuredLayout != null) ? configuredLayout : ArchiveLayout.FLAT;
         initiateSpecificDirs(settings);
         initiateDefaultDirs(settings);
     }
@@ -93,7 +120,7 @@ public class CollectionArchiveManager implements FileStore {
             }
 
             if (!archives.containsKey(colId)) {
-                archives.put(colId, new ReferenceArchive(dirs));
+                archives.put(colId, new ReferenceArchive(dirs, reconciliationInterval, layout));
             }
         }
     }
@@ -113,6 +140,22 @@ public class CollectionArchiveManager implements FileStore {
         return getArchive(collectionID).getAllFileIds();
     }
 
+    @Override
+    public List<FileInfo> getFileInfos(String collectionID, Long minTimestamp, Long maxTimestamp,
+                                       Long maxNumberOfResults) {
+        ReferenceArchive archive = getArchive(collectionID);
+        List<FileInfo> res = new ArrayList<>();
+        for (FileMetadataIndex.Entry entry : archive.getFileMetadata(minTimestamp, maxTimestamp, maxNumberOfResults)) {
+            res.add(new IndexedFileInfo(entry, archive));
+        }
+        return res;
+    }
+
+    @Override
+    public String getStorageLocation(String fileID, String collectionID) {
+        return getArchive(collectionID).getArchiveDirectoryPath(fileID);
+    }
+
     @Override
     public FileInfo downloadFileForValidation(String fileID, String collectionID, InputStream inputStream) throws IOException {
         return new DefaultFileInfo(getArchive(collectionID).downloadFileForValidation(fileID, inputStream));
@@ -129,7 +172,7 @@ public class CollectionArchiveManager implements FileStore {
     }
 
     @Override
-    public synchronized void replaceFile(String fileID, String collectionID) {
+    public void replaceFile(String fileID, String collectionID) {
         getArchive(collectionID).replaceFile(fileID);
     }
 
@@ -169,4 +212,43 @@ public class CollectionArchiveManager implements FileStore {
             throw new IllegalStateException("The collection '" + collectionID + "' has no attached archive.");
         }
     }
+
+    /**
+     * The file info for a file in the file index of an archive.
+     * The size and timestamp are delivered from the index, without accessing the file.
+     */
+    private static class IndexedFileInfo implements FileInfo {
+        private final FileMetadataIndex.Entry entry;
+        private final ReferenceArchive archive;
+
+        IndexedFileInfo(FileMetadataIndex.Entry entry, ReferenceArchive archive) {
+            this.entry = entry;
+            this.archive = archive;
+        }
+
+        @Override
+        public String getFileID() {
+            return entry.getFileID();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return archive.getFileAsInputStream(entry.getFileID());
+        }
+
+        @Override
+        public InputStream getInputStream(long offset, long length) throws IOException {
+            return archive.getFileRangeAsInputStream(entry.getFileID(), offset, length);
+        }
+
+        @Override
+        public Long getLastModifiedDate() {
+            return entry.getLastModified();
+        }
+
+        @Override
+        public long getSize() {
+            return entry.getSize();
+        }
+    }
 }
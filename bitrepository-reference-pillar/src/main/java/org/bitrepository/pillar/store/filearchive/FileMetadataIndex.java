@@ -0,0 +1,377 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.filearchive;
+
+import org.bitrepository.common.ArgumentValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Persistent index of the id, size and last modified timestamp of the files in an archive.
+ * <p/>
+ * The index is kept in memory, ordered both by file id and by last modified timestamp, so the files modified within
+ * a time interval can be found without walking the directories of the archive. Changes are appended to a journal
+ * file, which is compacted into a snapshot of the index when it is loaded.
+ * <p/>
+ * If a change cannot be appended to the journal, the journal is deleted, since it no longer matches the index. The
+ * index in memory is still up to date, and the journal is written again by the next compaction, e.g. when the archive
+ * reconciles the index. If the pillar is restarted before then, the index is built from the files on disk.
+ * <p/>
+ * The index is only maintained through the archive, so files changed on disk by other means are only reflected after
+ * the archive has reconciled the index against the disk.
+ */
+public class FileMetadataIndex {
+    private static final Logger log = LoggerFactory.getLogger(FileMetadataIndex.class);
+    /**
+     * The journal record for a file put into the index.
+     */
+    private static final byte PUT_RECORD = 'P';
+    /**
+     * The journal record for a file removed from the index.
+     */
+    private static final byte REMOVE_RECORD = 'R';
+    /**
+     * The order of the entries by timestamp. Entries with the same timestamp are ordered by file id.
+     */
+    private static final Comparator<Entry> TIMESTAMP_ORDER =
+            Comparator.comparingLong(Entry::getLastModified).thenComparing(Entry::getFileID);
+
+    private final File journalFile;
+    private final Map<String, Entry> entriesByFileID = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> entriesByTimestamp = new ConcurrentSkipListSet<>(TIMESTAMP_ORDER);
+    private DataOutputStream journal;
+    private boolean loadedFromJournal = false;
+    private boolean closed = false;
+    /** Whether the journal has been discarded after a failed write, and must be written again by a compaction. */
+    private boolean journalDiscarded = false;
+
+    /**
+     * Loads the index from the journal file, if it exists.
+     *
+     * @param journalFile The file to persist the index in.
+     */
+    public FileMetadataIndex(File journalFile) {
+        ArgumentValidator.checkNotNull(journalFile, "File journalFile");
+        this.journalFile = journalFile;
+        load();
+    }
+
+    /**
+     * @return Whether the index was loaded from an existing journal file. If not, the index must be built from the
+     * files on disk.
+     */
+    public boolean isLoadedFromJournal() {
+        return loadedFromJournal;
+    }
+
+    /**
+     * Registers the current metadata for a file.
+     *
+     * @param fileID       The id of the file.
+     * @param size         The size of the file.
+     * @param lastModified The last modified timestamp of the file.
+     */
+    public synchronized void put(String fileID, long size, long lastModified) {
+        Entry entry = new Entry(fileID, size, lastModified);
+        if (entry.equals(entriesByFileID.get(fileID))) {
+            return;
+        }
+        putEntry(entry);
+        if (closed || journalDiscarded) {
+            return;
+        }
+        try {
+            journal.writeByte(PUT_RECORD);
+            journal.writeUTF(fileID);
+            journal.writeLong(size);
+            journal.writeLong(lastModified);
+            journal.flush();
+        } catch (IOException e) {
+            log.error("Could not persist the index entry for the file '{}'.", fileID, e);
+            discardJournal();
+        }
+    }
+
+    /**
+     * Removes a file from the index.
+     *
+     * @param fileID The id of the file.
+     */
+    public synchronized void remove(String fileID) {
+        if (!removeEntry(fileID) || closed || journalDiscarded) {
+            return;
+        }
+        try {
+            journal.writeByte(REMOVE_RECORD);
+            journal.writeUTF(fileID);
+            journal.flush();
+        } catch (IOException e) {
+            log.error("Could not persist the removal of the file '{}' from the index.", fileID, e);
+            discardJournal();
+        }
+    }
+
+    /**
+     * @return Whether the journal has been discarded after a failed write, so the index is not persisted until it
+     * is compacted.
+     */
+    public synchronized boolean isJournalDiscarded() {
+        return journalDiscarded;
+    }
+
+    /**
+     * @param fileID The id of the file.
+     * @return The entry for the file, or null if the file is not in the index.
+     */
+    public Entry get(String fileID) {
+        return entriesByFileID.get(fileID);
+    }
+
+    /**
+     * @return The ids of all the files in the index.
+     */
+    public Collection<String> getFileIDs() {
+        return new ArrayList<>(entriesByFileID.keySet());
+    }
+
+    /**
+     * Finds the files with a last modified timestamp within the given interval, ordered by timestamp and file id.
+     *
+     * @param minTimestamp The minimum last modified timestamp, or null for no lower limit.
+     * @param maxTimestamp The maximum last modified timestamp, or null for no upper limit.
+     * @param maxResults   The maximum number of entries to return, or null for no limit.
+     * @return The entries for the files.
+     */
+    public List<Entry> getEntries(Long minTimestamp, Long maxTimestamp, Long maxResults) {
+        NavigableSet<Entry> range = entriesByTimestamp;
+        if (minTimestamp != null) {
+            range = range.tailSet(new Entry("", 0, minTimestamp), true);
+        }
+        List<Entry> res = new ArrayList<>();
+        for (Entry entry : range) {
+            if ((maxTimestamp != null && entry.getLastModified() > maxTimestamp)
+                    || (maxResults != null && res.size() >= maxResults)) {
+                break;
+            }
+            res.add(entry);
+        }
+        return res;
+    }
+
+    /**
+     * @return The number of files in the index.
+     */
+    public int size() {
+        return entriesByFileID.size();
+    }
+
+    /**
+     * Compacts the journal into a snapshot of the current index. This also writes the journal again, if it has been
+     * discarded.
+     */
+    public synchronized void compact() {
+        if (closed) {
+            return;
+        }
+        closeJournal();
+        File snapshot = new File(journalFile.getPath() + ".new");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(snapshot)))) {
+                for (Entry entry : entriesByFileID.values()) {
+                    out.writeByte(PUT_RECORD);
+                    out.writeUTF(entry.getFileID());
+                    out.writeLong(entry.getSize());
+                    out.writeLong(entry.getLastModified());
+                }
+            }
+            Files.move(snapshot.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (journalDiscarded) {
+                log.info("Wrote the discarded file index journal '{}' again", journalFile);
+                journalDiscarded = false;
+            }
+        } catch (IOException e) {
+            log.warn("Could not compact the file index journal '{}'", journalFile, e);
+        }
+        if (!journalDiscarded) {
+            openJournal();
+        }
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    public synchronized void close() {
+        closed = true;
+        closeJournal();
+    }
+
+    /**
+     * Loads the index from the journal. A truncated record at the end of the journal, e.g. from a crash while it was
+     * written, is ignored.
+     */
+    private synchronized void load() {
+        if (journalFile.isFile()) {
+            loadedFromJournal = true;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                while (true) {
+                    byte record = in.readByte();
+                    String fileID = in.readUTF();
+                    if (record == PUT_RECORD) {
+                        putEntry(new Entry(fileID, in.readLong(), in.readLong()));
+                    } else if (record == REMOVE_RECORD) {
+                        removeEntry(fileID);
+                    } else {
+                        log.warn("Unknown record '{}' in the file index journal '{}'. Ignoring the rest of the journal.",
+                                record, journalFile);
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // The end of the journal.
+            } catch (IOException e) {
+                log.warn("Could not read the file index journal '{}'. It will be restored by the reconciliation.",
+                        journalFile, e);
+            }
+            log.info("Loaded {} entries from the file index journal '{}'", entriesByFileID.size(), journalFile);
+        }
+        compact();
+    }
+
+    private void putEntry(Entry entry) {
+        Entry old = entriesByFileID.put(entry.getFileID(), entry);
+        if (old != null) {
+            entriesByTimestamp.remove(old);
+        }
+        entriesByTimestamp.add(entry);
+    }
+
+    private boolean removeEntry(String fileID) {
+        Entry old = entriesByFileID.remove(fileID);
+        if (old != null) {
+            entriesByTimestamp.remove(old);
+        }
+        return old != null;
+    }
+
+    private void openJournal() {
+        try {
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the file index journal '" + journalFile + "'", e);
+        }
+    }
+
+    /**
+     * Discards the journal after a failed write, since it no longer matches the index. Without a journal, the index
+     * is built from the files on disk at the next start, unless it is compacted before then.
+     */
+    private void discardJournal() {
+        journalDiscarded = true;
+        closeJournal();
+        try {
+            Files.deleteIfExists(journalFile.toPath());
+            log.warn("Discarded the file index journal '{}'. It is written again by the next reconciliation of the "
+                    + "index, or the index is built from the files on disk at the next start.", journalFile);
+        } catch (IOException e) {
+            log.error("Could not delete the file index journal '{}', which no longer matches the index. It must be "
+                    + "deleted before the pillar is restarted, unless the index is reconciled before then.",
+                    journalFile, e);
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Could not close the file index journal '{}'", journalFile, e);
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * The indexed metadata for a file.
+     */
+    public static final class Entry {
+        private final String fileID;
+        private final long size;
+        private final long lastModified;
+
+        Entry(String fileID, long size, long lastModified) {
+            this.fileID = fileID;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getFileID() {
+            return fileID;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return size == other.size && lastModified == other.lastModified && fileID.equals(other.fileID);
+        }
+
+        @Override
+        public int hashCode() {
+            return fileID.hashCode();
+        }
+    }
+}
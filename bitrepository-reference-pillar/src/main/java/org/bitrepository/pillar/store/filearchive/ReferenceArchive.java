@@ -25,36 +25,117 @@
 package org.bitrepository.pillar.store.filearchive;
 
 import org.bitrepository.common.ArgumentValidator;
+import org.bitrepository.common.DefaultThreadFactory;
+import org.bitrepository.common.filestore.FileRangeInputStream;
+import org.bitrepository.settings.referencesettings.ArchiveLayout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class for managing the files for the reference pillar. This supports a single CollectionID.
+ * <p/>
+ * The operations on a file are serialized by a lock for the file id, so operations on different files can be
+ * performed concurrently. Files are downloaded to a uniquely named partial file without holding any lock, and only
+ * the completion of the download is done under the lock of the file.
+ * <p/>
+ * The id, size and last modified timestamp of the archived files are kept in a {@link FileMetadataIndex}, which is
+ * updated by the operations on the archive and periodically reconciled against the files on disk. If no index
+ * journal exists, the index is built from the files on disk in the background, or when it is first used.
+ * <p/>
+ * The background thread is only started when a reconciliation interval or a layout other than the flat layout is
+ * configured. Files placed according to another {@link ArchiveLayout} than the configured one are then moved to the
+ * configured layout in the background, when the archive is created. Files in another layout are found either way.
  */
 public class ReferenceArchive {
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private final Object lock = new Object();
     public static final int MAX_BUFFER_SIZE = 32 * 1024;
+    /**
+     * The number of locks the file ids are striped over.
+     */
+    private static final int FILE_LOCK_STRIPES = 64;
+    private final Object[] fileLocks = new Object[FILE_LOCK_STRIPES];
     private final List<ArchiveDirectory> directories = new ArrayList<>();
+    /**
+     * The name of the file index journal, placed in the first archival base directory.
+     */
+    public static final String FILE_INDEX_NAME = "fileIndex";
+    private final FileMetadataIndex index;
+    /**
+     * Whether the file index has been reconciled against the files on disk, or loaded from its journal.
+     */
+    private volatile boolean indexInitialized;
+    private final Object reconcileLock = new Object();
+    /**
+     * The scheduler for the background work, or null if there is no background work.
+     */
+    private final ScheduledExecutorService backgroundScheduler;
+    /**
+     * The maximum time to wait for the background work to stop, when the archive is closed.
+     */
+    private static final long BACKGROUND_SHUTDOWN_TIMEOUT_SECONDS = 30;
 
     /**
+     * Creates the archive with the flat layout and without periodic reconciliation of the file index, so no
+     * background thread is started.
+     *
      * @param dirPaths The list of paths to the archival base directories.
      */
     public ReferenceArchive(List<String> dirPaths) {
+        this(dirPaths, null, ArchiveLayout.FLAT);
+    }
+
+    /**
+     * @param dirPaths               The list of paths to the archival base directories.
+     * @param reconciliationInterval The interval between reconciling the file index against the files on disk, or
+     *                               null or zero for no periodic reconciliation.
+     * @param layout                 The layout of the files in the archival directories.
+     */
+    public ReferenceArchive(List<String> dirPaths, Duration reconciliationInterval, ArchiveLayout layout) {
         ArgumentValidator.checkNotNullOrEmpty(dirPaths, "List<String> dirPaths");
 
         for (String dir : dirPaths) {
-            directories.add(new ArchiveDirectory(dir));
+            directories.add(new ArchiveDirectory(dir, layout));
+        }
+        for (int i = 0; i < fileLocks.length; i++) {
+            fileLocks[i] = new Object();
+        }
+
+        index = new FileMetadataIndex(new File(dirPaths.get(0), FILE_INDEX_NAME));
+        indexInitialized = index.isLoadedFromJournal();
+
+        boolean periodicReconciliation = reconciliationInterval != null && !reconciliationInterval.isZero();
+        if (!periodicReconciliation && layout == ArchiveLayout.FLAT) {
+            backgroundScheduler = null;
+            return;
+        }
+        backgroundScheduler = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("ReferenceArchive-Background-", Thread.MIN_PRIORITY));
+        backgroundScheduler.execute(this::migrateToLayout);
+        if (!indexInitialized) {
+            log.info("No file index found for the archive '{}'. Building it from the files on disk.", dirPaths);
+            backgroundScheduler.execute(this::initializeFileIndex);
+        }
+        if (periodicReconciliation) {
+            long intervalMillis = reconciliationInterval.toMillis();
+            backgroundScheduler.scheduleWithFixedDelay(this::reconcileFileIndex, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
         }
     }
 
@@ -91,6 +172,15 @@ public class ReferenceArchive {
         return false;
     }
 
+    /**
+     * @param fileID The id of the file.
+     * @return The path of the base directory of the archive directory containing the file.
+     */
+    public String getArchiveDirectoryPath(String fileID) {
+        ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
+        return getDirWithFile(fileID).getBaseDirectory().getAbsolutePath();
+    }
+
     /**
      * @return All the file ids within this archive.
      */
@@ -102,6 +192,19 @@ public class ReferenceArchive {
         return res;
     }
 
+    /**
+     * Finds the files with a last modified timestamp within the given interval in the file index.
+     *
+     * @param minTimestamp The minimum last modified timestamp, or null for no lower limit.
+     * @param maxTimestamp The maximum last modified timestamp, or null for no upper limit.
+     * @param maxResults   The maximum number of files to find, or null for no limit.
+     * @return The index entries for the files, ordered by last modified timestamp and file id.
+     */
+    public List<FileMetadataIndex.Entry> getFileMetadata(Long minTimestamp, Long maxTimestamp, Long maxResults) {
+        initializeFileIndex();
+        return index.getEntries(minTimestamp, maxTimestamp, maxResults);
+    }
+
     /**
      * Retrieves an input-stream to the given file.
      *
@@ -110,7 +213,30 @@ public class ReferenceArchive {
      * @throws IOException If no input-stream can be made.
      */
     public FileInputStream getFileAsInputStream(String fileID) throws IOException {
-        return new FileInputStream(getFile(fileID));
+        try {
+            return new FileInputStream(getFile(fileID));
+        } catch (FileNotFoundException e) {
+            // The file may have been moved to another layout since it was located.
+            return new FileInputStream(getFile(fileID));
+        }
+    }
+
+    /**
+     * Retrieves an input-stream to a range of the given file.
+     *
+     * @param fileID The id of the file.
+     * @param offset The offset of the range in the file.
+     * @param length The length of the range.
+     * @return The input-stream to the range of the file.
+     * @throws IOException If no input-stream can be made.
+     */
+    public InputStream getFileRangeAsInputStream(String fileID, long offset, long length) throws IOException {
+        try {
+            return new FileRangeInputStream(getFile(fileID).toPath(), offset, length);
+        } catch (NoSuchFileException e) {
+            // The file may have been moved to another layout since it was located.
+            return new FileRangeInputStream(getFile(fileID).toPath(), offset, length);
+        }
     }
 
     /**
@@ -128,22 +254,30 @@ public class ReferenceArchive {
         ArgumentValidator.checkNotNull(inputStream, "inputStream");
 
         ArchiveDirectory dir = getDirWithMostSpace();
-        File downloadedFile;
-        synchronized (lock) {
-            downloadedFile = dir.getNewFileInTempDir(fileID);
-            log.debug("Downloading the file '{}' for validation", fileID);
+        File partialFile = dir.createPartialFileInTempDir(fileID);
+        log.debug("Downloading the file '{}' for validation", fileID);
 
+        boolean completed = false;
+        try {
             // Save InputStream to the file.
-            try (BufferedOutputStream bufferedOutputstream
-                         = new BufferedOutputStream(new FileOutputStream(downloadedFile))) {
+            try (FileOutputStream outputStream = new FileOutputStream(partialFile)) {
                 byte[] buffer = new byte[MAX_BUFFER_SIZE];
                 int bytesRead;
                 while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    bufferedOutputstream.write(buffer, 0, bytesRead);
+                    outputStream.write(buffer, 0, bytesRead);
                 }
             }
+            File downloadedFile;
+            synchronized (getFileLock(fileID)) {
+                downloadedFile = dir.completeFileInTempDir(partialFile, fileID);
+            }
+            completed = true;
+            return downloadedFile;
+        } finally {
+            if (!completed) {
+                dir.removePartialFile(partialFile, fileID);
+            }
         }
-        return downloadedFile;
     }
 
     /**
@@ -155,9 +289,10 @@ public class ReferenceArchive {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
         log.info("Moving the file '{}' to archive", fileID);
 
-        synchronized (lock) {
+        synchronized (getFileLock(fileID)) {
             ArchiveDirectory dir = getDirWithTmpFile(fileID);
             dir.moveFromTmpToArchive(fileID);
+            indexFile(dir, fileID);
         }
     }
 
@@ -169,9 +304,10 @@ public class ReferenceArchive {
     public void deleteFile(String fileID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
 
-        synchronized (lock) {
+        synchronized (getFileLock(fileID)) {
             ArchiveDirectory dir = getDirWithFile(fileID);
             dir.removeFileFromArchive(fileID);
+            index.remove(fileID);
         }
     }
 
@@ -181,14 +317,15 @@ public class ReferenceArchive {
      *
      * @param fileID The id of the file to perform the replace function upon.
      */
-    public synchronized void replaceFile(String fileID) {
+    public void replaceFile(String fileID) {
         ArgumentValidator.checkNotNullOrEmpty(fileID, "String fileID");
 
-        synchronized (lock) {
+        synchronized (getFileLock(fileID)) {
             ArchiveDirectory tmpDir = getDirWithTmpFile(fileID);
             ArchiveDirectory fileDir = getDirWithFile(fileID);
             fileDir.removeFileFromArchive(fileID);
             tmpDir.moveFromTmpToArchive(fileID);
+            indexFile(tmpDir, fileID);
         }
     }
 
@@ -217,14 +354,136 @@ public class ReferenceArchive {
      * @param fileID The id of the file to clean up after.
      */
     public void ensureFileNotInTmpDir(String fileID) {
-        for (ArchiveDirectory dir : directories) {
-            if (dir.hasFileInTempDir(fileID)) {
-                log.info("Removing tmp file '{}' from tmp dir '{}'", fileID, dir);
-                dir.removeFileFromTmp(fileID);
+        synchronized (getFileLock(fileID)) {
+            for (ArchiveDirectory dir : directories) {
+                if (dir.hasFileInTempDir(fileID)) {
+                    log.info("Removing tmp file '{}' from tmp dir '{}'", fileID, dir);
+                    dir.removeFileFromTmp(fileID);
+                }
             }
         }
     }
 
+    /**
+     * Reconciles the file index against the files on disk. Files changed, added or removed on disk without going
+     * through the archive are updated in the index.
+     */
+    public void reconcileFileIndex() {
+        synchronized (reconcileLock) {
+            if (reconcile()) {
+                indexInitialized = true;
+            }
+        }
+    }
+
+    /**
+     * Builds the file index from the files on disk, unless it has already been reconciled or loaded from its journal.
+     */
+    private void initializeFileIndex() {
+        if (!indexInitialized) {
+            synchronized (reconcileLock) {
+                if (!indexInitialized) {
+                    reconcileFileIndex();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether the file index was reconciled. False if it failed or was interrupted.
+     */
+    private boolean reconcile() {
+        try {
+            long start = System.currentTimeMillis();
+            Set<String> fileIDsOnDisk = new HashSet<>();
+            for (ArchiveDirectory dir : directories) {
+                for (String fileID : dir.getFileIds()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        log.debug("Interrupted while reconciling the file index");
+                        return false;
+                    }
+                    fileIDsOnDisk.add(fileID);
+                    synchronized (getFileLock(fileID)) {
+                        if (dir.hasFile(fileID)) {
+                            indexFile(dir, fileID);
+                        }
+                    }
+                }
+            }
+            for (String fileID : index.getFileIDs()) {
+                if (!fileIDsOnDisk.contains(fileID)) {
+                    // Check again under the lock, since the file may have been archived after the directory walk.
+                    synchronized (getFileLock(fileID)) {
+                        if (!hasFile(fileID)) {
+                            index.remove(fileID);
+                        }
+                    }
+                }
+            }
+            index.compact();
+            log.debug("Reconciled the file index with {} files in {} ms", index.size(),
+                    System.currentTimeMillis() - start);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to reconcile the file index", e);
+            return false;
+        }
+    }
+
+    /**
+     * Moves the files placed according to another layout to the layout of the archive directories. The files are
+     * moved one at a time under their lock, so the archive can be used while the files are moved.
+     *
+     * @return The number of moved files.
+     */
+    public int migrateToLayout() {
+        int moved = 0;
+        try {
+            for (ArchiveDirectory dir : directories) {
+                List<String> fileIDs = dir.getFileIdsNotInLayout();
+                if (!fileIDs.isEmpty()) {
+                    log.info("Moving {} files in '{}' to the {} layout", fileIDs.size(), dir, dir.getLayout());
+                }
+                for (String fileID : fileIDs) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        log.debug("Interrupted while moving the files to the layout of the archive");
+                        return moved;
+                    }
+                    synchronized (getFileLock(fileID)) {
+                        if (dir.moveToLayout(fileID)) {
+                            moved++;
+                        }
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to move the files to the layout of the archive after moving {} files", moved, e);
+        }
+        if (moved > 0) {
+            log.info("Moved {} files to the layout of the archive", moved);
+        }
+        return moved;
+    }
+
+    /**
+     * Registers the current metadata of an archived file in the file index.
+     *
+     * @param dir    The archive directory with the file.
+     * @param fileID The id of the file.
+     */
+    private void indexFile(ArchiveDirectory dir, String fileID) {
+        File file = dir.getFile(fileID);
+        index.put(fileID, file.length(), file.lastModified());
+    }
+
+    /**
+     * @param fileID The id of the file.
+     * @return The lock for the operations on the file.
+     */
+    private Object getFileLock(String fileID) {
+        return fileLocks[Math.floorMod(fileID.hashCode(), fileLocks.length)];
+    }
+
     /**
      * Finds the directory with the most space left.
      *
@@ -276,9 +535,21 @@ public class ReferenceArchive {
     }
 
     /**
-     * Closes the reference archive.
+     * Closes the reference archive. The background work is stopped before the file index is closed.
      */
     public void close() {
+        if (backgroundScheduler != null) {
+            backgroundScheduler.shutdownNow();
+            try {
+                if (!backgroundScheduler.awaitTermination(BACKGROUND_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("The background work of the archive did not stop within {} seconds",
+                            BACKGROUND_SHUTDOWN_TIMEOUT_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        index.close();
         directories.clear();
     }
 }
@@ -37,7 +37,7 @@ create table tableversions (
 );
 
 insert into tableversions ( tablename, version )
-            values ( 'checksums', 4);
+            values ( 'checksums', 5);
 
 --*************************************************************************--
 -- Name:     checksums
@@ -58,5 +58,5 @@ create table checksums (
 
 create index fileindex on checksums ( fileid, collectionid );
 create index filedateindex on checksums ( fileid, calculationdate );
-CREATE INDEX calculationindex ON checksums ( calculationdate );
+CREATE INDEX collectiondateindex ON checksums ( collectionid, calculationdate, fileid );
 
@@ -24,6 +24,7 @@
  */
 package org.bitrepository.pillar.messagehandling;
 
+import org.bitrepository.bitrepositorydata.GetChecksumsResults;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.FileIDs;
 import org.bitrepository.bitrepositoryelements.ResponseCode;
@@ -33,17 +34,22 @@ import org.bitrepository.bitrepositorymessages.GetChecksumsProgressResponse;
 import org.bitrepository.bitrepositorymessages.GetChecksumsRequest;
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetChecksumsRequest;
 import org.bitrepository.bitrepositorymessages.IdentifyPillarsForGetChecksumsResponse;
+import org.bitrepository.common.JaxbHelper;
 import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.common.utils.FileIDsUtils;
 import org.bitrepository.pillar.MockedPillarTest;
 import org.bitrepository.pillar.messagefactories.GetChecksumsMessageFactory;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
 
 import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.Date;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -52,6 +58,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 /**
  * Tests the PutFile functionality on the ReferencePillar.
@@ -233,6 +240,50 @@ public class GetChecksumsTest extends MockedPillarTest {
         assertEquals(finalResponse.getPillarID(), getPillarID());
         assertEquals(finalResponse.getResultingChecksums().getChecksumDataItems().size(), 2);
     }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void goodCaseOperationAllFilesUploadedToResultAddress() throws Exception {
+        addDescription("Tests the GetChecksums operation on the pillar for the successful scenario, when requesting "
+                + "all files delivered at a result address.");
+        addStep("Set up constants and variables.", "Should not fail here!");
+        FileIDs fileids = FileIDsUtils.getAllFileIDs();
+        File resultFile = File.createTempFile("GetChecksumsTest", ".xml");
+        resultFile.deleteOnExit();
+
+        addStep("Setup for delivering a cursor over the checksums", "No failure here");
+        doAnswer(invocation -> settingsForCUT.getComponentID()).when(model).getPillarID();
+        doAnswer(invocation -> {
+            ExtractedChecksumResultSet res = new ExtractedChecksumResultSet();
+            res.insertChecksumEntry(new ChecksumEntry(DEFAULT_FILE_ID, DEFAULT_MD5_CHECKSUM, new Date()));
+            res.insertChecksumEntry(new ChecksumEntry(NON_DEFAULT_FILE_ID, NON_DEFAULT_MD5_CHECKSUM, new Date(0)));
+            return ExtractionCursor.of(res.getEntries(), true);
+        }).when(model).getChecksumResultCursor(any(), any(), any(), anyString(), any(ChecksumSpecTYPE.class));
+
+        addStep("Create and send the actual GetChecksums message to the pillar.",
+                "Should be received and handled by the pillar.");
+        GetChecksumsRequest getChecksumsRequest = msgFactory.createGetChecksumsRequest(csSpec, fileids,
+                resultFile.toURI().toURL().toExternalForm());
+        messageBus.sendMessage(getChecksumsRequest);
+        clientReceiver.waitForMessage(GetChecksumsProgressResponse.class);
+
+        addStep("Retrieve the FinalResponse for the GetChecksums request",
+                "The final response should say 'operation_complete', and refer to the uploaded results.");
+        GetChecksumsFinalResponse finalResponse = clientReceiver.waitForMessage(GetChecksumsFinalResponse.class);
+        assertEquals(finalResponse.getResponseInfo().getResponseCode(), ResponseCode.OPERATION_COMPLETED);
+        assertEquals(finalResponse.getResultingChecksums().getResultAddress(),
+                getChecksumsRequest.getResultAddress());
+        assertTrue(finalResponse.isPartialResult());
+
+        addStep("Read the uploaded results", "Should contain the checksums from the cursor");
+        try (InputStream in = new FileInputStream(resultFile)) {
+            GetChecksumsResults results = new JaxbHelper("xsd/", "BitRepositoryData.xsd")
+                    .loadAndValidateXml(GetChecksumsResults.class, in);
+            assertEquals(results.getCollectionID(), collectionID);
+            assertEquals(results.getChecksumDataItems().size(), 2);
+            assertEquals(results.getChecksumDataItems().get(0).getFileID(), DEFAULT_FILE_ID);
+            assertEquals(results.getChecksumDataItems().get(1).getFileID(), NON_DEFAULT_FILE_ID);
+        }
+    }
     
     @SuppressWarnings("rawtypes")
     @Test( groups = {"regressiontest", "pillartest"})
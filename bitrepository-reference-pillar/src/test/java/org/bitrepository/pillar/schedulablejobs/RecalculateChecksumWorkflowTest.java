@@ -21,15 +21,27 @@ package org.bitrepository.pillar.schedulablejobs;
  * #L%
  */
 
+import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.pillar.DefaultPillarTest;
+import org.bitrepository.pillar.store.ChecksumRecalculator;
+import org.bitrepository.pillar.store.FileStorageModel;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
 import org.bitrepository.service.workflow.SchedulableJob;
+import org.bitrepository.settings.referencesettings.ChecksumRecalculation;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class RecalculateChecksumWorkflowTest extends DefaultPillarTest {
 
@@ -83,4 +95,122 @@ public class RecalculateChecksumWorkflowTest extends DefaultPillarTest {
         Assert.assertEquals(beforeWorkflowDate.getTime(), afterWorkflowDate.getTime(), 
                 beforeWorkflowDate.getTime() + " == "+ afterWorkflowDate.getTime());
     }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testWorkflowRecalculatesInParallelWithinReadLimit() throws Exception {
+        addDescription("Test that the workflow calculates the missing checksums with several threads, while keeping "
+                + "the read rate within the limit.");
+        addStep("Limit the recalculation to 2 threads and 20000 bytes per second, and archive 4 files of 5000 bytes "
+                + "without checksums", "");
+        ChecksumRecalculation recalculation = new ChecksumRecalculation();
+        recalculation.setMaxThreads(BigInteger.valueOf(2));
+        recalculation.setThreadsPerDirectory(BigInteger.valueOf(2));
+        recalculation.setMaxBytesPerSecond(20000L);
+        settingsForCUT.getReferenceSettings().getPillarSettings().setChecksumRecalculation(recalculation);
+        settingsForCUT.getReferenceSettings().getPillarSettings()
+                .setMaxAgeForChecksums(factory.newDuration(Long.MAX_VALUE));
+        FileStorageModel throttledModel = new FileStorageModel(archives, csCache, alarmDispatcher, settingsForCUT);
+        for (int i = 0; i < 4; i++) {
+            archives.downloadFileForValidation("file-" + i, collectionID, new ByteArrayInputStream(new byte[5000]));
+            archives.moveToArchive("file-" + i, collectionID);
+        }
+
+        addStep("Run the workflow", "The checksums of all the files are calculated, but the reads are spread over most of a second.");
+        SchedulableJob workflow = new RecalculateChecksumJob(collectionID, throttledModel);
+        long start = System.currentTimeMillis();
+        workflow.start();
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertTrue(duration >= 700, "The recalculation took only " + duration + " ms");
+        String expectedChecksum = ChecksumUtils.generateChecksum(new ByteArrayInputStream(new byte[5000]),
+                ChecksumUtils.getDefault(settingsForCUT));
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(csCache.getChecksum("file-" + i, collectionID), expectedChecksum);
+        }
+        Assert.assertNull(throttledModel.getChecksumRecalculationProgress(collectionID));
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testConcurrentRecalculationsShareReadLimit() throws Exception {
+        addDescription("Test that recalculations running at the same time share the read limit, instead of each "
+                + "reading at the limit.");
+        addStep("Limit the recalculations to 20000 bytes per second, and archive 8 files of 5000 bytes", "");
+        ChecksumRecalculation recalculation = new ChecksumRecalculation();
+        recalculation.setMaxThreads(BigInteger.valueOf(4));
+        recalculation.setThreadsPerDirectory(BigInteger.valueOf(4));
+        recalculation.setMaxBytesPerSecond(20000L);
+        settingsForCUT.getReferenceSettings().getPillarSettings().setChecksumRecalculation(recalculation);
+        ChecksumRecalculator recalculator = new ChecksumRecalculator(archives, csCache,
+                ChecksumUtils.getDefault(settingsForCUT), settingsForCUT);
+        List<String> firstFileIDs = new ArrayList<>();
+        List<String> secondFileIDs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            archives.downloadFileForValidation("file-" + i, collectionID, new ByteArrayInputStream(new byte[5000]));
+            archives.moveToArchive("file-" + i, collectionID);
+            (i % 2 == 0 ? firstFileIDs : secondFileIDs).add("file-" + i);
+        }
+
+        addStep("Recalculate half of the files in each of two threads at the same time",
+                "Together the reads are spread over most of two seconds, as each alone would take most of a second.");
+        try {
+            Thread other = new Thread(() -> recalculator.recalculate(collectionID, secondFileIDs));
+            long start = System.currentTimeMillis();
+            other.start();
+            ChecksumRecalculator.Progress progress = recalculator.recalculate(collectionID, firstFileIDs);
+            other.join();
+            long duration = System.currentTimeMillis() - start;
+            Assert.assertEquals(progress.getRecalculatedFiles(), 4);
+            Assert.assertTrue(duration >= 1500, "The recalculations took only " + duration + " ms");
+            String expectedChecksum = ChecksumUtils.generateChecksum(new ByteArrayInputStream(new byte[5000]),
+                    ChecksumUtils.getDefault(settingsForCUT));
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(csCache.getChecksum("file-" + i, collectionID), expectedChecksum);
+            }
+        } finally {
+            recalculator.close();
+        }
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testCalculationOfOtherChecksumsSharesReadLimit() throws Exception {
+        addDescription("Test that the calculation of non-default checksums for a GetChecksums request shares the "
+                + "read limit with a recalculation running at the same time.");
+        addStep("Limit the calculations to 20000 bytes per second, and archive 8 files of 5000 bytes", "");
+        ChecksumRecalculation recalculation = new ChecksumRecalculation();
+        recalculation.setMaxThreads(BigInteger.valueOf(4));
+        recalculation.setThreadsPerDirectory(BigInteger.valueOf(4));
+        recalculation.setMaxBytesPerSecond(20000L);
+        settingsForCUT.getReferenceSettings().getPillarSettings().setChecksumRecalculation(recalculation);
+        ChecksumRecalculator recalculator = new ChecksumRecalculator(archives, csCache,
+                ChecksumUtils.getDefault(settingsForCUT), settingsForCUT);
+        List<String> recalculatedFileIDs = new ArrayList<>();
+        List<String> calculatedFileIDs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            archives.downloadFileForValidation("file-" + i, collectionID, new ByteArrayInputStream(new byte[5000]));
+            archives.moveToArchive("file-" + i, collectionID);
+            (i % 2 == 0 ? recalculatedFileIDs : calculatedFileIDs).add("file-" + i);
+        }
+        ChecksumSpecTYPE otherSpec = new ChecksumSpecTYPE();
+        otherSpec.setChecksumType(ChecksumType.SHA256);
+
+        addStep("Recalculate half of the files, while calculating other checksums of the other half",
+                "Together the reads are spread over most of two seconds.");
+        try {
+            Thread other = new Thread(() -> recalculator.recalculate(collectionID, recalculatedFileIDs));
+            long start = System.currentTimeMillis();
+            other.start();
+            List<String> delivered = new ArrayList<>();
+            try (ExtractionCursor<ChecksumEntry> cursor = recalculator.calculateChecksums(collectionID,
+                    calculatedFileIDs, otherSpec, false)) {
+                while (cursor.hasNext()) {
+                    delivered.add(cursor.next().getFileId());
+                }
+            }
+            other.join();
+            long duration = System.currentTimeMillis() - start;
+            Assert.assertEquals(delivered.size(), 4);
+            Assert.assertTrue(duration >= 1500, "The calculations took only " + duration + " ms");
+        } finally {
+            recalculator.close();
+        }
+    }
 }
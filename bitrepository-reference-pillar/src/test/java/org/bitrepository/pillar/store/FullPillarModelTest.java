@@ -21,21 +21,31 @@
  */
 package org.bitrepository.pillar.store;
 
+import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.ChecksumDataForFileTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumSpecTYPE;
 import org.bitrepository.bitrepositoryelements.ChecksumType;
+import org.bitrepository.bitrepositoryelements.ResponseCode;
 import org.bitrepository.common.filestore.FileInfo;
 import org.bitrepository.common.filestore.FileStore;
+import org.bitrepository.common.utils.Base16Utils;
+import org.bitrepository.common.utils.CalendarUtils;
 import org.bitrepository.common.utils.ChecksumUtils;
 import org.bitrepository.pillar.DefaultFixturePillarTest;
 import org.bitrepository.pillar.store.checksumcache.MemoryCacheMock;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.filearchive.CollectionArchiveManager;
 import org.bitrepository.service.AlarmDispatcher;
+import org.bitrepository.service.exception.IllegalOperationException;
 import org.bitrepository.service.exception.RequestHandlerException;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -139,6 +149,75 @@ public class FullPillarModelTest extends DefaultFixturePillarTest {
         }
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testPutFileValidatesChecksumCalculatedDuringDownload() throws Exception {
+        addDescription("Test that a put file is validated against the expected checksum, and that the default "
+                + "checksum is registered, from the checksums calculated while downloading the file.");
+        emptyArchive();
+        File source = File.createTempFile("FullPillarModelTest", ".txt");
+        source.deleteOnExit();
+        Files.write(source.toPath(), "Some content".getBytes(StandardCharsets.UTF_8));
+        String expectedDefault = ChecksumUtils.generateChecksum(source, defaultCsType);
+
+        addStep("Put the file with a wrong expected checksum", "Should be rejected and not stored");
+        ChecksumDataForFileTYPE wrongChecksum = new ChecksumDataForFileTYPE();
+        wrongChecksum.setChecksumSpec(nonDefaultCsType);
+        wrongChecksum.setChecksumValue(Base16Utils.encodeBase16(EMPTY_HMAC_SHA385_CHECKSUM));
+        wrongChecksum.setCalculationTimestamp(CalendarUtils.getNow());
+        try {
+            pillarModel.putFile(collectionID, DEFAULT_FILE_ID, source.toURI().toURL().toExternalForm(),
+                    wrongChecksum);
+            fail("Must not accept a file with the wrong checksum");
+        } catch (IllegalOperationException e) {
+            assertEquals(e.getResponseInfo().getResponseCode(), ResponseCode.NEW_FILE_CHECKSUM_FAILURE);
+        }
+        assertFalse(archives.hasFile(DEFAULT_FILE_ID, collectionID));
+
+        addStep("Put the file with the right expected checksum",
+                "Should be stored, with the default checksum registered");
+        archives.ensureFileNotInTmpDir(DEFAULT_FILE_ID, collectionID);
+        ChecksumDataForFileTYPE rightChecksum = new ChecksumDataForFileTYPE();
+        rightChecksum.setChecksumSpec(nonDefaultCsType);
+        rightChecksum.setChecksumValue(Base16Utils.encodeBase16(
+                ChecksumUtils.generateChecksum(source, nonDefaultCsType)));
+        rightChecksum.setCalculationTimestamp(CalendarUtils.getNow());
+        pillarModel.putFile(collectionID, DEFAULT_FILE_ID, source.toURI().toURL().toExternalForm(), rightChecksum);
+        assertTrue(archives.hasFile(DEFAULT_FILE_ID, collectionID));
+        assertEquals(cache.getChecksum(DEFAULT_FILE_ID, collectionID), expectedDefault);
+        emptyArchive();
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testNonDefaultChecksumsForCollection() throws Exception {
+        addDescription("Test the calculation of non-default checksums for all the files in a collection.");
+        addStep("Setup", "Place three empty files in the archive and the cache.");
+        for (int i = 1; i <= 3; i++) {
+            String fileID = "bulk-file-" + i;
+            if (!archives.hasFile(fileID, collectionID)) {
+                archives.downloadFileForValidation(fileID, collectionID, new ByteArrayInputStream(new byte[0]));
+                archives.moveToArchive(fileID, collectionID);
+            }
+        }
+        pillarModel.verifyFileToCacheConsistencyOfAllData(collectionID);
+        long numberOfFiles = cache.getAllFileIDs(collectionID).size();
+
+        addStep("Request the non-default checksums with a maximum of one less than the number of files",
+                "Exactly the maximum number of checksums, and more entries reported.");
+        ExtractedChecksumResultSet res = pillarModel.getChecksumResultSet(null, null, numberOfFiles - 1,
+                collectionID, nonDefaultCsType);
+        assertEquals(res.getEntries().size(), numberOfFiles - 1);
+        assertTrue(res.hasMoreEntries());
+
+        addStep("Request the non-default checksums with a maximum of the number of files",
+                "A checksum for each file, and no more entries reported.");
+        res = pillarModel.getChecksumResultSet(null, null, numberOfFiles, collectionID, nonDefaultCsType);
+        assertEquals(res.getEntries().size(), numberOfFiles);
+        assertFalse(res.hasMoreEntries());
+        for (ChecksumDataForChecksumSpecTYPE entry : res.getEntries()) {
+            assertEquals(Base16Utils.decodeBase16(entry.getChecksumValue()), EMPTY_HMAC_SHA385_CHECKSUM);
+        }
+    }
+
     private void emptyArchive() {
         if (archives.hasFile(DEFAULT_FILE_ID, collectionID)) {
             archives.deleteFile(DEFAULT_FILE_ID, collectionID);
@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.archive;
+
+import org.bitrepository.common.utils.FileUtils;
+import org.bitrepository.pillar.store.filearchive.ArchiveDirectory;
+import org.bitrepository.settings.referencesettings.ArchiveLayout;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Measures the cost of looking up and listing files in an ArchiveDirectory with the flat and the sharded layout.
+ * The numbers of files can be changed with the system property 'archive.layout.filecounts', e.g. '100000,1000000'.
+ */
+public class ArchiveDirectoryLayoutStressTest extends ExtendedTestCase {
+    private static final String DIR_NAME = "archive-layout-stress";
+    private static final String DEFAULT_FILE_COUNTS = "1000000,10000000";
+    /** The number of random lookups to measure for each archive. */
+    private static final int LOOKUPS = 100000;
+
+    @Test( groups = {"StressTest"} )
+    public void lookupAndListingCost() throws Exception {
+        addDescription("Measures the time for creating, looking up and listing the files in an archive directory "
+                + "with each layout.");
+        for (String fileCount : System.getProperty("archive.layout.filecounts", DEFAULT_FILE_COUNTS).split(",")) {
+            for (ArchiveLayout layout : ArchiveLayout.values()) {
+                measure(layout, Integer.parseInt(fileCount.trim()));
+            }
+        }
+    }
+
+    private void measure(ArchiveLayout layout, int fileCount) throws Exception {
+        try {
+            ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME, layout);
+            long start = System.nanoTime();
+            for (int i = 0; i < fileCount; i++) {
+                String fileID = fileID(i);
+                if (!directory.getNewFileInTempDir(fileID).createNewFile()) {
+                    throw new IllegalStateException("Could not create the file " + fileID);
+                }
+                directory.moveFromTmpToArchive(fileID);
+            }
+            double createSeconds = (System.nanoTime() - start) / 1e9;
+
+            Random random = new Random(fileCount);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                // Every other lookup is for a missing file, as for a new PutFile.
+                int index = random.nextInt(fileCount);
+                String fileID = (i % 2 == 0) ? fileID(index) : "missing-" + index;
+                if (directory.hasFile(fileID) != (i % 2 == 0)) {
+                    throw new IllegalStateException("Unexpected lookup result for " + fileID);
+                }
+            }
+            double lookupMicros = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+
+            start = System.nanoTime();
+            int listed = directory.getFileIds().size();
+            double listSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format("%-8s %10d files: create %8.1f s, lookup %8.2f us, list %8.2f s (%d)",
+                    layout, fileCount, createSeconds, lookupMicros, listSeconds, listed));
+        } finally {
+            FileUtils.delete(new File(DIR_NAME));
+        }
+    }
+
+    private String fileID(int i) {
+        return "file-" + i;
+    }
+}
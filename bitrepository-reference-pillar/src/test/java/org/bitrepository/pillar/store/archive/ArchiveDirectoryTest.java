@@ -24,6 +24,7 @@ package org.bitrepository.pillar.store.archive;
 import org.bitrepository.common.utils.FileUtils;
 import org.bitrepository.common.utils.TestFileHelper;
 import org.bitrepository.pillar.store.filearchive.ArchiveDirectory;
+import org.bitrepository.settings.referencesettings.ArchiveLayout;
 import org.jaccept.structure.ExtendedTestCase;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
@@ -363,6 +364,83 @@ public class ArchiveDirectoryTest extends ExtendedTestCase {
         Assert.assertEquals(retainFiles.size(), 3);
     }
 
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testArchiveDirectoryShardedLayout() throws Exception {
+        addDescription("Test the ArchiveDirectory with the sharded layout, including files in the flat layout "
+                + "which are moved to the sharded layout.");
+        addStep("Setup with a file in the flat layout", "The file should be found with the sharded layout.");
+        ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME, ArchiveLayout.SHARDED);
+        createExistingFile();
+        Assert.assertTrue(directory.hasFile(FILE_ID));
+        Assert.assertEquals(directory.getFileIds(), List.of(FILE_ID));
+        Assert.assertEquals(directory.getFileIdsNotInLayout(), List.of(FILE_ID));
+
+        addStep("Move the file to the sharded layout", "Should be placed in two levels of sub directories.");
+        Assert.assertTrue(directory.moveToLayout(FILE_ID));
+        Assert.assertFalse(directory.moveToLayout(FILE_ID));
+        File shardedFile = directory.retrieveFile(FILE_ID);
+        Assert.assertNotNull(shardedFile);
+        Assert.assertEquals(shardedFile.getParentFile().getParentFile().getParentFile().getAbsolutePath(),
+                new File(DIR_NAME, ArchiveDirectory.SHARD_DIR).getAbsolutePath());
+        Assert.assertFalse(new File(FILE_DIR_NAME, FILE_ID).exists());
+        Assert.assertEquals(directory.getFileIds(), List.of(FILE_ID));
+        Assert.assertTrue(directory.getFileIdsNotInLayout().isEmpty());
+
+        addStep("Archive a new file", "Should be placed in the sharded layout.");
+        String newFileID = "file2";
+        Assert.assertTrue(directory.getNewFileInTempDir(newFileID).createNewFile());
+        directory.moveFromTmpToArchive(newFileID);
+        Assert.assertTrue(directory.hasFile(newFileID));
+        Assert.assertFalse(new File(FILE_DIR_NAME, newFileID).exists());
+        Assert.assertEquals(directory.getFileIds().size(), 2);
+
+        addStep("Use the directory with the flat layout", "The sharded files should be found and moved back.");
+        ArchiveDirectory flatDirectory = new ArchiveDirectory(DIR_NAME, ArchiveLayout.FLAT);
+        Assert.assertTrue(flatDirectory.hasFile(FILE_ID));
+        Assert.assertEquals(flatDirectory.getFileIdsNotInLayout().size(), 2);
+        Assert.assertTrue(flatDirectory.moveToLayout(FILE_ID));
+        Assert.assertTrue(new File(FILE_DIR_NAME, FILE_ID).isFile());
+
+        addStep("Delete the files", "Should not be found any more.");
+        flatDirectory.removeFileFromArchive(FILE_ID);
+        flatDirectory.removeFileFromArchive(newFileID);
+        Assert.assertFalse(directory.hasFile(FILE_ID));
+        Assert.assertFalse(directory.hasFile(newFileID));
+        Assert.assertTrue(directory.getFileIds().isEmpty());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testShardedLayoutWithFileNamedLikeShard() throws Exception {
+        addDescription("Test that a file in the flat layout named like a shard directory doesn't prevent moving the "
+                + "files to the sharded layout.");
+        ArchiveDirectory directory = new ArchiveDirectory(DIR_NAME, ArchiveLayout.SHARDED);
+        String otherFileID = "other";
+        addStep("Archive a file in the sharded layout and delete it again", "Gives the name of its shard directory");
+        Assert.assertTrue(directory.getNewFileInTempDir(otherFileID).createNewFile());
+        directory.moveFromTmpToArchive(otherFileID);
+        String shardNamedFileID = directory.retrieveFile(otherFileID).getParentFile().getParentFile().getName();
+        directory.removeFileFromArchive(otherFileID);
+
+        addStep("Place the file and a file named like its first shard directory in the flat layout",
+                "Both files should be moved to the sharded layout");
+        Assert.assertTrue(new File(FILE_DIR_NAME, shardNamedFileID).createNewFile());
+        Assert.assertTrue(new File(FILE_DIR_NAME, otherFileID).createNewFile());
+        Assert.assertTrue(directory.moveToLayout(otherFileID));
+        Assert.assertTrue(directory.moveToLayout(shardNamedFileID));
+        Assert.assertTrue(directory.getFileIdsNotInLayout().isEmpty());
+        Assert.assertTrue(directory.hasFile(otherFileID));
+        Assert.assertTrue(directory.hasFile(shardNamedFileID));
+
+        addStep("Use the directory with the flat layout", "The files should be moved back to the fileDir");
+        ArchiveDirectory flatDirectory = new ArchiveDirectory(DIR_NAME, ArchiveLayout.FLAT);
+        Assert.assertTrue(flatDirectory.moveToLayout(shardNamedFileID));
+        Assert.assertTrue(flatDirectory.moveToLayout(otherFileID));
+        Assert.assertTrue(new File(FILE_DIR_NAME, shardNamedFileID).isFile());
+        Assert.assertTrue(flatDirectory.hasFile(otherFileID));
+        flatDirectory.removeFileFromArchive(shardNamedFileID);
+        flatDirectory.removeFileFromArchive(otherFileID);
+    }
+
     private void createExistingFile() throws Exception {
         OutputStreamWriter osw = new OutputStreamWriter(
                 new FileOutputStream(new File(FILE_DIR_NAME, FILE_ID), false), StandardCharsets.UTF_8);
@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.archive;
+
+import org.bitrepository.pillar.store.filearchive.FileMetadataIndex;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileMetadataIndexTest extends ExtendedTestCase {
+    private File journalFile;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() throws Exception {
+        journalFile = File.createTempFile("FileMetadataIndexTest", ".idx");
+        journalFile.delete();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void cleanup() {
+        journalFile.delete();
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void rangeScanTest() {
+        addDescription("Tests that the files within a timestamp interval are found in timestamp order, including "
+                + "files with identical timestamps.");
+        FileMetadataIndex index = new FileMetadataIndex(journalFile);
+        Assert.assertFalse(index.isLoadedFromJournal());
+        index.put("c", 3, 2000);
+        index.put("b", 2, 1000);
+        index.put("a", 1, 1000);
+        index.put("d", 4, 3000);
+
+        addStep("Find all files", "Should be ordered by timestamp and then file id");
+        Assert.assertEquals(fileIDs(index.getEntries(null, null, null)), List.of("a", "b", "c", "d"));
+
+        addStep("Find the files within intervals", "Should include the boundaries");
+        Assert.assertEquals(fileIDs(index.getEntries(1000L, 2000L, null)), List.of("a", "b", "c"));
+        Assert.assertEquals(fileIDs(index.getEntries(1001L, null, null)), List.of("c", "d"));
+        Assert.assertEquals(fileIDs(index.getEntries(null, 999L, null)), List.of());
+
+        addStep("Limit the number of results", "Should deliver the first files");
+        Assert.assertEquals(fileIDs(index.getEntries(null, null, 3L)), List.of("a", "b", "c"));
+
+        addStep("Update and remove files", "Should move and remove the entries");
+        index.put("a", 1, 4000);
+        index.remove("c");
+        Assert.assertEquals(fileIDs(index.getEntries(null, null, null)), List.of("b", "d", "a"));
+        Assert.assertNull(index.get("c"));
+        Assert.assertEquals(index.get("a").getLastModified(), 4000L);
+        index.close();
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void persistenceTest() throws Exception {
+        addDescription("Tests that the index is restored from its journal, also when the journal has been "
+                + "truncated in the middle of a record.");
+        FileMetadataIndex index = new FileMetadataIndex(journalFile);
+        index.put("file1", 10, 1000);
+        index.put("file2", 20, 2000);
+        index.remove("file1");
+        index.put("file3", 30, 3000);
+        index.close();
+
+        addStep("Load the index again", "Should contain the same entries");
+        index = new FileMetadataIndex(journalFile);
+        Assert.assertTrue(index.isLoadedFromJournal());
+        Assert.assertEquals(fileIDs(index.getEntries(null, null, null)), List.of("file2", "file3"));
+        Assert.assertEquals(index.get("file3").getSize(), 30L);
+        index.put("file4", 40, 4000);
+        index.close();
+
+        addStep("Truncate the last record of the journal and load the index", "Should ignore the truncated record");
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        index = new FileMetadataIndex(journalFile);
+        Assert.assertEquals(fileIDs(index.getEntries(null, null, null)), List.of("file2", "file3"));
+        index.close();
+    }
+
+    private List<String> fileIDs(List<FileMetadataIndex.Entry> entries) {
+        List<String> res = new ArrayList<>();
+        for (FileMetadataIndex.Entry entry : entries) {
+            res.add(entry.getFileID());
+        }
+        return res;
+    }
+}
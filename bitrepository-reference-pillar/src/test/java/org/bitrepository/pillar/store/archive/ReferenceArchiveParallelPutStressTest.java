@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.archive;
+
+import org.bitrepository.common.utils.FileUtils;
+import org.bitrepository.pillar.store.filearchive.ReferenceArchive;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of puts to the ReferenceArchive with an increasing number of parallel puts. Each put reads
+ * its data from a stream delivering at a limited rate, to simulate the download of the file over the network.
+ */
+public class ReferenceArchiveParallelPutStressTest extends ExtendedTestCase {
+    private static final String DIR_NAME = "parallel-put-archive";
+    /** The numbers of parallel puts to measure. */
+    private static final int[] PARALLEL_PUTS = {1, 2, 4, 8, 16};
+    /** The number of files to put in each measurement. */
+    private static final int NUMBER_OF_FILES = 64;
+    /** The size of each file. */
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+    /** The rate each simulated download delivers data at, in bytes per second. */
+    private static final long BYTES_PER_SECOND_PER_DOWNLOAD = 50L * 1024 * 1024;
+
+    @Test( groups = {"StressTest"} )
+    public void parallelPutThroughput() throws Exception {
+        addDescription("Measures the number of files and MB per second put to the archive for different numbers "
+                + "of parallel puts.");
+        AtomicInteger fileCounter = new AtomicInteger();
+        for (int parallelPuts : PARALLEL_PUTS) {
+            ReferenceArchive archive = new ReferenceArchive(List.of(DIR_NAME));
+            ExecutorService executor = Executors.newFixedThreadPool(parallelPuts);
+            try {
+                long start = System.nanoTime();
+                List<Future<?>> puts = new ArrayList<>();
+                for (int i = 0; i < NUMBER_OF_FILES; i++) {
+                    String fileID = "file-" + fileCounter.incrementAndGet();
+                    puts.add(executor.submit(() -> {
+                        archive.downloadFileForValidation(fileID, new RateLimitedInputStream(FILE_SIZE));
+                        archive.moveToArchive(fileID);
+                        return null;
+                    }));
+                }
+                for (Future<?> put : puts) {
+                    put.get();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("%2d parallel puts: %8.1f files/s, %8.1f MB/s", parallelPuts,
+                        NUMBER_OF_FILES / seconds, (double) NUMBER_OF_FILES * FILE_SIZE / seconds / (1024 * 1024)));
+            } finally {
+                executor.shutdownNow();
+                archive.close();
+                FileUtils.delete(new File(DIR_NAME));
+            }
+        }
+    }
+
+    /**
+     * Stream of a given number of bytes, delivered at the rate of a single download.
+     */
+    private static class RateLimitedInputStream extends InputStream {
+        private final long size;
+        private long startNanos = -1;
+        private long delivered = 0;
+
+        RateLimitedInputStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (delivered >= size) {
+                return -1;
+            }
+            if (startNanos < 0) {
+                startNanos = System.nanoTime();
+            }
+            int length = (int) Math.min(len, size - delivered);
+            long dueNanos = startNanos + (delivered + length) * 1_000_000_000L / BYTES_PER_SECOND_PER_DOWNLOAD;
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            for (int i = off; i < off + length; i++) {
+                b[i] = (byte) (delivered + i);
+            }
+            delivered += length;
+            return length;
+        }
+    }
+}
@@ -29,17 +29,28 @@ import org.bitrepository.common.utils.FileUtils;
 import org.bitrepository.pillar.DefaultPillarTest;
 import org.bitrepository.pillar.common.MessageHandlerContext;
 import org.bitrepository.pillar.messagehandler.PillarMediator;
+import org.bitrepository.pillar.store.filearchive.FileMetadataIndex;
 import org.bitrepository.pillar.store.filearchive.ReferenceArchive;
 import org.bitrepository.service.audit.MockAuditManager;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class ReferenceArchiveTest extends DefaultPillarTest {
     protected ReferenceArchive archive;
@@ -52,6 +63,8 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
 
     private static String EXISTING_FILE = "file1";
     private static String MISSING_FILE = "Missing-filE";
+    private static String SLOW_FILE = "slow-file";
+    private static String OTHER_FILE = "other-file";
 
     @Override
     protected void shutdownCUT() {
@@ -96,6 +109,11 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
             // expected
         }
 
+        addStep("Test 'getFileRangeAsInputStream'", "Should deliver the range of the existing file.");
+        try (InputStream rangeStream = archive.getFileRangeAsInputStream(EXISTING_FILE, 5, 4)) {
+            Assert.assertEquals(new String(rangeStream.readAllBytes(), StandardCharsets.UTF_8), "data");
+        }
+
         addStep("Delete, recreate and delete again", "Should be moved to retain dir twice.");
         archive.deleteFile(EXISTING_FILE);
         createExistingFile();
@@ -138,6 +156,122 @@ public class ReferenceArchiveTest extends DefaultPillarTest {
         archive.close();
     }
 
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void testConcurrentFileOperations() throws Exception {
+        addDescription("Test that a slow download of one file does not block the operations on other files, "
+                + "and that only one of two concurrent downloads of the same file is completed.");
+        addStep("Setup", "Should be OK.");
+        ReferenceArchive archive = new ReferenceArchive(List.of(DIR_NAME));
+        createExistingFile();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch slowDownloadStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowDownload = new CountDownLatch(1);
+        InputStream slowStream = new InputStream() {
+            private boolean started = false;
+            @Override
+            public int read() throws IOException {
+                if (!started) {
+                    started = true;
+                    slowDownloadStarted.countDown();
+                    return 'a';
+                }
+                try {
+                    releaseSlowDownload.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+
+        try {
+            addStep("Start a download, which blocks until released", "Should be writing a partial file");
+            Future<File> slowDownload = executor.submit(() -> archive.downloadFileForValidation(SLOW_FILE, slowStream));
+            Assert.assertTrue(slowDownloadStarted.await(10, TimeUnit.SECONDS));
+            Assert.assertFalse(archive.hasFile(SLOW_FILE));
+
+            addStep("Download, archive, replace and delete other files while the download is blocked",
+                    "Should not wait for the blocked download");
+            executor.submit(() -> {
+                archive.downloadFileForValidation(OTHER_FILE, new ByteArrayInputStream(new byte[]{'b'}));
+                archive.moveToArchive(OTHER_FILE);
+                archive.downloadFileForValidation(EXISTING_FILE, new ByteArrayInputStream(new byte[]{'c'}));
+                archive.replaceFile(EXISTING_FILE);
+                archive.deleteFile(OTHER_FILE);
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(archive.hasFile(EXISTING_FILE));
+            Assert.assertFalse(archive.hasFile(OTHER_FILE));
+
+            addStep("Download the same file as the blocked download", "Should be completed first");
+            archive.downloadFileForValidation(SLOW_FILE, new ByteArrayInputStream(new byte[]{'d'}));
+            Assert.assertEquals(archive.getFileInTmpDir(SLOW_FILE).length(), 1L);
+
+            addStep("Release the blocked download", "Should fail, and its partial file be removed");
+            releaseSlowDownload.countDown();
+            try {
+                slowDownload.get(10, TimeUnit.SECONDS);
+                Assert.fail("Should not be able to complete the download of a file already in the tmpDir.");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertEquals(new File(DIR_NAME + "/tmpDir").list(), new String[]{SLOW_FILE});
+        } finally {
+            releaseSlowDownload.countDown();
+            executor.shutdownNow();
+            archive.ensureFileNotInTmpDir(SLOW_FILE);
+            archive.close();
+        }
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void testFileIndex() throws Exception {
+        addDescription("Test that the file index of the ReferenceArchive follows the archive operations, is "
+                + "persisted, and is reconciled with changes made directly on disk.");
+        addStep("Setup with a file created directly on disk", "Should be found when the index is reconciled.");
+        ReferenceArchive archive = new ReferenceArchive(List.of(DIR_NAME));
+        createExistingFile();
+        archive.reconcileFileIndex();
+        Assert.assertTrue(indexedFileIDs(archive).contains(EXISTING_FILE));
+
+        addStep("Archive another file", "Should be in the index with its size");
+        archive.downloadFileForValidation(OTHER_FILE, new ByteArrayInputStream(new byte[]{'a', 'b', 'c'}));
+        archive.moveToArchive(OTHER_FILE);
+        List<FileMetadataIndex.Entry> entries = archive.getFileMetadata(null, null, null);
+        FileMetadataIndex.Entry otherEntry = entries.stream()
+                .filter(e -> e.getFileID().equals(OTHER_FILE)).findFirst().orElseThrow();
+        Assert.assertEquals(otherEntry.getSize(), 3L);
+        Assert.assertEquals(otherEntry.getLastModified(), archive.getFile(OTHER_FILE).lastModified());
+
+        addStep("Reopen the archive", "Should load the same index");
+        archive.close();
+        archive = new ReferenceArchive(List.of(DIR_NAME));
+        Assert.assertEquals(archive.getFileMetadata(null, null, null).size(), entries.size());
+
+        addStep("Delete a file through the archive, and remove another directly on disk",
+                "Only the first should be gone from the index until it is reconciled");
+        archive.deleteFile(OTHER_FILE);
+        Assert.assertTrue(new File(FILE_DIR_NAME, EXISTING_FILE).delete());
+        Assert.assertFalse(indexedFileIDs(archive).contains(OTHER_FILE));
+        Assert.assertTrue(indexedFileIDs(archive).contains(EXISTING_FILE));
+        archive.reconcileFileIndex();
+        Assert.assertFalse(indexedFileIDs(archive).contains(EXISTING_FILE));
+
+        addStep("Remove the index journal, add a file directly on disk and reopen the archive",
+                "The index should be built from the files on disk, when it is first used");
+        archive.close();
+        Assert.assertTrue(new File(DIR_NAME, ReferenceArchive.FILE_INDEX_NAME).delete());
+        createExistingFile();
+        archive = new ReferenceArchive(List.of(DIR_NAME));
+        Assert.assertEquals(indexedFileIDs(archive), List.of(EXISTING_FILE));
+        archive.close();
+    }
+
+    private List<String> indexedFileIDs(ReferenceArchive archive) {
+        return archive.getFileMetadata(null, null, null).stream()
+                .map(FileMetadataIndex.Entry::getFileID).collect(Collectors.toList());
+    }
+
     private void createExistingFile() throws Exception {
         OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(new File(FILE_DIR_NAME, EXISTING_FILE), false),
                 StandardCharsets.UTF_8);
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Bitrepository Reference Pillar
+ * %%
+ * Copyright (C) 2010 - 2015 The State and University Library, The Royal Library and The State Archives, Denmark
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package org.bitrepository.pillar.store.checksumcache;
+
+import org.bitrepository.common.utils.CalendarUtils;
+import org.bitrepository.pillar.store.checksumdatabase.CachingChecksumStore;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumStore;
+import org.jaccept.structure.ExtendedTestCase;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Date;
+
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CachingChecksumStoreTest extends ExtendedTestCase {
+    private static final String COLLECTION_ID = "collection";
+    private static final String FILE_ID = "TEST-FILE";
+    private static final String OTHER_FILE_ID = "OTHER-TEST-FILE";
+    private static final String CHECKSUM = "abcdef0110fedcba";
+    private static final Date DATE = new Date(1000000);
+
+    private ChecksumStore store;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setup() {
+        store = spy(new MemoryCacheMock());
+        store.insertChecksumCalculation(FILE_ID, COLLECTION_ID, CHECKSUM, DATE);
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void testLookupsAreCached() {
+        addDescription("Test that the lookups of a single file only load the entry from the store once.");
+        CachingChecksumStore cache = new CachingChecksumStore(store, 10);
+
+        addStep("Look up the file in several ways", "The entry is only loaded once, and the rest are hits.");
+        Assert.assertTrue(cache.hasFile(FILE_ID, COLLECTION_ID));
+        Assert.assertEquals(cache.getChecksum(FILE_ID, COLLECTION_ID), CHECKSUM);
+        Assert.assertEquals(cache.getCalculationDate(FILE_ID, COLLECTION_ID), DATE);
+        Assert.assertEquals(cache.getEntry(FILE_ID, COLLECTION_ID).getChecksum(), CHECKSUM);
+        verify(store, times(1)).findEntry(FILE_ID, COLLECTION_ID);
+        Assert.assertEquals(cache.getMissCount(), 1);
+        Assert.assertEquals(cache.getHitCount(), 3);
+        Assert.assertEquals(cache.getHitRate(), 0.75);
+
+        addStep("Look up a file without an entry twice", "The missing entry is cached too.");
+        Assert.assertFalse(cache.hasFile(OTHER_FILE_ID, COLLECTION_ID));
+        Assert.assertFalse(cache.hasFile(OTHER_FILE_ID, COLLECTION_ID));
+        verify(store, times(1)).findEntry(OTHER_FILE_ID, COLLECTION_ID);
+        try {
+            cache.getChecksum(OTHER_FILE_ID, COLLECTION_ID);
+            Assert.fail("Should throw an exception here.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void testChangesInvalidateTheCache() {
+        addDescription("Test that changes are written to the store, and invalidate the cached entry.");
+        CachingChecksumStore cache = new CachingChecksumStore(store, 10);
+        Assert.assertEquals(cache.getChecksum(FILE_ID, COLLECTION_ID), CHECKSUM);
+        Assert.assertFalse(cache.hasFile(OTHER_FILE_ID, COLLECTION_ID));
+
+        addStep("Insert a new checksum for the file, and a checksum for the missing file",
+                "The new checksums are delivered.");
+        Date newDate = new Date(DATE.getTime() + 1000);
+        cache.insertChecksumCalculation(FILE_ID, COLLECTION_ID, "0123456789", newDate);
+        cache.insertChecksumCalculation(OTHER_FILE_ID, COLLECTION_ID, CHECKSUM, newDate);
+        Assert.assertEquals(store.getChecksum(FILE_ID, COLLECTION_ID), "0123456789");
+        Assert.assertEquals(cache.getChecksum(FILE_ID, COLLECTION_ID), "0123456789");
+        Assert.assertEquals(cache.getCalculationDate(FILE_ID, COLLECTION_ID), newDate);
+        Assert.assertTrue(cache.hasFile(OTHER_FILE_ID, COLLECTION_ID));
+
+        addStep("Delete the file", "The file is no longer found.");
+        cache.deleteEntry(FILE_ID, COLLECTION_ID);
+        Assert.assertFalse(store.hasFile(FILE_ID, COLLECTION_ID));
+        Assert.assertFalse(cache.hasFile(FILE_ID, COLLECTION_ID));
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void testRestrictedChecksumResult() {
+        addDescription("Test that the checksum result for a single file is restricted by the calculation date.");
+        CachingChecksumStore cache = new CachingChecksumStore(store, 10);
+
+        addStep("Request the checksum after and before the calculation date",
+                "Only delivered when the calculation date is within the interval.");
+        Assert.assertEquals(cache.getChecksumResult(CalendarUtils.getXmlGregorianCalendar(new Date(0)), null,
+                FILE_ID, COLLECTION_ID).getEntries().size(), 1);
+        Assert.assertEquals(cache.getChecksumResult(null, CalendarUtils.getXmlGregorianCalendar(DATE),
+                FILE_ID, COLLECTION_ID).getEntries().size(), 1);
+        Assert.assertEquals(cache.getChecksumResult(CalendarUtils.getXmlGregorianCalendar(DATE), null,
+                FILE_ID, COLLECTION_ID).getEntries().size(), 0);
+    }
+
+    @Test(groups = {"regressiontest", "pillartest"})
+    public void testEviction() {
+        addDescription("Test that the cache is bounded by evicting the least recently used entry.");
+        CachingChecksumStore cache = new CachingChecksumStore(store, 1);
+
+        addStep("Look up two files, and then the first file again", "The first file is loaded again.");
+        cache.hasFile(FILE_ID, COLLECTION_ID);
+        cache.hasFile(OTHER_FILE_ID, COLLECTION_ID);
+        cache.hasFile(FILE_ID, COLLECTION_ID);
+        verify(store, times(2)).findEntry(FILE_ID, COLLECTION_ID);
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getEvictionCount(), 2);
+    }
+}
@@ -101,11 +101,11 @@ public class ChecksumDatabaseMigrationTest extends ExtendedTestCase {
                 + " ) VALUES ( ? , ? , ? )";
         DatabaseUtils.executeStatement(connector, insertSql, FILE_ID, CHECKSUM, new Date());
         
-        addStep("Perform migration", "Checksums table has version 3");
+        addStep("Perform migration", "Checksums table has version 5");
         ChecksumDBMigrator migrator = new ChecksumDBMigrator(connector, settings);
         migrator.migrate();
         int versionAfter = DatabaseUtils.selectIntValue(connector, extractVersionSql, CHECKSUM_TABLE);
-        Assert.assertEquals(versionAfter, 4, "Table version after migration");
+        Assert.assertEquals(versionAfter, 5, "Table version after migration");
         
         addStep("Validate the entry", "The collection id has been set to the default collection id");
         String retrieveCollectionIdSql = "SELECT " + CS_COLLECTION_ID + " FROM " + CHECKSUM_TABLE + " WHERE " 
@@ -139,11 +139,11 @@ public class ChecksumDatabaseMigrationTest extends ExtendedTestCase {
                 + " , " + CS_COLLECTION_ID + " ) VALUES ( ? , ? , ? , ? )";
         DatabaseUtils.executeStatement(connector, insertSql, FILE_ID, CHECKSUM, testDate, settings.getCollections().get(0).getID());
         
-        addStep("Perform migration", "Checksums table has version 4");
+        addStep("Perform migration", "Checksums table has version 5");
         ChecksumDBMigrator migrator = new ChecksumDBMigrator(connector, settings);
         migrator.migrate();
         int versionAfter = DatabaseUtils.selectIntValue(connector, extractVersionSql, CHECKSUM_TABLE);
-        Assert.assertEquals(versionAfter, 4, "Table version after migration");
+        Assert.assertEquals(versionAfter, 5, "Table version after migration");
         
         addStep("Validate the migration", "The timestamp is now the millis from epoch");
         String retrieveCollectionIdSql = "SELECT " + CS_DATE + " FROM " + CHECKSUM_TABLE + " WHERE " 
@@ -22,6 +22,7 @@
 package org.bitrepository.pillar.store.checksumcache;
 
 import org.bitrepository.bitrepositoryelements.ChecksumDataForChecksumSpecTYPE;
+import org.bitrepository.bitrepositoryelements.FileIDsDataItem;
 import org.bitrepository.common.settings.Settings;
 import org.bitrepository.common.settings.TestSettingsProvider;
 import org.bitrepository.common.utils.Base16Utils;
@@ -30,8 +31,12 @@ import org.bitrepository.pillar.common.ChecksumDatabaseCreator;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumDAO;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumDatabaseManager;
 import org.bitrepository.pillar.store.checksumdatabase.ChecksumEntry;
+import org.bitrepository.pillar.store.checksumdatabase.ChecksumExtractor;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedChecksumResultSet;
 import org.bitrepository.pillar.store.checksumdatabase.ExtractedFileIDsResultSet;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionCursor;
+import org.bitrepository.pillar.store.checksumdatabase.ExtractionPosition;
+import org.bitrepository.service.database.DatabaseManager;
 import org.bitrepository.service.database.DerbyDatabaseDestroyer;
 import org.bitrepository.settings.referencesettings.DatabaseSpecifics;
 import org.bitrepository.settings.repositorysettings.PillarIDs;
@@ -40,8 +45,11 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.xml.datatype.XMLGregorianCalendar;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 public class ChecksumDatabaseTest extends ExtendedTestCase {
@@ -215,6 +223,133 @@ public class ChecksumDatabaseTest extends ExtendedTestCase {
         Assert.assertEquals(extractedResults.getEntries().size(), 2);
     }
     
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testExtractionCursors() {
+        addDescription("Tests that the cursors deliver the entries in order, and report whether more entries exist.");
+        addStep("Instantiate database with three entries.", "");
+        ChecksumDAO cache = new ChecksumDAO(new ChecksumDatabaseManager(settings));
+        for (int i = 1; i <= 3; i++) {
+            cache.insertChecksumCalculation(DEFAULT_FILE_ID + "_" + i, collectionID, DEFAULT_CHECKSUM, new Date(i));
+        }
+
+        addStep("Traverse a checksum cursor with a maximum of 2 results", "The two oldest entries, and more exists");
+        try (ExtractionCursor<ChecksumDataForChecksumSpecTYPE> cursor = cache.getChecksumResultsCursor(null, null,
+                2L, collectionID)) {
+            Assert.assertEquals(cursor.next().getFileID(), DEFAULT_FILE_ID + "_1");
+            Assert.assertEquals(cursor.next().getFileID(), DEFAULT_FILE_ID + "_2");
+            Assert.assertFalse(cursor.hasNext());
+            Assert.assertTrue(cursor.hasMoreEntries());
+        }
+
+        addStep("Traverse a checksum cursor with a maximum of 3 results", "All entries, and no more exists");
+        try (ExtractionCursor<ChecksumDataForChecksumSpecTYPE> cursor = cache.getChecksumResultsCursor(null, null,
+                3L, collectionID)) {
+            int count = 0;
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+            Assert.assertEquals(count, 3);
+            Assert.assertFalse(cursor.hasMoreEntries());
+        }
+
+        addStep("Traverse a file ids cursor with a minimum date", "Only the newest entries");
+        try (ExtractionCursor<FileIDsDataItem> cursor = cache.getFileIDsCursor(CalendarUtils.getFromMillis(2),
+                null, null, null, collectionID)) {
+            Assert.assertEquals(cursor.next().getFileID(), DEFAULT_FILE_ID + "_2");
+            Assert.assertEquals(cursor.next().getFileID(), DEFAULT_FILE_ID + "_3");
+            Assert.assertFalse(cursor.hasNext());
+            Assert.assertFalse(cursor.hasMoreEntries());
+        }
+
+        addStep("Extract the results with the maximum equal to the number of entries", "No more entries reported");
+        Assert.assertFalse(cache.getChecksumResults(null, null, 3L, collectionID).hasMoreEntries());
+        Assert.assertFalse(cache.getFileIDs(null, null, 3L, null, collectionID).hasMoreEntries());
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testCursorWithEntryUpdatedBetweenPages() {
+        addDescription("Tests that an entry recalculated while a cursor is traversed, is not delivered twice by the "
+                + "cursor, and is delivered by the next extraction when the recalculation moved it past the "
+                + "position of the cursor.");
+        addStep("Instantiate database with more entries than a page.", "");
+        ChecksumDAO cache = new ChecksumDAO(new ChecksumDatabaseManager(settings));
+        int numberOfEntries = 1001;
+        for (int i = 1; i <= numberOfEntries; i++) {
+            cache.insertChecksumCalculation(DEFAULT_FILE_ID + "_" + i, collectionID, DEFAULT_CHECKSUM, new Date(i));
+        }
+
+        addStep("Read the first two entries, recalculate the second, and traverse the rest of the cursor",
+                "Each file id is delivered once, except the recalculated, and more entries are reported.");
+        List<String> fileIDs = new ArrayList<>();
+        XMLGregorianCalendar lastDate;
+        try (ExtractionCursor<FileIDsDataItem> cursor = cache.getFileIDsCursor(null, null, null, null,
+                collectionID)) {
+            fileIDs.add(cursor.next().getFileID());
+            cache.insertChecksumCalculation(DEFAULT_FILE_ID + "_2", collectionID, DEFAULT_CHECKSUM,
+                    new Date(2 * numberOfEntries));
+            FileIDsDataItem item = null;
+            while (cursor.hasNext()) {
+                item = cursor.next();
+                fileIDs.add(item.getFileID());
+            }
+            lastDate = item.getLastModificationTime();
+            Assert.assertTrue(cursor.hasMoreEntries());
+        }
+        Assert.assertEquals(fileIDs.size(), numberOfEntries - 1);
+        Assert.assertEquals(new HashSet<>(fileIDs).size(), numberOfEntries - 1);
+        Assert.assertFalse(fileIDs.contains(DEFAULT_FILE_ID + "_2"));
+
+        addStep("Extract the entries from the date of the last delivered entry",
+                "The recalculated entry is delivered, and there are no more entries.");
+        try (ExtractionCursor<FileIDsDataItem> cursor = cache.getFileIDsCursor(lastDate, null, null, null,
+                collectionID)) {
+            while (cursor.hasNext()) {
+                fileIDs.add(cursor.next().getFileID());
+            }
+            Assert.assertFalse(cursor.hasMoreEntries());
+        }
+        Assert.assertTrue(fileIDs.contains(DEFAULT_FILE_ID + "_2"));
+        Assert.assertEquals(new HashSet<>(fileIDs).size(), numberOfEntries);
+    }
+
+    @Test( groups = {"regressiontest", "pillartest"})
+    public void testExtractionPages() {
+        addDescription("Tests that the pages continue after the position of the previous page, also within entries "
+                + "with the same calculation date.");
+        addStep("Instantiate database with five entries, where three have the same date.", "");
+        DatabaseManager databaseManager = new ChecksumDatabaseManager(settings);
+        ChecksumDAO cache = new ChecksumDAO(databaseManager);
+        cache.insertChecksumCalculation("c", collectionID, DEFAULT_CHECKSUM, new Date(10));
+        cache.insertChecksumCalculation("a", collectionID, DEFAULT_CHECKSUM, new Date(10));
+        cache.insertChecksumCalculation("e", collectionID, DEFAULT_CHECKSUM, new Date(20));
+        cache.insertChecksumCalculation("b", collectionID, DEFAULT_CHECKSUM, new Date(10));
+        cache.insertChecksumCalculation("d", collectionID, DEFAULT_CHECKSUM, new Date(5));
+        ChecksumExtractor extractor = new ChecksumExtractor(databaseManager.getConnector());
+
+        addStep("Extract pages of two entries until a page is empty",
+                "The entries ordered by date and then by file id, each delivered once.");
+        List<String> fileIDs = new ArrayList<>();
+        ExtractionPosition position = extractor.extractEntriesPage(null, null, null, 2, collectionID,
+                entry -> fileIDs.add(entry.getFileId()));
+        Assert.assertEquals(position.getFileID(), "a");
+        Assert.assertEquals(position.getCalculationDate(), 10);
+        position = extractor.extractEntriesPage(null, null, position, 2, collectionID,
+                entry -> fileIDs.add(entry.getFileId()));
+        position = extractor.extractEntriesPage(null, null, position, 2, collectionID,
+                entry -> fileIDs.add(entry.getFileId()));
+        Assert.assertEquals(position.getFileID(), "e");
+        Assert.assertNull(extractor.extractEntriesPage(null, null, position, 2, collectionID,
+                entry -> fileIDs.add(entry.getFileId())));
+        Assert.assertEquals(fileIDs, List.of("d", "a", "b", "c", "e"));
+
+        addStep("Extract a page of file ids within a date interval", "Only the entries within the interval.");
+        List<String> fileIDsInInterval = new ArrayList<>();
+        extractor.getFileIDsPage(CalendarUtils.getFromMillis(10), CalendarUtils.getFromMillis(10), null, null, 10,
+                collectionID, item -> fileIDsInInterval.add(item.getFileID()));
+        Assert.assertEquals(fileIDsInInterval, List.of("a", "b", "c"));
+    }
+
     @Test( groups = {"regressiontest", "pillartest"})
     public void testGetFileIDsRestrictions() {
         addDescription("Tests the restrictions on the GetFileIDs call to the database.");
@@ -31,9 +31,9 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Very simple memory based implementation of the ChecksumCache.
@@ -45,7 +45,7 @@ public class MemoryCacheMock implements ChecksumStore {
     /**
      * The checksum mapping between the file ids and their checksum.
      */
-    private Map<String, ChecksumEntry> checksumMap = new HashMap<>();
+    private final Map<String, ChecksumEntry> checksumMap = new ConcurrentHashMap<>();
     
     public MemoryCacheMock() {}
     
@@ -61,6 +61,8 @@ import java.util.Date;
 public class GetAuditTrailsRequestHandler extends AbstractRequestHandler<GetAuditTrailsRequest> {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final AuditTrailManager auditManager;
+    /** Kept for the lifetime of the handler, so its marshallers are reused between requests. */
+    private final JaxbHelper jaxbHelper = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
 
     /**
      * @param context      The context of the message handler.
@@ -206,9 +208,8 @@ public class GetAuditTrailsRequestHandler extends AbstractRequestHandler<GetAudi
         results.getAuditTrailEvents().add(extractedAuditTrails.getAuditTrailEvents());
 
         try (OutputStream os = new FileOutputStream(checksumResultFile)) {
-            JaxbHelper jaxb = new JaxbHelper(XSD_CLASSPATH, XSD_BR_DATA);
-            String xmlMessage = jaxb.serializeToXml(results);
-            jaxb.validate(new ByteArrayInputStream(xmlMessage.getBytes(StandardCharsets.UTF_8)));
+            String xmlMessage = jaxbHelper.serializeToXml(results);
+            jaxbHelper.validate(new ByteArrayInputStream(xmlMessage.getBytes(StandardCharsets.UTF_8)));
             os.write(xmlMessage.getBytes(StandardCharsets.UTF_8));
             os.flush();
         }